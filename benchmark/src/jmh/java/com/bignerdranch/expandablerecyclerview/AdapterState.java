@@ -0,0 +1,57 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adapter over {@link #rowCount} rows with every parent expanded, for each row model.
+ */
+@State(Scope.Thread)
+public class AdapterState {
+
+    /**
+     * Each parent takes one row for itself and one per child.
+     */
+    static final int CHILD_COUNT = 9;
+
+    @Param({"1000", "10000", "100000"})
+    public int rowCount;
+
+    @Param({"wrapped", "virtual", "packed"})
+    public String rowModel;
+
+    List<BenchmarkParent> mParentList;
+    BenchmarkAdapter mAdapter;
+
+    @Setup(Level.Trial)
+    public void setupAdapter() {
+        mParentList = generateParentList(rowCount / (CHILD_COUNT + 1));
+        mAdapter = new BenchmarkAdapter(mParentList, getRowModel());
+    }
+
+    @ExpandableRecyclerAdapter.RowModel
+    int getRowModel() {
+        switch (rowModel) {
+            case "virtual":
+                return ExpandableRecyclerAdapter.ROW_MODEL_VIRTUAL;
+            case "packed":
+                return ExpandableRecyclerAdapter.ROW_MODEL_PACKED;
+            default:
+                return ExpandableRecyclerAdapter.ROW_MODEL_WRAPPED;
+        }
+    }
+
+    static List<BenchmarkParent> generateParentList(int parentCount) {
+        List<BenchmarkParent> parentList = new ArrayList<>(parentCount);
+        for (int i = 0; i < parentCount; i++) {
+            parentList.add(new BenchmarkParent(CHILD_COUNT));
+        }
+        return parentList;
+    }
+}
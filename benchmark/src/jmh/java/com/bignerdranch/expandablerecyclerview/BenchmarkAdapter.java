@@ -0,0 +1,39 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.annotation.NonNull;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.List;
+
+/**
+ * Adapter binding nothing, so that benchmarks only measure the work done by
+ * {@link ExpandableRecyclerAdapter} itself.
+ */
+public class BenchmarkAdapter extends ExpandableRecyclerAdapter<BenchmarkParent, Integer,
+        ParentViewHolder<BenchmarkParent, Integer>, ChildViewHolder<Integer>> {
+
+    public BenchmarkAdapter(@NonNull List<BenchmarkParent> parentList, @RowModel int rowModel) {
+        super(parentList, rowModel);
+    }
+
+    @NonNull
+    @Override
+    public ParentViewHolder<BenchmarkParent, Integer> onCreateParentViewHolder(@NonNull ViewGroup parentViewGroup, int viewType) {
+        return new ParentViewHolder<>(new View());
+    }
+
+    @NonNull
+    @Override
+    public ChildViewHolder<Integer> onCreateChildViewHolder(@NonNull ViewGroup childViewGroup, int viewType) {
+        return new ChildViewHolder<>(new View());
+    }
+
+    @Override
+    public void onBindParentViewHolder(@NonNull ParentViewHolder<BenchmarkParent, Integer> parentViewHolder, int parentPosition, @NonNull BenchmarkParent parent) {
+    }
+
+    @Override
+    public void onBindChildViewHolder(@NonNull ChildViewHolder<Integer> childViewHolder, int parentPosition, int childPosition, @NonNull Integer child) {
+    }
+}
@@ -0,0 +1,31 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import com.bignerdranch.expandablerecyclerview.model.Parent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parent with a fixed number of children that starts out expanded.
+ */
+public class BenchmarkParent implements Parent<Integer> {
+
+    private final List<Integer> mChildList;
+
+    public BenchmarkParent(int childCount) {
+        mChildList = new ArrayList<>(childCount);
+        for (int i = 0; i < childCount; i++) {
+            mChildList.add(i);
+        }
+    }
+
+    @Override
+    public List<Integer> getChildList() {
+        return mChildList;
+    }
+
+    @Override
+    public boolean isInitiallyExpanded() {
+        return true;
+    }
+}
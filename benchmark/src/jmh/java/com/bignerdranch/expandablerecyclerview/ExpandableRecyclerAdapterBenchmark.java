@@ -0,0 +1,143 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Structural operations of {@link ExpandableRecyclerAdapter} over 1k, 10k and 100k rows.
+ * <p>
+ * Operations that change the adapter are undone or reset outside of the measured section,
+ * so every invocation starts from the same state.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExpandableRecyclerAdapterBenchmark {
+
+    private static final int LOOKUP_COUNT = 1024;
+    private static final int INSERTED_PARENT_COUNT = 10;
+
+    @State(Scope.Thread)
+    public static class BindState extends AdapterState {
+
+        int[] mFlatPositions;
+        ParentViewHolder<BenchmarkParent, Integer> mParentViewHolder;
+        ChildViewHolder<Integer> mChildViewHolder;
+
+        @Setup(Level.Trial)
+        public void setupPositions() {
+            Random random = new Random(42);
+            mFlatPositions = new int[LOOKUP_COUNT];
+            for (int i = 0; i < LOOKUP_COUNT; i++) {
+                mFlatPositions[i] = random.nextInt(mAdapter.getItemCount());
+            }
+            mParentViewHolder = new ParentViewHolder<>(new View());
+            mChildViewHolder = new ChildViewHolder<>(new View());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CollapsedState extends AdapterState {
+
+        @Setup(Level.Invocation)
+        public void collapse() {
+            mAdapter.collapseAllParents();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class InsertState extends AdapterState {
+
+        List<BenchmarkParent> mInsertedParentList;
+        int mParentPositionStart;
+
+        @Setup(Level.Trial)
+        public void setupInsertedParents() {
+            mInsertedParentList = generateParentList(INSERTED_PARENT_COUNT);
+            mParentPositionStart = mParentList.size() / 2;
+        }
+
+        @TearDown(Level.Invocation)
+        public void removeInsertedParents() {
+            mParentList.subList(mParentPositionStart, mParentPositionStart + INSERTED_PARENT_COUNT).clear();
+            mAdapter.notifyParentRangeRemoved(mParentPositionStart, INSERTED_PARENT_COUNT);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SetParentListState extends AdapterState {
+
+        List<BenchmarkParent> mOtherParentList;
+
+        @Setup(Level.Trial)
+        public void setupOtherParentList() {
+            mOtherParentList = generateParentList(mParentList.size());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUP_COUNT)
+    public int bindPositionLookups(BindState state) {
+        BenchmarkAdapter adapter = state.mAdapter;
+        int checksum = 0;
+        for (int flatPosition : state.mFlatPositions) {
+            int viewType = adapter.getItemViewType(flatPosition);
+            RecyclerView.ViewHolder viewHolder = adapter.isParentViewType(viewType)
+                    ? state.mParentViewHolder : state.mChildViewHolder;
+            adapter.onBindViewHolder(viewHolder, flatPosition);
+            checksum += adapter.getNearestParentPosition(flatPosition) + adapter.getChildPosition(flatPosition);
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public int expandAllParents(CollapsedState state) {
+        state.mAdapter.expandAllParents();
+        return state.mAdapter.getItemCount();
+    }
+
+    @Benchmark
+    public int notifyParentRangeInserted(InsertState state) {
+        state.mParentList.addAll(state.mParentPositionStart, state.mInsertedParentList);
+        state.mAdapter.notifyParentRangeInserted(state.mParentPositionStart, INSERTED_PARENT_COUNT);
+        return state.mAdapter.getItemCount();
+    }
+
+    /**
+     * Moves the first, expanded, parent to the middle of the list. Every parent has the same
+     * shape so the adapter ends up in an equivalent state after each invocation.
+     */
+    @Benchmark
+    public int notifyParentMovedExpanded(AdapterState state) {
+        int toParentPosition = state.mParentList.size() / 2;
+        state.mParentList.add(toParentPosition, state.mParentList.remove(0));
+        state.mAdapter.notifyParentMoved(0, toParentPosition);
+        return state.mAdapter.getItemCount();
+    }
+
+    /**
+     * Swaps between two lists of different parents with the same shape, as a refresh from a
+     * server would.
+     */
+    @Benchmark
+    public int setParentList(SetParentListState state) {
+        List<BenchmarkParent> parentList = state.mOtherParentList;
+        state.mOtherParentList = state.mAdapter.getParentList();
+        state.mAdapter.setParentList(parentList, true);
+        return state.mAdapter.getItemCount();
+    }
+}
@@ -0,0 +1,7 @@
+package android.app;
+
+/**
+ * Stand-in for the Android class, only referenced from documentation.
+ */
+public class Activity {
+}
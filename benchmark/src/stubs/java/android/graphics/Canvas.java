@@ -0,0 +1,17 @@
+package android.graphics;
+
+/**
+ * Stand-in for the Android class.
+ */
+public class Canvas {
+
+    public int save() {
+        return 0;
+    }
+
+    public void restoreToCount(int saveCount) {
+    }
+
+    public void translate(float dx, float dy) {
+    }
+}
@@ -0,0 +1,24 @@
+package android.os;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stand-in for the Android class backed by a plain map.
+ */
+public final class Bundle {
+
+    private final Map<String, Object> mMap = new HashMap<>();
+
+    public boolean containsKey(String key) {
+        return mMap.containsKey(key);
+    }
+
+    public void putLongArray(String key, long[] value) {
+        mMap.put(key, value);
+    }
+
+    public long[] getLongArray(String key) {
+        return (long[]) mMap.get(key);
+    }
+}
@@ -0,0 +1,15 @@
+package android.os;
+
+/**
+ * Stand-in for the Android class, there is no message queue so posted tasks run right away.
+ */
+public class Handler {
+
+    public Handler(Looper looper) {
+    }
+
+    public boolean post(Runnable r) {
+        r.run();
+        return true;
+    }
+}
@@ -0,0 +1,22 @@
+package android.os;
+
+/**
+ * Stand-in for the Android class.
+ */
+public final class Looper {
+
+    private static final Looper sMainLooper = new Looper();
+
+    private static final MessageQueue sMainQueue = new MessageQueue();
+
+    private Looper() {
+    }
+
+    public static Looper getMainLooper() {
+        return sMainLooper;
+    }
+
+    public static MessageQueue myQueue() {
+        return sMainQueue;
+    }
+}
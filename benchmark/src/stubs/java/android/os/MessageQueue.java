@@ -0,0 +1,15 @@
+package android.os;
+
+/**
+ * Stand-in for the Android class, the main thread is never idle so idle handlers never run.
+ */
+public final class MessageQueue {
+
+    public interface IdleHandler {
+
+        boolean queueIdle();
+    }
+
+    public void addIdleHandler(IdleHandler handler) {
+    }
+}
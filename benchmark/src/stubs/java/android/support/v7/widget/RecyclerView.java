@@ -0,0 +1,216 @@
+package android.support.v7.widget;
+
+import android.graphics.Canvas;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stand-in for the support library class, adapters only notify the observers registered
+ * directly on them and no ViewHolder is ever found for a position, as for an adapter that
+ * isn't attached to anything yet.
+ */
+public class RecyclerView extends ViewGroup {
+
+    public static final int NO_POSITION = -1;
+    public static final long NO_ID = -1;
+
+    private final RecycledViewPool mRecycledViewPool = new RecycledViewPool();
+
+    public ViewHolder findViewHolderForAdapterPosition(int position) {
+        return null;
+    }
+
+    public int getChildAdapterPosition(View child) {
+        return NO_POSITION;
+    }
+
+    public RecycledViewPool getRecycledViewPool() {
+        return mRecycledViewPool;
+    }
+
+    public Adapter getAdapter() {
+        return null;
+    }
+
+    public static class State {
+    }
+
+    public static class RecycledViewPool {
+
+        public void setMaxRecycledViews(int viewType, int max) {
+        }
+
+        public void putRecycledView(ViewHolder scrap) {
+        }
+    }
+
+    public abstract static class ItemDecoration {
+
+        public void onDrawOver(Canvas canvas, RecyclerView parent, State state) {
+        }
+    }
+
+    public abstract static class ViewHolder {
+
+        public final View itemView;
+
+        public ViewHolder(View itemView) {
+            this.itemView = itemView;
+        }
+
+        public final int getAdapterPosition() {
+            return NO_POSITION;
+        }
+
+        public final int getItemViewType() {
+            return 0;
+        }
+    }
+
+    public abstract static class AdapterDataObserver {
+
+        public void onChanged() {
+        }
+
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+        }
+
+        public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+            onItemRangeChanged(positionStart, itemCount);
+        }
+
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+        }
+
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+        }
+
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        }
+    }
+
+    public abstract static class Adapter<VH extends ViewHolder> {
+
+        private final List<AdapterDataObserver> mObservers = new ArrayList<>();
+        private boolean mHasStableIds;
+
+        public abstract VH onCreateViewHolder(ViewGroup parent, int viewType);
+
+        public final VH createViewHolder(ViewGroup parent, int viewType) {
+            return onCreateViewHolder(parent, viewType);
+        }
+
+        public final void bindViewHolder(VH holder, int position) {
+            onBindViewHolder(holder, position, Collections.<Object>emptyList());
+        }
+
+        public abstract void onBindViewHolder(VH holder, int position);
+
+        public void onBindViewHolder(VH holder, int position, List<Object> payloads) {
+            onBindViewHolder(holder, position);
+        }
+
+        public abstract int getItemCount();
+
+        public int getItemViewType(int position) {
+            return 0;
+        }
+
+        public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        }
+
+        public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        }
+
+        public void onViewRecycled(VH holder) {
+        }
+
+        public void setHasStableIds(boolean hasStableIds) {
+            if (!mObservers.isEmpty()) {
+                throw new IllegalStateException("Cannot change whether this adapter has stable IDs while the adapter has registered observers.");
+            }
+            mHasStableIds = hasStableIds;
+        }
+
+        public final boolean hasStableIds() {
+            return mHasStableIds;
+        }
+
+        public long getItemId(int position) {
+            return NO_ID;
+        }
+
+        public void registerAdapterDataObserver(AdapterDataObserver observer) {
+            mObservers.add(observer);
+        }
+
+        public void unregisterAdapterDataObserver(AdapterDataObserver observer) {
+            mObservers.remove(observer);
+        }
+
+        public final void notifyDataSetChanged() {
+            for (int i = mObservers.size() - 1; i >= 0; i--) {
+                AdapterDataObserver observer = mObservers.get(i);
+                observer.onChanged();
+            }
+        }
+
+        public final void notifyItemChanged(int position) {
+            notifyItemRangeChanged(position, 1, null);
+        }
+
+        public final void notifyItemChanged(int position, Object payload) {
+            notifyItemRangeChanged(position, 1, payload);
+        }
+
+        public final void notifyItemRangeChanged(int positionStart, int itemCount) {
+            notifyItemRangeChanged(positionStart, itemCount, null);
+        }
+
+        public final void notifyItemRangeChanged(int positionStart, int itemCount, Object payload) {
+            for (int i = mObservers.size() - 1; i >= 0; i--) {
+                AdapterDataObserver observer = mObservers.get(i);
+                observer.onItemRangeChanged(positionStart, itemCount, payload);
+            }
+        }
+
+        public final void notifyItemInserted(int position) {
+            for (int i = mObservers.size() - 1; i >= 0; i--) {
+                AdapterDataObserver observer = mObservers.get(i);
+                observer.onItemRangeInserted(position, 1);
+            }
+        }
+
+        public final void notifyItemRangeInserted(int positionStart, int itemCount) {
+            for (int i = mObservers.size() - 1; i >= 0; i--) {
+                AdapterDataObserver observer = mObservers.get(i);
+                observer.onItemRangeInserted(positionStart, itemCount);
+            }
+        }
+
+        public final void notifyItemRemoved(int position) {
+            for (int i = mObservers.size() - 1; i >= 0; i--) {
+                AdapterDataObserver observer = mObservers.get(i);
+                observer.onItemRangeRemoved(position, 1);
+            }
+        }
+
+        public final void notifyItemRangeRemoved(int positionStart, int itemCount) {
+            for (int i = mObservers.size() - 1; i >= 0; i--) {
+                AdapterDataObserver observer = mObservers.get(i);
+                observer.onItemRangeRemoved(positionStart, itemCount);
+            }
+        }
+
+        public final void notifyItemMoved(int fromPosition, int toPosition) {
+            for (int i = mObservers.size() - 1; i >= 0; i--) {
+                AdapterDataObserver observer = mObservers.get(i);
+                observer.onItemRangeMoved(fromPosition, toPosition, 1);
+            }
+        }
+    }
+}
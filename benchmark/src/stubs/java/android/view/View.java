@@ -0,0 +1,75 @@
+package android.view;
+
+import android.graphics.Canvas;
+
+/**
+ * Stand-in for the Android class.
+ */
+public class View {
+
+    public interface OnClickListener {
+        void onClick(View v);
+    }
+
+    public static class MeasureSpec {
+
+        public static final int UNSPECIFIED = 0;
+        public static final int EXACTLY = 1 << 30;
+
+        public static int makeMeasureSpec(int size, int mode) {
+            return size | mode;
+        }
+    }
+
+    public void setOnClickListener(OnClickListener listener) {
+    }
+
+    public ViewGroup.LayoutParams getLayoutParams() {
+        return null;
+    }
+
+    public final void measure(int widthMeasureSpec, int heightMeasureSpec) {
+    }
+
+    public void layout(int left, int top, int right, int bottom) {
+    }
+
+    public void draw(Canvas canvas) {
+    }
+
+    public final int getMeasuredWidth() {
+        return 0;
+    }
+
+    public final int getMeasuredHeight() {
+        return 0;
+    }
+
+    public final int getWidth() {
+        return 0;
+    }
+
+    public final int getHeight() {
+        return 0;
+    }
+
+    public final int getTop() {
+        return 0;
+    }
+
+    public int getPaddingLeft() {
+        return 0;
+    }
+
+    public int getPaddingTop() {
+        return 0;
+    }
+
+    public int getPaddingRight() {
+        return 0;
+    }
+
+    public int getPaddingBottom() {
+        return 0;
+    }
+}
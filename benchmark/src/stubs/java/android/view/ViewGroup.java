@@ -0,0 +1,28 @@
+package android.view;
+
+/**
+ * Stand-in for the Android class.
+ */
+public class ViewGroup extends View {
+
+    public static class LayoutParams {
+
+        public static final int MATCH_PARENT = -1;
+        public static final int WRAP_CONTENT = -2;
+
+        public int width;
+        public int height;
+    }
+
+    public static int getChildMeasureSpec(int spec, int padding, int childDimension) {
+        return 0;
+    }
+
+    public int getChildCount() {
+        return 0;
+    }
+
+    public View getChildAt(int index) {
+        return null;
+    }
+}
@@ -0,0 +1,211 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.UiThread;
+
+/**
+ * {@link ExpandableRecyclerAdapter.MetricsListener} aggregating the timings of an adapter into
+ * {@link LatencyHistogram}s, pass it to
+ * {@link ExpandableRecyclerAdapter#setMetricsListener(ExpandableRecyclerAdapter.MetricsListener)}.
+ * <p>
+ * ViewHolder creations and binds get one histogram per view type, parent and child view types
+ * being distinct. Histograms are added by the main thread the first time a view type is seen,
+ * by replacing an immutable table, so they can be read from any thread, for instance to be
+ * sampled and exported periodically, without locking.
+ */
+public class AdapterMetrics implements ExpandableRecyclerAdapter.MetricsListener {
+
+    private final LatencyHistogram mExpandHistogram = new LatencyHistogram();
+    private final LatencyHistogram mCollapseHistogram = new LatencyHistogram();
+    private final LatencyHistogram mRebuildHistogram = new LatencyHistogram();
+    private final LatencyHistogram mNotifyHistogram = new LatencyHistogram();
+
+    private volatile ViewTypeHistograms mCreateHistograms = new ViewTypeHistograms();
+    private volatile ViewTypeHistograms mBindHistograms = new ViewTypeHistograms();
+
+    @Override
+    @UiThread
+    public void onViewHolderCreated(int viewType, long durationNanos) {
+        LatencyHistogram histogram = mCreateHistograms.get(viewType);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            mCreateHistograms = mCreateHistograms.with(viewType, histogram);
+        }
+        histogram.record(durationNanos);
+    }
+
+    @Override
+    @UiThread
+    public void onParentViewHolderBound(int viewType, long durationNanos) {
+        recordBind(viewType, durationNanos);
+    }
+
+    @Override
+    @UiThread
+    public void onChildViewHolderBound(int viewType, long durationNanos) {
+        recordBind(viewType, durationNanos);
+    }
+
+    @Override
+    @UiThread
+    public void onExpandedParentUpdated(int childCount, long durationNanos) {
+        mExpandHistogram.record(durationNanos);
+    }
+
+    @Override
+    @UiThread
+    public void onCollapsedParentUpdated(int childCount, long durationNanos) {
+        mCollapseHistogram.record(durationNanos);
+    }
+
+    @Override
+    @UiThread
+    public void onRowsRebuilt(int rowCount, long durationNanos) {
+        mRebuildHistogram.record(durationNanos);
+    }
+
+    @Override
+    @UiThread
+    public void onRowsNotified(long durationNanos) {
+        mNotifyHistogram.record(durationNanos);
+    }
+
+    @UiThread
+    private void recordBind(int viewType, long durationNanos) {
+        LatencyHistogram histogram = mBindHistograms.get(viewType);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            mBindHistograms = mBindHistograms.with(viewType, histogram);
+        }
+        histogram.record(durationNanos);
+    }
+
+    /**
+     * @return The view types ViewHolders were created for, in the order they were first seen
+     */
+    @NonNull
+    public int[] getCreatedViewTypes() {
+        return mCreateHistograms.mViewTypes.clone();
+    }
+
+    /**
+     * @return The view types ViewHolders were bound for, in the order they were first seen
+     */
+    @NonNull
+    public int[] getBoundViewTypes() {
+        return mBindHistograms.mViewTypes.clone();
+    }
+
+    /**
+     * @param viewType The view type of the ViewHolders
+     * @return The durations of the create methods for the view type, or null if none was
+     * created yet
+     */
+    @Nullable
+    public LatencyHistogram getCreateHistogram(int viewType) {
+        return mCreateHistograms.get(viewType);
+    }
+
+    /**
+     * @param viewType The view type of the ViewHolders
+     * @return The durations of the bind methods for the view type, or null if none was bound
+     * yet
+     */
+    @Nullable
+    public LatencyHistogram getBindHistogram(int viewType) {
+        return mBindHistograms.get(viewType);
+    }
+
+    /**
+     * @return The durations of parent expansions, notifications included
+     */
+    @NonNull
+    public LatencyHistogram getExpandHistogram() {
+        return mExpandHistogram;
+    }
+
+    /**
+     * @return The durations of parent collapses, notifications included
+     */
+    @NonNull
+    public LatencyHistogram getCollapseHistogram() {
+        return mCollapseHistogram;
+    }
+
+    /**
+     * @return The durations of rebuilds of every row
+     */
+    @NonNull
+    public LatencyHistogram getRebuildHistogram() {
+        return mRebuildHistogram;
+    }
+
+    /**
+     * @return The durations of the notifications dispatched to the adapter's observers
+     */
+    @NonNull
+    public LatencyHistogram getNotifyHistogram() {
+        return mNotifyHistogram;
+    }
+
+    /**
+     * Resets every histogram.
+     */
+    public void reset() {
+        mExpandHistogram.reset();
+        mCollapseHistogram.reset();
+        mRebuildHistogram.reset();
+        mNotifyHistogram.reset();
+        for (LatencyHistogram histogram : mCreateHistograms.mHistograms) {
+            histogram.reset();
+        }
+        for (LatencyHistogram histogram : mBindHistograms.mHistograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Immutable table of histograms by view type, searched linearly as adapters only have a
+     * handful of view types.
+     */
+    private static final class ViewTypeHistograms {
+
+        final int[] mViewTypes;
+        final LatencyHistogram[] mHistograms;
+
+        ViewTypeHistograms() {
+            this(new int[0], new LatencyHistogram[0]);
+        }
+
+        private ViewTypeHistograms(int[] viewTypes, LatencyHistogram[] histograms) {
+            mViewTypes = viewTypes;
+            mHistograms = histograms;
+        }
+
+        @Nullable
+        LatencyHistogram get(int viewType) {
+            for (int i = 0; i < mViewTypes.length; i++) {
+                if (mViewTypes[i] == viewType) {
+                    return mHistograms[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return A copy of this table with {@code histogram} added for {@code viewType}
+         */
+        @NonNull
+        ViewTypeHistograms with(int viewType, @NonNull LatencyHistogram histogram) {
+            int size = mViewTypes.length;
+            int[] viewTypes = new int[size + 1];
+            LatencyHistogram[] histograms = new LatencyHistogram[size + 1];
+            System.arraycopy(mViewTypes, 0, viewTypes, 0, size);
+            System.arraycopy(mHistograms, 0, histograms, 0, size);
+            viewTypes[size] = viewType;
+            histograms[size] = histogram;
+            return new ViewTypeHistograms(viewTypes, histograms);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.UiThread;
+import android.support.annotation.WorkerThread;
+
+import com.bignerdranch.expandablerecyclerview.model.Parent;
+
+import java.util.List;
+
+/**
+ * Loads the children of parents when they are shown rather than up front, see
+ * {@link ExpandableRecyclerAdapter#setChildListLoader(ChildListLoader, java.util.concurrent.Executor)}.
+ * <p>
+ * Until its children are loaded, {@link Parent#getChildList()} should return the placeholder
+ * rows to show while loading, typically a single loading item given its own view type through
+ * {@link ExpandableRecyclerAdapter#getChildViewType(int, int)}. Once loaded, the placeholders
+ * are rebound with the first children and the remaining children are inserted.
+ *
+ * @param <P> Type of the parents
+ * @param <C> Type of the children held by the parents
+ */
+public abstract class ChildListLoader<P extends Parent<C>, C> {
+
+    /**
+     * @param parent A parent being expanded or shown expanded
+     * @return true if {@link Parent#getChildList()} returns the actual children of {@code parent},
+     * false if it returns placeholders
+     */
+    @UiThread
+    public abstract boolean isChildListLoaded(@NonNull P parent);
+
+    /**
+     * Loads the children of {@code parent}, called on the executor given to the adapter.
+     * <p>
+     * The result is dropped if the parent is collapsed, or its rows are scrolled out of view,
+     * before the load completes.
+     *
+     * @param parent The parent to load the children of
+     * @return The children of {@code parent}
+     * @throws Exception If the children couldn't be loaded, the exception is handed to
+     *                   {@link #onChildListLoadFailed(Parent, Exception)}
+     */
+    @WorkerThread
+    @NonNull
+    public abstract List<C> loadChildList(@NonNull P parent) throws Exception;
+
+    /**
+     * Called on the main thread with the result of {@link #loadChildList(Parent)}. Once this
+     * returns, {@link Parent#getChildList()} must return {@code childList} and
+     * {@link #isChildListLoaded(Parent)} must return true.
+     *
+     * @param parent The parent the children were loaded for
+     * @param childList The loaded children
+     */
+    @UiThread
+    public abstract void onChildListLoaded(@NonNull P parent, @NonNull List<C> childList);
+
+    /**
+     * Called on the main thread when {@link #loadChildList(Parent)} threw. The placeholders
+     * stay in place and the load is attempted again the next time they are bound.
+     *
+     * @param parent The parent the children couldn't be loaded for
+     * @param e The exception thrown by {@link #loadChildList(Parent)}
+     */
+    @UiThread
+    public void onChildListLoadFailed(@NonNull P parent, @NonNull Exception e) {
+    }
+}
@@ -15,6 +15,15 @@ public class ChildViewHolder<C> extends RecyclerView.ViewHolder {
     C mChild;
     ExpandableRecyclerAdapter mExpandableAdapter;
 
+    /**
+     * Flat position the parent and child positions were resolved for, and the structure
+     * version of the adapter at the time, see {@link #cachePositions(int, int, int, int)}.
+     */
+    private int mCachedFlatPosition = RecyclerView.NO_POSITION;
+    private int mCachedParentPosition;
+    private int mCachedChildPosition;
+    private int mCachedStructureVersion;
+
     /**
      * Default constructor.
      *
@@ -47,7 +56,7 @@ public class ChildViewHolder<C> extends RecyclerView.ViewHolder {
             return RecyclerView.NO_POSITION;
         }
 
-        return mExpandableAdapter.getNearestParentPosition(flatPosition);
+        return getParentAdapterPosition(flatPosition);
     }
 
     /**
@@ -65,6 +74,51 @@ public class ChildViewHolder<C> extends RecyclerView.ViewHolder {
             return RecyclerView.NO_POSITION;
         }
 
-        return mExpandableAdapter.getChildPosition(flatPosition);
+        return getChildAdapterPosition(flatPosition);
+    }
+
+    /**
+     * @param flatPosition The adapter position of this ViewHolder
+     * @return The position of its parent, cached until rows are inserted, removed or moved
+     */
+    @UiThread
+    int getParentAdapterPosition(int flatPosition) {
+        resolvePositions(flatPosition);
+        return mCachedParentPosition;
+    }
+
+    /**
+     * @param flatPosition The adapter position of this ViewHolder
+     * @return The position of its child within the children of its parent, cached until rows
+     * are inserted, removed or moved
+     */
+    @UiThread
+    int getChildAdapterPosition(int flatPosition) {
+        resolvePositions(flatPosition);
+        return mCachedChildPosition;
+    }
+
+    /**
+     * Records the parent and child positions of the row at {@code flatPosition}, which stay
+     * valid until rows are inserted, removed or moved, so that {@link #getParentAdapterPosition()}
+     * and {@link #getChildAdapterPosition()} don't look them up again until then.
+     */
+    @UiThread
+    void cachePositions(int flatPosition, int parentPosition, int childPosition, int structureVersion) {
+        mCachedFlatPosition = flatPosition;
+        mCachedParentPosition = parentPosition;
+        mCachedChildPosition = childPosition;
+        mCachedStructureVersion = structureVersion;
+    }
+
+    @UiThread
+    private void resolvePositions(int flatPosition) {
+        if (flatPosition == mCachedFlatPosition && mExpandableAdapter.mStructureVersion == mCachedStructureVersion) {
+            return;
+        }
+
+        int parentPosition = mExpandableAdapter.getNearestParentPosition(flatPosition);
+        cachePositions(flatPosition, parentPosition, mExpandableAdapter.getChildPosition(flatPosition, parentPosition),
+                mExpandableAdapter.mStructureVersion);
     }
 }
\ No newline at end of file
@@ -0,0 +1,354 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * {@link java.util.List} implementation that stores its elements in a sequence of bounded
+ * chunks instead of one contiguous array.
+ * <p>
+ * Inserting or removing a block of k elements only moves the elements of the chunks at the
+ * edges of the block plus the chunk table itself, so it costs O(k + n / MAX_CHUNK_SIZE)
+ * instead of shifting the whole tail of the list (once per element when done one at a time).
+ * Random access binary searches the chunk start offsets, which are recomputed lazily after
+ * a structural change, and sequential access reuses the last chunk that was looked up.
+ * <p>
+ * Block operations are {@link #addAll(int, Collection)} and {@code subList(from, to).clear()}.
+ *
+ * @param <E> Type of the elements held in the list
+ */
+final class ChunkedList<E> extends AbstractList<E> implements RandomAccess {
+
+    static final int MAX_CHUNK_SIZE = 256;
+    private static final int MIN_CHUNK_CAPACITY = 8;
+    private static final int INITIAL_CHUNK_TABLE_CAPACITY = 4;
+
+    private Object[][] mChunks;
+    private int[] mChunkSizes;
+    private int[] mChunkStarts;
+    private int mChunkCount;
+    /**
+     * Number of leading entries of {@link #mChunkStarts} that are up to date.
+     */
+    private int mValidStartCount;
+    private int mLastChunk;
+    private int mSize;
+
+    ChunkedList() {
+        mChunks = new Object[INITIAL_CHUNK_TABLE_CAPACITY][];
+        mChunkSizes = new int[INITIAL_CHUNK_TABLE_CAPACITY];
+        mChunkStarts = new int[INITIAL_CHUNK_TABLE_CAPACITY];
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        checkIndex(index, mSize);
+        int chunk = findChunk(index);
+        return (E) mChunks[chunk][index - mChunkStarts[chunk]];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E set(int index, E element) {
+        checkIndex(index, mSize);
+        int chunk = findChunk(index);
+        Object[] items = mChunks[chunk];
+        int offset = index - mChunkStarts[chunk];
+        E previous = (E) items[offset];
+        items[offset] = element;
+        return previous;
+    }
+
+    @Override
+    public boolean add(E element) {
+        add(mSize, element);
+        return true;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        checkIndex(index, mSize + 1);
+        if (mChunkCount == 0) {
+            insertChunkSlots(0, 1);
+            mChunks[0] = new Object[MIN_CHUNK_CAPACITY];
+        }
+
+        int chunk = findInsertionChunk(index);
+        int offset = index == mSize ? mChunkSizes[chunk] : index - mChunkStarts[chunk];
+        if (offset == MAX_CHUNK_SIZE) {
+            // Appending to a full chunk, start a new one rather than leaving two half empty chunks
+            insertChunkSlots(chunk + 1, 1);
+            mChunks[chunk + 1] = new Object[MIN_CHUNK_CAPACITY];
+            chunk++;
+            offset = 0;
+        } else if (mChunkSizes[chunk] == MAX_CHUNK_SIZE) {
+            splitChunk(chunk, MAX_CHUNK_SIZE / 2);
+            if (offset > MAX_CHUNK_SIZE / 2) {
+                chunk++;
+                offset -= MAX_CHUNK_SIZE / 2;
+            }
+        }
+
+        insertIntoChunk(chunk, offset, new Object[]{element}, 0, 1);
+        mSize++;
+        modCount++;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> collection) {
+        return addAll(mSize, collection);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends E> collection) {
+        checkIndex(index, mSize + 1);
+        Object[] elements = collection.toArray();
+        int count = elements.length;
+        if (count == 0) {
+            return false;
+        }
+
+        if (mChunkCount == 0) {
+            insertChunkSlots(0, 1);
+            mChunks[0] = new Object[MIN_CHUNK_CAPACITY];
+        }
+
+        int chunk = findInsertionChunk(index);
+        int offset = index == mSize ? mChunkSizes[chunk] : index - mChunkStarts[chunk];
+        if (mChunkSizes[chunk] + count <= MAX_CHUNK_SIZE) {
+            insertIntoChunk(chunk, offset, elements, 0, count);
+        } else {
+            // Cut the chunk at the insertion point and lay the new elements out in chunks
+            // of their own between the two halves
+            int tailSize = mChunkSizes[chunk] - offset;
+            int newChunkCount = (count + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE;
+            insertChunkSlots(chunk + 1, newChunkCount + (tailSize > 0 ? 1 : 0));
+
+            Object[] items = mChunks[chunk];
+            if (tailSize > 0) {
+                mChunks[chunk + 1 + newChunkCount] = Arrays.copyOfRange(items, offset, offset + Math.max(tailSize, MIN_CHUNK_CAPACITY));
+                mChunkSizes[chunk + 1 + newChunkCount] = tailSize;
+                Arrays.fill(items, offset, offset + tailSize, null);
+                mChunkSizes[chunk] = offset;
+            }
+
+            for (int i = 0; i < newChunkCount; i++) {
+                int from = i * MAX_CHUNK_SIZE;
+                int chunkSize = Math.min(MAX_CHUNK_SIZE, count - from);
+                Object[] chunkItems = new Object[Math.max(chunkSize, MIN_CHUNK_CAPACITY)];
+                System.arraycopy(elements, from, chunkItems, 0, chunkSize);
+                mChunks[chunk + 1 + i] = chunkItems;
+                mChunkSizes[chunk + 1 + i] = chunkSize;
+            }
+
+            int lastTouchedChunk = chunk + newChunkCount + (tailSize > 0 ? 1 : 0);
+            compactChunks(chunk, lastTouchedChunk);
+        }
+
+        mSize += count;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public E remove(int index) {
+        E removed = get(index);
+        removeRange(index, index + 1);
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(mChunks, 0, mChunkCount, null);
+        mChunkCount = 0;
+        mValidStartCount = 0;
+        mLastChunk = 0;
+        mSize = 0;
+        modCount++;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > mSize || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range " + fromIndex + " to " + toIndex + " out of bounds, size " + mSize);
+        }
+        if (fromIndex == toIndex) {
+            return;
+        }
+
+        int firstChunk = findChunk(fromIndex);
+        int firstOffset = fromIndex - mChunkStarts[firstChunk];
+        int lastChunk = findChunk(toIndex - 1);
+        int lastEnd = toIndex - mChunkStarts[lastChunk];
+
+        if (firstChunk == lastChunk) {
+            removeFromChunk(firstChunk, firstOffset, lastEnd);
+        } else {
+            removeFromChunk(firstChunk, firstOffset, mChunkSizes[firstChunk]);
+            removeFromChunk(lastChunk, 0, lastEnd);
+            removeChunkSlots(firstChunk + 1, lastChunk);
+            lastChunk = firstChunk + 1;
+        }
+
+        mSize -= toIndex - fromIndex;
+        modCount++;
+        compactChunks(firstChunk, Math.min(lastChunk, mChunkCount - 1));
+    }
+
+    /**
+     * @return The index of the chunk holding the element at {@code index}
+     */
+    private int findChunk(int index) {
+        int chunk = mLastChunk;
+        if (chunk < mValidStartCount
+                && index >= mChunkStarts[chunk]
+                && index < mChunkStarts[chunk] + mChunkSizes[chunk]) {
+            return chunk;
+        }
+
+        ensureChunkStarts();
+        int low = 0;
+        int high = mChunkCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mChunkStarts[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        mLastChunk = low;
+        return low;
+    }
+
+    /**
+     * @return The index of the chunk an element inserted at {@code index} should go into.
+     * Appending goes into the last chunk without resolving any chunk start.
+     */
+    private int findInsertionChunk(int index) {
+        if (index == mSize) {
+            return mChunkCount - 1;
+        }
+
+        return findChunk(index);
+    }
+
+    private void ensureChunkStarts() {
+        for (int i = mValidStartCount; i < mChunkCount; i++) {
+            mChunkStarts[i] = i == 0 ? 0 : mChunkStarts[i - 1] + mChunkSizes[i - 1];
+        }
+        mValidStartCount = mChunkCount;
+    }
+
+    private void invalidateChunkStarts(int fromChunk) {
+        if (fromChunk < mValidStartCount) {
+            mValidStartCount = fromChunk;
+        }
+    }
+
+    private void insertIntoChunk(int chunk, int offset, Object[] elements, int from, int count) {
+        int size = mChunkSizes[chunk];
+        Object[] items = mChunks[chunk];
+        if (size + count > items.length) {
+            items = Arrays.copyOf(items, Math.min(MAX_CHUNK_SIZE, Math.max(size + count, items.length * 2)));
+            mChunks[chunk] = items;
+        }
+
+        System.arraycopy(items, offset, items, offset + count, size - offset);
+        System.arraycopy(elements, from, items, offset, count);
+        mChunkSizes[chunk] = size + count;
+        invalidateChunkStarts(chunk + 1);
+    }
+
+    private void removeFromChunk(int chunk, int fromOffset, int toOffset) {
+        int size = mChunkSizes[chunk];
+        Object[] items = mChunks[chunk];
+        System.arraycopy(items, toOffset, items, fromOffset, size - toOffset);
+        int newSize = size - (toOffset - fromOffset);
+        Arrays.fill(items, newSize, size, null);
+        mChunkSizes[chunk] = newSize;
+        invalidateChunkStarts(chunk + 1);
+    }
+
+    private void splitChunk(int chunk, int offset) {
+        insertChunkSlots(chunk + 1, 1);
+        Object[] items = mChunks[chunk];
+        int tailSize = mChunkSizes[chunk] - offset;
+        mChunks[chunk + 1] = Arrays.copyOfRange(items, offset, offset + MAX_CHUNK_SIZE);
+        mChunkSizes[chunk + 1] = tailSize;
+        Arrays.fill(items, offset, offset + tailSize, null);
+        mChunkSizes[chunk] = offset;
+    }
+
+    /**
+     * Removes empty chunks and merges small neighbours among the chunks in
+     * {@code [firstChunk, lastChunk]} so that the chunk table stays short.
+     */
+    private void compactChunks(int firstChunk, int lastChunk) {
+        int chunk = Math.max(firstChunk - 1, 0);
+        int end = Math.min(lastChunk + 1, mChunkCount - 1);
+        while (chunk <= end && chunk < mChunkCount) {
+            if (mChunkSizes[chunk] == 0 && mChunkCount > 1) {
+                removeChunkSlots(chunk, chunk + 1);
+                end--;
+            } else if (chunk + 1 < mChunkCount
+                    && mChunkSizes[chunk] + mChunkSizes[chunk + 1] <= MAX_CHUNK_SIZE / 2) {
+                insertIntoChunk(chunk, mChunkSizes[chunk], mChunks[chunk + 1], 0, mChunkSizes[chunk + 1]);
+                removeChunkSlots(chunk + 1, chunk + 2);
+                end--;
+            } else {
+                chunk++;
+            }
+        }
+    }
+
+    private void insertChunkSlots(int at, int count) {
+        int required = mChunkCount + count;
+        if (required > mChunks.length) {
+            int capacity = Math.max(required, mChunks.length * 2);
+            mChunks = Arrays.copyOf(mChunks, capacity);
+            mChunkSizes = Arrays.copyOf(mChunkSizes, capacity);
+            mChunkStarts = Arrays.copyOf(mChunkStarts, capacity);
+        }
+
+        System.arraycopy(mChunks, at, mChunks, at + count, mChunkCount - at);
+        System.arraycopy(mChunkSizes, at, mChunkSizes, at + count, mChunkCount - at);
+        for (int i = at; i < at + count; i++) {
+            mChunks[i] = null;
+            mChunkSizes[i] = 0;
+        }
+        mChunkCount = required;
+        invalidateChunkStarts(at);
+    }
+
+    private void removeChunkSlots(int fromChunk, int toChunk) {
+        int count = toChunk - fromChunk;
+        if (count <= 0) {
+            return;
+        }
+
+        System.arraycopy(mChunks, toChunk, mChunks, fromChunk, mChunkCount - toChunk);
+        System.arraycopy(mChunkSizes, toChunk, mChunkSizes, fromChunk, mChunkCount - toChunk);
+        Arrays.fill(mChunks, mChunkCount - count, mChunkCount, null);
+        mChunkCount -= count;
+        invalidateChunkStarts(fromChunk);
+        if (mLastChunk >= mChunkCount) {
+            mLastChunk = 0;
+        }
+    }
+
+    private void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds, size " + mSize);
+        }
+    }
+}
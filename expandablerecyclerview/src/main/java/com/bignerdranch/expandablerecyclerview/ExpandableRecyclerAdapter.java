@@ -2,6 +2,10 @@ package com.bignerdranch.expandablerecyclerview;
 
 import android.app.Activity;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.UiThread;
@@ -10,12 +14,23 @@ import android.view.ViewGroup;
 
 import com.bignerdranch.expandablerecyclerview.ParentViewHolder.ParentViewHolderExpandCollapseListener;
 import com.bignerdranch.expandablerecyclerview.model.ExpandableWrapper;
+import com.bignerdranch.expandablerecyclerview.model.PackedRowList;
 import com.bignerdranch.expandablerecyclerview.model.Parent;
 
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.RandomAccess;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * RecyclerView.Adapter implementation that
@@ -35,7 +50,7 @@ import java.util.Map;
 public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH extends ParentViewHolder, CVH extends ChildViewHolder>
         extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
-    private static final String EXPANDED_STATE_MAP = "ExpandableRecyclerAdapter.ExpandedStateMap";
+    private static final String EXPANDED_STATE_BITS = "ExpandableRecyclerAdapter.ExpandedStateBits";
     /**
      * Default ViewType for parent rows
      */
@@ -48,12 +63,58 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      * Start of user-defined view types
      */
     public static final int TYPE_FIRST_USER = 2;
-    private static final int INVALID_FLAT_POSITION = -1;
+    /**
+     * Default row model, an {@link ExpandableWrapper} is kept in {@link #mFlatItemList}
+     * for every visible row.
+     */
+    public static final int ROW_MODEL_WRAPPED = 0;
+    /**
+     * Row model for very large parent lists, no per row object is kept. Rows are resolved
+     * from the parent list at bind time through an index of the expanded parents, so memory
+     * is proportional to the number of expanded parents rather than the number of rows.
+     * <p>
+     * In this model {@link #mFlatItemList} is a read-only view that wraps rows on demand.
+     */
+    public static final int ROW_MODEL_VIRTUAL = 1;
+    /**
+     * Row model storing each row as a parent position and a child position in a
+     * {@link PackedRowList}, a few bytes per row instead of an {@link ExpandableWrapper}.
+     * Rows are resolved from the parent list at bind time, flat position lookups are O(1).
+     * <p>
+     * In this model {@link #mFlatItemList} is a read-only view that wraps rows on demand.
+     */
+    public static final int ROW_MODEL_PACKED = 2;
+    static final int INVALID_FLAT_POSITION = -1;
+    /**
+     * Above this many parents changing state at once, bulk expansion and collapsing notify
+     * one removal and one insertion per run of consecutive changed parents instead of one
+     * range insertion or removal per parent. The parent rows of a run after its first one are
+     * then removed and inserted again rather than toggled.
+     */
+    private static final int BULK_NOTIFY_THRESHOLD = 32;
+    /**
+     * Time between two steps of a progressive expansion above which the next chunk of
+     * children is halved rather than doubled, one frame at 60fps.
+     */
+    private static final long PROGRESSIVE_EXPANSION_FRAME_NANOS = 16666667L;
+    /**
+     * The number of ViewHolders of each view type a RecycledViewPool keeps unless told
+     * otherwise, RecyclerView's own constant isn't public.
+     */
+    private static final int DEFAULT_RECYCLED_VIEW_LIMIT = 5;
+
+    @IntDef({ROW_MODEL_WRAPPED, ROW_MODEL_VIRTUAL, ROW_MODEL_PACKED})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface RowModel {
+    }
 
     /**
      * A {@link List} of all currently expanded parents and their children, in order.
      * Changes to this list should be made through the add/remove methods
      * available in {@link ExpandableRecyclerAdapter}.
+     * <p>
+     * The storage is created by {@link #createFlatItemList()}. With {@link #ROW_MODEL_VIRTUAL}
+     * and {@link #ROW_MODEL_PACKED} this is a read-only view creating a new wrapper on every access.
      */
     @NonNull
     protected List<ExpandableWrapper<P, C>> mFlatItemList;
@@ -64,11 +125,159 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
     @Nullable
     private ExpandCollapseListener mExpandCollapseListener;
 
+    @Nullable
+    private MetricsListener mMetricsListener;
+
+    /**
+     * The expansion started by {@link #expandParentProgressively(int, int)} whose children are
+     * still being inserted, null if there is none.
+     */
+    @Nullable
+    private ProgressiveExpansion mProgressiveExpansion;
+
     @NonNull
     private List<RecyclerView> mAttachedRecyclerViewPool;
 
     private Map<P, Boolean> mExpansionStateMap;
 
+    /**
+     * Expanded parents and their visible child counts, kept in sync with {@link #mFlatItemList}
+     * so that parent/flat position lookups don't have to walk the flat list.
+     * With {@link #ROW_MODEL_VIRTUAL} this is the only record of the flattened structure.
+     * With {@link #ROW_MODEL_PACKED} it is still needed to map parents to flat positions.
+     */
+    @NonNull
+    private FlatPositionIndex mFlatPositionIndex;
+
+    @RowModel
+    private final int mRowModel;
+
+    /**
+     * Parent and child position of every row, only used with {@link #ROW_MODEL_PACKED}.
+     */
+    @Nullable
+    private final PackedRowList mPackedRowList;
+
+    /**
+     * Positions of the parents in {@link #mParentList}, minus {@link #mParentPositionOffset},
+     * so that expanding or collapsing by parent object doesn't have to search the list. Built on
+     * first use, kept up to date when parents are replaced, or inserted or removed at either end
+     * of the list, and dropped on other structural changes to the parent list. Every parent in
+     * the list is mapped to its first position, entries of parents removed or replaced since
+     * it was built are left behind and counted in {@link #mStaleParentPositionCount}.
+     */
+    @Nullable
+    private Map<P, Integer> mParentPositionMap;
+    private int mParentPositionOffset;
+    private int mStaleParentPositionCount;
+
+    private boolean mReleaseChildWrappersOnCollapse;
+
+    /**
+     * Runs tasks on the main thread, posting them to a {@link Handler} unless replaced in tests.
+     */
+    @Nullable
+    Executor mMainThreadExecutor;
+
+    /**
+     * Runs tasks on the main thread while it is idle, unless replaced in tests.
+     */
+    @Nullable
+    Executor mIdleExecutor;
+
+    /**
+     * ViewHolder warm-ups in progress, see {@link #warmUpViewHolders(int, int)}.
+     */
+    @NonNull
+    private final List<ViewHolderWarmUp> mViewHolderWarmUps = new ArrayList<>();
+
+    /**
+     * The limits of the RecycledViewPools this adapter raised, by view type, the support
+     * library offering no way to read them.
+     */
+    @NonNull
+    private final Map<RecyclerView.RecycledViewPool, Map<Integer, Integer>> mRecycledViewLimits = new WeakHashMap<>();
+
+    /**
+     * Incremented by every asynchronous submission and by every synchronous replacement of the
+     * parent list, a diff is only dispatched if it is still the latest submission.
+     */
+    private int mParentListDiffGeneration;
+
+    private boolean mParentListDiffRunning;
+
+    /**
+     * The latest submission waiting for the running diff to finish, older ones are dropped.
+     */
+    @Nullable
+    private ParentListDiffRequest mPendingParentListDiff;
+
+    /**
+     * Pager feeding {@link #mParentList}, told about every bound parent so that it can load
+     * the next pages ahead of time.
+     */
+    @Nullable
+    ParentPager<P, C> mParentPager;
+
+    @Nullable
+    private ChildListLoader<P, C> mChildListLoader;
+
+    @Nullable
+    private Executor mChildListLoadExecutor;
+
+    /**
+     * Child list loads in progress, by parent.
+     */
+    @NonNull
+    private Map<P, ChildListLoad> mChildListLoads;
+
+    /**
+     * Load each bound placeholder row is waiting for, a load is cancelled once none of its
+     * placeholders are bound anymore.
+     */
+    @NonNull
+    private Map<RecyclerView.ViewHolder, ChildListLoad> mChildListLoadHolders;
+
+    /**
+     * Notifications held back while {@link #beginBatchedUpdates()} is in effect, null otherwise.
+     */
+    @Nullable
+    private RowUpdateBatch mRowUpdateBatch;
+
+    /**
+     * Incremented whenever rows are inserted, removed or moved, so that ViewHolders can tell
+     * whether the parent and child positions they recorded when bound are still valid.
+     */
+    int mStructureVersion;
+
+    private int mBatchedUpdateDepth;
+
+    /**
+     * Ids of the rows, registered as an observer of this adapter while it has stable ids.
+     */
+    @Nullable
+    private StableIdTable mStableIdTable;
+
+    /**
+     * Filter set with {@link #setFilter(ParentListFilter, boolean)}, null when unfiltered.
+     */
+    @Nullable
+    private ParentListFilter<P, C> mFilter;
+
+    /**
+     * The parent list of the adapter while a filter is set, {@link #mParentList} then holds
+     * the parents that pass the filter.
+     */
+    @Nullable
+    private List<P> mUnfilteredParentList;
+
+    /**
+     * Children that pass the filter of every shown parent while a filter is set, parents
+     * missing from the map show all of their children.
+     */
+    @Nullable
+    private Map<P, List<C>> mFilteredChildLists;
+
     /**
      * Allows objects to register themselves as expand/collapse listeners to be
      * notified of change events.
@@ -98,6 +307,84 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
         void onParentCollapsed(int parentPosition);
     }
 
+    /**
+     * Receives the time spent by the adapter in its create and bind methods and in its own
+     * bookkeeping, to tell slow binds apart from slow structural updates. Set it with
+     * {@link #setMetricsListener(MetricsListener)}.
+     * <p>
+     * Every callback is made on the main thread right after the timed work, measured with
+     * {@link System#nanoTime()}, so implementations should do little more than record the
+     * duration. {@link AdapterMetrics} aggregates them into histograms.
+     */
+    public interface MetricsListener {
+        /**
+         * Called after {@link #onCreateParentViewHolder(ViewGroup, int)} or
+         * {@link #onCreateChildViewHolder(ViewGroup, int)} returned.
+         *
+         * @param viewType The view type of the created ViewHolder
+         * @param durationNanos The time spent in the create method
+         */
+        @UiThread
+        void onViewHolderCreated(int viewType, long durationNanos);
+
+        /**
+         * Called after {@link #onBindParentViewHolder(ParentViewHolder, int, Parent, List)}
+         * returned.
+         *
+         * @param viewType The view type of the bound ViewHolder
+         * @param durationNanos The time spent in the bind method
+         */
+        @UiThread
+        void onParentViewHolderBound(int viewType, long durationNanos);
+
+        /**
+         * Called after {@link #onBindChildViewHolder(ChildViewHolder, int, int, Object, List)}
+         * returned.
+         *
+         * @param viewType The view type of the bound ViewHolder
+         * @param durationNanos The time spent in the bind method
+         */
+        @UiThread
+        void onChildViewHolderBound(int viewType, long durationNanos);
+
+        /**
+         * Called after a single parent was expanded.
+         *
+         * @param childCount The number of child rows inserted
+         * @param durationNanos The time spent expanding, including the insertion notification
+         */
+        @UiThread
+        void onExpandedParentUpdated(int childCount, long durationNanos);
+
+        /**
+         * Called after a single parent was collapsed.
+         *
+         * @param childCount The number of child rows removed
+         * @param durationNanos The time spent collapsing, including the removal notification
+         */
+        @UiThread
+        void onCollapsedParentUpdated(int childCount, long durationNanos);
+
+        /**
+         * Called after every row was rebuilt from the parent list, as when the whole data set
+         * changed.
+         *
+         * @param rowCount The number of rows after the rebuild
+         * @param durationNanos The time spent rebuilding the rows
+         */
+        @UiThread
+        void onRowsRebuilt(int rowCount, long durationNanos);
+
+        /**
+         * Called after a row notification, or a batch of them, was dispatched to the
+         * observers of the adapter, such as the attached RecyclerViews.
+         *
+         * @param durationNanos The time spent dispatching
+         */
+        @UiThread
+        void onRowsNotified(long durationNanos);
+    }
+
     /**
      * Primary constructor. Sets up {@link #mParentList} and {@link #mFlatItemList}.
      * <p>
@@ -115,11 +402,34 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      *                       adapter is linked to
      */
     public ExpandableRecyclerAdapter(@NonNull List<P> parentList) {
+        this(parentList, ROW_MODEL_WRAPPED);
+    }
+
+    /**
+     * Constructor allowing to pick how rows are represented in memory.
+     * <p>
+     * With {@link #ROW_MODEL_VIRTUAL} nothing is allocated per parent or per row, the only work
+     * done up front is one {@link Parent#isInitiallyExpanded()} call per parent. Since rows are
+     * resolved from {@code parentList} when they are bound, the list must not be changed
+     * without calling the matching notify method. The same applies to {@link #ROW_MODEL_PACKED}.
+     *
+     * @param parentList List of all parents to be displayed in the RecyclerView that this
+     *                       adapter is linked to
+     * @param rowModel One of {@link #ROW_MODEL_WRAPPED}, {@link #ROW_MODEL_VIRTUAL} or
+     *                 {@link #ROW_MODEL_PACKED}
+     */
+    public ExpandableRecyclerAdapter(@NonNull List<P> parentList, @RowModel int rowModel) {
         super();
         mParentList = parentList;
+        mRowModel = rowModel;
+        mPackedRowList = rowModel == ROW_MODEL_PACKED ? new PackedRowList() : null;
+        // Only the virtual model avoids per parent memory, the others toggle parents in O(log n)
+        mFlatPositionIndex = new FlatPositionIndex(rowModel != ROW_MODEL_VIRTUAL);
         mFlatItemList = generateFlattenedParentChildList(parentList);
         mAttachedRecyclerViewPool = new ArrayList<>();
-        mExpansionStateMap = new HashMap<>(mParentList.size());
+        mExpansionStateMap = new HashMap<>();
+        mChildListLoads = new HashMap<>();
+        mChildListLoadHolders = new HashMap<>();
     }
 
     /**
@@ -138,13 +448,21 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
     @Override
     @UiThread
     public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup viewGroup, int viewType) {
+        MetricsListener metricsListener = mMetricsListener;
+        long startNanos = metricsListener == null ? 0 : System.nanoTime();
         if (isParentViewType(viewType)) {
             PVH pvh = onCreateParentViewHolder(viewGroup, viewType);
+            if (metricsListener != null) {
+                metricsListener.onViewHolderCreated(viewType, System.nanoTime() - startNanos);
+            }
             pvh.setParentViewHolderExpandCollapseListener(mParentViewHolderExpandCollapseListener);
             pvh.mExpandableAdapter = this;
             return pvh;
         } else {
             CVH cvh = onCreateChildViewHolder(viewGroup, viewType);
+            if (metricsListener != null) {
+                metricsListener.onViewHolderCreated(viewType, System.nanoTime() - startNanos);
+            }
             cvh.mExpandableAdapter = this;
             return cvh;
         }
@@ -161,32 +479,106 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      * @param flatPosition The index in the merged list of children and parents at which to bind
      */
     @Override
-    @SuppressWarnings("unchecked")
     @UiThread
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int flatPosition) {
+        bindRow(holder, flatPosition, Collections.emptyList());
+    }
+
+    /**
+     * Implementation of Adapter.onBindViewHolder(RecyclerView.ViewHolder, int, List) that
+     * calls through to {@link #onBindParentViewHolder(ParentViewHolder, int, Parent, List)} or
+     * {@link #onBindChildViewHolder(ChildViewHolder, int, int, Object, List)} with the payloads
+     * given to the payload variants of the notify methods, such as
+     * {@link #notifyParentChanged(int, Object)}. Without payloads this is a full bind through
+     * {@link #onBindViewHolder(RecyclerView.ViewHolder, int)}.
+     *
+     * @param holder The RecyclerView.ViewHolder to bind data to
+     * @param flatPosition The index in the merged list of children and parents at which to bind
+     * @param payloads The payloads of the changes since the last bind, empty for a full bind
+     */
+    @Override
+    @UiThread
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int flatPosition, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, flatPosition);
+        } else {
+            bindRow(holder, flatPosition, payloads);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @UiThread
+    private void bindRow(@NonNull RecyclerView.ViewHolder holder, int flatPosition, @NonNull List<Object> payloads) {
         if (flatPosition > mFlatItemList.size()) {
             throw new IllegalStateException("Trying to bind item out of bounds, size " + mFlatItemList.size()
                     + " flatPosition " + flatPosition + ". Was the data changed without a call to notify...()?");
         }
 
-        ExpandableWrapper<P, C> listItem = mFlatItemList.get(flatPosition);
-        if (listItem.isParent()) {
+        int parentPosition = getNearestParentPosition(flatPosition);
+        int childPosition = getChildPosition(flatPosition, parentPosition);
+        if (mParentPager != null) {
+            mParentPager.onParentBound(parentPosition);
+        }
+
+        P parent;
+        C child;
+        boolean expanded;
+        if (mRowModel == ROW_MODEL_WRAPPED) {
+            ExpandableWrapper<P, C> listItem = mFlatItemList.get(flatPosition);
+            parent = listItem.getParent();
+            child = listItem.getChild();
+            expanded = listItem.isExpanded();
+        } else {
+            parent = mParentList.get(parentPosition);
+            child = childPosition < 0 ? null : getShownChildList(parent).get(childPosition);
+            expanded = mFlatPositionIndex.isExpanded(parentPosition);
+        }
+
+        MetricsListener metricsListener = mMetricsListener;
+        if (childPosition < 0) {
             PVH parentViewHolder = (PVH) holder;
 
             if (parentViewHolder.shouldItemViewClickToggleExpansion()) {
                 parentViewHolder.setMainItemClickToExpand();
             }
 
-            parentViewHolder.setExpanded(listItem.isExpanded());
-            parentViewHolder.mParent = listItem.getParent();
-            onBindParentViewHolder(parentViewHolder, getNearestParentPosition(flatPosition), listItem.getParent());
+            parentViewHolder.setExpanded(expanded);
+            parentViewHolder.mParent = parent;
+            parentViewHolder.cachePositions(flatPosition, parentPosition, mStructureVersion);
+            long startNanos = metricsListener == null ? 0 : System.nanoTime();
+            onBindParentViewHolder(parentViewHolder, parentPosition, parent, payloads);
+            if (metricsListener != null) {
+                metricsListener.onParentViewHolderBound(holder.getItemViewType(), System.nanoTime() - startNanos);
+            }
         } else {
             CVH childViewHolder = (CVH) holder;
-            childViewHolder.mChild = listItem.getChild();
-            onBindChildViewHolder(childViewHolder, getNearestParentPosition(flatPosition), getChildPosition(flatPosition), listItem.getChild());
+            childViewHolder.mChild = child;
+            childViewHolder.cachePositions(flatPosition, parentPosition, childPosition, mStructureVersion);
+            if (mChildListLoader != null) {
+                onChildRowBound(childViewHolder, mParentList.get(parentPosition));
+            }
+            long startNanos = metricsListener == null ? 0 : System.nanoTime();
+            onBindChildViewHolder(childViewHolder, parentPosition, childPosition, child, payloads);
+            if (metricsListener != null) {
+                metricsListener.onChildViewHolderBound(holder.getItemViewType(), System.nanoTime() - startNanos);
+            }
         }
     }
 
+    /**
+     * Implementation of Adapter.onViewRecycled(RecyclerView.ViewHolder), cancels the child
+     * list load a recycled placeholder row was waiting for if no other placeholder of the same
+     * parent is bound.
+     *
+     * @param holder The RecyclerView.ViewHolder being recycled
+     */
+    @Override
+    @UiThread
+    public void onViewRecycled(@NonNull RecyclerView.ViewHolder holder) {
+        super.onViewRecycled(holder);
+        releaseChildListLoadHolder(holder);
+    }
+
     /**
      * Callback called from {@link #onCreateViewHolder(ViewGroup, int)} when
      * the list item created is a parent.
@@ -238,6 +630,44 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
     @UiThread
     public abstract void onBindChildViewHolder(@NonNull CVH childViewHolder, int parentPosition, int childPosition, @NonNull C child);
 
+    /**
+     * Variant of {@link #onBindParentViewHolder(ParentViewHolder, int, Parent)} receiving the
+     * payloads passed to {@link #notifyParentChanged(int, Object)} and
+     * {@link #notifyParentRangeChanged(int, int, Object)} since the parent was last bound.
+     * <p>
+     * Override to update only what the payloads describe, for instance a single
+     * {@link android.widget.TextView}. The default implementation ignores the payloads and
+     * does a full bind.
+     *
+     * @param parentViewHolder The {@code PVH} to bind data to
+     * @param parentPosition The position of the parent to bind
+     * @param parent The parent which holds the data to be bound to the {@code PVH}
+     * @param payloads The payloads of the changes, empty for a full bind
+     */
+    @UiThread
+    public void onBindParentViewHolder(@NonNull PVH parentViewHolder, int parentPosition, @NonNull P parent, @NonNull List<Object> payloads) {
+        onBindParentViewHolder(parentViewHolder, parentPosition, parent);
+    }
+
+    /**
+     * Variant of {@link #onBindChildViewHolder(ChildViewHolder, int, int, Object)} receiving
+     * the payloads passed to {@link #notifyChildChanged(int, int, Object)} and
+     * {@link #notifyChildRangeChanged(int, int, int, Object)} since the child was last bound.
+     * <p>
+     * Override to update only what the payloads describe. The default implementation ignores
+     * the payloads and does a full bind.
+     *
+     * @param childViewHolder The {@code CVH} to bind data to
+     * @param parentPosition The position of the parent that contains the child to bind
+     * @param childPosition The position of the child to bind
+     * @param child The child which holds that data to be bound to the {@code CVH}
+     * @param payloads The payloads of the changes, empty for a full bind
+     */
+    @UiThread
+    public void onBindChildViewHolder(@NonNull CVH childViewHolder, int parentPosition, int childPosition, @NonNull C child, @NonNull List<Object> payloads) {
+        onBindChildViewHolder(childViewHolder, parentPosition, childPosition, child);
+    }
+
     /**
      * Gets the number of parents and children currently expanded.
      *
@@ -260,11 +690,12 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
     @Override
     @UiThread
     public int getItemViewType(int flatPosition) {
-        ExpandableWrapper<P, C> listItem = mFlatItemList.get(flatPosition);
-        if (listItem.isParent()) {
-            return getParentViewType(getNearestParentPosition(flatPosition));
+        int parentPosition = getNearestParentPosition(flatPosition);
+        int childPosition = getChildPosition(flatPosition, parentPosition);
+        if (childPosition < 0) {
+            return getParentViewType(parentPosition);
         } else {
-            return getChildViewType(getNearestParentPosition(flatPosition), getChildPosition(flatPosition));
+            return getChildViewType(parentPosition, childPosition);
         }
     }
 
@@ -307,6 +738,103 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
         return TYPE_CHILD;
     }
 
+    /**
+     * Enables stable ids, made from {@link #getParentId(int)} and {@link #getChildId(int, int)}
+     * which must then be overridden. Ids are cached and kept in step with the rows, so
+     * {@link #getItemId(int)} doesn't call them again until rows are inserted or changed.
+     *
+     * @param hasStableIds Whether the rows have stable ids
+     */
+    @Override
+    @UiThread
+    public void setHasStableIds(boolean hasStableIds) {
+        if (hasStableIds == hasStableIds()) {
+            return;
+        }
+
+        if (mStableIdTable != null) {
+            unregisterAdapterDataObserver(mStableIdTable);
+            mStableIdTable = null;
+        }
+        super.setHasStableIds(hasStableIds);
+        if (hasStableIds) {
+            mStableIdTable = new StableIdTable();
+            registerAdapterDataObserver(mStableIdTable);
+        }
+    }
+
+    /**
+     * Implementation of Adapter.getItemId(int), combines the ids of the parent and, for child
+     * rows, of the child at {@code flatPosition}. Override {@link #getParentId(int)} and
+     * {@link #getChildId(int, int)} instead of this method.
+     *
+     * @param flatPosition The index in the merged list of children and parents
+     * @return The stable id of the row, or {@link RecyclerView#NO_ID} if the adapter doesn't have
+     * stable ids
+     */
+    @Override
+    @UiThread
+    public long getItemId(int flatPosition) {
+        if (!hasStableIds()) {
+            return RecyclerView.NO_ID;
+        }
+
+        long id = mStableIdTable != null ? mStableIdTable.get(flatPosition) : StableIdTable.UNKNOWN_ID;
+        if (id != StableIdTable.UNKNOWN_ID) {
+            return id;
+        }
+
+        int parentPosition = getNearestParentPosition(flatPosition);
+        int childPosition = getChildPosition(flatPosition, parentPosition);
+        long parentId = getParentId(parentPosition);
+        if (parentId == RecyclerView.NO_ID) {
+            throw new IllegalStateException("getParentId(int) must be overridden to return stable ids");
+        }
+
+        if (childPosition < 0) {
+            id = StableIdTable.getParentRowId(parentId);
+        } else {
+            id = StableIdTable.getChildRowId(parentId, getChildId(parentPosition, childPosition));
+        }
+        if (mStableIdTable != null) {
+            mStableIdTable.set(flatPosition, id);
+        }
+        return id;
+    }
+
+    /**
+     * Return the stable id of the parent at {@code parentPosition}, used once stable ids are
+     * enabled with {@link #setHasStableIds(boolean)}. Ids must be unique among the parents and
+     * anything but {@link RecyclerView#NO_ID}.
+     * <p>
+     * The default implementation returns {@link RecyclerView#NO_ID}.
+     *
+     * @param parentPosition The index of the parent to query
+     * @return The stable id of the parent
+     */
+    @UiThread
+    public long getParentId(int parentPosition) {
+        return RecyclerView.NO_ID;
+    }
+
+    /**
+     * Return the stable id of the child at {@code childPosition} within the parent at
+     * {@code parentPosition}, used once stable ids are enabled with
+     * {@link #setHasStableIds(boolean)}. Ids only need to be unique among the children of the
+     * same parent.
+     * <p>
+     * The default implementation returns {@code childPosition}, which is only stable for
+     * children that are never inserted, removed or moved.
+     *
+     * @param parentPosition The index of the parent containing the child to query
+     * @param childPosition The index of the child within the parent to query
+     * @return The stable id of the child
+     */
+    @UiThread
+    public long getChildId(int parentPosition, int childPosition) {
+        return childPosition;
+    }
+
     /**
      * Used to determine whether a viewType is that of a parent or not, for ViewHolder creation purposes.
      * <p>
@@ -369,23 +897,76 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      */
     @UiThread
     public void setParentList(@NonNull List<P> parentList, boolean preserveExpansionState) {
+        dropFilter();
         mParentList = parentList;
         notifyParentDataSetChanged(preserveExpansionState);
     }
 
     /**
-     * Implementation of Adapter#onAttachedToRecyclerView(RecyclerView).
+     * Set a new list of parents, notifying observers of the parents and children that were
+     * moved, inserted, removed or changed since the current list instead of the whole data set.
      * <p>
-     * Called when this {@link ExpandableRecyclerAdapter} is attached to a RecyclerView.
+     * Parents and children are matched between the two lists with {@code diffCallback}. Matched
+     * parents keep their expanded state, inserted parents use {@link Parent#isInitiallyExpanded()}.
+     * Only rows whose contents changed are rebound, and moves keep their ViewHolders.
+     * <p>
+     * The old parents and their child lists are compared with the new ones, so
+     * {@code parentList} must be a new list, and parents whose children changed must not be
+     * the same instances mutated in place.
      *
-     * @param recyclerView The {@code RecyclerView} this {@code ExpandableRecyclerAdapter}
-     *                     is being attached to
+     * @param parentList The new list of parents
+     * @param diffCallback Callback identifying and comparing parents and children
      */
-    @Override
     @UiThread
-    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
-        super.onAttachedToRecyclerView(recyclerView);
-        mAttachedRecyclerViewPool.add(recyclerView);
+    public void setParentList(@NonNull List<P> parentList, @NonNull ParentListDiffCallback<P, C> diffCallback) {
+        completeProgressiveExpansion();
+        cancelParentListDiffs();
+        ParentListDiff diff = ParentListDiff.calculate(mParentList, getShownChildLists(false), parentList, diffCallback);
+        dispatchParentListDiff(parentList, diff);
+    }
+
+    /**
+     * Same as {@link #setParentList(List, ParentListDiffCallback)}, with the lists compared on
+     * {@code executor} and the result dispatched on the main thread. The removals, moves and
+     * insertions are resolved on {@code executor} too, the main thread only replays them.
+     * <p>
+     * The current parents and the children of the expanded ones are copied when the comparison
+     * starts, so the adapter can keep being used meanwhile. If the parent list was changed through
+     * the notify methods by the time the result comes back, the comparison is run again.
+     * <p>
+     * Only the latest submission is applied. Submissions made while a comparison is running
+     * replace each other and only the last one is compared next, results of older submissions
+     * are dropped, as are pending submissions when the list is replaced synchronously.
+     * <p>
+     * {@code parentList} must not be changed until it has been applied, and the methods of
+     * {@code diffCallback} are called on {@code executor}.
+     *
+     * @param parentList The new list of parents
+     * @param diffCallback Callback identifying and comparing parents and children
+     * @param executor Executor running the comparison, typically a background thread pool
+     */
+    @UiThread
+    public void setParentListAsync(@NonNull List<P> parentList, @NonNull ParentListDiffCallback<P, C> diffCallback,
+                                   @NonNull Executor executor) {
+        mPendingParentListDiff = new ParentListDiffRequest(++mParentListDiffGeneration, parentList, diffCallback, executor);
+        if (!mParentListDiffRunning) {
+            startPendingParentListDiff();
+        }
+    }
+
+    /**
+     * Implementation of Adapter#onAttachedToRecyclerView(RecyclerView).
+     * <p>
+     * Called when this {@link ExpandableRecyclerAdapter} is attached to a RecyclerView.
+     *
+     * @param recyclerView The {@code RecyclerView} this {@code ExpandableRecyclerAdapter}
+     *                     is being attached to
+     */
+    @Override
+    @UiThread
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        mAttachedRecyclerViewPool.add(recyclerView);
     }
 
 
@@ -402,6 +983,13 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
     public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
         super.onDetachedFromRecyclerView(recyclerView);
         mAttachedRecyclerViewPool.remove(recyclerView);
+        for (int i = mViewHolderWarmUps.size() - 1; i >= 0; i--) {
+            ViewHolderWarmUp warmUp = mViewHolderWarmUps.get(i);
+            if (warmUp.mRecyclerView == recyclerView) {
+                warmUp.mRemainingCount = 0;
+                mViewHolderWarmUps.remove(i);
+            }
+        }
     }
 
     @UiThread
@@ -409,6 +997,152 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
         mExpandCollapseListener = expandCollapseListener;
     }
 
+    /**
+     * Starts or stops reporting the time spent creating and binding ViewHolders, expanding and
+     * collapsing parents, rebuilding rows and dispatching notifications. Without a listener,
+     * nothing is timed.
+     *
+     * @param metricsListener The listener to report to, such as an {@link AdapterMetrics}, or
+     *                        null to stop reporting
+     */
+    @UiThread
+    public void setMetricsListener(@Nullable MetricsListener metricsListener) {
+        mMetricsListener = metricsListener;
+    }
+
+    /**
+     * Child wrappers are generated the first time a parent is expanded and kept afterwards.
+     * Set to true to drop them whenever the parent collapses instead, trading the cost of
+     * wrapping the children again on the next expansion for a smaller footprint.
+     * Has no effect with {@link #ROW_MODEL_VIRTUAL} or {@link #ROW_MODEL_PACKED}, which don't
+     * wrap children.
+     *
+     * @param releaseChildWrappersOnCollapse true to drop child wrappers on collapse
+     */
+    @UiThread
+    public void setReleaseChildWrappersOnCollapse(boolean releaseChildWrappersOnCollapse) {
+        mReleaseChildWrappersOnCollapse = releaseChildWrappersOnCollapse;
+    }
+
+    /**
+     * Loads children on demand with {@code childListLoader}, on {@code executor}.
+     * <p>
+     * Expanding a parent whose children aren't loaded shows the placeholders returned by its
+     * {@link Parent#getChildList()} and starts loading its children, as does binding a
+     * placeholder row of an expanded parent, for instance after {@link #expandAllParents()}.
+     * When the load completes the placeholders are rebound with the first children and the
+     * remaining children are inserted, or extra placeholders removed. Collapsing the parent,
+     * or recycling all of its bound placeholder rows, cancels the load.
+     *
+     * @param childListLoader The loader, or null to stop loading children and cancel all loads
+     * @param executor The executor to run {@link ChildListLoader#loadChildList(Parent)} on
+     */
+    @UiThread
+    public void setChildListLoader(@Nullable ChildListLoader<P, C> childListLoader, @Nullable Executor executor) {
+        for (ChildListLoad load : mChildListLoads.values()) {
+            load.mCancelled = true;
+        }
+        mChildListLoads.clear();
+        mChildListLoadHolders.clear();
+
+        mChildListLoader = childListLoader;
+        mChildListLoadExecutor = executor;
+    }
+
+    /**
+     * Creates {@code count} ViewHolders of {@code viewType} while the main thread is idle and
+     * puts them in the RecycledViewPool of every RecyclerView this adapter is attached to, so
+     * that showing many rows of that type at once, for instance when expanding a large parent,
+     * doesn't create them all in the same frame.
+     * <p>
+     * One ViewHolder is created each time the main thread runs out of messages. ViewHolders are
+     * created on the main thread, through {@link #onCreateViewHolder(ViewGroup, int)}, as views
+     * can't safely be inflated elsewhere. The creation stops for a RecyclerView that this
+     * adapter is detached from. ViewHolders that don't fit in a pool anymore because it was
+     * filled meanwhile are dropped.
+     * <p>
+     * The limit of the pool for {@code viewType} is raised to {@code count} if needed, it is
+     * never lowered. The support library gives no way to read the limit of a pool, so only the
+     * default limit and the limits raised by this adapter are known: a larger limit set on the
+     * pool directly must be set again after calling this method.
+     *
+     * @param viewType The view type of the ViewHolders to create, as returned by
+     *                 {@link #getParentViewType(int)} or {@link #getChildViewType(int, int)}
+     * @param count The number of ViewHolders to create for every pool
+     */
+    @UiThread
+    public void warmUpViewHolders(int viewType, int count) {
+        if (count <= 0) {
+            return;
+        }
+
+        List<RecyclerView.RecycledViewPool> warmedPoolList = new ArrayList<>();
+        for (RecyclerView recyclerView : mAttachedRecyclerViewPool) {
+            RecyclerView.RecycledViewPool pool = recyclerView.getRecycledViewPool();
+            if (warmedPoolList.contains(pool)) {
+                continue;
+            }
+
+            warmedPoolList.add(pool);
+            raiseRecycledViewLimit(pool, viewType, count);
+            ViewHolderWarmUp warmUp = new ViewHolderWarmUp(recyclerView, pool, viewType, count);
+            mViewHolderWarmUps.add(warmUp);
+            getIdleExecutor().execute(warmUp);
+        }
+    }
+
+    /**
+     * Same as {@link #warmUpViewHolders(int, int)} for the child view types of the parent at
+     * {@code parentPosition}, typically a parent about to be expanded, with as many ViewHolders
+     * of each type as there are among its first {@code maxCount} children. Only those children
+     * are looked at.
+     *
+     * @param parentPosition The position of the parent whose child view types to warm up
+     * @param maxCount The number of children to look at, for instance the number of rows that
+     *                 fit on screen
+     */
+    @UiThread
+    public void warmUpChildViewHolders(int parentPosition, int maxCount) {
+        int childCount = Math.min(getShownChildList(mParentList.get(parentPosition)).size(), maxCount);
+        int[] viewTypes = new int[childCount];
+        int[] viewTypeCounts = new int[childCount];
+        int viewTypeCount = 0;
+        for (int i = 0; i < childCount; i++) {
+            int viewType = getChildViewType(parentPosition, i);
+            int index = 0;
+            while (index < viewTypeCount && viewTypes[index] != viewType) {
+                index++;
+            }
+            if (index == viewTypeCount) {
+                viewTypes[viewTypeCount++] = viewType;
+            }
+            viewTypeCounts[index]++;
+        }
+
+        for (int i = 0; i < viewTypeCount; i++) {
+            warmUpViewHolders(viewTypes[i], viewTypeCounts[i]);
+        }
+    }
+
+    /**
+     * Raises the limit of {@code pool} for {@code viewType} to {@code count}, unless it is
+     * known to be at least that already.
+     */
+    @UiThread
+    private void raiseRecycledViewLimit(@NonNull RecyclerView.RecycledViewPool pool, int viewType, int count) {
+        Map<Integer, Integer> limits = mRecycledViewLimits.get(pool);
+        if (limits == null) {
+            limits = new HashMap<>();
+            mRecycledViewLimits.put(pool, limits);
+        }
+
+        Integer limit = limits.get(viewType);
+        if (count > (limit == null ? DEFAULT_RECYCLED_VIEW_LIMIT : limit)) {
+            pool.setMaxRecycledViews(viewType, count);
+            limits.put(viewType, count);
+        }
+    }
+
     /**
      * Called when a ParentViewHolder has triggered an expansion for it's parent
      *
@@ -416,8 +1150,7 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      */
     @UiThread
     protected void parentExpandedFromViewHolder(int flatParentPosition) {
-        ExpandableWrapper<P, C> parentWrapper = mFlatItemList.get(flatParentPosition);
-        updateExpandedParent(parentWrapper, flatParentPosition, true);
+        updateExpandedParent(getNearestParentPosition(flatParentPosition), flatParentPosition, true);
     }
 
     /**
@@ -427,8 +1160,7 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      */
     @UiThread
     protected void parentCollapsedFromViewHolder(int flatParentPosition) {
-        ExpandableWrapper<P, C> parentWrapper = mFlatItemList.get(flatParentPosition);
-        updateCollapsedParent(parentWrapper, flatParentPosition, true);
+        updateCollapsedParent(getNearestParentPosition(flatParentPosition), flatParentPosition, true);
     }
 
     private ParentViewHolderExpandCollapseListener mParentViewHolderExpandCollapseListener = new ParentViewHolderExpandCollapseListener() {
@@ -469,13 +1201,12 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      */
     @UiThread
     public void expandParent(@NonNull P parent) {
-        ExpandableWrapper<P, C> parentWrapper = new ExpandableWrapper<>(parent);
-        int flatParentPosition = mFlatItemList.indexOf(parentWrapper);
-        if (flatParentPosition == INVALID_FLAT_POSITION) {
+        int parentPosition = getParentPosition(parent);
+        if (parentPosition == INVALID_FLAT_POSITION) {
             return;
         }
 
-        expandViews(mFlatItemList.get(flatParentPosition), flatParentPosition);
+        expandParent(parentPosition);
     }
 
     /**
@@ -485,21 +1216,21 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      */
     @UiThread
     public void expandParent(int parentPosition) {
-        expandParent(mParentList.get(parentPosition));
+        expandViews(parentPosition, mFlatPositionIndex.getFlatParentPosition(parentPosition));
     }
 
     /**
      * Expands all parents in a range of indices in the list of parents.
+     * <p>
+     * The children of the whole range are inserted in one operation, the cost is
+     * proportional to the number of rows in the range.
      *
      * @param startParentPosition The index at which to to start expanding parents
      * @param parentCount The number of parents to expand
      */
     @UiThread
     public void expandParentRange(int startParentPosition, int parentCount) {
-        int endParentPosition = startParentPosition + parentCount;
-        for (int i = startParentPosition; i < endParentPosition; i++) {
-            expandParent(i);
-        }
+        updateParentRange(startParentPosition, parentCount, true);
     }
 
     /**
@@ -507,8 +1238,41 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      */
     @UiThread
     public void expandAllParents() {
-        for (P parent : mParentList) {
-            expandParent(parent);
+        updateParentRange(0, mFlatPositionIndex.getParentCount(), true);
+    }
+
+    /**
+     * Expands the parent with the specified index in the list of parents, inserting its first
+     * {@code initialChildCount} children right away and the others over the following frames,
+     * so that expanding a parent with thousands of children doesn't lay out and animate them
+     * all in one frame.
+     * <p>
+     * Each further chunk of children is inserted from its own message on the main thread,
+     * which runs once the layout requested by the previous insertion is done. The chunk size
+     * starts at {@code initialChildCount} and doubles while chunks are inserted within a frame
+     * of each other, and is halved when they are not. Until every child is inserted, the rows
+     * of the parent only include the children inserted so far. Notifying any change to the
+     * children of a parent or a move of a parent, or setting a new parent list or filter,
+     * inserts the remaining children at once. Collapsing the parent stops the expansion. Only
+     * one parent is expanded progressively at a time, starting another inserts the remaining
+     * children of the previous one.
+     *
+     * @param parentPosition The position of the parent to expand
+     * @param initialChildCount The number of children to insert right away, at least 1,
+     *                          typically the number of rows that fit on screen
+     */
+    @UiThread
+    public void expandParentProgressively(int parentPosition, int initialChildCount) {
+        completeProgressiveExpansion();
+        if (mFlatPositionIndex.isExpanded(parentPosition)) {
+            return;
+        }
+
+        expandViews(parentPosition, mFlatPositionIndex.getFlatParentPosition(parentPosition), initialChildCount);
+        P parent = mParentList.get(parentPosition);
+        if (mFlatPositionIndex.getChildCount(parentPosition) < getShownChildList(parent).size()) {
+            mProgressiveExpansion = new ProgressiveExpansion(parent, initialChildCount);
+            mProgressiveExpansion.post();
         }
     }
 
@@ -519,13 +1283,12 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      */
     @UiThread
     public void collapseParent(@NonNull P parent) {
-        ExpandableWrapper<P, C> parentWrapper = new ExpandableWrapper<>(parent);
-        int flatParentPosition = mFlatItemList.indexOf(parentWrapper);
-        if (flatParentPosition == INVALID_FLAT_POSITION) {
+        int parentPosition = getParentPosition(parent);
+        if (parentPosition == INVALID_FLAT_POSITION) {
             return;
         }
 
-        collapseViews(mFlatItemList.get(flatParentPosition), flatParentPosition);
+        collapseParent(parentPosition);
     }
 
     /**
@@ -535,21 +1298,21 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      */
     @UiThread
     public void collapseParent(int parentPosition) {
-        collapseParent(mParentList.get(parentPosition));
+        collapseViews(parentPosition, mFlatPositionIndex.getFlatParentPosition(parentPosition));
     }
 
     /**
      * Collapses all parents in a range of indices in the list of parents.
+     * <p>
+     * The children of the whole range are removed in one operation, the cost is
+     * proportional to the number of rows in the range.
      *
      * @param startParentPosition The index at which to to start collapsing parents
      * @param parentCount The number of parents to collapse
      */
     @UiThread
     public void collapseParentRange(int startParentPosition, int parentCount) {
-        int endParentPosition = startParentPosition + parentCount;
-        for (int i = startParentPosition; i < endParentPosition; i++) {
-            collapseParent(i);
-        }
+        updateParentRange(startParentPosition, parentCount, false);
     }
 
     /**
@@ -557,31 +1320,31 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      */
     @UiThread
     public void collapseAllParents() {
-        for (P parent : mParentList) {
-            collapseParent(parent);
-        }
+        updateParentRange(0, mFlatPositionIndex.getParentCount(), false);
     }
 
     /**
-     * Stores the expanded state map across state loss.
+     * Stores the expanded state of the parents across state loss.
      * <p>
      * Should be called from {@link Activity#onSaveInstanceState(Bundle)} in
      * the {@link Activity} that hosts the RecyclerView that this
      * {@link ExpandableRecyclerAdapter} is attached to.
      * <p>
-     * This will make sure to add the expanded state map as an extra to the
+     * This will make sure to add the expanded states as an extra to the
      * instance state bundle to be used in {@link #onRestoreInstanceState(Bundle)}.
+     * They are stored as a {@code long[]} bitset with one bit per parent, which stays
+     * small and avoids Java serialization even for very long parent lists.
      *
      * @param savedInstanceState The {@code Bundle} into which to store the
-     *                           expanded state map
+     *                           expanded states
      */
     @UiThread
     public void onSaveInstanceState(@NonNull Bundle savedInstanceState) {
-        savedInstanceState.putSerializable(EXPANDED_STATE_MAP, generateExpandedStateMap());
+        savedInstanceState.putLongArray(EXPANDED_STATE_BITS, mFlatPositionIndex.getExpandedBits());
     }
 
     /**
-     * Fetches the expandable state map from the saved instance state {@link Bundle}
+     * Fetches the expanded states from the saved instance state {@link Bundle}
      * and restores the expanded states of all of the parents.
      * <p>
      * Should be called from {@link Activity#onRestoreInstanceState(Bundle)} in
@@ -592,45 +1355,34 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      * instance state was stored.
      *
      * @param savedInstanceState The {@code Bundle} from which the expanded
-     *                           state map is loaded
+     *                           states are loaded
      */
-    @SuppressWarnings("unchecked")
     @UiThread
     public void onRestoreInstanceState(@Nullable Bundle savedInstanceState) {
         if (savedInstanceState == null
-                || !savedInstanceState.containsKey(EXPANDED_STATE_MAP)) {
+                || !savedInstanceState.containsKey(EXPANDED_STATE_BITS)) {
             return;
         }
 
-        HashMap<Integer, Boolean> expandedStateMap = (HashMap<Integer, Boolean>) savedInstanceState.getSerializable(EXPANDED_STATE_MAP);
-        if (expandedStateMap == null) {
+        long[] expandedBits = savedInstanceState.getLongArray(EXPANDED_STATE_BITS);
+        if (expandedBits == null) {
             return;
         }
 
-        List<ExpandableWrapper<P, C>> itemList = new ArrayList<>();
+        List<ExpandableWrapper<P, C>> itemList = mRowModel == ROW_MODEL_WRAPPED
+                ? createFlatItemList() : new VirtualFlatItemList();
+        mFlatPositionIndex.clear();
+        mParentPositionMap = null;
         int parentsCount = mParentList.size();
         for (int i = 0; i < parentsCount; i++) {
-            ExpandableWrapper<P, C> parentWrapper = new ExpandableWrapper<>(mParentList.get(i));
-            itemList.add(parentWrapper);
-
-            if (expandedStateMap.containsKey(i)) {
-                boolean expanded = expandedStateMap.get(i);
-                parentWrapper.setExpanded(expanded);
-
-                if (expanded) {
-                    List<ExpandableWrapper<P, C>> wrappedChildList = parentWrapper.getWrappedChildList();
-                    int childrenCount = wrappedChildList.size();
-                    for (int j = 0; j < childrenCount; j++) {
-                        ExpandableWrapper<P, C> childWrapper = wrappedChildList.get(j);
-                        itemList.add(childWrapper);
-                    }
-                }
-            }
+            boolean expanded = FlatPositionIndex.isExpanded(expandedBits, i);
+            mFlatPositionIndex.appendParent(expanded, generateParentWrapper(itemList, mParentList.get(i), expanded));
         }
+        generatePackedRows();
 
         mFlatItemList = itemList;
 
-        notifyDataSetChanged();
+        notifyRowsReset();
     }
 
     /**
@@ -640,11 +1392,20 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      * These calls to the ParentViewHolder are made so that animations can be
      * triggered at the ViewHolder level.
      *
+     * @param parentPosition The position of the parent to expand in the list of parents
      * @param flatParentPosition The index of the parent to expand
      */
+    @UiThread
+    private void expandViews(int parentPosition, int flatParentPosition) {
+        expandViews(parentPosition, flatParentPosition, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Same as {@link #expandViews(int, int)}, inserting at most {@code maxChildCount} children.
+     */
     @SuppressWarnings("unchecked")
     @UiThread
-    private void expandViews(@NonNull ExpandableWrapper<P, C> parentWrapper, int flatParentPosition) {
+    private void expandViews(int parentPosition, int flatParentPosition, int maxChildCount) {
         PVH viewHolder;
         for (RecyclerView recyclerView : mAttachedRecyclerViewPool) {
             viewHolder = (PVH) recyclerView.findViewHolderForAdapterPosition(flatParentPosition);
@@ -654,7 +1415,7 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
             }
         }
 
-        updateExpandedParent(parentWrapper, flatParentPosition, false);
+        updateExpandedParent(parentPosition, flatParentPosition, false, maxChildCount);
     }
 
     /**
@@ -664,11 +1425,12 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      * These calls to the ParentViewHolder are made so that animations can be
      * triggered at the ViewHolder level.
      *
+     * @param parentPosition The position of the parent to collapse in the list of parents
      * @param flatParentPosition The index of the parent to collapse
      */
     @SuppressWarnings("unchecked")
     @UiThread
-    private void collapseViews(@NonNull ExpandableWrapper<P, C> parentWrapper, int flatParentPosition) {
+    private void collapseViews(int parentPosition, int flatParentPosition) {
         PVH viewHolder;
         for (RecyclerView recyclerView : mAttachedRecyclerViewPool) {
             viewHolder = (PVH) recyclerView.findViewHolderForAdapterPosition(flatParentPosition);
@@ -678,7 +1440,7 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
             }
         }
 
-        updateCollapsedParent(parentWrapper, flatParentPosition, false);
+        updateCollapsedParent(parentPosition, flatParentPosition, false);
     }
 
     /**
@@ -686,32 +1448,61 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      * ExpandCollapseListener and adds children of the specified parent to the
      * flat list of items.
      *
-     * @param parentWrapper The ExpandableWrapper of the parent to expand
+     * @param parentPosition The position of the parent to expand in the list of parents
      * @param flatParentPosition The index of the parent to expand
      * @param expansionTriggeredByListItemClick true if expansion was triggered
      *                                          by a click event, false otherwise.
      */
     @UiThread
-    private void updateExpandedParent(@NonNull ExpandableWrapper<P, C> parentWrapper, int flatParentPosition, boolean expansionTriggeredByListItemClick) {
-        if (parentWrapper.isExpanded()) {
+    private void updateExpandedParent(int parentPosition, int flatParentPosition, boolean expansionTriggeredByListItemClick) {
+        updateExpandedParent(parentPosition, flatParentPosition, expansionTriggeredByListItemClick, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Same as {@link #updateExpandedParent(int, int, boolean)}, inserting at most
+     * {@code maxChildCount} children, the first ones.
+     */
+    @UiThread
+    private void updateExpandedParent(int parentPosition, int flatParentPosition, boolean expansionTriggeredByListItemClick,
+                                      int maxChildCount) {
+        if (mFlatPositionIndex.isExpanded(parentPosition)) {
             return;
         }
 
-        parentWrapper.setExpanded(true);
-        mExpansionStateMap.put(parentWrapper.getParent(), true);
+        MetricsListener metricsListener = mMetricsListener;
+        long startNanos = metricsListener == null ? 0 : System.nanoTime();
+        P parent = mParentList.get(parentPosition);
+        mExpansionStateMap.put(parent, true);
 
-        List<ExpandableWrapper<P, C>> wrappedChildList = parentWrapper.getWrappedChildList();
-        if (wrappedChildList != null) {
-            int childCount = wrappedChildList.size();
-            for (int i = 0; i < childCount; i++) {
-                mFlatItemList.add(flatParentPosition + i + 1, wrappedChildList.get(i));
+        int childCount;
+        if (mRowModel != ROW_MODEL_WRAPPED) {
+            childCount = Math.min(getShownChildList(parent).size(), maxChildCount);
+            if (mPackedRowList != null) {
+                mPackedRowList.insertChildRows(flatParentPosition + 1, parentPosition, 0, childCount);
+            }
+        } else {
+            ExpandableWrapper<P, C> parentWrapper = mFlatItemList.get(flatParentPosition);
+            parentWrapper.setExpanded(true);
+
+            List<ExpandableWrapper<P, C>> wrappedChildList = parentWrapper.getWrappedChildList();
+            if (wrappedChildList.size() > maxChildCount) {
+                wrappedChildList = wrappedChildList.subList(0, maxChildCount);
             }
+            childCount = wrappedChildList.size();
+            mFlatItemList.addAll(flatParentPosition + 1, wrappedChildList);
+        }
 
-            notifyItemRangeInserted(flatParentPosition + 1, childCount);
+        mFlatPositionIndex.setExpanded(parentPosition, childCount);
+        notifyRowsInserted(flatParentPosition + 1, childCount);
+        if (mChildListLoader != null && !mChildListLoader.isChildListLoaded(parent)) {
+            startChildListLoad(parent);
+        }
+        if (metricsListener != null) {
+            metricsListener.onExpandedParentUpdated(childCount, System.nanoTime() - startNanos);
         }
 
         if (expansionTriggeredByListItemClick && mExpandCollapseListener != null) {
-            mExpandCollapseListener.onParentExpanded(getNearestParentPosition(flatParentPosition));
+            mExpandCollapseListener.onParentExpanded(parentPosition);
         }
     }
 
@@ -720,32 +1511,218 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      * ExpandCollapseListener and removes children of the specified parent from the
      * flat list of items.
      *
-     * @param parentWrapper The ExpandableWrapper of the parent to collapse
+     * @param parentPosition The position of the parent to collapse in the list of parents
      * @param flatParentPosition The index of the parent to collapse
      * @param collapseTriggeredByListItemClick true if expansion was triggered
      *                                         by a click event, false otherwise.
      */
     @UiThread
-    private void updateCollapsedParent(@NonNull ExpandableWrapper<P, C> parentWrapper, int flatParentPosition, boolean collapseTriggeredByListItemClick) {
-        if (!parentWrapper.isExpanded()) {
+    private void updateCollapsedParent(int parentPosition, int flatParentPosition, boolean collapseTriggeredByListItemClick) {
+        if (!mFlatPositionIndex.isExpanded(parentPosition)) {
             return;
         }
 
-        parentWrapper.setExpanded(false);
-        mExpansionStateMap.put(parentWrapper.getParent(), false);
-
-        List<ExpandableWrapper<P, C>> wrappedChildList = parentWrapper.getWrappedChildList();
-        if (wrappedChildList != null) {
-            int childCount = wrappedChildList.size();
-            for (int i = childCount - 1; i >= 0; i--) {
-                mFlatItemList.remove(flatParentPosition + i + 1);
+        MetricsListener metricsListener = mMetricsListener;
+        long startNanos = metricsListener == null ? 0 : System.nanoTime();
+        P parent = mParentList.get(parentPosition);
+        mExpansionStateMap.put(parent, false);
+        cancelChildListLoad(parent);
+
+        int childCount = mFlatPositionIndex.getChildCount(parentPosition);
+        if (mRowModel == ROW_MODEL_WRAPPED) {
+            ExpandableWrapper<P, C> parentWrapper = mFlatItemList.get(flatParentPosition);
+            parentWrapper.setExpanded(false);
+            if (mReleaseChildWrappersOnCollapse) {
+                parentWrapper.clearWrappedChildList();
             }
+            mFlatItemList.subList(flatParentPosition + 1, flatParentPosition + childCount + 1).clear();
+        } else if (mPackedRowList != null) {
+            mPackedRowList.removeRows(flatParentPosition + 1, childCount);
+        }
 
-            notifyItemRangeRemoved(flatParentPosition + 1, childCount);
+        mFlatPositionIndex.setCollapsed(parentPosition);
+        notifyRowsRemoved(flatParentPosition + 1, childCount);
+        if (metricsListener != null) {
+            metricsListener.onCollapsedParentUpdated(childCount, System.nanoTime() - startNanos);
         }
 
         if (collapseTriggeredByListItemClick && mExpandCollapseListener != null) {
-            mExpandCollapseListener.onParentCollapsed(getNearestParentPosition(flatParentPosition));
+            mExpandCollapseListener.onParentCollapsed(parentPosition);
+        }
+    }
+
+    /**
+     * Expands or collapses a range of parents in a single pass over their rows.
+     * <p>
+     * The rows of the range are rebuilt once and {@link #mFlatPositionIndex} is updated once,
+     * so the cost is linear in the number of rows of the range instead of one splice and
+     * one index update per parent. Up to {@link #BULK_NOTIFY_THRESHOLD} changed parents,
+     * one range insertion or removal is notified per parent and the ParentViewHolders of the
+     * changed parents are toggled as in {@link #expandViews(int, int)}. Above that, consecutive
+     * changed parents are merged into runs, and the rows following the first parent of each
+     * run are notified as one removal of the old rows and one insertion of the new ones. Only
+     * the ParentViewHolder of the first parent of each run is toggled then, the other parent
+     * rows of the run are removed and inserted again, so they are bound in their new state.
+     *
+     * @param parentPositionStart The position of the first parent of the range
+     * @param parentCount The number of parents in the range
+     * @param expand true to expand the parents, false to collapse them
+     */
+    @SuppressWarnings("unchecked")
+    @UiThread
+    private void updateParentRange(int parentPositionStart, int parentCount, boolean expand) {
+        completeProgressiveExpansion();
+        if (parentCount <= 0) {
+            return;
+        }
+
+        int parentPositionEnd = parentPositionStart + parentCount;
+        int flatPositionStart = mFlatPositionIndex.getFlatParentPosition(parentPositionStart);
+        int oldRowCount = mFlatPositionIndex.getFlatParentPosition(parentPositionEnd) - flatPositionStart;
+
+        int[] oldChildCounts = new int[parentCount];
+        int[] newChildCounts = new int[parentCount];
+        int changedCount = 0;
+        int newRowCount = 0;
+        for (int i = 0; i < parentCount; i++) {
+            int parentPosition = parentPositionStart + i;
+            boolean expanded = mFlatPositionIndex.isExpanded(parentPosition);
+            oldChildCounts[i] = expanded ? mFlatPositionIndex.getChildCount(parentPosition) : -1;
+            if (expanded == expand) {
+                newChildCounts[i] = oldChildCounts[i];
+            } else {
+                changedCount++;
+                newChildCounts[i] = expand ? getShownChildList(mParentList.get(parentPosition)).size() : -1;
+            }
+            newRowCount += Math.max(newChildCounts[i], 0) + 1;
+        }
+
+        if (changedCount == 0) {
+            return;
+        }
+
+        boolean notifyRuns = changedCount > BULK_NOTIFY_THRESHOLD;
+        int flatParentPosition = flatPositionStart;
+        for (int i = 0; i < parentCount; i++) {
+            boolean changed = oldChildCounts[i] != newChildCounts[i];
+            boolean firstOfRun = i == 0 || oldChildCounts[i - 1] == newChildCounts[i - 1];
+            if (changed && (firstOfRun || !notifyRuns)) {
+                for (RecyclerView recyclerView : mAttachedRecyclerViewPool) {
+                    PVH viewHolder = (PVH) recyclerView.findViewHolderForAdapterPosition(flatParentPosition);
+                    if (viewHolder != null && viewHolder.isExpanded() != expand) {
+                        viewHolder.setExpanded(expand);
+                        viewHolder.onExpansionToggled(!expand);
+                    }
+                }
+            }
+            flatParentPosition += Math.max(oldChildCounts[i], 0) + 1;
+        }
+
+        for (int i = 0; i < parentCount; i++) {
+            if (oldChildCounts[i] != newChildCounts[i]) {
+                P parent = mParentList.get(parentPositionStart + i);
+                mExpansionStateMap.put(parent, expand);
+                if (!expand) {
+                    cancelChildListLoad(parent);
+                }
+            }
+        }
+
+        if (mRowModel == ROW_MODEL_WRAPPED) {
+            List<ExpandableWrapper<P, C>> rowList = new ArrayList<>(newRowCount);
+            flatParentPosition = flatPositionStart;
+            for (int i = 0; i < parentCount; i++) {
+                ExpandableWrapper<P, C> parentWrapper = mFlatItemList.get(flatParentPosition);
+                rowList.add(parentWrapper);
+                if (oldChildCounts[i] == newChildCounts[i]) {
+                    if (newChildCounts[i] > 0) {
+                        rowList.addAll(mFlatItemList.subList(flatParentPosition + 1, flatParentPosition + 1 + newChildCounts[i]));
+                    }
+                } else if (expand) {
+                    parentWrapper.setExpanded(true);
+                    rowList.addAll(parentWrapper.getWrappedChildList());
+                } else {
+                    parentWrapper.setExpanded(false);
+                    if (mReleaseChildWrappersOnCollapse) {
+                        parentWrapper.clearWrappedChildList();
+                    }
+                }
+                flatParentPosition += Math.max(oldChildCounts[i], 0) + 1;
+            }
+
+            mFlatItemList.subList(flatPositionStart, flatPositionStart + oldRowCount).clear();
+            mFlatItemList.addAll(flatPositionStart, rowList);
+        } else if (mPackedRowList != null) {
+            mPackedRowList.removeRows(flatPositionStart, oldRowCount);
+            flatParentPosition = flatPositionStart;
+            for (int i = 0; i < parentCount; i++) {
+                int childCount = Math.max(newChildCounts[i], 0);
+                mPackedRowList.insertParentRows(flatParentPosition, parentPositionStart + i, childCount);
+                flatParentPosition += childCount + 1;
+            }
+        }
+
+        mFlatPositionIndex.setExpansionRange(parentPositionStart, newChildCounts);
+
+        if (notifyRuns) {
+            notifyParentRuns(flatPositionStart, oldChildCounts, newChildCounts);
+            return;
+        }
+
+        // Parents are notified in order, each one at its new position since all the
+        // changes before it have already been notified
+        flatParentPosition = flatPositionStart;
+        for (int i = 0; i < parentCount; i++) {
+            if (oldChildCounts[i] != newChildCounts[i]) {
+                if (expand) {
+                    notifyRowsInserted(flatParentPosition + 1, newChildCounts[i]);
+                } else {
+                    notifyRowsRemoved(flatParentPosition + 1, oldChildCounts[i]);
+                }
+            }
+            flatParentPosition += Math.max(newChildCounts[i], 0) + 1;
+        }
+    }
+
+    /**
+     * Notifies the rows of a range of parents whose child counts changed from
+     * {@code oldChildCounts} to {@code newChildCounts}, -1 standing for collapsed parents,
+     * with one removal and one insertion per run of consecutive changed parents. The rows
+     * after the first parent of a run, up to the end of the run, are removed as they were and
+     * inserted as they are now.
+     *
+     * @param flatPositionStart The flat position of the first parent of the range
+     */
+    @UiThread
+    private void notifyParentRuns(int flatPositionStart, @NonNull int[] oldChildCounts, @NonNull int[] newChildCounts) {
+        int parentCount = oldChildCounts.length;
+        int flatParentPosition = flatPositionStart;
+        int i = 0;
+        while (i < parentCount) {
+            if (oldChildCounts[i] == newChildCounts[i]) {
+                flatParentPosition += Math.max(newChildCounts[i], 0) + 1;
+                i++;
+                continue;
+            }
+
+            // Rows of the run after its first parent, before and after the change
+            int oldRowCount = Math.max(oldChildCounts[i], 0);
+            int newRowCount = Math.max(newChildCounts[i], 0);
+            int runEnd = i + 1;
+            while (runEnd < parentCount && oldChildCounts[runEnd] != newChildCounts[runEnd]) {
+                oldRowCount += Math.max(oldChildCounts[runEnd], 0) + 1;
+                newRowCount += Math.max(newChildCounts[runEnd], 0) + 1;
+                runEnd++;
+            }
+
+            if (oldRowCount > 0) {
+                notifyRowsRemoved(flatParentPosition + 1, oldRowCount);
+            }
+            if (newRowCount > 0) {
+                notifyRowsInserted(flatParentPosition + 1, newRowCount);
+            }
+            flatParentPosition += newRowCount + 1;
+            i = runEnd;
         }
     }
 
@@ -762,14 +1739,10 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
             return 0;
         }
 
-        int parentCount = -1;
-        for (int i = 0; i <= flatPosition; i++) {
-            ExpandableWrapper<P, C> listItem = mFlatItemList.get(i);
-            if (listItem.isParent()) {
-                parentCount++;
-            }
+        if (mPackedRowList != null) {
+            return mPackedRowList.getParentPosition(flatPosition);
         }
-        return parentCount;
+        return mFlatPositionIndex.getNearestParentPosition(flatPosition);
     }
 
     /**
@@ -782,16 +1755,21 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
             return 0;
         }
 
-        int childCount = 0;
-        for (int i = 0; i < flatPosition; i++) {
-            ExpandableWrapper<P, C> listItem = mFlatItemList.get(i);
-            if (listItem.isParent()) {
-                childCount = 0;
-            } else {
-                childCount++;
-            }
+        return getChildPosition(flatPosition, getNearestParentPosition(flatPosition));
+    }
+
+    /**
+     * @param flatPosition The index of the row relative to the entire RecyclerView
+     * @param parentPosition The position of the parent of the row
+     * @return The position of the child within its parent, or a negative value if the row
+     * is the parent itself
+     */
+    @UiThread
+    int getChildPosition(int flatPosition, int parentPosition) {
+        if (mPackedRowList != null) {
+            return mPackedRowList.getChildPosition(flatPosition);
         }
-        return childCount;
+        return flatPosition - mFlatPositionIndex.getFlatParentPosition(parentPosition) - 1;
     }
 
     // endregion
@@ -799,82 +1777,962 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
     // region Data Manipulation
 
     /**
-     * Notify any registered observers that the data set has changed.
+     * Starts buffering the notifications of this adapter until the matching call to
+     * {@link #endBatchedUpdates()}, for applying many changes at once.
      * <p>
-     * This event does not specify what about the data set has changed, forcing
-     * any observers to assume that all existing items and structure may no longer be valid.
-     * LayoutManagers will be forced to fully rebind and relayout all visible views.</p>
+     * Calls to the notify methods, and expansions and collapses, still update the rows right
+     * away, but the notifications they send to the RecyclerView are held back and merged where
+     * they continue or overlap each other, for instance children inserted one after the other
+     * into the same parent, or consecutive parents changed. {@link #endBatchedUpdates()} then
+     * dispatches what is left, so the RecyclerView runs one layout pass for the whole batch.
      * <p>
-     * It will always be more efficient to use the more specific change events if you can.
-     * Rely on {@code #notifyParentDataSetChanged(boolean)} as a last resort. There will be no animation
-     * of changes, unlike the more specific change events listed below.
-     *
-     * @see #notifyParentInserted(int)
-     * @see #notifyParentRemoved(int)
-     * @see #notifyParentChanged(int)
-     * @see #notifyParentRangeInserted(int, int)
-     * @see #notifyChildInserted(int, int)
-     * @see #notifyChildRemoved(int, int)
-     * @see #notifyChildChanged(int, int)
-     *
-     * @param preserveExpansionState If true, the adapter will attempt to preserve your parent's last expanded
-     *                               state. This depends on object equality for comparisons of
-     *                               old parents to parents in the new list.
-     *
-     *                               If false, only {@link Parent#isInitiallyExpanded()}
-     *                               will be used to determine expanded state.
-     *
+     * Batches can be nested, notifications are dispatched when the outermost one ends.
      */
     @UiThread
-    public void notifyParentDataSetChanged(boolean preserveExpansionState) {
-        if (preserveExpansionState) {
-            mFlatItemList = generateFlattenedParentChildList(mParentList, mExpansionStateMap);
-        } else {
-            mFlatItemList = generateFlattenedParentChildList(mParentList);
+    public void beginBatchedUpdates() {
+        if (mBatchedUpdateDepth++ == 0) {
+            mRowUpdateBatch = new RowUpdateBatch();
         }
-        notifyDataSetChanged();
     }
 
     /**
-     * Notify any registered observers that the parent reflected at {@code parentPosition}
-     * has been newly inserted. The parent previously at {@code parentPosition} is now at
-     * position {@code parentPosition + 1}.
-     * <p>
-     * This is a structural change event. Representations of other existing items in the
-     * data set are still considered up to date and will not be rebound, though their
-     * positions may be altered.
-     *
-     * @param parentPosition Position of the newly inserted parent in the data set, relative
-     *                       to the list of parents only.
+     * Ends a batch started with {@link #beginBatchedUpdates()}, dispatching the buffered
+     * notifications if it is the outermost one.
      *
-     * @see #notifyParentRangeInserted(int, int)
+     * @throws IllegalStateException If no batch was started
      */
     @UiThread
-    public void notifyParentInserted(int parentPosition) {
-        P parent = mParentList.get(parentPosition);
-
-        int flatParentPosition;
-        if (parentPosition < mParentList.size() - 1) {
-            flatParentPosition = getFlatParentPosition(parentPosition);
-        } else {
-            flatParentPosition = mFlatItemList.size();
+    public void endBatchedUpdates() {
+        if (mBatchedUpdateDepth == 0) {
+            throw new IllegalStateException("endBatchedUpdates() called without beginBatchedUpdates()");
         }
 
-        int sizeChanged = addParentWrapper(flatParentPosition, parent);
-        notifyItemRangeInserted(flatParentPosition, sizeChanged);
+        if (--mBatchedUpdateDepth == 0) {
+            RowUpdateBatch rowUpdateBatch = mRowUpdateBatch;
+            mRowUpdateBatch = null;
+            MetricsListener metricsListener = mMetricsListener;
+            long startNanos = metricsListener == null ? 0 : System.nanoTime();
+            rowUpdateBatch.dispatch(this);
+            if (metricsListener != null) {
+                metricsListener.onRowsNotified(System.nanoTime() - startNanos);
+            }
+        }
     }
 
     /**
-     * Notify any registered observers that the currently reflected {@code itemCount}
-     * parents starting at {@code parentPositionStart} have been newly inserted.
-     * The parents previously located at {@code parentPositionStart} and beyond
-     * can now be found starting at position {@code parentPositionStart + itemCount}.
+     * Shows only the parents and children that pass {@code filter}, notifying the rows that
+     * are hidden or shown again instead of the whole data set.
      * <p>
-     * This is a structural change event. Representations of other existing items in the
-     * data set are still considered up to date and will not be rebound, though their positions
-     * may be altered.
+     * The parents and children that pass are compared in order with those shown before, so
+     * only the rows whose visibility changed are removed or inserted, in runs of consecutive
+     * rows, and all the notifications are sent as one batch. When {@code narrowsCurrentFilter}
+     * is true, for instance when a character is appended to a search query, only the parents and
+     * children shown by the current filter are tested again, the others stay hidden.
+     * <p>
+     * While a filter is set, {@link #getParentList()} returns the shown parents, and parent
+     * and child positions, including those passed to the notify methods, are positions among
+     * the shown parents and children. Changes to the data made while a filter is set should be
+     * applied by setting the filter again with {@code narrowsCurrentFilter} false. Setting a new
+     * parent list drops the filter. Parents shown again keep the expanded state they had.
+     * A {@link ParentListSorter} throws and a {@link ParentPager} pauses while a filter is set,
+     * as both own the unfiltered parent list.
      *
-     * @param parentPositionStart Position of the first parent that was inserted, relative
+     * @param filter The filter, or null to show every parent and child again
+     * @param narrowsCurrentFilter true if everything that passes {@code filter} also passes the
+     *                             current filter
+     */
+    @UiThread
+    public void setFilter(@Nullable ParentListFilter<P, C> filter, boolean narrowsCurrentFilter) {
+        completeProgressiveExpansion();
+        if (filter == null && mFilter == null) {
+            return;
+        }
+
+        boolean narrows = narrowsCurrentFilter && filter != null && mFilter != null;
+        if (mFilter == null) {
+            mUnfilteredParentList = mParentList;
+            mParentList = new ArrayList<>(mParentList);
+            mFilteredChildLists = new HashMap<>();
+        }
+        ParentListFilter<P, C> appliedFilter = filter != null ? filter : new ParentListFilter<P, C>() {
+            @Override
+            public boolean shouldHideParentsWithoutShownChildren() {
+                return false;
+            }
+        };
+        mFilter = appliedFilter;
+
+        beginBatchedUpdates();
+        applyFilter(appliedFilter, narrows ? new ArrayList<>(mParentList) : mUnfilteredParentList, narrows);
+        if (filter == null) {
+            dropFilter();
+            if (mRowModel == ROW_MODEL_WRAPPED) {
+                int parentCount = mParentList.size();
+                for (int i = 0; i < parentCount; i++) {
+                    mFlatItemList.get(mFlatPositionIndex.getFlatParentPosition(i)).setChildList(null);
+                }
+            }
+        }
+        endBatchedUpdates();
+    }
+
+    /**
+     * Shows every parent and child again, same as {@code setFilter(null, false)}.
+     */
+    @UiThread
+    public void clearFilter() {
+        setFilter(null, false);
+    }
+
+    /**
+     * @return The filter set with {@link #setFilter(ParentListFilter, boolean)}, or null
+     */
+    @Nullable
+    @UiThread
+    public ParentListFilter<P, C> getFilter() {
+        return mFilter;
+    }
+
+    /**
+     * Tests the parents of {@code candidateList}, a list holding every shown parent in order,
+     * and removes or inserts the parents and children whose visibility changed.
+     */
+    @UiThread
+    private void applyFilter(@NonNull ParentListFilter<P, C> filter, @NonNull List<P> candidateList, boolean narrows) {
+        int parentPosition = 0;
+        int removedCount = 0;
+        int insertedCount = 0;
+        int candidateCount = candidateList.size();
+        for (int i = 0; i < candidateCount; i++) {
+            P parent = candidateList.get(i);
+            boolean wasShown = parentPosition < mParentList.size() && mParentList.get(parentPosition) == parent;
+            List<C> candidateChildList = narrows ? getShownChildList(parent) : parent.getChildList();
+            List<C> childList = null;
+            boolean shown = filter.isParentShown(parent);
+            if (shown) {
+                childList = filterChildList(filter, parent, candidateChildList);
+                shown = !childList.isEmpty() || parent.getChildList().isEmpty()
+                        || !filter.shouldHideParentsWithoutShownChildren();
+            }
+
+            if (wasShown && !shown) {
+                insertedCount = notifyFilteredParentsInserted(parentPosition - insertedCount, insertedCount);
+                mParentList.remove(parentPosition);
+                mFilteredChildLists.remove(parent);
+                removedCount++;
+            } else if (shown && !wasShown) {
+                removedCount = notifyFilteredParentsRemoved(parentPosition, removedCount);
+                mFilteredChildLists.put(parent, childList);
+                mParentList.add(parentPosition++, parent);
+                insertedCount++;
+            } else if (shown) {
+                removedCount = notifyFilteredParentsRemoved(parentPosition, removedCount);
+                insertedCount = notifyFilteredParentsInserted(parentPosition - insertedCount, insertedCount);
+                applyFilteredChildList(parentPosition++, parent, candidateChildList, childList);
+            }
+        }
+        notifyFilteredParentsRemoved(parentPosition, removedCount);
+        notifyFilteredParentsInserted(parentPosition - insertedCount, insertedCount);
+
+        // Parents no longer in the data, left over from the previous filter
+        int staleCount = mParentList.size() - parentPosition;
+        if (staleCount > 0) {
+            mParentList.subList(parentPosition, mParentList.size()).clear();
+            mFilteredChildLists.keySet().retainAll(new HashSet<>(mParentList));
+            notifyParentRangeRemoved(parentPosition, staleCount);
+        }
+
+        if (filter.shouldExpandParentsWithShownChildren()) {
+            int parentCount = mParentList.size();
+            for (int i = 0; i < parentCount; i++) {
+                if (!mFlatPositionIndex.isExpanded(i) && !getShownChildList(mParentList.get(i)).isEmpty()) {
+                    int flatParentPosition = mFlatPositionIndex.getFlatParentPosition(i);
+                    updateExpandedParent(i, flatParentPosition, false);
+                    notifyRowsChanged(flatParentPosition, 1, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes or inserts the children of the shown parent at {@code parentPosition} so that
+     * it shows {@code childList}. {@code candidateChildList} holds both the children shown
+     * before and {@code childList}, in order.
+     * <p>
+     * {@code childList} becomes the shown list as is, the walk only notifies the runs whose
+     * visibility changed. They are notified left to right, so the children before each run
+     * are already those of {@code childList}.
+     */
+    @UiThread
+    private void applyFilteredChildList(int parentPosition, @NonNull P parent, @NonNull List<C> candidateChildList,
+                                        @NonNull List<C> childList) {
+        List<C> oldChildList = getShownChildList(parent);
+        mFilteredChildLists.put(parent, childList);
+
+        int childPosition = 0;
+        int oldIndex = 0;
+        int newIndex = 0;
+        int removedCount = 0;
+        int insertedCount = 0;
+        int candidateCount = candidateChildList.size();
+        for (int i = 0; i < candidateCount; i++) {
+            C child = candidateChildList.get(i);
+            boolean wasShown = oldIndex < oldChildList.size() && oldChildList.get(oldIndex) == child;
+            boolean shown = newIndex < childList.size() && childList.get(newIndex) == child;
+            if (wasShown) {
+                oldIndex++;
+            }
+            if (shown) {
+                newIndex++;
+            }
+
+            if (wasShown && !shown) {
+                insertedCount = notifyFilteredChildrenInserted(parentPosition, childPosition - insertedCount, insertedCount);
+                removedCount++;
+            } else if (shown && !wasShown) {
+                removedCount = notifyFilteredChildrenRemoved(parentPosition, childPosition, removedCount);
+                childPosition++;
+                insertedCount++;
+            } else if (shown) {
+                removedCount = notifyFilteredChildrenRemoved(parentPosition, childPosition, removedCount);
+                insertedCount = notifyFilteredChildrenInserted(parentPosition, childPosition - insertedCount, insertedCount);
+                childPosition++;
+            }
+        }
+        notifyFilteredChildrenRemoved(parentPosition, childPosition, removedCount);
+        notifyFilteredChildrenInserted(parentPosition, childPosition - insertedCount, insertedCount);
+
+        // Children no longer in the data, left over from the previous filter
+        int staleCount = oldChildList.size() - oldIndex;
+        if (staleCount > 0) {
+            notifyChildRangeRemoved(parentPosition, childPosition, staleCount);
+        }
+    }
+
+    /**
+     * Notifies a run of parents hidden by the filter, if any.
+     *
+     * @return 0, the length of the next run
+     */
+    private int notifyFilteredParentsRemoved(int parentPositionStart, int itemCount) {
+        if (itemCount > 0) {
+            notifyParentRangeRemoved(parentPositionStart, itemCount);
+        }
+        return 0;
+    }
+
+    /**
+     * Notifies a run of parents shown again by the filter, if any, restoring their last
+     * expanded state.
+     *
+     * @return 0, the length of the next run
+     */
+    private int notifyFilteredParentsInserted(int parentPositionStart, int itemCount) {
+        if (itemCount == 0) {
+            return 0;
+        }
+
+        notifyParentRangeInserted(parentPositionStart, itemCount);
+        for (int i = parentPositionStart; i < parentPositionStart + itemCount; i++) {
+            Boolean expanded = mExpansionStateMap.get(mParentList.get(i));
+            if (expanded == null || expanded == mFlatPositionIndex.isExpanded(i)) {
+                continue;
+            }
+
+            int flatParentPosition = mFlatPositionIndex.getFlatParentPosition(i);
+            if (expanded) {
+                updateExpandedParent(i, flatParentPosition, false);
+            } else {
+                updateCollapsedParent(i, flatParentPosition, false);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Notifies a run of children hidden by the filter, if any.
+     *
+     * @return 0, the length of the next run
+     */
+    private int notifyFilteredChildrenRemoved(int parentPosition, int childPositionStart, int itemCount) {
+        if (itemCount > 0) {
+            notifyChildRangeRemoved(parentPosition, childPositionStart, itemCount);
+        }
+        return 0;
+    }
+
+    /**
+     * Notifies a run of children shown again by the filter, if any.
+     *
+     * @return 0, the length of the next run
+     */
+    private int notifyFilteredChildrenInserted(int parentPosition, int childPositionStart, int itemCount) {
+        if (itemCount > 0) {
+            notifyChildRangeInserted(parentPosition, childPositionStart, itemCount);
+        }
+        return 0;
+    }
+
+    @NonNull
+    private List<C> filterChildList(@NonNull ParentListFilter<P, C> filter, @NonNull P parent,
+                                    @NonNull List<C> candidateChildList) {
+        List<C> childList = new ArrayList<>();
+        int candidateCount = candidateChildList.size();
+        for (int i = 0; i < candidateCount; i++) {
+            C child = candidateChildList.get(i);
+            if (filter.isChildShown(parent, child)) {
+                childList.add(child);
+            }
+        }
+        return childList;
+    }
+
+    /**
+     * Forgets the filter, {@link #mParentList} goes back to the unfiltered list without
+     * notifying anything.
+     */
+    private void dropFilter() {
+        if (mFilter == null) {
+            return;
+        }
+
+        mParentList = mUnfilteredParentList;
+        mParentPositionMap = null;
+        mFilter = null;
+        mUnfilteredParentList = null;
+        mFilteredChildLists = null;
+    }
+
+    /**
+     * Notify any registered observers that the data set has changed.
+     * <p>
+     * This event does not specify what about the data set has changed, forcing
+     * any observers to assume that all existing items and structure may no longer be valid.
+     * LayoutManagers will be forced to fully rebind and relayout all visible views.</p>
+     * <p>
+     * It will always be more efficient to use the more specific change events if you can.
+     * Rely on {@code #notifyParentDataSetChanged(boolean)} as a last resort. There will be no animation
+     * of changes, unlike the more specific change events listed below.
+     *
+     * @see #notifyParentInserted(int)
+     * @see #notifyParentRemoved(int)
+     * @see #notifyParentChanged(int)
+     * @see #notifyParentRangeInserted(int, int)
+     * @see #notifyChildInserted(int, int)
+     * @see #notifyChildRemoved(int, int)
+     * @see #notifyChildChanged(int, int)
+     * @see #setParentList(List, ParentListDiffCallback)
+     *
+     * @param preserveExpansionState If true, the adapter will attempt to preserve your parent's last expanded
+     *                               state. This depends on object equality for comparisons of
+     *                               old parents to parents in the new list.
+     *
+     *                               If false, only {@link Parent#isInitiallyExpanded()}
+     *                               will be used to determine expanded state.
+     *
+     */
+    @UiThread
+    public void notifyParentDataSetChanged(boolean preserveExpansionState) {
+        cancelParentListDiffs();
+        if (preserveExpansionState) {
+            mFlatItemList = generateFlattenedParentChildList(mParentList, mExpansionStateMap);
+        } else {
+            mFlatItemList = generateFlattenedParentChildList(mParentList);
+        }
+        notifyRowsReset();
+    }
+
+    /**
+     * Replaces {@link #mParentList} with {@code parentList} and notifies the changes in
+     * {@code diff}, which must have been calculated from the current list.
+     * <p>
+     * Parent removals, moves and insertions, as resolved when {@code diff} was calculated, are
+     * replayed first, then those of the children of every expanded parent in both lists and the
+     * change events, from top to bottom. Each step is applied to {@link #mFlatPositionIndex}
+     * right away so that the flat positions of the next step are correct. Rows are rebuilt from
+     * the index once everything has been dispatched.
+     */
+    @UiThread
+    private void dispatchParentListDiff(@NonNull final List<P> parentList, @NonNull ParentListDiff diff) {
+        completeProgressiveExpansion();
+        List<P> oldParentList = mParentList;
+        dropFilter();
+        mParentList = parentList;
+        mParentPositionMap = null;
+
+        diff.dispatchParentUpdates(new ParentListDiff.UpdateCallback() {
+            @Override
+            public void onRemoved(int position, int count) {
+                int flatParentPosition = mFlatPositionIndex.getFlatParentPosition(position);
+                notifyRowsRemoved(flatParentPosition, mFlatPositionIndex.removeParents(position, count));
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                int fromFlatParentPosition = mFlatPositionIndex.getFlatParentPosition(fromPosition);
+                int rowCount = mFlatPositionIndex.getRowCount(fromPosition);
+                mFlatPositionIndex.moveParent(fromPosition, toPosition);
+                notifyRowRangeMoved(fromFlatParentPosition, mFlatPositionIndex.getFlatParentPosition(toPosition), rowCount);
+            }
+
+            @Override
+            public void onInserted(int position, int count) {
+                int flatParentPosition = mFlatPositionIndex.getFlatParentPosition(position);
+                int sizeChanged = 0;
+                for (int i = position; i < position + count; i++) {
+                    P parent = parentList.get(i);
+                    boolean shouldExpand = parent.isInitiallyExpanded();
+                    int childCount = shouldExpand ? parent.getChildList().size() : 0;
+                    mFlatPositionIndex.insertParent(i, shouldExpand, childCount);
+                    sizeChanged += childCount + 1;
+                }
+                notifyRowsInserted(flatParentPosition, sizeChanged);
+            }
+        });
+
+        int parentCount = parentList.size();
+        for (int i = 0; i < parentCount; i++) {
+            int oldParentPosition = diff.getOldParentPosition(i);
+            if (oldParentPosition == ParentListDiff.NO_POSITION) {
+                continue;
+            }
+
+            P parent = parentList.get(i);
+            Boolean lastExpandedState = mExpansionStateMap.get(oldParentList.get(oldParentPosition));
+            if (lastExpandedState != null) {
+                mExpansionStateMap.put(parent, lastExpandedState);
+            }
+
+            final int flatParentPosition = mFlatPositionIndex.getFlatParentPosition(i);
+            if (mFlatPositionIndex.isExpanded(i)) {
+                int oldChildCount = mFlatPositionIndex.getChildCount(i);
+                int childCount = parent.getChildList().size();
+                if (oldChildCount == diff.getOldChildCount(i)) {
+                    diff.dispatchChildUpdates(i, new ParentListDiff.UpdateCallback() {
+                        @Override
+                        public void onRemoved(int position, int count) {
+                            notifyRowsRemoved(flatParentPosition + position + 1, count);
+                        }
+
+                        @Override
+                        public void onMoved(int fromPosition, int toPosition) {
+                            notifyRowMoved(flatParentPosition + fromPosition + 1, flatParentPosition + toPosition + 1);
+                        }
+
+                        @Override
+                        public void onInserted(int position, int count) {
+                            notifyRowsInserted(flatParentPosition + position + 1, count);
+                        }
+                    });
+                    notifyChildRangesChanged(diff, i, flatParentPosition, childCount);
+                } else {
+                    // The old children weren't compared or were changed in place meanwhile
+                    if (oldChildCount > 0) {
+                        notifyRowsRemoved(flatParentPosition + 1, oldChildCount);
+                    }
+                    if (childCount > 0) {
+                        notifyRowsInserted(flatParentPosition + 1, childCount);
+                    }
+                }
+                mFlatPositionIndex.setExpanded(i, childCount);
+            }
+
+            if (diff.isParentChanged(i)) {
+                notifyRowsChanged(flatParentPosition, 1, null);
+            }
+        }
+
+        generateRowsFromIndex();
+    }
+
+    /**
+     * Starts loading the children of {@code parent} unless they are already being loaded.
+     *
+     * @return The load in progress for {@code parent}
+     */
+    @UiThread
+    private ChildListLoad startChildListLoad(@NonNull final P parent) {
+        ChildListLoad existingLoad = mChildListLoads.get(parent);
+        if (existingLoad != null) {
+            return existingLoad;
+        }
+
+        final ChildListLoad load = new ChildListLoad(parent);
+        mChildListLoads.put(parent, load);
+        final ChildListLoader<P, C> childListLoader = mChildListLoader;
+        final Executor mainThreadExecutor = getMainThreadExecutor();
+        mChildListLoadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (load.mCancelled) {
+                    return;
+                }
+
+                List<C> childList = null;
+                Exception error = null;
+                try {
+                    childList = childListLoader.loadChildList(parent);
+                } catch (Exception e) {
+                    error = e;
+                }
+
+                final List<C> result = childList;
+                final Exception resultError = error;
+                mainThreadExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        onChildListLoadFinished(load, result, resultError);
+                    }
+                });
+            }
+        });
+        return load;
+    }
+
+    /**
+     * Hands the loaded children to the loader and replaces the placeholder rows of the parent
+     * with them, if it is still expanded.
+     */
+    @UiThread
+    private void onChildListLoadFinished(@NonNull ChildListLoad load, @Nullable List<C> childList, @Nullable Exception error) {
+        if (load.mCancelled || mChildListLoader == null) {
+            return;
+        }
+        completeProgressiveExpansion();
+
+        P parent = load.mParent;
+        mChildListLoads.remove(parent);
+        if (error != null) {
+            mChildListLoader.onChildListLoadFailed(parent, error);
+            return;
+        }
+
+        int parentPosition = getParentPosition(parent);
+        boolean shown = parentPosition != INVALID_FLAT_POSITION && mFlatPositionIndex.isExpanded(parentPosition);
+        int placeholderCount = shown ? mFlatPositionIndex.getChildCount(parentPosition) : 0;
+        mChildListLoader.onChildListLoaded(parent, childList);
+        if (mFilteredChildLists != null && mFilteredChildLists.containsKey(parent)) {
+            mFilteredChildLists.put(parent, filterChildList(mFilter, parent, parent.getChildList()));
+        }
+        if (!shown) {
+            return;
+        }
+
+        int childCount = getShownChildList(parent).size();
+        int changedCount = Math.min(placeholderCount, childCount);
+        if (changedCount > 0) {
+            notifyChildRangeChanged(parentPosition, 0, changedCount);
+        }
+        if (childCount > placeholderCount) {
+            notifyChildRangeInserted(parentPosition, placeholderCount, childCount - placeholderCount);
+        } else if (childCount < placeholderCount) {
+            notifyChildRangeRemoved(parentPosition, childCount, placeholderCount - childCount);
+        }
+    }
+
+    @UiThread
+    private void cancelChildListLoad(@NonNull P parent) {
+        if (mChildListLoads.isEmpty()) {
+            return;
+        }
+
+        ChildListLoad load = mChildListLoads.remove(parent);
+        if (load != null) {
+            load.mCancelled = true;
+        }
+    }
+
+    /**
+     * Ties a bound child row to the load of its parent's children if it is a placeholder,
+     * starting the load if needed.
+     */
+    @UiThread
+    private void onChildRowBound(@NonNull RecyclerView.ViewHolder holder, @NonNull P parent) {
+        releaseChildListLoadHolder(holder);
+        if (!mChildListLoader.isChildListLoaded(parent)) {
+            ChildListLoad load = startChildListLoad(parent);
+            load.mHolderCount++;
+            mChildListLoadHolders.put(holder, load);
+        }
+    }
+
+    @UiThread
+    private void releaseChildListLoadHolder(@NonNull RecyclerView.ViewHolder holder) {
+        if (mChildListLoadHolders.isEmpty()) {
+            return;
+        }
+
+        ChildListLoad load = mChildListLoadHolders.remove(holder);
+        if (load != null && --load.mHolderCount == 0 && !load.mCancelled) {
+            cancelChildListLoad(load.mParent);
+        }
+    }
+
+    /**
+     * Copies the current parents and starts comparing them with the pending submission.
+     */
+    @UiThread
+    private void startPendingParentListDiff() {
+        final ParentListDiffRequest request = mPendingParentListDiff;
+        mPendingParentListDiff = null;
+        mParentListDiffRunning = true;
+
+        final List<P> oldParentList = new ArrayList<>(mParentList);
+        final List<List<C>> oldChildLists = getShownChildLists(true);
+        final Executor mainThreadExecutor = getMainThreadExecutor();
+        request.mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ParentListDiff diff = null;
+                RuntimeException error = null;
+                try {
+                    diff = ParentListDiff.calculate(oldParentList, oldChildLists, request.mNewParentList, request.mDiffCallback);
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+
+                final ParentListDiff result = diff;
+                final RuntimeException resultError = error;
+                mainThreadExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        onParentListDiffCalculated(request, oldParentList, result, resultError);
+                    }
+                });
+            }
+        });
+    }
+
+    @UiThread
+    private void onParentListDiffCalculated(@NonNull ParentListDiffRequest request, @NonNull List<P> oldParentList,
+                                            @Nullable ParentListDiff diff, @Nullable RuntimeException error) {
+        mParentListDiffRunning = false;
+        if (error != null) {
+            throw error;
+        }
+
+        if (request.mGeneration == mParentListDiffGeneration) {
+            if (isParentListUnchangedSince(oldParentList)) {
+                dispatchParentListDiff(request.mNewParentList, diff);
+            } else {
+                mPendingParentListDiff = request;
+            }
+        }
+
+        if (mPendingParentListDiff != null) {
+            startPendingParentListDiff();
+        }
+    }
+
+    private boolean isParentListUnchangedSince(@NonNull List<P> oldParentList) {
+        int parentCount = oldParentList.size();
+        if (mParentList.size() != parentCount) {
+            return false;
+        }
+        for (int i = 0; i < parentCount; i++) {
+            if (mParentList.get(i) != oldParentList.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Inserts the children of the progressive expansion in progress that are not shown yet,
+     * if any, and ends it.
+     */
+    @UiThread
+    private void completeProgressiveExpansion() {
+        ProgressiveExpansion progressiveExpansion = mProgressiveExpansion;
+        if (progressiveExpansion != null) {
+            mProgressiveExpansion = null;
+            insertProgressiveChildren(progressiveExpansion.mParent, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Inserts up to {@code maxChildCount} children of {@code parent} after those it already
+     * shows, unless it was collapsed or removed meanwhile.
+     *
+     * @return true if children of {@code parent} are left to insert
+     */
+    @UiThread
+    private boolean insertProgressiveChildren(@NonNull P parent, int maxChildCount) {
+        int parentPosition = getParentPosition(parent);
+        if (parentPosition == INVALID_FLAT_POSITION || !mFlatPositionIndex.isExpanded(parentPosition)) {
+            return false;
+        }
+
+        int shownChildCount = mFlatPositionIndex.getChildCount(parentPosition);
+        int totalChildCount = getShownChildList(parent).size();
+        int childCount = Math.min(maxChildCount, totalChildCount - shownChildCount);
+        if (childCount <= 0) {
+            return false;
+        }
+
+        int flatParentPosition = mFlatPositionIndex.getFlatParentPosition(parentPosition);
+        int flatPositionStart = flatParentPosition + shownChildCount + 1;
+        if (mRowModel == ROW_MODEL_WRAPPED) {
+            List<ExpandableWrapper<P, C>> wrappedChildList = mFlatItemList.get(flatParentPosition).getWrappedChildList();
+            mFlatItemList.addAll(flatPositionStart, wrappedChildList.subList(shownChildCount, shownChildCount + childCount));
+        } else if (mPackedRowList != null) {
+            mPackedRowList.insertChildRows(flatPositionStart, parentPosition, shownChildCount, childCount);
+        }
+
+        mFlatPositionIndex.setExpanded(parentPosition, shownChildCount + childCount);
+        notifyRowsInserted(flatPositionStart, childCount);
+        return shownChildCount + childCount < totalChildCount;
+    }
+
+    /**
+     * Drops the pending asynchronous submission and the result of the running one.
+     */
+    private void cancelParentListDiffs() {
+        mParentListDiffGeneration++;
+        mPendingParentListDiff = null;
+    }
+
+    /**
+     * @param copy Whether to copy the child lists, so that they can be read from another thread
+     * @return The children of every parent by parent position, null for collapsed parents
+     */
+    @NonNull
+    private List<List<C>> getShownChildLists(boolean copy) {
+        int parentCount = mParentList.size();
+        List<List<C>> childLists = new ArrayList<>(parentCount);
+        for (int i = 0; i < parentCount; i++) {
+            if (!mFlatPositionIndex.isExpanded(i)) {
+                childLists.add(null);
+                continue;
+            }
+            List<C> childList = getShownChildList(mParentList.get(i));
+            childLists.add(copy ? new ArrayList<>(childList) : childList);
+        }
+        return childLists;
+    }
+
+    /**
+     * @return The children of {@code parent} that pass the filter, null if they are not
+     * filtered
+     */
+    @Nullable
+    private List<C> getFilteredChildList(@NonNull P parent) {
+        return mFilteredChildLists == null ? null : mFilteredChildLists.get(parent);
+    }
+
+    /**
+     * @return The children shown for {@code parent}, those that pass the filter if one is set
+     */
+    @NonNull
+    private List<C> getShownChildList(@NonNull P parent) {
+        List<C> childList = getFilteredChildList(parent);
+        return childList != null ? childList : parent.getChildList();
+    }
+
+    @NonNull
+    Executor getMainThreadExecutor() {
+        if (mMainThreadExecutor == null) {
+            final Handler handler = new Handler(Looper.getMainLooper());
+            mMainThreadExecutor = new Executor() {
+                @Override
+                public void execute(@NonNull Runnable command) {
+                    handler.post(command);
+                }
+            };
+        }
+        return mMainThreadExecutor;
+    }
+
+    /**
+     * @return An executor running one task each time the main thread's message queue runs out of
+     * messages, so that tasks are spread over idle time instead of delaying a frame. Must be
+     * used from the main thread.
+     */
+    @NonNull
+    Executor getIdleExecutor() {
+        if (mIdleExecutor == null) {
+            final Handler handler = new Handler(Looper.getMainLooper());
+            final Queue<Runnable> tasks = new ArrayDeque<>();
+            final Runnable wakeUp = new Runnable() {
+                @Override
+                public void run() {
+                }
+            };
+            final MessageQueue.IdleHandler idleHandler = new MessageQueue.IdleHandler() {
+                @Override
+                public boolean queueIdle() {
+                    // Kept queued while running so that tasks it adds don't add the handler again
+                    tasks.peek().run();
+                    tasks.poll();
+                    if (tasks.isEmpty()) {
+                        return false;
+                    }
+                    // Idle handlers only run again once another message has been handled
+                    handler.post(wakeUp);
+                    return true;
+                }
+            };
+            mIdleExecutor = new Executor() {
+                @Override
+                public void execute(@NonNull Runnable command) {
+                    if (tasks.isEmpty()) {
+                        Looper.myQueue().addIdleHandler(idleHandler);
+                    }
+                    tasks.add(command);
+                }
+            };
+        }
+        return mIdleExecutor;
+    }
+
+    /**
+     * Notifies the children of the matched parent at {@code parentPosition} whose contents
+     * changed, one range per run of changed children.
+     */
+    private void notifyChildRangesChanged(ParentListDiff diff, int parentPosition, int flatParentPosition, int childCount) {
+        int childPosition = 0;
+        while (childPosition < childCount) {
+            if (!diff.isChildChanged(parentPosition, childPosition)) {
+                childPosition++;
+                continue;
+            }
+            int childPositionStart = childPosition;
+            while (childPosition < childCount && diff.isChildChanged(parentPosition, childPosition)) {
+                childPosition++;
+            }
+            notifyRowsChanged(flatParentPosition + childPositionStart + 1, childPosition - childPositionStart, null);
+        }
+    }
+
+    /**
+     * Notifies the move of {@code rowCount} consecutive rows, a parent and its children, one row
+     * at a time so that their ViewHolders are kept.
+     *
+     * @param fromFlatPosition The flat position of the first row before the move
+     * @param toFlatPosition The flat position of the first row after the move
+     * @param rowCount The number of rows moved
+     */
+    private void notifyRowRangeMoved(int fromFlatPosition, int toFlatPosition, int rowCount) {
+        if (fromFlatPosition < toFlatPosition) {
+            // The first row of the range is always at fromFlatPosition, each one goes to the end
+            for (int i = 0; i < rowCount; i++) {
+                notifyRowMoved(fromFlatPosition, toFlatPosition + rowCount - 1);
+            }
+        } else if (fromFlatPosition > toFlatPosition) {
+            for (int i = 0; i < rowCount; i++) {
+                notifyRowMoved(fromFlatPosition + i, toFlatPosition + i);
+            }
+        }
+    }
+
+    /**
+     * Notifies observers of {@code rowCount} rows inserted at {@code flatPositionStart}, or
+     * buffers the notification while a batch is open. The same goes for the methods below.
+     */
+    @UiThread
+    private void notifyRowsInserted(int flatPositionStart, int rowCount) {
+        mStructureVersion++;
+        if (mRowUpdateBatch != null) {
+            mRowUpdateBatch.addInserted(flatPositionStart, rowCount);
+        } else {
+            MetricsListener metricsListener = mMetricsListener;
+            long startNanos = metricsListener == null ? 0 : System.nanoTime();
+            notifyItemRangeInserted(flatPositionStart, rowCount);
+            if (metricsListener != null) {
+                metricsListener.onRowsNotified(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    @UiThread
+    private void notifyRowsRemoved(int flatPositionStart, int rowCount) {
+        mStructureVersion++;
+        if (mRowUpdateBatch != null) {
+            mRowUpdateBatch.addRemoved(flatPositionStart, rowCount);
+        } else {
+            MetricsListener metricsListener = mMetricsListener;
+            long startNanos = metricsListener == null ? 0 : System.nanoTime();
+            notifyItemRangeRemoved(flatPositionStart, rowCount);
+            if (metricsListener != null) {
+                metricsListener.onRowsNotified(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    @UiThread
+    private void notifyRowsChanged(int flatPositionStart, int rowCount, @Nullable Object payload) {
+        if (mRowUpdateBatch != null) {
+            mRowUpdateBatch.addChanged(flatPositionStart, rowCount, payload);
+        } else {
+            MetricsListener metricsListener = mMetricsListener;
+            long startNanos = metricsListener == null ? 0 : System.nanoTime();
+            notifyItemRangeChanged(flatPositionStart, rowCount, payload);
+            if (metricsListener != null) {
+                metricsListener.onRowsNotified(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    @UiThread
+    private void notifyRowMoved(int fromFlatPosition, int toFlatPosition) {
+        mStructureVersion++;
+        if (mRowUpdateBatch != null) {
+            mRowUpdateBatch.addMoved(fromFlatPosition, toFlatPosition);
+        } else {
+            MetricsListener metricsListener = mMetricsListener;
+            long startNanos = metricsListener == null ? 0 : System.nanoTime();
+            notifyItemMoved(fromFlatPosition, toFlatPosition);
+            if (metricsListener != null) {
+                metricsListener.onRowsNotified(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    @UiThread
+    private void notifyRowsReset() {
+        mStructureVersion++;
+        if (mRowUpdateBatch != null) {
+            mRowUpdateBatch.addDataSetChanged();
+        } else {
+            MetricsListener metricsListener = mMetricsListener;
+            long startNanos = metricsListener == null ? 0 : System.nanoTime();
+            notifyDataSetChanged();
+            if (metricsListener != null) {
+                metricsListener.onRowsNotified(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    /**
+     * Notify any registered observers that the parent reflected at {@code parentPosition}
+     * has been newly inserted. The parent previously at {@code parentPosition} is now at
+     * position {@code parentPosition + 1}.
+     * <p>
+     * This is a structural change event. Representations of other existing items in the
+     * data set are still considered up to date and will not be rebound, though their
+     * positions may be altered.
+     *
+     * @param parentPosition Position of the newly inserted parent in the data set, relative
+     *                       to the list of parents only.
+     *
+     * @see #notifyParentRangeInserted(int, int)
+     */
+    @UiThread
+    public void notifyParentInserted(int parentPosition) {
+        notifyParentRangeInserted(parentPosition, 1);
+    }
+
+    /**
+     * Notify any registered observers that the currently reflected {@code itemCount}
+     * parents starting at {@code parentPositionStart} have been newly inserted.
+     * The parents previously located at {@code parentPositionStart} and beyond
+     * can now be found starting at position {@code parentPositionStart + itemCount}.
+     * <p>
+     * This is a structural change event. Representations of other existing items in the
+     * data set are still considered up to date and will not be rebound, though their positions
+     * may be altered.
+     *
+     * @param parentPositionStart Position of the first parent that was inserted, relative
      *                            to the list of parents only.
      * @param itemCount Number of items inserted
      *
@@ -882,39 +2740,31 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      */
     @UiThread
     public void notifyParentRangeInserted(int parentPositionStart, int itemCount) {
-        int initialFlatParentPosition;
-        if (parentPositionStart < mParentList.size() - itemCount) {
-            initialFlatParentPosition = getFlatParentPosition(parentPositionStart);
-        } else {
-            initialFlatParentPosition = mFlatItemList.size();
+        int initialFlatParentPosition = mFlatPositionIndex.getFlatParentPosition(parentPositionStart);
+        updateParentPositionMap(parentPositionStart, itemCount, itemCount);
+
+        if (mPackedRowList != null) {
+            mPackedRowList.offsetParentPositions(initialFlatParentPosition, mPackedRowList.size(), itemCount);
         }
 
+        List<ExpandableWrapper<P, C>> insertedItemList = new ArrayList<>();
         int sizeChanged = 0;
-        int flatParentPosition = initialFlatParentPosition;
-        int changed;
         int parentPositionEnd = parentPositionStart + itemCount;
         for (int i = parentPositionStart; i < parentPositionEnd; i++) {
             P parent = mParentList.get(i);
-            changed = addParentWrapper(flatParentPosition, parent);
-            flatParentPosition += changed;
-            sizeChanged += changed;
+            boolean shouldExpand = parent.isInitiallyExpanded();
+            int childCount = generateParentWrapper(insertedItemList, parent, shouldExpand);
+            mFlatPositionIndex.insertParent(i, shouldExpand, childCount);
+            if (mPackedRowList != null) {
+                mPackedRowList.insertParentRows(initialFlatParentPosition + sizeChanged, i, childCount);
+            }
+            sizeChanged += childCount + 1;
         }
-
-        notifyItemRangeInserted(initialFlatParentPosition, sizeChanged);
-    }
-
-    @UiThread
-    private int addParentWrapper(int flatParentPosition, P parent) {
-        int sizeChanged = 1;
-        ExpandableWrapper<P, C> parentWrapper = new ExpandableWrapper<>(parent);
-        mFlatItemList.add(flatParentPosition, parentWrapper);
-        if (parentWrapper.isParentInitiallyExpanded()) {
-            parentWrapper.setExpanded(true);
-            List<ExpandableWrapper<P, C>> wrappedChildList = parentWrapper.getWrappedChildList();
-            mFlatItemList.addAll(flatParentPosition + sizeChanged, wrappedChildList);
-            sizeChanged += wrappedChildList.size();
+        if (mRowModel == ROW_MODEL_WRAPPED) {
+            mFlatItemList.addAll(initialFlatParentPosition, insertedItemList);
         }
-        return sizeChanged;
+
+        notifyRowsInserted(initialFlatParentPosition, sizeChanged);
     }
 
     /**
@@ -932,9 +2782,16 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
     @UiThread
     public void notifyParentRemoved(int parentPosition) {
         int flatParentPosition = getFlatParentPosition(parentPosition);
-        int sizeChanged = removeParentWrapper(flatParentPosition);
+        int sizeChanged = mFlatPositionIndex.removeParents(parentPosition, 1);
+        updateParentPositionMap(parentPosition, 0, -1);
+        if (mRowModel == ROW_MODEL_WRAPPED) {
+            mFlatItemList.subList(flatParentPosition, flatParentPosition + sizeChanged).clear();
+        } else if (mPackedRowList != null) {
+            mPackedRowList.removeRows(flatParentPosition, sizeChanged);
+            mPackedRowList.offsetParentPositions(flatParentPosition, mPackedRowList.size(), -1);
+        }
 
-        notifyItemRangeRemoved(flatParentPosition, sizeChanged);
+        notifyRowsRemoved(flatParentPosition, sizeChanged);
     }
 
     /**
@@ -951,28 +2808,19 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      *                            removed, relative to list of parents only.
      * @param itemCount Number of parents removed from the data set
      */
+    @UiThread
     public void notifyParentRangeRemoved(int parentPositionStart, int itemCount) {
-        int sizeChanged = 0;
         int flatParentPositionStart = getFlatParentPosition(parentPositionStart);
-        for (int i = 0; i < itemCount; i++) {
-            sizeChanged += removeParentWrapper(flatParentPositionStart);
+        int sizeChanged = mFlatPositionIndex.removeParents(parentPositionStart, itemCount);
+        updateParentPositionMap(parentPositionStart, 0, -itemCount);
+        if (mRowModel == ROW_MODEL_WRAPPED) {
+            mFlatItemList.subList(flatParentPositionStart, flatParentPositionStart + sizeChanged).clear();
+        } else if (mPackedRowList != null) {
+            mPackedRowList.removeRows(flatParentPositionStart, sizeChanged);
+            mPackedRowList.offsetParentPositions(flatParentPositionStart, mPackedRowList.size(), -itemCount);
         }
 
-        notifyItemRangeRemoved(flatParentPositionStart, sizeChanged);
-    }
-
-    @UiThread
-    private int removeParentWrapper(int flatParentPosition) {
-        int sizeChanged = 1;
-        ExpandableWrapper<P, C> parentWrapper = mFlatItemList.remove(flatParentPosition);
-        if (parentWrapper.isExpanded()) {
-            int childListSize = parentWrapper.getWrappedChildList().size();
-            for (int i = 0; i < childListSize; i++) {
-                mFlatItemList.remove(flatParentPosition);
-                sizeChanged++;
-            }
-        }
-        return sizeChanged;
+        notifyRowsRemoved(flatParentPositionStart, sizeChanged);
     }
 
     /**
@@ -988,11 +2836,35 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      */
     @UiThread
     public void notifyParentChanged(int parentPosition) {
+        notifyParentChanged(parentPosition, null);
+    }
+
+    /**
+     * Notify any registered observers that the parent at {@code parentPosition} has changed,
+     * with an optional payload describing the change.
+     * <p>
+     * Without a payload this is the same as {@link #notifyParentChanged(int)}. With a payload,
+     * only the parent row is notified, carrying the payload to
+     * {@link #onBindParentViewHolder(ParentViewHolder, int, Parent, List)}, and its children
+     * are left as they are. Use {@link #notifyChildRangeChanged(int, int, int, Object)} for
+     * children that changed as well.
+     *
+     * @param parentPosition Position of the item that has changed
+     * @param payload Optional parameter, use null to identify a "full" update
+     */
+    @UiThread
+    public void notifyParentChanged(int parentPosition, @Nullable Object payload) {
+        completeProgressiveExpansion();
         P parent = mParentList.get(parentPosition);
+        recordParentPosition(parentPosition, true);
         int flatParentPositionStart = getFlatParentPosition(parentPosition);
         int sizeChanged = changeParentWrapper(flatParentPositionStart, parent);
 
-        notifyItemRangeChanged(flatParentPositionStart, sizeChanged);
+        if (payload == null) {
+            notifyRowsChanged(flatParentPositionStart, sizeChanged, null);
+        } else {
+            notifyRowsChanged(flatParentPositionStart, 1, payload);
+        }
     }
 
     /**
@@ -1010,6 +2882,26 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      */
     @UiThread
     public void notifyParentRangeChanged(int parentPositionStart, int itemCount) {
+        notifyParentRangeChanged(parentPositionStart, itemCount, null);
+    }
+
+    /**
+     * Notify any registered observers that the {@code itemCount} parents starting
+     * at {@code parentPositionStart} have changed, with an optional payload describing the
+     * change.
+     * <p>
+     * Without a payload this is the same as {@link #notifyParentRangeChanged(int, int)}. With
+     * a payload, only the parent rows are notified, carrying the payload, and their children
+     * are left as they are. Parent rows that aren't separated by children are notified as one
+     * range.
+     *
+     * @param parentPositionStart Position of the item that has changed
+     * @param itemCount Number of parents changed in the data set
+     * @param payload Optional parameter, use null to identify a "full" update
+     */
+    @UiThread
+    public void notifyParentRangeChanged(int parentPositionStart, int itemCount, @Nullable Object payload) {
+        completeProgressiveExpansion();
         int flatParentPositionStart = getFlatParentPosition(parentPositionStart);
 
         int flatParentPosition = flatParentPositionStart;
@@ -1018,15 +2910,31 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
         P parent;
         for (int j = 0; j < itemCount; j++) {
             parent = mParentList.get(parentPositionStart);
+            recordParentPosition(parentPositionStart, true);
             changed = changeParentWrapper(flatParentPosition, parent);
-            sizeChanged += changed;
+            if (payload != null) {
+                // Only parent rows are notified, in runs of parents without children between them
+                sizeChanged++;
+                if (changed > 1 || j == itemCount - 1) {
+                    notifyRowsChanged(flatParentPosition - sizeChanged + 1, sizeChanged, payload);
+                    sizeChanged = 0;
+                }
+            } else {
+                sizeChanged += changed;
+            }
             flatParentPosition += changed;
             parentPositionStart++;
         }
-        notifyItemRangeChanged(flatParentPositionStart, sizeChanged);
+        if (payload == null) {
+            notifyRowsChanged(flatParentPositionStart, sizeChanged, null);
+        }
     }
 
     private int changeParentWrapper(int flatParentPosition, P parent) {
+        if (mRowModel != ROW_MODEL_WRAPPED) {
+            return mFlatPositionIndex.getRowCount(getNearestParentPosition(flatParentPosition));
+        }
+
         ExpandableWrapper<P, C> parentWrapper = mFlatItemList.get(flatParentPosition);
         parentWrapper.setParent(parent);
         int sizeChanged = 1;
@@ -1057,55 +2965,58 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
     @UiThread
     public void notifyParentMoved(int fromParentPosition, int toParentPosition) {
         int fromFlatParentPosition = getFlatParentPosition(fromParentPosition);
-        ExpandableWrapper<P, C> fromParentWrapper = mFlatItemList.get(fromFlatParentPosition);
+        boolean expanded = mFlatPositionIndex.isExpanded(fromParentPosition);
+        int childCount = mFlatPositionIndex.getChildCount(fromParentPosition);
+        int sizeChanged = childCount + 1;
+
+        // The moved parent lands right before the parent that ends up after it, so its new flat
+        // position is the flat position of toParentPosition once it has been taken out of the list
+        mFlatPositionIndex.removeParents(fromParentPosition, 1);
+        int toFlatParentPosition = mFlatPositionIndex.getFlatParentPosition(toParentPosition);
+        mFlatPositionIndex.insertParent(toParentPosition, expanded, childCount);
+        mParentPositionMap = null;
+
+        boolean wrapped = mRowModel == ROW_MODEL_WRAPPED;
+        ExpandableWrapper<P, C> fromParentWrapper = wrapped ? mFlatItemList.get(fromFlatParentPosition) : null;
+        if (mPackedRowList != null) {
+            // Parents passed over by the move shift by one towards the parent's old position
+            mPackedRowList.removeRows(fromFlatParentPosition, sizeChanged);
+            if (fromParentPosition < toParentPosition) {
+                mPackedRowList.offsetParentPositions(fromFlatParentPosition, toFlatParentPosition, -1);
+            } else {
+                mPackedRowList.offsetParentPositions(toFlatParentPosition, fromFlatParentPosition, 1);
+            }
+            mPackedRowList.insertParentRows(toFlatParentPosition, toParentPosition, childCount);
+        }
 
         // If the parent is collapsed we can take advantage of notifyItemMoved otherwise
         // we are forced to do a "manual" move by removing and then adding the parent + children
         // (no notifyItemRangeMovedAvailable)
-        boolean isCollapsed = !fromParentWrapper.isExpanded();
-        boolean isExpandedNoChildren = !isCollapsed && (fromParentWrapper.getWrappedChildList().size() == 0);
-        if (isCollapsed || isExpandedNoChildren) {
-            int toFlatParentPosition = getFlatParentPosition(toParentPosition);
-            ExpandableWrapper<P, C> toParentWrapper = mFlatItemList.get(toFlatParentPosition);
-            mFlatItemList.remove(fromFlatParentPosition);
-            int childOffset = 0;
-            if (toParentWrapper.isExpanded()) {
-                childOffset = toParentWrapper.getWrappedChildList().size();
-            }
-            mFlatItemList.add(toFlatParentPosition + childOffset, fromParentWrapper);
-
-            notifyItemMoved(fromFlatParentPosition, toFlatParentPosition + childOffset);
-        } else {
-            // Remove the parent and children
-            int sizeChanged = 0;
-            int childListSize = fromParentWrapper.getWrappedChildList().size();
-            for (int i = 0; i < childListSize + 1; i++) {
+        if (sizeChanged == 1) {
+            if (wrapped) {
                 mFlatItemList.remove(fromFlatParentPosition);
-                sizeChanged++;
+                mFlatItemList.add(toFlatParentPosition, fromParentWrapper);
             }
-            notifyItemRangeRemoved(fromFlatParentPosition, sizeChanged);
 
+            notifyRowMoved(fromFlatParentPosition, toFlatParentPosition);
+        } else {
+            // Remove the parent and children
+            if (wrapped) {
+                mFlatItemList.subList(fromFlatParentPosition, fromFlatParentPosition + sizeChanged).clear();
+            }
+            notifyRowsRemoved(fromFlatParentPosition, sizeChanged);
 
             // Add the parent and children at new position
-            int toFlatParentPosition = getFlatParentPosition(toParentPosition);
-            int childOffset = 0;
-            if (toFlatParentPosition != INVALID_FLAT_POSITION) {
-                ExpandableWrapper<P, C> toParentWrapper = mFlatItemList.get(toFlatParentPosition);
-                if (toParentWrapper.isExpanded()) {
-                    childOffset = toParentWrapper.getWrappedChildList().size();
-                }
-            } else {
-                toFlatParentPosition = mFlatItemList.size();
+            if (wrapped) {
+                mFlatItemList.add(toFlatParentPosition, fromParentWrapper);
+                // Only the children a progressive expansion has shown so far have rows
+                mFlatItemList.addAll(toFlatParentPosition + 1, fromParentWrapper.getWrappedChildList().subList(0, childCount));
             }
 
-            mFlatItemList.add(toFlatParentPosition + childOffset, fromParentWrapper);
-            List<ExpandableWrapper<P, C>> wrappedChildList = fromParentWrapper.getWrappedChildList();
-            sizeChanged = wrappedChildList.size() + 1;
-
-            mFlatItemList.addAll(toFlatParentPosition + childOffset + 1, wrappedChildList);
-
-            notifyItemRangeInserted(toFlatParentPosition + childOffset, sizeChanged);
+            notifyRowsInserted(toFlatParentPosition, sizeChanged);
         }
+        // Completed once moved, as the parent list already has the parent at its new position
+        completeProgressiveExpansion();
     }
 
     /**
@@ -1127,14 +3038,21 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
     @UiThread
     public void notifyChildInserted(int parentPosition, int childPosition) {
         int flatParentPosition = getFlatParentPosition(parentPosition);
-        ExpandableWrapper<P, C> parentWrapper = mFlatItemList.get(flatParentPosition);
-
-        parentWrapper.setParent(mParentList.get(parentPosition));
-        if (parentWrapper.isExpanded()) {
-            ExpandableWrapper<P, C> child = parentWrapper.getWrappedChildList().get(childPosition);
-            mFlatItemList.add(flatParentPosition + childPosition + 1, child);
-            notifyItemInserted(flatParentPosition + childPosition + 1);
+        ExpandableWrapper<P, C> parentWrapper = updateParentWrapper(parentPosition, flatParentPosition);
+
+        // A child inserted past those a progressive expansion has shown so far gets its row once
+        // the expansion completes
+        if (mFlatPositionIndex.isExpanded(parentPosition)
+                && childPosition <= mFlatPositionIndex.getChildCount(parentPosition)) {
+            if (parentWrapper != null) {
+                ExpandableWrapper<P, C> child = parentWrapper.getWrappedChildList().get(childPosition);
+                mFlatItemList.add(flatParentPosition + childPosition + 1, child);
+            }
+            insertPackedChildRows(parentPosition, flatParentPosition, childPosition, 1);
+            mFlatPositionIndex.setExpanded(parentPosition, mFlatPositionIndex.getChildCount(parentPosition) + 1);
+            notifyRowsInserted(flatParentPosition + childPosition + 1, 1);
         }
+        completeProgressiveExpansion();
     }
 
     /**
@@ -1157,17 +3075,22 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
     @UiThread
     public void notifyChildRangeInserted(int parentPosition, int childPositionStart, int itemCount) {
         int flatParentPosition = getFlatParentPosition(parentPosition);
-        ExpandableWrapper<P, C> parentWrapper = mFlatItemList.get(flatParentPosition);
-
-        parentWrapper.setParent(mParentList.get(parentPosition));
-        if (parentWrapper.isExpanded()) {
-            List<ExpandableWrapper<P, C>> wrappedChildList = parentWrapper.getWrappedChildList();
-            for (int i = 0; i < itemCount; i++) {
-                ExpandableWrapper<P, C> child = wrappedChildList.get(childPositionStart + i);
-                mFlatItemList.add(flatParentPosition + childPositionStart + i + 1, child);
+        ExpandableWrapper<P, C> parentWrapper = updateParentWrapper(parentPosition, flatParentPosition);
+
+        // Children inserted past those a progressive expansion has shown so far get their rows
+        // once the expansion completes
+        if (mFlatPositionIndex.isExpanded(parentPosition)
+                && childPositionStart <= mFlatPositionIndex.getChildCount(parentPosition)) {
+            if (parentWrapper != null) {
+                List<ExpandableWrapper<P, C>> wrappedChildList = parentWrapper.getWrappedChildList();
+                mFlatItemList.addAll(flatParentPosition + childPositionStart + 1,
+                        wrappedChildList.subList(childPositionStart, childPositionStart + itemCount));
             }
-            notifyItemRangeInserted(flatParentPosition + childPositionStart + 1, itemCount);
+            insertPackedChildRows(parentPosition, flatParentPosition, childPositionStart, itemCount);
+            mFlatPositionIndex.setExpanded(parentPosition, mFlatPositionIndex.getChildCount(parentPosition) + itemCount);
+            notifyRowsInserted(flatParentPosition + childPositionStart + 1, itemCount);
         }
+        completeProgressiveExpansion();
     }
 
     /**
@@ -1188,13 +3111,19 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
     @UiThread
     public void notifyChildRemoved(int parentPosition, int childPosition) {
         int flatParentPosition = getFlatParentPosition(parentPosition);
-        ExpandableWrapper<P, C> parentWrapper = mFlatItemList.get(flatParentPosition);
-        parentWrapper.setParent(mParentList.get(parentPosition));
+        ExpandableWrapper<P, C> parentWrapper = updateParentWrapper(parentPosition, flatParentPosition);
 
-        if (parentWrapper.isExpanded()) {
-            mFlatItemList.remove(flatParentPosition + childPosition + 1);
-            notifyItemRemoved(flatParentPosition + childPosition + 1);
+        // A child past those a progressive expansion has shown so far has no row to remove
+        if (mFlatPositionIndex.isExpanded(parentPosition)
+                && childPosition < mFlatPositionIndex.getChildCount(parentPosition)) {
+            if (parentWrapper != null) {
+                mFlatItemList.remove(flatParentPosition + childPosition + 1);
+            }
+            removePackedChildRows(parentPosition, flatParentPosition, childPosition, 1);
+            mFlatPositionIndex.setExpanded(parentPosition, mFlatPositionIndex.getChildCount(parentPosition) - 1);
+            notifyRowsRemoved(flatParentPosition + childPosition + 1, 1);
         }
+        completeProgressiveExpansion();
     }
 
     /**
@@ -1216,15 +3145,21 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
     @UiThread
     public void notifyChildRangeRemoved(int parentPosition, int childPositionStart, int itemCount) {
         int flatParentPosition = getFlatParentPosition(parentPosition);
-        ExpandableWrapper<P, C> parentWrapper = mFlatItemList.get(flatParentPosition);
-        parentWrapper.setParent(mParentList.get(parentPosition));
-
-        if (parentWrapper.isExpanded()) {
-            for (int i = 0; i < itemCount; i++) {
-                mFlatItemList.remove(flatParentPosition + childPositionStart + 1);
+        ExpandableWrapper<P, C> parentWrapper = updateParentWrapper(parentPosition, flatParentPosition);
+
+        // Children past those a progressive expansion has shown so far have no rows to remove
+        int rowCount = mFlatPositionIndex.isExpanded(parentPosition)
+                ? Math.min(itemCount, mFlatPositionIndex.getChildCount(parentPosition) - childPositionStart) : 0;
+        if (rowCount > 0) {
+            int flatChildPositionStart = flatParentPosition + childPositionStart + 1;
+            if (parentWrapper != null) {
+                mFlatItemList.subList(flatChildPositionStart, flatChildPositionStart + rowCount).clear();
             }
-            notifyItemRangeRemoved(flatParentPosition + childPositionStart + 1, itemCount);
+            removePackedChildRows(parentPosition, flatParentPosition, childPositionStart, rowCount);
+            mFlatPositionIndex.setExpanded(parentPosition, mFlatPositionIndex.getChildCount(parentPosition) - rowCount);
+            notifyRowsRemoved(flatChildPositionStart, rowCount);
         }
+        completeProgressiveExpansion();
     }
 
     /**
@@ -1240,15 +3175,31 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      */
     @UiThread
     public void notifyChildChanged(int parentPosition, int childPosition) {
-        P parent = mParentList.get(parentPosition);
+        notifyChildChanged(parentPosition, childPosition, null);
+    }
+
+    /**
+     * Notify any registered observers that the parent at {@code parentPosition} has
+     * a child located at {@code childPosition} that has changed, with an optional payload
+     * describing the change. The payload is handed to
+     * {@link #onBindChildViewHolder(ChildViewHolder, int, int, Object, List)}.
+     *
+     * @param parentPosition Position of the parent which has a child that has changed
+     * @param childPosition Position of the child that has changed
+     * @param payload Optional parameter, use null to identify a "full" update
+     */
+    @UiThread
+    public void notifyChildChanged(int parentPosition, int childPosition, @Nullable Object payload) {
+        completeProgressiveExpansion();
         int flatParentPosition = getFlatParentPosition(parentPosition);
-        ExpandableWrapper<P, C> parentWrapper = mFlatItemList.get(flatParentPosition);
-        parentWrapper.setParent(parent);
-        if (parentWrapper.isExpanded()) {
+        ExpandableWrapper<P, C> parentWrapper = updateParentWrapper(parentPosition, flatParentPosition);
+        if (mFlatPositionIndex.isExpanded(parentPosition)) {
             int flatChildPosition = flatParentPosition + childPosition + 1;
-            ExpandableWrapper<P, C> child = parentWrapper.getWrappedChildList().get(childPosition);
-            mFlatItemList.set(flatChildPosition, child);
-            notifyItemChanged(flatChildPosition);
+            if (parentWrapper != null) {
+                ExpandableWrapper<P, C> child = parentWrapper.getWrappedChildList().get(childPosition);
+                mFlatItemList.set(flatChildPosition, child);
+            }
+            notifyRowsChanged(flatChildPosition, 1, payload);
         }
     }
 
@@ -1267,18 +3218,35 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      */
     @UiThread
     public void notifyChildRangeChanged(int parentPosition, int childPositionStart, int itemCount) {
-        P parent = mParentList.get(parentPosition);
+        notifyChildRangeChanged(parentPosition, childPositionStart, itemCount, null);
+    }
+
+    /**
+     * Notify any registered observers that the parent at {@code parentPosition} has
+     * {@code itemCount} children starting at {@code childPositionStart} that have changed,
+     * with an optional payload describing the change. The payload is handed to
+     * {@link #onBindChildViewHolder(ChildViewHolder, int, int, Object, List)}.
+     *
+     * @param parentPosition Position of the parent who has a child that has changed
+     * @param childPositionStart Position of the first child that has changed
+     * @param itemCount number of children changed
+     * @param payload Optional parameter, use null to identify a "full" update
+     */
+    @UiThread
+    public void notifyChildRangeChanged(int parentPosition, int childPositionStart, int itemCount, @Nullable Object payload) {
+        completeProgressiveExpansion();
         int flatParentPosition = getFlatParentPosition(parentPosition);
-        ExpandableWrapper<P, C> parentWrapper = mFlatItemList.get(flatParentPosition);
-        parentWrapper.setParent(parent);
-        if (parentWrapper.isExpanded()) {
+        ExpandableWrapper<P, C> parentWrapper = updateParentWrapper(parentPosition, flatParentPosition);
+        if (mFlatPositionIndex.isExpanded(parentPosition)) {
             int flatChildPosition = flatParentPosition + childPositionStart + 1;
-            for (int i = 0; i < itemCount; i++) {
-                ExpandableWrapper<P, C> child
-                        = parentWrapper.getWrappedChildList().get(childPositionStart + i);
-                mFlatItemList.set(flatChildPosition + i, child);
+            if (parentWrapper != null) {
+                for (int i = 0; i < itemCount; i++) {
+                    ExpandableWrapper<P, C> child
+                            = parentWrapper.getWrappedChildList().get(childPositionStart + i);
+                    mFlatItemList.set(flatChildPosition + i, child);
+                }
             }
-            notifyItemRangeChanged(flatChildPosition, itemCount);
+            notifyRowsChanged(flatChildPosition, itemCount, payload);
         }
     }
 
@@ -1296,34 +3264,97 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      */
     @UiThread
     public void notifyChildMoved(int parentPosition, int fromChildPosition, int toChildPosition) {
-        P parent = mParentList.get(parentPosition);
+        completeProgressiveExpansion();
         int flatParentPosition = getFlatParentPosition(parentPosition);
+        ExpandableWrapper<P, C> parentWrapper = updateParentWrapper(parentPosition, flatParentPosition);
+        if (mFlatPositionIndex.isExpanded(parentPosition)) {
+            if (parentWrapper != null) {
+                ExpandableWrapper<P, C> fromChild = mFlatItemList.remove(flatParentPosition + 1 + fromChildPosition);
+                mFlatItemList.add(flatParentPosition + 1 + toChildPosition, fromChild);
+            }
+            notifyRowMoved(flatParentPosition + 1 + fromChildPosition, flatParentPosition + 1 + toChildPosition);
+        }
+    }
+
+    /**
+     * Points the wrapper of the parent at {@code parentPosition}, and its entry in
+     * {@link #mParentPositionMap}, to the current parent object, rewrapping its children.
+     *
+     * @return The updated wrapper, or null if the row model keeps no wrappers
+     */
+    @Nullable
+    private ExpandableWrapper<P, C> updateParentWrapper(int parentPosition, int flatParentPosition) {
+        recordParentPosition(parentPosition, true);
+        if (mRowModel != ROW_MODEL_WRAPPED) {
+            return null;
+        }
 
+        P parent = mParentList.get(parentPosition);
         ExpandableWrapper<P, C> parentWrapper = mFlatItemList.get(flatParentPosition);
         parentWrapper.setParent(parent);
-        if (parentWrapper.isExpanded()) {
-            ExpandableWrapper<P, C> fromChild = mFlatItemList.remove(flatParentPosition + 1 + fromChildPosition);
-            mFlatItemList.add(flatParentPosition + 1 + toChildPosition, fromChild);
-            notifyItemMoved(flatParentPosition + 1 + fromChildPosition, flatParentPosition + 1 + toChildPosition);
+        parentWrapper.setChildList(getFilteredChildList(parent));
+        return parentWrapper;
+    }
+
+    /**
+     * Inserts rows into {@link #mPackedRowList}, if used, for children inserted into an expanded
+     * parent and renumbers the children following them. Must be called before the child count
+     * of the parent is updated in {@link #mFlatPositionIndex}.
+     */
+    private void insertPackedChildRows(int parentPosition, int flatParentPosition, int childPositionStart, int itemCount) {
+        if (mPackedRowList == null) {
+            return;
         }
+
+        int flatChildPositionStart = flatParentPosition + childPositionStart + 1;
+        int flatChildPositionEnd = flatParentPosition + mFlatPositionIndex.getChildCount(parentPosition) + 1;
+        mPackedRowList.offsetChildPositions(flatChildPositionStart, flatChildPositionEnd, itemCount);
+        mPackedRowList.insertChildRows(flatChildPositionStart, parentPosition, childPositionStart, itemCount);
+    }
+
+    /**
+     * Removes rows from {@link #mPackedRowList}, if used, for children removed from an expanded
+     * parent and renumbers the children following them. Must be called before the child count
+     * of the parent is updated in {@link #mFlatPositionIndex}.
+     */
+    private void removePackedChildRows(int parentPosition, int flatParentPosition, int childPositionStart, int itemCount) {
+        if (mPackedRowList == null) {
+            return;
+        }
+
+        int flatChildPositionStart = flatParentPosition + childPositionStart + 1;
+        int flatChildPositionEnd = flatParentPosition + mFlatPositionIndex.getChildCount(parentPosition) + 1;
+        mPackedRowList.offsetChildPositions(flatChildPositionStart + itemCount, flatChildPositionEnd, -itemCount);
+        mPackedRowList.removeRows(flatChildPositionStart, itemCount);
     }
 
     // endregion
 
     /**
      * Generates a full list of all parents and their children, in order.
+     * Also rebuilds {@link #mFlatPositionIndex} to match the generated list.
      *
      * @param parentList A list of the parents from
      *                   the {@link ExpandableRecyclerAdapter}
      * @return A list of all parents and their children, expanded
      */
     private List<ExpandableWrapper<P, C>> generateFlattenedParentChildList(List<P> parentList) {
-        List<ExpandableWrapper<P, C>> flatItemList = new ArrayList<>();
+        MetricsListener metricsListener = mMetricsListener;
+        long startNanos = metricsListener == null ? 0 : System.nanoTime();
+        List<ExpandableWrapper<P, C>> flatItemList = mRowModel == ROW_MODEL_WRAPPED
+                ? createFlatItemList() : new VirtualFlatItemList();
+        mFlatPositionIndex.clear();
+        mParentPositionMap = null;
 
         int parentCount = parentList.size();
         for (int i = 0; i < parentCount; i++) {
             P parent = parentList.get(i);
-            generateParentWrapper(flatItemList, parent, parent.isInitiallyExpanded());
+            boolean shouldExpand = parent.isInitiallyExpanded();
+            mFlatPositionIndex.appendParent(shouldExpand, generateParentWrapper(flatItemList, parent, shouldExpand));
+        }
+        generatePackedRows();
+        if (metricsListener != null) {
+            metricsListener.onRowsRebuilt(mFlatPositionIndex.getTotalRowCount(), System.nanoTime() - startNanos);
         }
 
         return flatItemList;
@@ -1331,7 +3362,7 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
 
     /**
      * Generates a full list of all parents and their children, in order. Uses Map to preserve
-     * last expanded state.
+     * last expanded state. Also rebuilds {@link #mFlatPositionIndex} to match the generated list.
      *
      * @param parentList A list of the parents from
      *                   the {@link ExpandableRecyclerAdapter}
@@ -1339,7 +3370,12 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      * @return A list of all parents and their children, expanded accordingly
      */
     private List<ExpandableWrapper<P, C>> generateFlattenedParentChildList(List<P> parentList, Map<P, Boolean> savedLastExpansionState) {
-        List<ExpandableWrapper<P, C>> flatItemList = new ArrayList<>();
+        MetricsListener metricsListener = mMetricsListener;
+        long startNanos = metricsListener == null ? 0 : System.nanoTime();
+        List<ExpandableWrapper<P, C>> flatItemList = mRowModel == ROW_MODEL_WRAPPED
+                ? createFlatItemList() : new VirtualFlatItemList();
+        mFlatPositionIndex.clear();
+        mParentPositionMap = null;
 
         int parentCount = parentList.size();
         for (int i = 0; i < parentCount; i++) {
@@ -1347,56 +3383,364 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
             Boolean lastExpandedState = savedLastExpansionState.get(parent);
             boolean shouldExpand = lastExpandedState == null ? parent.isInitiallyExpanded() : lastExpandedState;
 
-            generateParentWrapper(flatItemList, parent, shouldExpand);
+            mFlatPositionIndex.appendParent(shouldExpand, generateParentWrapper(flatItemList, parent, shouldExpand));
+        }
+        generatePackedRows();
+        if (metricsListener != null) {
+            metricsListener.onRowsRebuilt(mFlatPositionIndex.getTotalRowCount(), System.nanoTime() - startNanos);
         }
 
         return flatItemList;
     }
 
-    private void generateParentWrapper(List<ExpandableWrapper<P, C>> flatItemList, P parent, boolean shouldExpand) {
+    /**
+     * Appends a wrapper for {@code parent}, followed by its children if it should be expanded,
+     * to {@code flatItemList}. Nothing is appended unless the row model is
+     * {@link #ROW_MODEL_WRAPPED}.
+     *
+     * @return The number of children shown by the parent
+     */
+    private int generateParentWrapper(List<ExpandableWrapper<P, C>> flatItemList, P parent, boolean shouldExpand) {
+        if (mRowModel != ROW_MODEL_WRAPPED) {
+            return shouldExpand ? getShownChildList(parent).size() : 0;
+        }
+
         ExpandableWrapper<P, C> parentWrapper = new ExpandableWrapper<>(parent);
+        parentWrapper.setChildList(getFilteredChildList(parent));
         flatItemList.add(parentWrapper);
         if (shouldExpand) {
-            generateExpandedChildren(flatItemList, parentWrapper);
+            return generateExpandedChildren(flatItemList, parentWrapper);
+        }
+        return 0;
+    }
+
+    /**
+     * Refills {@link #mPackedRowList}, if used, from {@link #mFlatPositionIndex}.
+     */
+    private void generatePackedRows() {
+        if (mPackedRowList == null) {
+            return;
+        }
+
+        mPackedRowList.clear();
+        int parentCount = mFlatPositionIndex.getParentCount();
+        for (int i = 0; i < parentCount; i++) {
+            mPackedRowList.insertParentRows(mPackedRowList.size(), i, mFlatPositionIndex.getChildCount(i));
         }
     }
 
-    private void generateExpandedChildren(List<ExpandableWrapper<P, C>> flatItemList, ExpandableWrapper<P, C> parentWrapper) {
+    /**
+     * Rebuilds the rows from {@link #mParentList} and the expanded state and child counts
+     * recorded in {@link #mFlatPositionIndex}.
+     */
+    private void generateRowsFromIndex() {
+        MetricsListener metricsListener = mMetricsListener;
+        long startNanos = metricsListener == null ? 0 : System.nanoTime();
+        mParentPositionMap = null;
+        if (mRowModel == ROW_MODEL_WRAPPED) {
+            List<ExpandableWrapper<P, C>> flatItemList = createFlatItemList();
+            int parentCount = mParentList.size();
+            for (int i = 0; i < parentCount; i++) {
+                generateParentWrapper(flatItemList, mParentList.get(i), mFlatPositionIndex.isExpanded(i));
+            }
+            mFlatItemList = flatItemList;
+        }
+        generatePackedRows();
+        if (metricsListener != null) {
+            metricsListener.onRowsRebuilt(mFlatPositionIndex.getTotalRowCount(), System.nanoTime() - startNanos);
+        }
+    }
+
+    private int generateExpandedChildren(List<ExpandableWrapper<P, C>> flatItemList, ExpandableWrapper<P, C> parentWrapper) {
         parentWrapper.setExpanded(true);
 
         List<ExpandableWrapper<P, C>> wrappedChildList = parentWrapper.getWrappedChildList();
-        int childCount = wrappedChildList.size();
-        for (int j = 0; j < childCount; j++) {
-            ExpandableWrapper<P, C> childWrapper = wrappedChildList.get(j);
-            flatItemList.add(childWrapper);
-        }
+        flatItemList.addAll(wrappedChildList);
+        return wrappedChildList.size();
     }
 
     /**
-     * Generates a HashMap used to store expanded state for items in the list
-     * on configuration change or whenever onResume is called.
+     * Creates the empty list used as storage for {@link #mFlatItemList}.
+     * <p>
+     * Expanding, collapsing and the range notify methods insert and remove whole blocks of rows
+     * through {@link List#addAll(int, java.util.Collection)} and {@code subList(from, to).clear()},
+     * so the default storage is a chunked list where those cost O(k + n / chunk size) instead of
+     * shifting the entire tail of an {@link ArrayList}. Override to plug in a different
+     * {@link List} implementation.
      *
-     * @return A HashMap containing the expanded state of all parents
+     * @return A new, empty list to hold the flattened parents and children
      */
     @NonNull
+    protected List<ExpandableWrapper<P, C>> createFlatItemList() {
+        return new ChunkedList<>();
+    }
+
+    /**
+     * ViewHolders of one view type left to create for the pool of a RecyclerView, one each
+     * time it runs on the idle executor.
+     */
+    private class ViewHolderWarmUp implements Runnable {
+
+        @NonNull
+        final RecyclerView mRecyclerView;
+        @NonNull
+        final RecyclerView.RecycledViewPool mPool;
+        final int mViewType;
+        int mRemainingCount;
+
+        ViewHolderWarmUp(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.RecycledViewPool pool,
+                         int viewType, int count) {
+            mRecyclerView = recyclerView;
+            mPool = pool;
+            mViewType = viewType;
+            mRemainingCount = count;
+        }
+
+        @Override
+        @UiThread
+        public void run() {
+            if (mRemainingCount == 0 || mRecyclerView.getAdapter() != ExpandableRecyclerAdapter.this) {
+                mViewHolderWarmUps.remove(this);
+                return;
+            }
+
+            mPool.putRecycledView(createViewHolder(mRecyclerView, mViewType));
+            if (--mRemainingCount > 0) {
+                getIdleExecutor().execute(this);
+            } else {
+                mViewHolderWarmUps.remove(this);
+            }
+        }
+    }
+
+    /**
+     * A parent whose children are inserted a chunk at a time by
+     * {@link #expandParentProgressively(int, int)}, each chunk from its own message on the
+     * main thread.
+     */
+    private class ProgressiveExpansion implements Runnable {
+
+        @NonNull
+        final P mParent;
+        int mChunkSize;
+        long mPostedNanos;
+
+        ProgressiveExpansion(@NonNull P parent, int chunkSize) {
+            mParent = parent;
+            mChunkSize = Math.max(chunkSize, 1);
+        }
+
+        void post() {
+            mPostedNanos = System.nanoTime();
+            getMainThreadExecutor().execute(this);
+        }
+
+        @Override
+        @UiThread
+        public void run() {
+            if (mProgressiveExpansion != this) {
+                return;
+            }
+
+            // The time since the previous chunk includes the layout it triggered
+            if (System.nanoTime() - mPostedNanos > PROGRESSIVE_EXPANSION_FRAME_NANOS) {
+                mChunkSize = Math.max(mChunkSize / 2, 1);
+            } else if (mChunkSize <= Integer.MAX_VALUE / 2) {
+                mChunkSize *= 2;
+            }
+
+            if (insertProgressiveChildren(mParent, mChunkSize)) {
+                post();
+            } else {
+                mProgressiveExpansion = null;
+            }
+        }
+    }
+
+    /**
+     * A load started through {@link #mChildListLoader}.
+     */
+    private class ChildListLoad {
+
+        final P mParent;
+        volatile boolean mCancelled;
+        int mHolderCount;
+
+        ChildListLoad(P parent) {
+            mParent = parent;
+        }
+    }
+
+    /**
+     * A submission to {@link #setParentListAsync(List, ParentListDiffCallback, Executor)}.
+     */
+    private class ParentListDiffRequest {
+
+        final int mGeneration;
+        final List<P> mNewParentList;
+        final ParentListDiffCallback<P, C> mDiffCallback;
+        final Executor mExecutor;
+
+        ParentListDiffRequest(int generation, List<P> parentList, ParentListDiffCallback<P, C> diffCallback, Executor executor) {
+            mGeneration = generation;
+            mNewParentList = parentList;
+            mDiffCallback = diffCallback;
+            mExecutor = executor;
+        }
+    }
+
+    /**
+     * Read-only view of the flattened parents and children used with {@link #ROW_MODEL_VIRTUAL}
+     * and {@link #ROW_MODEL_PACKED}, each row is wrapped on access from {@link #mParentList}.
+     */
+    private class VirtualFlatItemList extends AbstractList<ExpandableWrapper<P, C>> implements RandomAccess {
+
+        @Override
+        public ExpandableWrapper<P, C> get(int flatPosition) {
+            if (flatPosition < 0 || flatPosition >= size()) {
+                throw new IndexOutOfBoundsException("Flat position " + flatPosition + " out of bounds, size " + size());
+            }
+
+            int parentPosition = getNearestParentPosition(flatPosition);
+            int childPosition = getChildPosition(flatPosition, parentPosition);
+            P parent = mParentList.get(parentPosition);
+            if (childPosition >= 0) {
+                return new ExpandableWrapper<>(getShownChildList(parent).get(childPosition));
+            }
+
+            ExpandableWrapper<P, C> parentWrapper = new ExpandableWrapper<>(parent);
+            parentWrapper.setExpanded(mFlatPositionIndex.isExpanded(parentPosition));
+            return parentWrapper;
+        }
+
+        @Override
+        public int size() {
+            return mFlatPositionIndex.getTotalRowCount();
+        }
+    }
+
+    /**
+     * Looks up the position of {@code parent} in {@link #mParentList} through
+     * {@link #mParentPositionMap}, building the map if it is missing.
+     * <p>
+     * A parent missing from an up to date map isn't in the list. An entry pointing to another
+     * parent was left behind by a removal or a replacement, the parent may still be further in
+     * the list, so the map is rebuilt once before giving up.
+     *
+     * @param parent The parent to look up
+     * @return The position of the first parent equal to {@code parent}, or
+     * {@link #INVALID_FLAT_POSITION} if it isn't in the list
+     */
     @UiThread
-    private HashMap<Integer, Boolean> generateExpandedStateMap() {
-        HashMap<Integer, Boolean> parentHashMap = new HashMap<>();
-        int childCount = 0;
+    private int getParentPosition(@NonNull P parent) {
+        boolean rebuilt = false;
+        if (mParentPositionMap == null) {
+            buildParentPositionMap();
+            rebuilt = true;
+        }
 
-        int listItemCount = mFlatItemList.size();
-        for (int i = 0; i < listItemCount; i++) {
-            if (mFlatItemList.get(i) != null) {
-                ExpandableWrapper<P, C> listItem = mFlatItemList.get(i);
-                if (listItem.isParent()) {
-                    parentHashMap.put(i - childCount, listItem.isExpanded());
-                } else {
-                    childCount++;
-                }
+        Integer storedPosition = mParentPositionMap.get(parent);
+        if (storedPosition == null) {
+            return INVALID_FLAT_POSITION;
+        }
+        int parentPosition = storedPosition + mParentPositionOffset;
+        if (isParentAt(parent, parentPosition)) {
+            return parentPosition;
+        }
+
+        if (!rebuilt) {
+            buildParentPositionMap();
+            storedPosition = mParentPositionMap.get(parent);
+            if (storedPosition != null) {
+                return storedPosition;
+            }
+        }
+
+        return INVALID_FLAT_POSITION;
+    }
+
+    private boolean isParentAt(@NonNull P parent, int parentPosition) {
+        return parentPosition >= 0
+                && parentPosition < mParentList.size()
+                && parent.equals(mParentList.get(parentPosition));
+    }
+
+    private void buildParentPositionMap() {
+        int parentCount = mParentList.size();
+        Map<P, Integer> parentPositionMap = new HashMap<>(parentCount * 4 / 3 + 1);
+        // Walk backwards so the first of several equal parents wins, matching List.indexOf
+        for (int i = parentCount - 1; i >= 0; i--) {
+            parentPositionMap.put(mParentList.get(i), i);
+        }
+        mParentPositionMap = parentPositionMap;
+        mParentPositionOffset = 0;
+        mStaleParentPositionCount = 0;
+    }
+
+    /**
+     * Updates {@link #mParentPositionMap}, if built, for {@code insertedCount} parents inserted
+     * at {@code parentPositionStart}, or {@code -removedCount} parents removed from there.
+     * Changes at either end of the list only shift {@link #mParentPositionOffset} and add the
+     * inserted parents, others drop the map.
+     *
+     * @param parentPositionStart The position of the first parent inserted or removed
+     * @param insertedCount The number of parents inserted, 0 for a removal
+     * @param delta The change in the number of parents
+     */
+    @UiThread
+    private void updateParentPositionMap(int parentPositionStart, int insertedCount, int delta) {
+        if (mParentPositionMap == null) {
+            return;
+        }
+
+        if (parentPositionStart == 0) {
+            mParentPositionOffset += delta;
+        } else if (parentPositionStart + insertedCount != mParentList.size()) {
+            mParentPositionMap = null;
+            return;
+        }
+
+        if (delta < 0) {
+            // Entries of removed parents are dropped with the map once they outnumber the parents
+            mStaleParentPositionCount -= delta;
+            if (mStaleParentPositionCount > mParentList.size()) {
+                mParentPositionMap = null;
+            }
+            return;
+        }
+
+        for (int i = parentPositionStart + insertedCount - 1; i >= parentPositionStart; i--) {
+            recordParentPosition(i, false);
+        }
+    }
+
+    /**
+     * Maps the parent at {@code parentPosition} to that position in {@link #mParentPositionMap},
+     * if built, unless it is already mapped to an earlier position.
+     *
+     * @param replaced Whether the parent may have replaced another one at that position
+     */
+    @UiThread
+    private void recordParentPosition(int parentPosition, boolean replaced) {
+        if (mParentPositionMap == null) {
+            return;
+        }
+
+        P parent = mParentList.get(parentPosition);
+        Integer storedPosition = mParentPositionMap.get(parent);
+        if (storedPosition != null) {
+            int mappedPosition = storedPosition + mParentPositionOffset;
+            if (mappedPosition == parentPosition
+                    || (mappedPosition < parentPosition && isParentAt(parent, mappedPosition))) {
+                return;
             }
         }
 
-        return parentHashMap;
+        mParentPositionMap.put(parent, parentPosition - mParentPositionOffset);
+        // The parent replaced at parentPosition may have left its entry behind
+        if (replaced && ++mStaleParentPositionCount > mParentList.size()) {
+            mParentPositionMap = null;
+        }
     }
 
     /**
@@ -1407,19 +3751,11 @@ public abstract class ExpandableRecyclerAdapter<P extends Parent<C>, C, PVH exte
      * @return The index of the parent in the merged list of children and parents
      */
     @UiThread
-    private int getFlatParentPosition(int parentPosition) {
-        int parentCount = 0;
-        int listItemCount = mFlatItemList.size();
-        for (int i = 0; i < listItemCount; i++) {
-            if (mFlatItemList.get(i).isParent()) {
-                parentCount++;
-
-                if (parentCount > parentPosition) {
-                    return i;
-                }
-            }
+    int getFlatParentPosition(int parentPosition) {
+        if (parentPosition < 0 || parentPosition >= mFlatPositionIndex.getParentCount()) {
+            return INVALID_FLAT_POSITION;
         }
 
-        return INVALID_FLAT_POSITION;
+        return mFlatPositionIndex.getFlatParentPosition(parentPosition);
     }
 }
@@ -0,0 +1,671 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.UiThread;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import com.bignerdranch.expandablerecyclerview.model.TreeNode;
+import com.bignerdranch.expandablerecyclerview.model.TreeWrapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RecyclerView.Adapter implementation that adds the ability to expand and collapse the nodes
+ * of a tree of any depth, for instance an org chart or a file browser.
+ * <p>
+ * Every shown node takes one row. The rows are flattened the same way as the rows of
+ * {@link ExpandableRecyclerAdapter}, as wrappers held in a chunked list, and each wrapper
+ * keeps the number of rows shown below it (see {@link TreeWrapper}). Expanding or collapsing a
+ * node therefore only walks the rows it shows or hides plus its ancestors, and inserts or
+ * removes them as one block: O(subtree + depth + n / 256) however deep the node is, where
+ * looking up a row is a binary search over the chunks.
+ * <p>
+ * The children of a collapsed node keep their own expanded state, so expanding it again shows
+ * the same rows as before it was collapsed.
+ * <p>
+ * Nodes inserted, removed or changed are notified with {@link #notifyNodeRangeInserted},
+ * {@link #notifyNodeRangeRemoved} and {@link #notifyNodeChanged}, which splice and notify
+ * only the rows of those nodes. The wrapper of every wrapped node is kept in a map, so nodes
+ * must not be equal to other nodes of the tree, and the row of a node is found in
+ * O(depth + siblings before it and its ancestors) from the counts of the wrappers.
+ *
+ * @param <N> Type of the nodes of the tree
+ * @param <VH> Type of the ViewHolder of the rows
+ */
+public abstract class ExpandableTreeAdapter<N extends TreeNode<N>, VH extends RecyclerView.ViewHolder>
+        extends RecyclerView.Adapter<VH> {
+
+    /**
+     * Payload of the change notified for the row of a node that is expanded or collapsed,
+     * for ViewHolders that only need to update an expansion indicator.
+     */
+    public static final Object PAYLOAD_EXPANSION_CHANGED = new Object();
+
+    private static final String EXPANDED_STATE_BITS = "ExpandableTreeAdapter.ExpandedStateBits";
+
+    @NonNull
+    private List<N> mRootList;
+
+    @NonNull
+    private List<TreeWrapper<N>> mRootWrapperList;
+
+    /**
+     * Wrapper of every wrapped node, shown or not.
+     */
+    @NonNull
+    private Map<N, TreeWrapper<N>> mWrapperMap;
+
+    /**
+     * Shown rows, in order.
+     */
+    @NonNull
+    private List<TreeWrapper<N>> mFlatItemList;
+
+    /**
+     * Primary constructor. Sets up {@link #mRootList} and {@link #mFlatItemList}, showing the
+     * initially expanded nodes expanded.
+     *
+     * @param rootList List of the roots of the tree
+     */
+    public ExpandableTreeAdapter(@NonNull List<N> rootList) {
+        super();
+        mRootList = rootList;
+        buildRows(null);
+    }
+
+    /**
+     * Callback called from onBindViewHolder(RecyclerView.ViewHolder, int) to bind the row of a
+     * node.
+     *
+     * @param holder The ViewHolder to bind data to
+     * @param flatPosition The index of the row
+     * @param node The node to bind
+     * @param depth The depth of the node, 0 for a root node
+     * @param expanded Whether the node is expanded
+     */
+    @UiThread
+    public abstract void onBindNodeViewHolder(@NonNull VH holder, int flatPosition, @NonNull N node, int depth, boolean expanded);
+
+    /**
+     * Return the view type of the row of {@code node} for the purposes of view recycling.
+     * <p>
+     * The default implementation returns 0, a single view type for all the rows.
+     *
+     * @param node The node to query
+     * @param depth The depth of the node, 0 for a root node
+     * @return integer value identifying the type of the view needed to represent the node
+     */
+    @UiThread
+    public int getNodeViewType(@NonNull N node, int depth) {
+        return 0;
+    }
+
+    @Override
+    @UiThread
+    public void onBindViewHolder(@NonNull VH holder, int flatPosition) {
+        TreeWrapper<N> wrapper = mFlatItemList.get(flatPosition);
+        onBindNodeViewHolder(holder, flatPosition, wrapper.getNode(), wrapper.getDepth(), wrapper.isExpanded());
+    }
+
+    @Override
+    @UiThread
+    public int getItemViewType(int flatPosition) {
+        TreeWrapper<N> wrapper = mFlatItemList.get(flatPosition);
+        return getNodeViewType(wrapper.getNode(), wrapper.getDepth());
+    }
+
+    @Override
+    @UiThread
+    public int getItemCount() {
+        return mFlatItemList.size();
+    }
+
+    /**
+     * @return The roots of the tree
+     */
+    @NonNull
+    @UiThread
+    public List<N> getRootList() {
+        return mRootList;
+    }
+
+    /**
+     * @param flatPosition The index of the row
+     * @return The node shown at {@code flatPosition}
+     */
+    @NonNull
+    @UiThread
+    public N getNode(int flatPosition) {
+        return mFlatItemList.get(flatPosition).getNode();
+    }
+
+    /**
+     * @param flatPosition The index of the row
+     * @return The depth of the node shown at {@code flatPosition}, 0 for a root node
+     */
+    @UiThread
+    public int getDepth(int flatPosition) {
+        return mFlatItemList.get(flatPosition).getDepth();
+    }
+
+    /**
+     * @param flatPosition The index of the row
+     * @return Whether the node shown at {@code flatPosition} is expanded
+     */
+    @UiThread
+    public boolean isNodeExpanded(int flatPosition) {
+        return mFlatItemList.get(flatPosition).isExpanded();
+    }
+
+    /**
+     * Expands the node shown at {@code flatPosition}, showing its children and the rows of
+     * those of its children that are expanded.
+     *
+     * @param flatPosition The index of the row of the node to expand
+     */
+    @UiThread
+    public void expandNode(int flatPosition) {
+        TreeWrapper<N> wrapper = mFlatItemList.get(flatPosition);
+        if (wrapper.isExpanded()) {
+            return;
+        }
+
+        wrapper.setExpanded(true);
+        List<TreeWrapper<N>> shownRows = new ArrayList<>(wrapper.getShownDescendantCount());
+        wrapper.addShownDescendants(shownRows);
+        mFlatItemList.addAll(flatPosition + 1, shownRows);
+
+        notifyItemChanged(flatPosition, PAYLOAD_EXPANSION_CHANGED);
+        notifyItemRangeInserted(flatPosition + 1, shownRows.size());
+    }
+
+    /**
+     * Collapses the node shown at {@code flatPosition}, hiding every row below it.
+     *
+     * @param flatPosition The index of the row of the node to collapse
+     */
+    @UiThread
+    public void collapseNode(int flatPosition) {
+        TreeWrapper<N> wrapper = mFlatItemList.get(flatPosition);
+        if (!wrapper.isExpanded()) {
+            return;
+        }
+
+        int rowCount = wrapper.getShownDescendantCount();
+        wrapper.setExpanded(false);
+        mFlatItemList.subList(flatPosition + 1, flatPosition + 1 + rowCount).clear();
+
+        notifyItemChanged(flatPosition, PAYLOAD_EXPANSION_CHANGED);
+        notifyItemRangeRemoved(flatPosition + 1, rowCount);
+    }
+
+    /**
+     * Expands the node shown at {@code flatPosition} if it is collapsed, collapses it otherwise.
+     *
+     * @param flatPosition The index of the row of the node to toggle
+     */
+    @UiThread
+    public void toggleNode(int flatPosition) {
+        if (isNodeExpanded(flatPosition)) {
+            collapseNode(flatPosition);
+        } else {
+            expandNode(flatPosition);
+        }
+    }
+
+    /**
+     * Expands {@code node}. If it is hidden below a collapsed node, its rows are shown once
+     * that node is expanded. A node whose parent has never been expanded can't be found and
+     * is left as is.
+     *
+     * @param node The node to expand
+     */
+    @UiThread
+    public void expandNode(@NonNull N node) {
+        setNodeExpanded(node, true);
+    }
+
+    /**
+     * Collapses {@code node}. If it is hidden below a collapsed node, its rows stay hidden
+     * once that node is expanded. A node whose parent has never been expanded can't be found
+     * and is left as is.
+     *
+     * @param node The node to collapse
+     */
+    @UiThread
+    public void collapseNode(@NonNull N node) {
+        setNodeExpanded(node, false);
+    }
+
+    @UiThread
+    private void setNodeExpanded(@NonNull N node, boolean expanded) {
+        TreeWrapper<N> wrapper = mWrapperMap.get(node);
+        if (wrapper == null) {
+            return;
+        }
+
+        int flatPosition = getFlatPosition(wrapper);
+        if (flatPosition == RecyclerView.NO_POSITION) {
+            wrapper.setExpanded(expanded);
+        } else if (expanded) {
+            expandNode(flatPosition);
+        } else {
+            collapseNode(flatPosition);
+        }
+    }
+
+    /**
+     * Sets a {@link View.OnClickListener} on the whole row of {@code holder} that expands or
+     * collapses the node it shows. Should be called from
+     * {@link #onCreateViewHolder(android.view.ViewGroup, int)}.
+     *
+     * @param holder The ViewHolder whose row should toggle its node when clicked
+     */
+    @UiThread
+    public void setRowClickToToggle(@NonNull final VH holder) {
+        holder.itemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                int flatPosition = holder.getAdapterPosition();
+                if (flatPosition != RecyclerView.NO_POSITION) {
+                    toggleNode(flatPosition);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param node The node to look up
+     * @return The index of the row of {@code node}, or {@link RecyclerView#NO_POSITION} if it
+     * is hidden below a collapsed node or not in the tree
+     */
+    @UiThread
+    public int getFlatPosition(@NonNull N node) {
+        TreeWrapper<N> wrapper = mWrapperMap.get(node);
+        return wrapper == null ? RecyclerView.NO_POSITION : getFlatPosition(wrapper);
+    }
+
+    /**
+     * Walks up from {@code wrapper}, adding at every level the rows of the siblings before it
+     * and the row of its parent.
+     */
+    private int getFlatPosition(@NonNull TreeWrapper<N> wrapper) {
+        int flatPosition = 0;
+        while (true) {
+            TreeWrapper<N> parentWrapper = wrapper.getParentWrapper();
+            if (parentWrapper == null) {
+                return flatPosition + countRowsBefore(mRootWrapperList, mRootWrapperList.indexOf(wrapper));
+            }
+            if (!parentWrapper.isExpanded()) {
+                return RecyclerView.NO_POSITION;
+            }
+
+            List<TreeWrapper<N>> siblingList = parentWrapper.getWrappedChildList();
+            flatPosition += 1 + countRowsBefore(siblingList, siblingList.indexOf(wrapper));
+            wrapper = parentWrapper;
+        }
+    }
+
+    /**
+     * @param parentWrapper The wrapper of the parent, or null for the roots
+     * @return The index the row of the child at {@code childPosition} has, or would have if
+     * inserted, or {@link RecyclerView#NO_POSITION} if the children of the parent are hidden
+     */
+    private int getFlatChildPosition(@Nullable TreeWrapper<N> parentWrapper, int childPosition) {
+        if (parentWrapper == null) {
+            return countRowsBefore(mRootWrapperList, childPosition);
+        }
+        if (!parentWrapper.isExpanded()) {
+            return RecyclerView.NO_POSITION;
+        }
+
+        int flatParentPosition = getFlatPosition(parentWrapper);
+        return flatParentPosition == RecyclerView.NO_POSITION ? RecyclerView.NO_POSITION
+                : flatParentPosition + 1 + countRowsBefore(parentWrapper.getWrappedChildList(), childPosition);
+    }
+
+    private static <N extends TreeNode<N>> int countRowsBefore(@NonNull List<TreeWrapper<N>> wrapperList, int end) {
+        int rowCount = 0;
+        for (int i = 0; i < end; i++) {
+            rowCount += wrapperList.get(i).getShownRowCount();
+        }
+        return rowCount;
+    }
+
+    /**
+     * Notify any registered observers that a node has been inserted into the child list of
+     * {@code parentNode}, or into {@link #getRootList()} if it is null, at
+     * {@code childPosition}. Only its rows are inserted, if its parent shows them.
+     *
+     * @param parentNode The parent of the inserted node, or null for a root
+     * @param childPosition Position of the inserted node among its siblings
+     */
+    @UiThread
+    public void notifyNodeInserted(@Nullable N parentNode, int childPosition) {
+        notifyNodeRangeInserted(parentNode, childPosition, 1);
+    }
+
+    /**
+     * Notify any registered observers that {@code itemCount} nodes have been inserted into
+     * the child list of {@code parentNode}, or into {@link #getRootList()} if it is null, from
+     * {@code childPositionStart} onwards. Only their rows are inserted, as one block, if their
+     * parent shows them.
+     *
+     * @param parentNode The parent of the inserted nodes, or null for roots
+     * @param childPositionStart Position of the first inserted node among its siblings
+     * @param itemCount Number of nodes inserted
+     */
+    @UiThread
+    public void notifyNodeRangeInserted(@Nullable N parentNode, int childPositionStart, int itemCount) {
+        TreeWrapper<N> parentWrapper = null;
+        List<TreeWrapper<N>> wrapperList = mRootWrapperList;
+        if (parentNode == null) {
+            for (int i = childPositionStart; i < childPositionStart + itemCount; i++) {
+                mRootWrapperList.add(i, new TreeWrapper<>(mRootList.get(i), mWrapperMap));
+            }
+        } else {
+            // The children of a node never wrapped are wrapped from its child list on first use
+            parentWrapper = mWrapperMap.get(parentNode);
+            if (parentWrapper == null || !parentWrapper.hasWrappedChildList()) {
+                return;
+            }
+            parentWrapper.insertChildren(childPositionStart, itemCount);
+            wrapperList = parentWrapper.getWrappedChildList();
+        }
+
+        int flatPositionStart = getFlatChildPosition(parentWrapper, childPositionStart);
+        if (flatPositionStart == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        List<TreeWrapper<N>> insertedRows = new ArrayList<>();
+        for (int i = childPositionStart; i < childPositionStart + itemCount; i++) {
+            TreeWrapper<N> wrapper = wrapperList.get(i);
+            insertedRows.add(wrapper);
+            if (wrapper.isExpanded()) {
+                wrapper.addShownDescendants(insertedRows);
+            }
+        }
+        mFlatItemList.addAll(flatPositionStart, insertedRows);
+        notifyItemRangeInserted(flatPositionStart, insertedRows.size());
+    }
+
+    /**
+     * Notify any registered observers that the node previously at {@code childPosition} in
+     * the child list of {@code parentNode}, or in {@link #getRootList()} if it is null, has
+     * been removed. Only its rows are removed, if its parent showed them.
+     *
+     * @param parentNode The parent of the removed node, or null for a root
+     * @param childPosition Position the removed node had among its siblings
+     */
+    @UiThread
+    public void notifyNodeRemoved(@Nullable N parentNode, int childPosition) {
+        notifyNodeRangeRemoved(parentNode, childPosition, 1);
+    }
+
+    /**
+     * Notify any registered observers that the {@code itemCount} nodes previously at
+     * {@code childPositionStart} onwards in the child list of {@code parentNode}, or in
+     * {@link #getRootList()} if it is null, have been removed. Only their rows are removed, as
+     * one block, if their parent showed them.
+     *
+     * @param parentNode The parent of the removed nodes, or null for roots
+     * @param childPositionStart Position the first removed node had among its siblings
+     * @param itemCount Number of nodes removed
+     */
+    @UiThread
+    public void notifyNodeRangeRemoved(@Nullable N parentNode, int childPositionStart, int itemCount) {
+        TreeWrapper<N> parentWrapper = null;
+        List<TreeWrapper<N>> wrapperList = mRootWrapperList;
+        if (parentNode != null) {
+            parentWrapper = mWrapperMap.get(parentNode);
+            if (parentWrapper == null || !parentWrapper.hasWrappedChildList()) {
+                return;
+            }
+            wrapperList = parentWrapper.getWrappedChildList();
+        }
+
+        int flatPositionStart = getFlatChildPosition(parentWrapper, childPositionStart);
+        int rowCount = countRowsBefore(wrapperList, childPositionStart + itemCount)
+                - countRowsBefore(wrapperList, childPositionStart);
+        if (parentWrapper == null) {
+            List<TreeWrapper<N>> removedList = mRootWrapperList.subList(childPositionStart, childPositionStart + itemCount);
+            for (int i = 0; i < removedList.size(); i++) {
+                removedList.get(i).unregister();
+            }
+            removedList.clear();
+        } else {
+            parentWrapper.removeChildren(childPositionStart, itemCount);
+        }
+
+        if (flatPositionStart != RecyclerView.NO_POSITION) {
+            mFlatItemList.subList(flatPositionStart, flatPositionStart + rowCount).clear();
+            notifyItemRangeRemoved(flatPositionStart, rowCount);
+        }
+    }
+
+    /**
+     * Notify any registered observers that {@code node} has changed, rebinding its row if
+     * it is shown. Its children must not have changed.
+     *
+     * @param node The node that has changed
+     */
+    @UiThread
+    public void notifyNodeChanged(@NonNull N node) {
+        int flatPosition = getFlatPosition(node);
+        if (flatPosition != RecyclerView.NO_POSITION) {
+            notifyItemChanged(flatPosition);
+        }
+    }
+
+    /**
+     * Stores the expanded state of the nodes across state loss.
+     * <p>
+     * Should be called from {@link Activity#onSaveInstanceState(Bundle)} in the
+     * {@link Activity} that hosts the RecyclerView that this {@link ExpandableTreeAdapter} is
+     * attached to. The states are stored as a {@code long[]} bitset with two bits per wrapped
+     * node in depth first order, whether it is expanded and whether its children are wrapped.
+     *
+     * @param savedInstanceState The {@code Bundle} into which to store the expanded states
+     */
+    @UiThread
+    public void onSaveInstanceState(@NonNull Bundle savedInstanceState) {
+        int bitCount = 0;
+        for (int i = 0; i < mRootWrapperList.size(); i++) {
+            bitCount = writeExpansionStates(mRootWrapperList.get(i), null, bitCount);
+        }
+        long[] expandedBits = new long[(bitCount + 63) >>> 6];
+        bitCount = 0;
+        for (int i = 0; i < mRootWrapperList.size(); i++) {
+            bitCount = writeExpansionStates(mRootWrapperList.get(i), expandedBits, bitCount);
+        }
+        savedInstanceState.putLongArray(EXPANDED_STATE_BITS, expandedBits);
+    }
+
+    /**
+     * Fetches the expanded states from the saved instance state {@link Bundle} and restores
+     * the expanded states of all of the nodes.
+     * <p>
+     * Should be called from {@link Activity#onRestoreInstanceState(Bundle)} in the
+     * {@link Activity} that hosts the RecyclerView that this {@link ExpandableTreeAdapter} is
+     * attached to. Assumes that the tree is the same as when the saved instance state was
+     * stored.
+     *
+     * @param savedInstanceState The {@code Bundle} from which the expanded states are loaded
+     */
+    @UiThread
+    public void onRestoreInstanceState(@Nullable Bundle savedInstanceState) {
+        if (savedInstanceState == null || !savedInstanceState.containsKey(EXPANDED_STATE_BITS)) {
+            return;
+        }
+
+        long[] expandedBits = savedInstanceState.getLongArray(EXPANDED_STATE_BITS);
+        if (expandedBits == null) {
+            return;
+        }
+
+        mRootWrapperList = new ArrayList<>(mRootList.size());
+        mWrapperMap = new HashMap<>();
+        mFlatItemList = new ChunkedList<>();
+        int bitIndex = 0;
+        for (int i = 0; i < mRootList.size(); i++) {
+            TreeWrapper<N> rootWrapper = new TreeWrapper<>(mRootList.get(i), mWrapperMap);
+            bitIndex = readExpansionStates(rootWrapper, expandedBits, bitIndex);
+            mRootWrapperList.add(rootWrapper);
+            addShownRows(rootWrapper);
+        }
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Writes the bits of {@code wrapper} and of the wrappers below it into
+     * {@code expandedBits}, or only counts them if it is null.
+     *
+     * @return The index of the next bit
+     */
+    private static <N extends TreeNode<N>> int writeExpansionStates(@NonNull TreeWrapper<N> wrapper,
+                                                                    @Nullable long[] expandedBits, int bitIndex) {
+        boolean wrapped = wrapper.hasWrappedChildList();
+        if (expandedBits != null) {
+            setBit(expandedBits, bitIndex, wrapper.isExpanded());
+            setBit(expandedBits, bitIndex + 1, wrapped);
+        }
+        bitIndex += 2;
+        if (wrapped) {
+            List<TreeWrapper<N>> wrappedChildList = wrapper.getWrappedChildList();
+            for (int i = 0; i < wrappedChildList.size(); i++) {
+                bitIndex = writeExpansionStates(wrappedChildList.get(i), expandedBits, bitIndex);
+            }
+        }
+        return bitIndex;
+    }
+
+    /**
+     * Restores the states written by {@link #writeExpansionStates}, children first like
+     * {@link #restoreExpansionStates}.
+     *
+     * @return The index of the next bit
+     */
+    private static <N extends TreeNode<N>> int readExpansionStates(@NonNull TreeWrapper<N> wrapper,
+                                                                   @NonNull long[] expandedBits, int bitIndex) {
+        boolean expanded = getBit(expandedBits, bitIndex);
+        boolean wrapped = getBit(expandedBits, bitIndex + 1);
+        bitIndex += 2;
+        if (wrapped) {
+            List<TreeWrapper<N>> wrappedChildList = wrapper.getWrappedChildList();
+            for (int i = 0; i < wrappedChildList.size(); i++) {
+                bitIndex = readExpansionStates(wrappedChildList.get(i), expandedBits, bitIndex);
+            }
+        }
+        wrapper.setExpanded(expanded);
+        return bitIndex;
+    }
+
+    private static void setBit(@NonNull long[] bits, int index, boolean value) {
+        if (value) {
+            bits[index >>> 6] |= 1L << index;
+        }
+    }
+
+    private static boolean getBit(@NonNull long[] bits, int index) {
+        int word = index >>> 6;
+        return word < bits.length && (bits[word] & (1L << index)) != 0;
+    }
+
+    /**
+     * Set a new list of roots and notify any registered observers that the data set has
+     * changed.
+     *
+     * @param rootList The new list of roots
+     * @param preserveExpansionState If true, nodes equal to nodes that were expanded or
+     *                               collapsed before keep that state, otherwise only
+     *                               {@link TreeNode#isInitiallyExpanded()} is used
+     */
+    @UiThread
+    public void setRootList(@NonNull List<N> rootList, boolean preserveExpansionState) {
+        mRootList = rootList;
+        notifyTreeDataSetChanged(preserveExpansionState);
+    }
+
+    /**
+     * Notify any registered observers that the tree has changed, rebuilding the rows from
+     * {@link #getRootList()}.
+     *
+     * @param preserveExpansionState If true, nodes equal to nodes that were expanded or
+     *                               collapsed before keep that state, otherwise only
+     *                               {@link TreeNode#isInitiallyExpanded()} is used
+     */
+    @UiThread
+    public void notifyTreeDataSetChanged(boolean preserveExpansionState) {
+        Map<N, Boolean> expansionStateMap = null;
+        if (preserveExpansionState) {
+            expansionStateMap = new HashMap<>();
+            for (int i = 0; i < mRootWrapperList.size(); i++) {
+                collectExpansionStates(mRootWrapperList.get(i), expansionStateMap);
+            }
+        }
+        buildRows(expansionStateMap);
+        notifyDataSetChanged();
+    }
+
+    private void buildRows(Map<N, Boolean> expansionStateMap) {
+        mRootWrapperList = new ArrayList<>(mRootList.size());
+        mWrapperMap = new HashMap<>();
+        mFlatItemList = new ChunkedList<>();
+        for (int i = 0; i < mRootList.size(); i++) {
+            TreeWrapper<N> rootWrapper = new TreeWrapper<>(mRootList.get(i), mWrapperMap);
+            if (expansionStateMap != null) {
+                restoreExpansionStates(rootWrapper, expansionStateMap);
+            }
+            mRootWrapperList.add(rootWrapper);
+            addShownRows(rootWrapper);
+        }
+    }
+
+    private void addShownRows(@NonNull TreeWrapper<N> rootWrapper) {
+        mFlatItemList.add(rootWrapper);
+        if (rootWrapper.isExpanded()) {
+            rootWrapper.addShownDescendants(mFlatItemList);
+        }
+    }
+
+    /**
+     * Records the state of every node whose children were wrapped, any other node is in its
+     * initial state.
+     */
+    private void collectExpansionStates(TreeWrapper<N> wrapper, Map<N, Boolean> expansionStateMap) {
+        expansionStateMap.put(wrapper.getNode(), wrapper.isExpanded());
+        if (!wrapper.hasWrappedChildList()) {
+            return;
+        }
+
+        List<TreeWrapper<N>> wrappedChildList = wrapper.getWrappedChildList();
+        for (int i = 0; i < wrappedChildList.size(); i++) {
+            collectExpansionStates(wrappedChildList.get(i), expansionStateMap);
+        }
+    }
+
+    /**
+     * Restores the recorded states depth first, so that the counts of the ancestors are up
+     * to date when a descendant changes state.
+     */
+    private void restoreExpansionStates(TreeWrapper<N> wrapper, Map<N, Boolean> expansionStateMap) {
+        Boolean expanded = expansionStateMap.get(wrapper.getNode());
+        if (expanded == null) {
+            return;
+        }
+
+        List<TreeWrapper<N>> wrappedChildList = wrapper.getWrappedChildList();
+        for (int i = 0; i < wrappedChildList.size(); i++) {
+            restoreExpansionStates(wrappedChildList.get(i), expansionStateMap);
+        }
+        wrapper.setExpanded(expanded);
+    }
+}
@@ -0,0 +1,635 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Index translating between parent positions and flat positions, where each parent takes
+ * one flat row for itself plus one row per child while it is expanded.
+ * <p>
+ * The number of children shown by each entry is kept in an array with a Fenwick tree over it,
+ * which gives the number of child rows preceding an entry in O(log) time. There are two
+ * layouts of the entries:
+ * <ul>
+ * <li>Sparse, the default: only expanded parents are stored, as a sorted array of parent
+ * positions, so memory is O(k) no matter how many parents there are, k being the number of
+ * expanded parents. Translating a parent position into a flat position is O(log k) and a flat
+ * position back into its parent O(log^2 k). Expanding or collapsing a parent inserts or
+ * removes an entry, which shifts the entries after it, O(k), and rebuilds the tree lazily on
+ * the next query, O(k).</li>
+ * <li>Dense: one entry per parent, collapsed parents showing no children, so memory is O(n),
+ * n being the number of parents. Expanding, collapsing or changing the child count of a parent
+ * is a point update of the tree, O(log n), and both translations are O(log n).</li>
+ * </ul>
+ * In both layouts inserting or removing parents shifts the entries after them and rebuilds
+ * the tree lazily on the next query, except for parents appended while the tree is valid.
+ */
+final class FlatPositionIndex {
+
+    static final int INVALID_POSITION = -1;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final boolean mDense;
+
+    /**
+     * Parent position of each entry in the sparse layout, null in the dense layout where the
+     * entry of a parent is its position.
+     */
+    private int[] mExpandedPositions;
+
+    /**
+     * Expanded state of each parent in the dense layout, null in the sparse layout where only
+     * expanded parents have an entry.
+     */
+    private boolean[] mExpandedStates;
+
+    /**
+     * Number of children shown by each entry, 0 for collapsed parents in the dense layout.
+     */
+    private int[] mChildCounts;
+    private int[] mTree;
+    private int mExpandedCount;
+    private int mParentCount;
+    private int mTotalChildCount;
+    private boolean mTreeValid;
+
+    /**
+     * Creates an index with the sparse layout.
+     */
+    FlatPositionIndex() {
+        this(false);
+    }
+
+    /**
+     * @param dense true for one entry per parent, which makes expanding and collapsing
+     *              O(log n), false to only store the expanded parents
+     */
+    FlatPositionIndex(boolean dense) {
+        mDense = dense;
+        if (dense) {
+            mExpandedStates = new boolean[INITIAL_CAPACITY];
+        } else {
+            mExpandedPositions = new int[INITIAL_CAPACITY];
+        }
+        mChildCounts = new int[INITIAL_CAPACITY];
+        mTree = new int[INITIAL_CAPACITY + 1];
+        mTreeValid = true;
+    }
+
+    /**
+     * Removes all parents from the index.
+     */
+    void clear() {
+        mExpandedCount = 0;
+        mParentCount = 0;
+        mTotalChildCount = 0;
+        mTreeValid = false;
+    }
+
+    /**
+     * @return The number of parents in the index
+     */
+    int getParentCount() {
+        return mParentCount;
+    }
+
+    /**
+     * @return The number of expanded parents in the index
+     */
+    int getExpandedParentCount() {
+        return mExpandedCount;
+    }
+
+    /**
+     * @return The number of flat rows taken by all parents and their visible children
+     */
+    int getTotalRowCount() {
+        return mParentCount + mTotalChildCount;
+    }
+
+    /**
+     * Adds a parent after all parents currently in the index.
+     *
+     * @param expanded Whether the parent is expanded
+     * @param childCount The number of children the parent shows while expanded
+     */
+    void appendParent(boolean expanded, int childCount) {
+        insertParent(mParentCount, expanded, childCount);
+    }
+
+    /**
+     * Inserts a parent, shifting the parents at and after {@code parentPosition} by one.
+     *
+     * @param parentPosition The position of the new parent
+     * @param expanded Whether the parent is expanded
+     * @param childCount The number of children the parent shows while expanded
+     */
+    void insertParent(int parentPosition, boolean expanded, int childCount) {
+        checkPosition(parentPosition, mParentCount + 1);
+        if (mDense) {
+            insertDenseParent(parentPosition, expanded, childCount);
+            return;
+        }
+
+        int entry = findEntry(parentPosition);
+        if (entry < 0) {
+            entry = -entry - 1;
+        }
+
+        for (int i = entry; i < mExpandedCount; i++) {
+            mExpandedPositions[i]++;
+        }
+        mParentCount++;
+
+        if (expanded) {
+            insertEntry(entry, parentPosition, childCount);
+        }
+    }
+
+    /**
+     * Removes {@code parentCount} parents starting at {@code parentPositionStart}.
+     *
+     * @param parentPositionStart The position of the first parent to remove
+     * @param parentCount The number of parents to remove
+     * @return The number of flat rows the removed parents occupied
+     */
+    int removeParents(int parentPositionStart, int parentCount) {
+        checkPosition(parentPositionStart, mParentCount);
+        int parentPositionEnd = parentPositionStart + parentCount;
+        checkPosition(parentPositionEnd, mParentCount + 1);
+        if (mDense) {
+            return removeDenseParents(parentPositionStart, parentCount);
+        }
+
+        int firstEntry = findEntry(parentPositionStart);
+        if (firstEntry < 0) {
+            firstEntry = -firstEntry - 1;
+        }
+        int lastEntry = firstEntry;
+        int removedChildCount = 0;
+        while (lastEntry < mExpandedCount && mExpandedPositions[lastEntry] < parentPositionEnd) {
+            removedChildCount += mChildCounts[lastEntry];
+            lastEntry++;
+        }
+
+        removeEntries(firstEntry, lastEntry);
+        for (int i = firstEntry; i < mExpandedCount; i++) {
+            mExpandedPositions[i] -= parentCount;
+        }
+        mParentCount -= parentCount;
+        return parentCount + removedChildCount;
+    }
+
+    /**
+     * Moves the parent at {@code fromParentPosition} so that it ends up at {@code toParentPosition}.
+     *
+     * @param fromParentPosition Previous position of the parent
+     * @param toParentPosition New position of the parent
+     */
+    void moveParent(int fromParentPosition, int toParentPosition) {
+        checkPosition(fromParentPosition, mParentCount);
+        checkPosition(toParentPosition, mParentCount);
+        if (fromParentPosition == toParentPosition) {
+            return;
+        }
+
+        boolean expanded = isExpanded(fromParentPosition);
+        int childCount = getChildCount(fromParentPosition);
+        removeParents(fromParentPosition, 1);
+        insertParent(toParentPosition, expanded, childCount);
+    }
+
+    /**
+     * @param parentPosition The position of the parent
+     * @return Whether the parent is expanded
+     */
+    boolean isExpanded(int parentPosition) {
+        checkPosition(parentPosition, mParentCount);
+        return mDense ? mExpandedStates[parentPosition] : findEntry(parentPosition) >= 0;
+    }
+
+    /**
+     * @param parentPosition The position of the parent
+     * @return The number of child rows the parent shows, 0 if it is collapsed
+     */
+    int getChildCount(int parentPosition) {
+        checkPosition(parentPosition, mParentCount);
+        if (mDense) {
+            return mChildCounts[parentPosition];
+        }
+
+        int entry = findEntry(parentPosition);
+        return entry < 0 ? 0 : mChildCounts[entry];
+    }
+
+    /**
+     * @param parentPosition The position of the parent
+     * @return The number of flat rows the parent occupies
+     */
+    int getRowCount(int parentPosition) {
+        return getChildCount(parentPosition) + 1;
+    }
+
+    /**
+     * Marks a parent as expanded, or updates the number of children shown by an expanded parent.
+     *
+     * @param parentPosition The position of the parent
+     * @param childCount The number of children the parent shows
+     */
+    void setExpanded(int parentPosition, int childCount) {
+        checkPosition(parentPosition, mParentCount);
+        int entry;
+        if (mDense) {
+            entry = parentPosition;
+            if (!mExpandedStates[entry]) {
+                mExpandedStates[entry] = true;
+                mExpandedCount++;
+            }
+        } else {
+            entry = findEntry(parentPosition);
+            if (entry < 0) {
+                insertEntry(-entry - 1, parentPosition, childCount);
+                return;
+            }
+        }
+
+        setEntryChildCount(entry, childCount);
+    }
+
+    /**
+     * Replaces the expansion state of a range of parents in one pass, O(k + range).
+     *
+     * @param parentPositionStart The position of the first parent to update
+     * @param childCounts The number of children shown by each parent of the range, or a
+     *                    negative value for parents that are collapsed
+     */
+    void setExpansionRange(int parentPositionStart, @NonNull int[] childCounts) {
+        checkPosition(parentPositionStart, mParentCount + 1);
+        int parentPositionEnd = parentPositionStart + childCounts.length;
+        checkPosition(parentPositionEnd, mParentCount + 1);
+        if (mDense) {
+            for (int i = 0; i < childCounts.length; i++) {
+                int parentPosition = parentPositionStart + i;
+                boolean expanded = childCounts[i] >= 0;
+                if (expanded != mExpandedStates[parentPosition]) {
+                    mExpandedStates[parentPosition] = expanded;
+                    mExpandedCount += expanded ? 1 : -1;
+                }
+                mTotalChildCount += Math.max(childCounts[i], 0) - mChildCounts[parentPosition];
+                mChildCounts[parentPosition] = Math.max(childCounts[i], 0);
+            }
+            mTreeValid = false;
+            return;
+        }
+
+        int firstEntry = findEntry(parentPositionStart);
+        if (firstEntry < 0) {
+            firstEntry = -firstEntry - 1;
+        }
+        int lastEntry = firstEntry;
+        while (lastEntry < mExpandedCount && mExpandedPositions[lastEntry] < parentPositionEnd) {
+            mTotalChildCount -= mChildCounts[lastEntry];
+            lastEntry++;
+        }
+
+        int newEntryCount = 0;
+        for (int childCount : childCounts) {
+            if (childCount >= 0) {
+                newEntryCount++;
+            }
+        }
+
+        int tailCount = mExpandedCount - lastEntry;
+        int newExpandedCount = firstEntry + newEntryCount + tailCount;
+        ensureCapacity(newExpandedCount);
+        System.arraycopy(mExpandedPositions, lastEntry, mExpandedPositions, firstEntry + newEntryCount, tailCount);
+        System.arraycopy(mChildCounts, lastEntry, mChildCounts, firstEntry + newEntryCount, tailCount);
+
+        int entry = firstEntry;
+        for (int i = 0; i < childCounts.length; i++) {
+            if (childCounts[i] >= 0) {
+                mExpandedPositions[entry] = parentPositionStart + i;
+                mChildCounts[entry] = childCounts[i];
+                mTotalChildCount += childCounts[i];
+                entry++;
+            }
+        }
+        mExpandedCount = newExpandedCount;
+        mTreeValid = false;
+    }
+
+    /**
+     * Encodes the expansion state of all parents as a bitset, bit {@code i % 64} of word
+     * {@code i / 64} being set if the parent at position {@code i} is expanded.
+     *
+     * @return The bitset, with one word per 64 parents
+     */
+    long[] getExpandedBits() {
+        long[] expandedBits = new long[(mParentCount + 63) >>> 6];
+        if (mDense) {
+            for (int i = 0; i < mParentCount; i++) {
+                if (mExpandedStates[i]) {
+                    expandedBits[i >>> 6] |= 1L << i;
+                }
+            }
+            return expandedBits;
+        }
+
+        for (int i = 0; i < mExpandedCount; i++) {
+            int parentPosition = mExpandedPositions[i];
+            expandedBits[parentPosition >>> 6] |= 1L << parentPosition;
+        }
+        return expandedBits;
+    }
+
+    /**
+     * @param expandedBits A bitset as returned by {@link #getExpandedBits()}
+     * @param parentPosition The position of the parent
+     * @return Whether the parent is marked as expanded in {@code expandedBits}, false if the
+     * bitset is too short to contain it
+     */
+    static boolean isExpanded(@NonNull long[] expandedBits, int parentPosition) {
+        int word = parentPosition >>> 6;
+        return word < expandedBits.length && (expandedBits[word] & (1L << parentPosition)) != 0;
+    }
+
+    /**
+     * Marks a parent as collapsed.
+     *
+     * @param parentPosition The position of the parent
+     */
+    void setCollapsed(int parentPosition) {
+        checkPosition(parentPosition, mParentCount);
+        if (mDense) {
+            if (mExpandedStates[parentPosition]) {
+                mExpandedStates[parentPosition] = false;
+                mExpandedCount--;
+                setEntryChildCount(parentPosition, 0);
+            }
+            return;
+        }
+
+        int entry = findEntry(parentPosition);
+        if (entry >= 0) {
+            removeEntries(entry, entry + 1);
+        }
+    }
+
+    /**
+     * @param parentPosition The position of the parent, may be equal to the parent count
+     * @return The flat position of the parent, or the total row count if
+     * {@code parentPosition} is equal to the parent count
+     */
+    int getFlatParentPosition(int parentPosition) {
+        checkPosition(parentPosition, mParentCount + 1);
+        if (mDense) {
+            return parentPosition + getChildCountBefore(parentPosition);
+        }
+
+        int entry = findEntry(parentPosition);
+        if (entry < 0) {
+            entry = -entry - 1;
+        }
+
+        return parentPosition + getChildCountBefore(entry);
+    }
+
+    /**
+     * @param flatPosition A position in the flat list of parents and children
+     * @return The position of the parent at or preceding {@code flatPosition},
+     * or {@link #INVALID_POSITION} if {@code flatPosition} is out of bounds
+     */
+    int getNearestParentPosition(int flatPosition) {
+        if (flatPosition < 0 || flatPosition >= getTotalRowCount()) {
+            return INVALID_POSITION;
+        }
+        if (mDense) {
+            return findDenseParent(flatPosition);
+        }
+
+        // Find the last expanded parent starting at or before flatPosition
+        int low = 0;
+        int high = mExpandedCount - 1;
+        int entry = -1;
+        int entryFlatPosition = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midFlatPosition = mExpandedPositions[mid] + getChildCountBefore(mid);
+            if (midFlatPosition <= flatPosition) {
+                entry = mid;
+                entryFlatPosition = midFlatPosition;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        if (entry == -1) {
+            // Only collapsed parents precede flatPosition
+            return flatPosition;
+        }
+
+        int entryEnd = entryFlatPosition + mChildCounts[entry];
+        if (flatPosition <= entryEnd) {
+            return mExpandedPositions[entry];
+        }
+        return mExpandedPositions[entry] + flatPosition - entryEnd;
+    }
+
+    /**
+     * @return The index of the entry for {@code parentPosition} if it is expanded, otherwise
+     * {@code -(insertion point) - 1}
+     */
+    private int findEntry(int parentPosition) {
+        int low = 0;
+        int high = mExpandedCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midPosition = mExpandedPositions[mid];
+            if (midPosition < parentPosition) {
+                low = mid + 1;
+            } else if (midPosition > parentPosition) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Finds the parent whose rows hold {@code flatPosition} by descending the tree, each node
+     * covering as many parent rows as parents plus the child rows it sums.
+     */
+    private int findDenseParent(int flatPosition) {
+        ensureTree();
+        int parentPosition = 0;
+        int remaining = flatPosition;
+        for (int step = Integer.highestOneBit(mParentCount); step > 0; step >>>= 1) {
+            int next = parentPosition + step;
+            if (next <= mParentCount && mTree[next] + step <= remaining) {
+                parentPosition = next;
+                remaining -= mTree[next] + step;
+            }
+        }
+        return parentPosition;
+    }
+
+    private void insertDenseParent(int parentPosition, boolean expanded, int childCount) {
+        int shownChildCount = expanded ? childCount : 0;
+        ensureCapacity(mParentCount + 1);
+        int tailCount = mParentCount - parentPosition;
+        System.arraycopy(mExpandedStates, parentPosition, mExpandedStates, parentPosition + 1, tailCount);
+        System.arraycopy(mChildCounts, parentPosition, mChildCounts, parentPosition + 1, tailCount);
+        mExpandedStates[parentPosition] = expanded;
+        mChildCounts[parentPosition] = shownChildCount;
+        mParentCount++;
+        mTotalChildCount += shownChildCount;
+        if (expanded) {
+            mExpandedCount++;
+        }
+
+        if (tailCount > 0) {
+            mTreeValid = false;
+        } else if (mTreeValid) {
+            // An appended node sums its own count and the entries it covers before it
+            int node = mParentCount;
+            int lowest = node & -node;
+            mTree[node] = shownChildCount + getChildCountBefore(node - 1) - getChildCountBefore(node - lowest);
+        }
+    }
+
+    private int removeDenseParents(int parentPositionStart, int parentCount) {
+        int parentPositionEnd = parentPositionStart + parentCount;
+        int removedChildCount = 0;
+        for (int i = parentPositionStart; i < parentPositionEnd; i++) {
+            removedChildCount += mChildCounts[i];
+            if (mExpandedStates[i]) {
+                mExpandedCount--;
+            }
+        }
+
+        int tailCount = mParentCount - parentPositionEnd;
+        System.arraycopy(mExpandedStates, parentPositionEnd, mExpandedStates, parentPositionStart, tailCount);
+        System.arraycopy(mChildCounts, parentPositionEnd, mChildCounts, parentPositionStart, tailCount);
+        mParentCount -= parentCount;
+        mTotalChildCount -= removedChildCount;
+        mTreeValid = false;
+        return parentCount + removedChildCount;
+    }
+
+    /**
+     * Sets the number of children shown by {@code entry}, updating the tree in place if it is
+     * valid.
+     */
+    private void setEntryChildCount(int entry, int childCount) {
+        int delta = childCount - mChildCounts[entry];
+        if (delta == 0) {
+            return;
+        }
+
+        mChildCounts[entry] = childCount;
+        mTotalChildCount += delta;
+        if (mTreeValid) {
+            int entryCount = getEntryCount();
+            for (int i = entry + 1; i <= entryCount; i += i & -i) {
+                mTree[i] += delta;
+            }
+        }
+    }
+
+    /**
+     * @return The number of entries, one per parent in the dense layout, one per expanded
+     * parent in the sparse layout
+     */
+    private int getEntryCount() {
+        return mDense ? mParentCount : mExpandedCount;
+    }
+
+    /**
+     * @return The number of child rows shown by the entries before {@code entry}
+     */
+    private int getChildCountBefore(int entry) {
+        if (entry == getEntryCount()) {
+            return mTotalChildCount;
+        }
+
+        ensureTree();
+        int childCount = 0;
+        for (int i = entry; i > 0; i -= i & -i) {
+            childCount += mTree[i];
+        }
+        return childCount;
+    }
+
+    private void insertEntry(int entry, int parentPosition, int childCount) {
+        ensureCapacity(mExpandedCount + 1);
+        System.arraycopy(mExpandedPositions, entry, mExpandedPositions, entry + 1, mExpandedCount - entry);
+        System.arraycopy(mChildCounts, entry, mChildCounts, entry + 1, mExpandedCount - entry);
+        mExpandedPositions[entry] = parentPosition;
+        mChildCounts[entry] = childCount;
+        mExpandedCount++;
+        mTotalChildCount += childCount;
+        mTreeValid = false;
+    }
+
+    private void removeEntries(int fromEntry, int toEntry) {
+        if (fromEntry == toEntry) {
+            return;
+        }
+
+        for (int i = fromEntry; i < toEntry; i++) {
+            mTotalChildCount -= mChildCounts[i];
+        }
+        System.arraycopy(mExpandedPositions, toEntry, mExpandedPositions, fromEntry, mExpandedCount - toEntry);
+        System.arraycopy(mChildCounts, toEntry, mChildCounts, fromEntry, mExpandedCount - toEntry);
+        mExpandedCount -= toEntry - fromEntry;
+        mTreeValid = false;
+    }
+
+    private void ensureTree() {
+        if (mTreeValid) {
+            return;
+        }
+
+        int[] tree = mTree;
+        int entryCount = getEntryCount();
+        System.arraycopy(mChildCounts, 0, tree, 1, entryCount);
+        for (int i = 1; i <= entryCount; i++) {
+            int parent = i + (i & -i);
+            if (parent <= entryCount) {
+                tree[parent] += tree[i];
+            }
+        }
+        mTreeValid = true;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mChildCounts.length) {
+            return;
+        }
+
+        int newCapacity = Math.max(capacity, mChildCounts.length + (mChildCounts.length >> 1));
+        int entryCount = getEntryCount();
+        if (mDense) {
+            boolean[] expandedStates = new boolean[newCapacity];
+            System.arraycopy(mExpandedStates, 0, expandedStates, 0, entryCount);
+            mExpandedStates = expandedStates;
+        } else {
+            int[] expandedPositions = new int[newCapacity];
+            System.arraycopy(mExpandedPositions, 0, expandedPositions, 0, entryCount);
+            mExpandedPositions = expandedPositions;
+        }
+        int[] childCounts = new int[newCapacity];
+        System.arraycopy(mChildCounts, 0, childCounts, 0, entryCount);
+        mChildCounts = childCounts;
+        mTree = new int[newCapacity + 1];
+        mTreeValid = false;
+    }
+
+    private void checkPosition(int position, int bound) {
+        if (position < 0 || position >= bound) {
+            throw new IndexOutOfBoundsException("Parent position " + position + " out of bounds, parent count " + mParentCount);
+        }
+    }
+}
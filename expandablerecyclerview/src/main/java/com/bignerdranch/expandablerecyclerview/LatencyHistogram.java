@@ -0,0 +1,128 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds with one bucket per power of two, recorded without
+ * locks or allocations so it can be fed from the main thread and read from any other.
+ * <p>
+ * Bucket {@code i} counts the durations from {@code 2^(i-1)} to {@code 2^i - 1} nanoseconds,
+ * bucket 0 counts the durations of 0 or less. Percentiles are
+ * therefore only known to a factor of two, which is plenty to tell a 50 microsecond bind from
+ * a 5 millisecond one. Each value is read atomically, but a snapshot read while durations are
+ * recorded may count a duration in one value and not yet in another.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * The number of buckets, enough for any positive long.
+     */
+    public static final int BUCKET_COUNT = 64;
+
+    private final AtomicLongArray mBucketCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mTotalNanos = new AtomicLong();
+    private final AtomicLong mMaxNanos = new AtomicLong();
+
+    /**
+     * Records one duration.
+     *
+     * @param durationNanos The duration in nanoseconds
+     */
+    public void record(long durationNanos) {
+        mBucketCounts.incrementAndGet(getBucket(durationNanos));
+        mCount.incrementAndGet();
+        mTotalNanos.addAndGet(durationNanos);
+
+        long maxNanos = mMaxNanos.get();
+        while (durationNanos > maxNanos && !mMaxNanos.compareAndSet(maxNanos, durationNanos)) {
+            maxNanos = mMaxNanos.get();
+        }
+    }
+
+    /**
+     * @return The number of durations recorded
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * @return The sum of the durations recorded, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return mTotalNanos.get();
+    }
+
+    /**
+     * @return The longest duration recorded, in nanoseconds, 0 if none was recorded
+     */
+    public long getMaxNanos() {
+        return mMaxNanos.get();
+    }
+
+    /**
+     * @return The mean of the durations recorded, in nanoseconds, 0 if none was recorded
+     */
+    public long getMeanNanos() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mTotalNanos.get() / count;
+    }
+
+    /**
+     * @param bucket The index of the bucket, from 0 to {@link #BUCKET_COUNT} excluded
+     * @return The number of durations recorded in the bucket
+     */
+    public long getBucketCount(int bucket) {
+        return mBucketCounts.get(bucket);
+    }
+
+    /**
+     * @param bucket The index of the bucket, from 0 to {@link #BUCKET_COUNT} excluded
+     * @return The longest duration counted in the bucket, in nanoseconds
+     */
+    public static long getBucketUpperBoundNanos(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    /**
+     * Estimates a percentile from the buckets, for instance 0.99 for the 99th percentile.
+     *
+     * @param fraction The fraction of the durations that are at most the returned value
+     * @return The upper bound of the bucket holding the percentile, capped at
+     * {@link #getMaxNanos()}, 0 if no duration was recorded
+     */
+    public long getPercentileNanos(double fraction) {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += mBucketCounts.get(i);
+        }
+        long rank = (long) Math.ceil(count * fraction);
+
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBucketCounts.get(i);
+            if (seen > 0 && seen >= rank) {
+                return Math.min(getBucketUpperBoundNanos(i), mMaxNanos.get());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Drops every duration recorded. Durations recorded while resetting may be partially kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBucketCounts.set(i, 0);
+        }
+        mCount.set(0);
+        mTotalNanos.set(0);
+        mMaxNanos.set(0);
+    }
+
+    private static int getBucket(long durationNanos) {
+        return durationNanos <= 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(durationNanos);
+    }
+}
@@ -0,0 +1,445 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.annotation.NonNull;
+
+import com.bignerdranch.expandablerecyclerview.model.Parent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Differences between two lists of parents, and between the children of every parent present
+ * in both lists, as computed with a {@link ParentListDiffCallback}.
+ * <p>
+ * Items are matched by id in O(n) through a hash map. Matched items that kept their relative
+ * order stay in place, the longest such run is found in O(n log n), and every other matched
+ * item is moved, so the number of moves is minimal. Each move is resolved in O(log n), so the
+ * whole diff takes O(n log n). Calculating the diff only reads the lists it is given and
+ * touches no adapter state, so it can run on any thread. It also resolves the removals, moves
+ * and insertions, which are only replayed on the thread dispatching them.
+ */
+final class ParentListDiff {
+
+    static final int NO_POSITION = -1;
+
+    /**
+     * Receives the structural changes turning an old list into a new one. Positions are
+     * relative to the list as it is after all the previous calls.
+     */
+    interface UpdateCallback {
+        void onRemoved(int position, int count);
+
+        void onMoved(int fromPosition, int toPosition);
+
+        void onInserted(int position, int count);
+    }
+
+    private final int[] mNewToOldParentPositions;
+    private final boolean[] mParentChanged;
+    private final UpdateList mParentUpdates = new UpdateList();
+    /**
+     * Old child counts by new parent position, {@link #NO_POSITION} for inserted parents and
+     * parents whose children weren't compared.
+     */
+    private final int[] mOldChildCounts;
+    /**
+     * Child updates by new parent position, null for parents whose children weren't compared.
+     */
+    private final UpdateList[] mChildUpdates;
+    /**
+     * Changed children by new parent position and new child position, null when none changed.
+     */
+    private final boolean[][] mChildChanged;
+
+    private ParentListDiff(int[] oldToNewParentPositions, int newParentCount) {
+        mNewToOldParentPositions = invert(oldToNewParentPositions, newParentCount);
+        mParentChanged = new boolean[newParentCount];
+        mOldChildCounts = new int[newParentCount];
+        Arrays.fill(mOldChildCounts, NO_POSITION);
+        mChildUpdates = new UpdateList[newParentCount];
+        mChildChanged = new boolean[newParentCount][];
+        dispatchUpdates(oldToNewParentPositions, mNewToOldParentPositions, mParentUpdates);
+    }
+
+    /**
+     * Compares {@code oldParentList} with {@code newParentList}, and the children of matched
+     * pairs of parents.
+     *
+     * @param oldChildLists The children of every old parent, by old parent position. Children
+     *                      are only compared for parents with a non null entry, those not shown
+     *                      can be left out.
+     */
+    @NonNull
+    static <P extends Parent<C>, C> ParentListDiff calculate(@NonNull List<P> oldParentList,
+                                                             @NonNull List<List<C>> oldChildLists,
+                                                             @NonNull List<P> newParentList,
+                                                             @NonNull ParentListDiffCallback<P, C> callback) {
+        int newParentCount = newParentList.size();
+        List<Object> oldParentIds = new ArrayList<>(oldParentList.size());
+        for (P parent : oldParentList) {
+            oldParentIds.add(callback.getParentId(parent));
+        }
+        List<Object> newParentIds = new ArrayList<>(newParentCount);
+        for (P parent : newParentList) {
+            newParentIds.add(callback.getParentId(parent));
+        }
+
+        ParentListDiff diff = new ParentListDiff(matchIds(oldParentIds, newParentIds), newParentCount);
+        for (int newParentPosition = 0; newParentPosition < newParentCount; newParentPosition++) {
+            int oldParentPosition = diff.mNewToOldParentPositions[newParentPosition];
+            if (oldParentPosition == NO_POSITION) {
+                continue;
+            }
+
+            P oldParent = oldParentList.get(oldParentPosition);
+            P newParent = newParentList.get(newParentPosition);
+            diff.mParentChanged[newParentPosition] = !callback.areParentContentsTheSame(oldParent, newParent);
+            List<C> oldChildList = oldChildLists.get(oldParentPosition);
+            if (oldChildList != null) {
+                diff.calculateChildren(newParentPosition, oldChildList, newParent.getChildList(), callback);
+            }
+        }
+        return diff;
+    }
+
+    private <P extends Parent<C>, C> void calculateChildren(int newParentPosition, List<C> oldChildList, List<C> newChildList,
+                                                            ParentListDiffCallback<P, C> callback) {
+        List<Object> oldChildIds = new ArrayList<>(oldChildList.size());
+        for (C child : oldChildList) {
+            oldChildIds.add(callback.getChildId(child));
+        }
+        List<Object> newChildIds = new ArrayList<>(newChildList.size());
+        for (C child : newChildList) {
+            newChildIds.add(callback.getChildId(child));
+        }
+
+        int[] oldToNewChildPositions = matchIds(oldChildIds, newChildIds);
+        boolean[] childChanged = null;
+        for (int oldChildPosition = 0; oldChildPosition < oldToNewChildPositions.length; oldChildPosition++) {
+            int newChildPosition = oldToNewChildPositions[oldChildPosition];
+            if (newChildPosition != NO_POSITION
+                    && !callback.areChildContentsTheSame(oldChildList.get(oldChildPosition), newChildList.get(newChildPosition))) {
+                if (childChanged == null) {
+                    childChanged = new boolean[newChildList.size()];
+                }
+                childChanged[newChildPosition] = true;
+            }
+        }
+        mOldChildCounts[newParentPosition] = oldToNewChildPositions.length;
+        mChildChanged[newParentPosition] = childChanged;
+        UpdateList childUpdates = new UpdateList();
+        dispatchUpdates(oldToNewChildPositions, invert(oldToNewChildPositions, newChildList.size()), childUpdates);
+        mChildUpdates[newParentPosition] = childUpdates;
+    }
+
+    /**
+     * @return The position in the old list of the parent now at {@code newParentPosition},
+     * or {@link #NO_POSITION} if it was inserted
+     */
+    int getOldParentPosition(int newParentPosition) {
+        return mNewToOldParentPositions[newParentPosition];
+    }
+
+    /**
+     * @return Whether the contents of the parent now at {@code newParentPosition} changed
+     */
+    boolean isParentChanged(int newParentPosition) {
+        return mParentChanged[newParentPosition];
+    }
+
+    /**
+     * @return The number of children the matched parent now at {@code newParentPosition} had
+     * in the old list, or {@link #NO_POSITION} if its children weren't compared
+     */
+    int getOldChildCount(int newParentPosition) {
+        return mOldChildCounts[newParentPosition];
+    }
+
+    /**
+     * @return Whether the contents of the child at {@code newChildPosition}, in the matched
+     * parent now at {@code newParentPosition}, changed
+     */
+    boolean isChildChanged(int newParentPosition, int newChildPosition) {
+        boolean[] childChanged = mChildChanged[newParentPosition];
+        return childChanged != null && childChanged[newChildPosition];
+    }
+
+    /**
+     * Dispatches the removals, moves and insertions turning the old list of parents into the
+     * new one, as resolved by {@link #calculate}.
+     */
+    void dispatchParentUpdates(@NonNull UpdateCallback callback) {
+        mParentUpdates.replay(callback);
+    }
+
+    /**
+     * Dispatches the removals, moves and insertions turning the old children of the matched
+     * parent now at {@code newParentPosition} into its new children, as resolved by
+     * {@link #calculate}. Nothing is dispatched if its children weren't compared.
+     */
+    void dispatchChildUpdates(int newParentPosition, @NonNull UpdateCallback callback) {
+        UpdateList childUpdates = mChildUpdates[newParentPosition];
+        if (childUpdates != null) {
+            childUpdates.replay(callback);
+        }
+    }
+
+    /**
+     * Matches every old id to the first unmatched equal id in the new list.
+     *
+     * @return The new position of every old item, {@link #NO_POSITION} for removed items
+     */
+    private static int[] matchIds(List<Object> oldIds, List<Object> newIds) {
+        int newSize = newIds.size();
+        Map<Object, Integer> firstNewPositions = new HashMap<>(newSize * 4 / 3 + 1);
+        // Chains the positions of duplicate ids, so each of them is matched once
+        int[] nextNewPositions = new int[newSize];
+        for (int i = newSize - 1; i >= 0; i--) {
+            Integer next = firstNewPositions.put(newIds.get(i), i);
+            nextNewPositions[i] = next == null ? NO_POSITION : next;
+        }
+
+        int oldSize = oldIds.size();
+        int[] oldToNewPositions = new int[oldSize];
+        for (int i = 0; i < oldSize; i++) {
+            Object id = oldIds.get(i);
+            Integer newPosition = firstNewPositions.get(id);
+            if (newPosition == null) {
+                oldToNewPositions[i] = NO_POSITION;
+                continue;
+            }
+
+            oldToNewPositions[i] = newPosition;
+            int next = nextNewPositions[newPosition];
+            if (next == NO_POSITION) {
+                firstNewPositions.remove(id);
+            } else {
+                firstNewPositions.put(id, next);
+            }
+        }
+        return oldToNewPositions;
+    }
+
+    private static int[] invert(int[] oldToNewPositions, int newSize) {
+        int[] newToOldPositions = new int[newSize];
+        Arrays.fill(newToOldPositions, NO_POSITION);
+        for (int i = 0; i < oldToNewPositions.length; i++) {
+            if (oldToNewPositions[i] != NO_POSITION) {
+                newToOldPositions[oldToNewPositions[i]] = i;
+            }
+        }
+        return newToOldPositions;
+    }
+
+    /**
+     * Removes unmatched old items from the back, moves the matched items that are not part of
+     * the longest increasing run of new positions right after their new predecessor, then
+     * inserts unmatched new items from the front.
+     * <p>
+     * Every place an item occupies over the moves, its place before moving and the place after
+     * its predecessor it is moved to, is laid out in advance in one sequence of slots. The
+     * current position of an item is then the number of occupied slots before its own, counted
+     * in O(log n) by a Fenwick tree.
+     */
+    static void dispatchUpdates(int[] oldToNewPositions, int[] newToOldPositions, UpdateCallback callback) {
+        int oldPosition = oldToNewPositions.length - 1;
+        while (oldPosition >= 0) {
+            if (oldToNewPositions[oldPosition] != NO_POSITION) {
+                oldPosition--;
+                continue;
+            }
+            int end = oldPosition + 1;
+            while (oldPosition >= 0 && oldToNewPositions[oldPosition] == NO_POSITION) {
+                oldPosition--;
+            }
+            callback.onRemoved(oldPosition + 1, end - oldPosition - 1);
+        }
+
+        // New positions of the remaining items, in their current order
+        int newSize = newToOldPositions.length;
+        int[] current = new int[oldToNewPositions.length];
+        int count = 0;
+        for (int newPosition : oldToNewPositions) {
+            if (newPosition != NO_POSITION) {
+                current[count++] = newPosition;
+            }
+        }
+        boolean[] stable = findLongestIncreasingRun(current, count, newSize);
+
+        // The matched new position following each one, skipping items to be inserted
+        int[] nextMatched = new int[newSize];
+        int firstMatched = NO_POSITION;
+        for (int newPosition = newSize - 1; newPosition >= 0; newPosition--) {
+            nextMatched[newPosition] = firstMatched;
+            if (newToOldPositions[newPosition] != NO_POSITION) {
+                firstMatched = newPosition;
+            }
+        }
+
+        // A moved item's slot comes right after the slot its predecessor occupies by then, which
+        // is its own slot if it stays in place and the slot it is moved to otherwise
+        int[] slots = new int[newSize];
+        int[] movedSlots = new int[newSize];
+        int slotCount = 0;
+        if (firstMatched != NO_POSITION && !stable[firstMatched]) {
+            slotCount = layOutMovedSlots(NO_POSITION, firstMatched, stable, nextMatched, movedSlots, slotCount);
+        }
+        for (int i = 0; i < count; i++) {
+            int newPosition = current[i];
+            slots[newPosition] = slotCount++;
+            if (stable[newPosition]) {
+                slotCount = layOutMovedSlots(newPosition, firstMatched, stable, nextMatched, movedSlots, slotCount);
+            }
+        }
+
+        int[] tree = new int[slotCount + 1];
+        for (int i = 0; i < count; i++) {
+            addToTree(tree, slots[current[i]], 1);
+        }
+        for (int newPosition = firstMatched; newPosition != NO_POSITION; newPosition = nextMatched[newPosition]) {
+            if (stable[newPosition]) {
+                continue;
+            }
+            int from = countBefore(tree, slots[newPosition]);
+            addToTree(tree, slots[newPosition], -1);
+            int to = countBefore(tree, movedSlots[newPosition]);
+            addToTree(tree, movedSlots[newPosition], 1);
+            if (from != to) {
+                callback.onMoved(from, to);
+            }
+        }
+
+        int newPosition = 0;
+        while (newPosition < newSize) {
+            if (newToOldPositions[newPosition] != NO_POSITION) {
+                newPosition++;
+                continue;
+            }
+            int start = newPosition;
+            while (newPosition < newSize && newToOldPositions[newPosition] == NO_POSITION) {
+                newPosition++;
+            }
+            callback.onInserted(start, newPosition - start);
+        }
+    }
+
+    /**
+     * Lays out the slots of the moved items following {@code newPosition}, or of those at the
+     * front if {@link #NO_POSITION}, each one right after the previous.
+     *
+     * @return The number of slots laid out so far
+     */
+    private static int layOutMovedSlots(int newPosition, int firstMatched, boolean[] stable, int[] nextMatched,
+                                        int[] movedSlots, int slotCount) {
+        int next = newPosition == NO_POSITION ? firstMatched : nextMatched[newPosition];
+        while (next != NO_POSITION && !stable[next]) {
+            movedSlots[next] = slotCount++;
+            next = nextMatched[next];
+        }
+        return slotCount;
+    }
+
+    private static void addToTree(int[] tree, int slot, int delta) {
+        for (int i = slot + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @return The number of occupied slots before {@code slot}
+     */
+    private static int countBefore(int[] tree, int slot) {
+        int count = 0;
+        for (int i = slot; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    /**
+     * @return Flags, by new position, of the items forming the longest increasing subsequence
+     * of {@code newPositions}
+     */
+    private static boolean[] findLongestIncreasingRun(int[] newPositions, int size, int newSize) {
+        int[] tails = new int[size];
+        int[] predecessors = new int[size];
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            int value = newPositions[i];
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (newPositions[tails[mid]] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            predecessors[i] = low > 0 ? tails[low - 1] : NO_POSITION;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        boolean[] stable = new boolean[newSize];
+        for (int i = length > 0 ? tails[length - 1] : NO_POSITION; i != NO_POSITION; i = predecessors[i]) {
+            stable[newPositions[i]] = true;
+        }
+        return stable;
+    }
+
+    /**
+     * Updates recorded as they are dispatched, three ints each, to be replayed later.
+     */
+    private static final class UpdateList implements UpdateCallback {
+
+        private static final int REMOVED = 0;
+        private static final int MOVED = 1;
+        private static final int INSERTED = 2;
+
+        private int[] mUpdates = new int[12];
+        private int mSize;
+
+        @Override
+        public void onRemoved(int position, int count) {
+            add(REMOVED, position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            add(MOVED, fromPosition, toPosition);
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            add(INSERTED, position, count);
+        }
+
+        private void add(int type, int first, int second) {
+            if (mSize + 3 > mUpdates.length) {
+                mUpdates = Arrays.copyOf(mUpdates, mUpdates.length * 2);
+            }
+            mUpdates[mSize++] = type;
+            mUpdates[mSize++] = first;
+            mUpdates[mSize++] = second;
+        }
+
+        void replay(UpdateCallback callback) {
+            for (int i = 0; i < mSize; i += 3) {
+                int type = mUpdates[i];
+                if (type == REMOVED) {
+                    callback.onRemoved(mUpdates[i + 1], mUpdates[i + 2]);
+                } else if (type == MOVED) {
+                    callback.onMoved(mUpdates[i + 1], mUpdates[i + 2]);
+                } else {
+                    callback.onInserted(mUpdates[i + 1], mUpdates[i + 2]);
+                }
+            }
+        }
+    }
+}
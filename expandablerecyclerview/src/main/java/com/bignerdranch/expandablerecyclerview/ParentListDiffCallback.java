@@ -0,0 +1,62 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.bignerdranch.expandablerecyclerview.model.Parent;
+
+/**
+ * Callback used by {@link ExpandableRecyclerAdapter#setParentList(java.util.List, ParentListDiffCallback)}
+ * to compare an old list of parents with a new one.
+ * <p>
+ * Parents are matched between the two lists by {@link #getParentId(Parent)}, and the children of
+ * matched parents are matched by {@link #getChildId(Object)}. Ids are compared with
+ * {@link Object#equals(Object)} and {@link Object#hashCode()}, so matching is linear in the
+ * size of the lists. Matched items whose contents differ are rebound, everything else is
+ * moved, inserted or removed.
+ *
+ * @param <P> Type of the parents
+ * @param <C> Type of the children held by the parents
+ */
+public abstract class ParentListDiffCallback<P extends Parent<C>, C> {
+
+    /**
+     * Returns a value identifying {@code parent}, the same for the old and new version of a
+     * parent even if its contents changed.
+     *
+     * @param parent A parent from the old or the new list
+     * @return The id of the parent
+     */
+    @Nullable
+    public abstract Object getParentId(@NonNull P parent);
+
+    /**
+     * Called for parents with the same id to decide whether the parent row must be rebound.
+     * Children are compared separately, through {@link #areChildContentsTheSame(Object, Object)}.
+     *
+     * @param oldParent The parent in the old list
+     * @param newParent The parent with the same id in the new list
+     * @return true if the parent row would look the same
+     */
+    public abstract boolean areParentContentsTheSame(@NonNull P oldParent, @NonNull P newParent);
+
+    /**
+     * Returns a value identifying {@code child} within its parent, the same for the old and new
+     * version of a child even if its contents changed.
+     *
+     * @param child A child of a parent from the old or the new list
+     * @return The id of the child
+     */
+    @Nullable
+    public abstract Object getChildId(@NonNull C child);
+
+    /**
+     * Called for children with the same id under parents with the same id to decide whether
+     * the child row must be rebound.
+     *
+     * @param oldChild The child in the old list
+     * @param newChild The child with the same id in the new list
+     * @return true if the child row would look the same
+     */
+    public abstract boolean areChildContentsTheSame(@NonNull C oldChild, @NonNull C newChild);
+}
@@ -0,0 +1,60 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.annotation.NonNull;
+
+import com.bignerdranch.expandablerecyclerview.model.Parent;
+
+/**
+ * Filter used by {@link ExpandableRecyclerAdapter#setFilter(ParentListFilter, boolean)} to
+ * decide which parents and children are shown.
+ * <p>
+ * A parent is shown if {@link #isParentShown(Parent)} returns true, unless it has children
+ * and none of them is shown while {@link #shouldHideParentsWithoutShownChildren()} returns
+ * true. The children of a shown parent are those for which
+ * {@link #isChildShown(Parent, Object)} returns true, in the order of its child list.
+ *
+ * @param <P> Type of the parents
+ * @param <C> Type of the children held by the parents
+ */
+public abstract class ParentListFilter<P extends Parent<C>, C> {
+
+    /**
+     * The default implementation shows every parent.
+     *
+     * @param parent The parent to test
+     * @return true if the parent passes the filter
+     */
+    public boolean isParentShown(@NonNull P parent) {
+        return true;
+    }
+
+    /**
+     * The default implementation shows every child.
+     *
+     * @param parent The parent of {@code child}, which passes {@link #isParentShown(Parent)}
+     * @param child The child to test
+     * @return true if the child passes the filter
+     */
+    public boolean isChildShown(@NonNull P parent, @NonNull C child) {
+        return true;
+    }
+
+    /**
+     * The default implementation returns true, parents whose children all fail the filter are
+     * hidden. Parents without any children are not affected.
+     *
+     * @return true to hide parents left without shown children
+     */
+    public boolean shouldHideParentsWithoutShownChildren() {
+        return true;
+    }
+
+    /**
+     * The default implementation returns false, parents keep their expanded state.
+     *
+     * @return true to expand every shown parent that has shown children when the filter is set
+     */
+    public boolean shouldExpandParentsWithShownChildren() {
+        return false;
+    }
+}
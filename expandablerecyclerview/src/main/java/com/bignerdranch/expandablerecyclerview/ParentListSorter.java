@@ -0,0 +1,258 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.UiThread;
+
+import com.bignerdranch.expandablerecyclerview.model.Parent;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the parents of an {@link ExpandableRecyclerAdapter}, and the children of every parent,
+ * sorted as they are added and updated, in the spirit of
+ * {@code android.support.v7.util.SortedList}.
+ * <p>
+ * Adding a parent or a child finds its position with a binary search and notifies a single
+ * insertion. Updating one checks it against its neighbours, and only if its sort key moved it
+ * out of place looks up its new position with a binary search and notifies a single move, so
+ * nothing is re-sorted. Only the updated row is then notified as changed, an updated parent
+ * with {@link #PAYLOAD_ITEM_UPDATED} so that its children are left as they are. Items that
+ * compare equal keep the order they were added in.
+ * <p>
+ * The sorter owns the parent list of the adapter, which must be mutable and must not be
+ * changed by anything else while the sorter is in use. The same goes for the child lists of
+ * the parents when a child comparator is given. While a filter is set on the adapter, its parent
+ * list only holds the shown parents, so every method of the sorter, including the constructor,
+ * throws an {@link IllegalStateException} until the filter is cleared.
+ *
+ * @param <P> Type of the parents
+ * @param <C> Type of the children held by the parents
+ */
+public class ParentListSorter<P extends Parent<C>, C> {
+
+    /**
+     * Payload of the change notified for the row of a parent updated through
+     * {@link #updateParentAt(int, Parent)}, which doesn't cover its children.
+     */
+    public static final Object PAYLOAD_ITEM_UPDATED = new Object();
+
+    @NonNull
+    private final ExpandableRecyclerAdapter<P, C, ?, ?> mAdapter;
+
+    @NonNull
+    private final Comparator<? super P> mParentComparator;
+
+    @Nullable
+    private final Comparator<? super C> mChildComparator;
+
+    /**
+     * Attaches a sorter to {@code adapter}, sorting its parents, and their children if
+     * {@code childComparator} is given, if they are not sorted yet.
+     *
+     * @param adapter The adapter whose parents to keep sorted
+     * @param parentComparator The order of the parents
+     * @param childComparator The order of the children of every parent, or null to leave the
+     *                        children in the order they are in
+     * @throws IllegalStateException If a filter is set on {@code adapter}
+     */
+    @UiThread
+    public ParentListSorter(@NonNull ExpandableRecyclerAdapter<P, C, ?, ?> adapter,
+                            @NonNull Comparator<? super P> parentComparator,
+                            @Nullable Comparator<? super C> childComparator) {
+        mAdapter = adapter;
+        mParentComparator = parentComparator;
+        mChildComparator = childComparator;
+
+        List<P> parentList = requireUnfilteredParentList();
+        boolean sorted = isSorted(parentList, parentComparator);
+        if (childComparator != null) {
+            for (int i = 0; i < parentList.size(); i++) {
+                sorted &= isSorted(parentList.get(i).getChildList(), childComparator);
+            }
+        }
+        if (!sorted) {
+            Collections.sort(parentList, parentComparator);
+            if (childComparator != null) {
+                for (int i = 0; i < parentList.size(); i++) {
+                    Collections.sort(parentList.get(i).getChildList(), childComparator);
+                }
+            }
+            adapter.notifyParentDataSetChanged(true);
+        }
+    }
+
+    /**
+     * Inserts {@code parent} at its sorted position, after the parents that compare equal.
+     *
+     * @param parent The parent to add
+     * @return The position the parent was inserted at
+     * @throws IllegalStateException If a filter is set on the adapter
+     */
+    @UiThread
+    public int addParent(@NonNull P parent) {
+        List<P> parentList = requireUnfilteredParentList();
+        int parentPosition = findInsertPosition(parentList, parent, mParentComparator);
+        parentList.add(parentPosition, parent);
+        mAdapter.notifyParentInserted(parentPosition);
+        return parentPosition;
+    }
+
+    /**
+     * Replaces the parent at {@code parentPosition} with {@code parent}, which may be the same
+     * instance with a changed sort key, and moves it to its sorted position. Only the row of the
+     * parent is notified as changed, its children must not have changed.
+     *
+     * @param parentPosition The position of the parent to update
+     * @param parent The new version of the parent
+     * @return The position of the parent once sorted
+     * @throws IllegalStateException If a filter is set on the adapter
+     */
+    @UiThread
+    public int updateParentAt(int parentPosition, @NonNull P parent) {
+        List<P> parentList = requireUnfilteredParentList();
+        parentList.set(parentPosition, parent);
+        int newParentPosition = parentPosition;
+        if (!isInPlace(parentList, parentPosition, mParentComparator)) {
+            parentList.remove(parentPosition);
+            newParentPosition = findInsertPosition(parentList, parent, mParentComparator);
+            parentList.add(newParentPosition, parent);
+            mAdapter.notifyParentMoved(parentPosition, newParentPosition);
+        }
+        mAdapter.notifyParentChanged(newParentPosition, PAYLOAD_ITEM_UPDATED);
+        return newParentPosition;
+    }
+
+    /**
+     * Removes the parent at {@code parentPosition}.
+     *
+     * @param parentPosition The position of the parent to remove
+     * @return The removed parent
+     * @throws IllegalStateException If a filter is set on the adapter
+     */
+    @NonNull
+    @UiThread
+    public P removeParentAt(int parentPosition) {
+        P parent = requireUnfilteredParentList().remove(parentPosition);
+        mAdapter.notifyParentRemoved(parentPosition);
+        return parent;
+    }
+
+    /**
+     * Inserts {@code child} at its sorted position among the children of the parent at
+     * {@code parentPosition}, after the children that compare equal.
+     *
+     * @param parentPosition The position of the parent to add the child to
+     * @param child The child to add
+     * @return The position the child was inserted at
+     * @throws IllegalStateException If no child comparator was given, or a filter is set on the
+     *                               adapter
+     */
+    @UiThread
+    public int addChild(int parentPosition, @NonNull C child) {
+        Comparator<? super C> childComparator = requireChildComparator();
+        List<C> childList = requireUnfilteredParentList().get(parentPosition).getChildList();
+        int childPosition = findInsertPosition(childList, child, childComparator);
+        childList.add(childPosition, child);
+        mAdapter.notifyChildInserted(parentPosition, childPosition);
+        return childPosition;
+    }
+
+    /**
+     * Replaces the child at {@code childPosition} of the parent at {@code parentPosition} with
+     * {@code child}, which may be the same instance with a changed sort key, and moves it to its
+     * sorted position.
+     *
+     * @param parentPosition The position of the parent of the child
+     * @param childPosition The position of the child to update
+     * @param child The new version of the child
+     * @return The position of the child once sorted
+     * @throws IllegalStateException If no child comparator was given, or a filter is set on the
+     *                               adapter
+     */
+    @UiThread
+    public int updateChildAt(int parentPosition, int childPosition, @NonNull C child) {
+        Comparator<? super C> childComparator = requireChildComparator();
+        List<C> childList = requireUnfilteredParentList().get(parentPosition).getChildList();
+        childList.set(childPosition, child);
+        int newChildPosition = childPosition;
+        if (!isInPlace(childList, childPosition, childComparator)) {
+            childList.remove(childPosition);
+            newChildPosition = findInsertPosition(childList, child, childComparator);
+            childList.add(newChildPosition, child);
+            mAdapter.notifyChildMoved(parentPosition, childPosition, newChildPosition);
+        }
+        mAdapter.notifyChildChanged(parentPosition, newChildPosition);
+        return newChildPosition;
+    }
+
+    /**
+     * Removes the child at {@code childPosition} of the parent at {@code parentPosition}.
+     *
+     * @param parentPosition The position of the parent of the child
+     * @param childPosition The position of the child to remove
+     * @return The removed child
+     * @throws IllegalStateException If a filter is set on the adapter
+     */
+    @NonNull
+    @UiThread
+    public C removeChildAt(int parentPosition, int childPosition) {
+        C child = requireUnfilteredParentList().get(parentPosition).getChildList().remove(childPosition);
+        mAdapter.notifyChildRemoved(parentPosition, childPosition);
+        return child;
+    }
+
+    @NonNull
+    private List<P> requireUnfilteredParentList() {
+        if (mAdapter.getFilter() != null) {
+            throw new IllegalStateException("A filter is set, the parent list only holds the shown parents");
+        }
+        return mAdapter.getParentList();
+    }
+
+    @NonNull
+    private Comparator<? super C> requireChildComparator() {
+        if (mChildComparator == null) {
+            throw new IllegalStateException("No child comparator given, children are not sorted");
+        }
+        return mChildComparator;
+    }
+
+    /**
+     * @return The position after the last item of {@code list} that doesn't compare greater
+     * than {@code item}
+     */
+    private static <T> int findInsertPosition(@NonNull List<T> list, @NonNull T item, @NonNull Comparator<? super T> comparator) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (comparator.compare(list.get(middle), item) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return true if the item at {@code position} is still sorted relative to its neighbours
+     */
+    private static <T> boolean isInPlace(@NonNull List<T> list, int position, @NonNull Comparator<? super T> comparator) {
+        T item = list.get(position);
+        return (position == 0 || comparator.compare(list.get(position - 1), item) <= 0)
+                && (position == list.size() - 1 || comparator.compare(item, list.get(position + 1)) <= 0);
+    }
+
+    private static <T> boolean isSorted(@NonNull List<T> list, @NonNull Comparator<? super T> comparator) {
+        for (int i = 1; i < list.size(); i++) {
+            if (comparator.compare(list.get(i - 1), list.get(i)) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
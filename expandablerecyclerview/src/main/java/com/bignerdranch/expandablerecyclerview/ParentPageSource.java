@@ -0,0 +1,27 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.UiThread;
+
+/**
+ * Source of pages of parents for a {@link ParentPager}.
+ *
+ * @param <P> Type of the parents
+ */
+public interface ParentPageSource<P> {
+
+    /**
+     * Called on the main thread to load a page of parents. The load can be done synchronously
+     * or on another thread, as long as exactly one method of {@code callback} is called once
+     * it is done.
+     * <p>
+     * Pages are numbered in display order from the page the pager started with. Pages before
+     * the first one or after the last one should be reported as empty, which stops the pager
+     * from loading further in that direction.
+     *
+     * @param page The number of the page to load, may be negative
+     * @param callback The callback to hand the parents of the page to
+     */
+    @UiThread
+    void loadPage(int page, @NonNull ParentPager.LoadCallback<P> callback);
+}
@@ -0,0 +1,294 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.UiThread;
+
+import com.bignerdranch.expandablerecyclerview.model.Parent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the parents of an {@link ExpandableRecyclerAdapter} page by page from a
+ * {@link ParentPageSource}, in both directions, as the list is scrolled.
+ * <p>
+ * Whenever a parent within {@code prefetchDistance} parents of either end of the loaded
+ * pages is bound, the adjacent page is requested and inserted with
+ * {@link ExpandableRecyclerAdapter#notifyParentRangeInserted(int, int)}. At most
+ * {@code maxPageCount} pages are held, loading one more drops the page at the opposite end,
+ * which is the farthest from what is on screen, with
+ * {@link ExpandableRecyclerAdapter#notifyParentRangeRemoved(int, int)}. Dropped pages are
+ * loaded again when scrolling back to them.
+ * <p>
+ * The pager owns the parent list of the adapter, which must be mutable and must not be changed
+ * by anything else while the pager is in use. Page requests and insertions are posted to the
+ * main thread rather than run while a row is being bound.
+ * <p>
+ * While a filter is set on the adapter, its parent list only holds the shown parents, so the
+ * pager is paused: {@link #start(int)} throws an {@link IllegalStateException}, binding requests
+ * no page and a page loaded meanwhile is dropped, to be requested again once the filter is
+ * cleared and a parent near that end is bound.
+ *
+ * @param <P> Type of the parents
+ * @param <C> Type of the children held by the parents
+ */
+public class ParentPager<P extends Parent<C>, C> {
+
+    /**
+     * Receives the result of {@link ParentPageSource#loadPage(int, LoadCallback)}. Can be
+     * called from any thread.
+     *
+     * @param <P> Type of the parents
+     */
+    public interface LoadCallback<P> {
+
+        /**
+         * @param parentList The parents of the page, empty if there is no such page
+         */
+        void onPageLoaded(@NonNull List<P> parentList);
+
+        /**
+         * Allows the page to be requested again the next time a parent near it is bound.
+         */
+        void onPageLoadFailed();
+    }
+
+    @NonNull
+    private final ExpandableRecyclerAdapter<P, C, ?, ?> mAdapter;
+
+    @NonNull
+    private final ParentPageSource<P> mPageSource;
+
+    private final int mPrefetchDistance;
+    private final int mMaxPageCount;
+
+    /**
+     * Number of parents in each loaded page, in display order.
+     */
+    @NonNull
+    private final List<Integer> mPageSizes;
+
+    private int mFirstPage;
+    private boolean mLoadingBefore;
+    private boolean mLoadingAfter;
+    private boolean mEndReachedBefore;
+    private boolean mEndReachedAfter;
+
+    /**
+     * Incremented by {@link #start(int)} so that loads started before are ignored.
+     */
+    private int mGeneration;
+
+    /**
+     * Attaches a pager to {@code adapter}, nothing is loaded until {@link #start(int)} is called.
+     *
+     * @param adapter The adapter to load parents into, one pager per adapter
+     * @param pageSource The source of the pages
+     * @param prefetchDistance How close, in parents, a bound parent must be to either end of the
+     *                         loaded pages for the next page in that direction to be requested
+     * @param maxPageCount The number of pages held at most, at least 2
+     */
+    @UiThread
+    public ParentPager(@NonNull ExpandableRecyclerAdapter<P, C, ?, ?> adapter, @NonNull ParentPageSource<P> pageSource,
+                       int prefetchDistance, int maxPageCount) {
+        if (maxPageCount < 2) {
+            throw new IllegalArgumentException("maxPageCount must be at least 2, was " + maxPageCount);
+        }
+
+        mAdapter = adapter;
+        mPageSource = pageSource;
+        mPrefetchDistance = prefetchDistance;
+        mMaxPageCount = maxPageCount;
+        mPageSizes = new ArrayList<>();
+        adapter.mParentPager = this;
+    }
+
+    /**
+     * Removes all the parents from the adapter and loads {@code page}, then the pages around it
+     * as they are needed.
+     *
+     * @param page The number of the first page to load
+     * @throws IllegalStateException If a filter is set on the adapter
+     */
+    @UiThread
+    public void start(int page) {
+        if (mAdapter.getFilter() != null) {
+            throw new IllegalStateException("A filter is set, the parent list only holds the shown parents");
+        }
+
+        mGeneration++;
+        List<P> parentList = mAdapter.getParentList();
+        int parentCount = parentList.size();
+        if (parentCount > 0) {
+            parentList.clear();
+            mAdapter.notifyParentRangeRemoved(0, parentCount);
+        }
+
+        mPageSizes.clear();
+        mFirstPage = page;
+        mLoadingBefore = false;
+        mEndReachedBefore = false;
+        mEndReachedAfter = false;
+        requestPage(page, false);
+    }
+
+    /**
+     * @return The number of the first page held
+     */
+    @UiThread
+    public int getFirstPage() {
+        return mFirstPage;
+    }
+
+    /**
+     * @return The number of pages held
+     */
+    @UiThread
+    public int getPageCount() {
+        return mPageSizes.size();
+    }
+
+    /**
+     * Called by the adapter for the parent of every bound row.
+     */
+    @UiThread
+    void onParentBound(int parentPosition) {
+        if (mPageSizes.isEmpty() || mAdapter.getFilter() != null) {
+            return;
+        }
+
+        int parentCount = mAdapter.getParentList().size();
+        if (!mLoadingAfter && !mEndReachedAfter && parentPosition >= parentCount - mPrefetchDistance) {
+            requestPage(getLastPage() + 1, false);
+        }
+        if (!mLoadingBefore && !mEndReachedBefore && parentPosition < mPrefetchDistance) {
+            requestPage(mFirstPage - 1, true);
+        }
+    }
+
+    private int getLastPage() {
+        return mFirstPage + mPageSizes.size() - 1;
+    }
+
+    private void requestPage(final int page, final boolean before) {
+        if (before) {
+            mLoadingBefore = true;
+        } else {
+            mLoadingAfter = true;
+        }
+
+        final int generation = mGeneration;
+        mAdapter.getMainThreadExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generation == mGeneration) {
+                    mPageSource.loadPage(page, new PageLoadCallback(generation, page, before));
+                }
+            }
+        });
+    }
+
+    @UiThread
+    private void onPageLoaded(int page, boolean before, @NonNull List<P> loadedParentList) {
+        if (before) {
+            mLoadingBefore = false;
+        } else {
+            mLoadingAfter = false;
+        }
+
+        // A page dropped meanwhile at this end makes the loaded page no longer adjacent, and a
+        // filter set meanwhile leaves no room for it
+        int expectedPage = before ? mFirstPage - 1 : getLastPage() + 1;
+        if (page != expectedPage || mAdapter.getFilter() != null) {
+            return;
+        }
+
+        int loadedCount = loadedParentList.size();
+        if (loadedCount == 0) {
+            if (before) {
+                mEndReachedBefore = true;
+            } else {
+                mEndReachedAfter = true;
+            }
+            return;
+        }
+
+        List<P> parentList = mAdapter.getParentList();
+        if (before) {
+            parentList.addAll(0, loadedParentList);
+            mPageSizes.add(0, loadedCount);
+            mFirstPage = page;
+            mAdapter.notifyParentRangeInserted(0, loadedCount);
+            if (mPageSizes.size() > mMaxPageCount) {
+                dropLastPage();
+            }
+        } else {
+            int parentPositionStart = parentList.size();
+            parentList.addAll(loadedParentList);
+            mPageSizes.add(loadedCount);
+            mAdapter.notifyParentRangeInserted(parentPositionStart, loadedCount);
+            if (mPageSizes.size() > mMaxPageCount) {
+                dropFirstPage();
+            }
+        }
+    }
+
+    private void dropFirstPage() {
+        int pageSize = mPageSizes.remove(0);
+        mAdapter.getParentList().subList(0, pageSize).clear();
+        mFirstPage++;
+        mEndReachedBefore = false;
+        mAdapter.notifyParentRangeRemoved(0, pageSize);
+    }
+
+    private void dropLastPage() {
+        int pageSize = mPageSizes.remove(mPageSizes.size() - 1);
+        List<P> parentList = mAdapter.getParentList();
+        int parentPositionStart = parentList.size() - pageSize;
+        parentList.subList(parentPositionStart, parentList.size()).clear();
+        mEndReachedAfter = false;
+        mAdapter.notifyParentRangeRemoved(parentPositionStart, pageSize);
+    }
+
+    private class PageLoadCallback implements LoadCallback<P> {
+
+        private final int mLoadGeneration;
+        private final int mPage;
+        private final boolean mBefore;
+
+        PageLoadCallback(int generation, int page, boolean before) {
+            mLoadGeneration = generation;
+            mPage = page;
+            mBefore = before;
+        }
+
+        @Override
+        public void onPageLoaded(@NonNull final List<P> parentList) {
+            mAdapter.getMainThreadExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (mLoadGeneration == mGeneration) {
+                        ParentPager.this.onPageLoaded(mPage, mBefore, parentList);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onPageLoadFailed() {
+            mAdapter.getMainThreadExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (mLoadGeneration != mGeneration) {
+                        return;
+                    }
+                    if (mBefore) {
+                        mLoadingBefore = false;
+                    } else {
+                        mLoadingAfter = false;
+                    }
+                }
+            });
+        }
+    }
+}
@@ -25,6 +25,14 @@ public class ParentViewHolder<P extends Parent<C>, C> extends RecyclerView.ViewH
     P mParent;
     ExpandableRecyclerAdapter mExpandableAdapter;
 
+    /**
+     * Flat position the parent position was resolved for, and the structure version of the
+     * adapter at the time, see {@link #cachePositions(int, int, int)}.
+     */
+    private int mCachedFlatPosition = RecyclerView.NO_POSITION;
+    private int mCachedParentPosition;
+    private int mCachedStructureVersion;
+
     /**
      * Empowers {@link com.bignerdranch.expandablerecyclerview.ExpandableRecyclerAdapter}
      * implementations to be notified of expand/collapse state change events.
@@ -82,7 +90,32 @@ public class ParentViewHolder<P extends Parent<C>, C> extends RecyclerView.ViewH
             return flatPosition;
         }
 
-        return mExpandableAdapter.getNearestParentPosition(flatPosition);
+        return getParentAdapterPosition(flatPosition);
+    }
+
+    /**
+     * @param flatPosition The adapter position of this ViewHolder
+     * @return The position of its parent, cached until rows are inserted, removed or moved
+     */
+    @UiThread
+    int getParentAdapterPosition(int flatPosition) {
+        if (flatPosition != mCachedFlatPosition || mExpandableAdapter.mStructureVersion != mCachedStructureVersion) {
+            cachePositions(flatPosition, mExpandableAdapter.getNearestParentPosition(flatPosition),
+                    mExpandableAdapter.mStructureVersion);
+        }
+        return mCachedParentPosition;
+    }
+
+    /**
+     * Records the parent position of the row at {@code flatPosition}, which stays valid
+     * until rows are inserted, removed or moved, so that
+     * {@link #getParentAdapterPosition()} doesn't look it up again until then.
+     */
+    @UiThread
+    void cachePositions(int flatPosition, int parentPosition, int structureVersion) {
+        mCachedFlatPosition = flatPosition;
+        mCachedParentPosition = parentPosition;
+        mCachedStructureVersion = structureVersion;
     }
 
     /**
@@ -0,0 +1,166 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Row notifications buffered between {@link ExpandableRecyclerAdapter#beginBatchedUpdates()}
+ * and {@link ExpandableRecyclerAdapter#endBatchedUpdates()}, in flat positions.
+ * <p>
+ * Each notification is merged into the previous one when it continues or overlaps it: inserts
+ * into a range just inserted, removals next to a range just removed, changes adjacent to or
+ * overlapping a range just changed with an equal payload. Removing rows that were just
+ * inserted shrinks the insertion instead, and changes to them are dropped since inserted rows
+ * are bound fresh anyway. A data set change drops everything buffered before and after it.
+ * What is left is dispatched in order, so observers end up in the same state as with
+ * unbatched notifications.
+ */
+final class RowUpdateBatch {
+
+    private static final int TYPE_INSERT = 0;
+    private static final int TYPE_REMOVE = 1;
+    private static final int TYPE_CHANGE = 2;
+    private static final int TYPE_MOVE = 3;
+
+    private final List<Update> mUpdates;
+    private boolean mDataSetChanged;
+
+    RowUpdateBatch() {
+        mUpdates = new ArrayList<>();
+    }
+
+    void addInserted(int positionStart, int itemCount) {
+        if (itemCount == 0 || mDataSetChanged) {
+            return;
+        }
+
+        Update last = getLastUpdate();
+        if (last != null && last.mType == TYPE_INSERT
+                && positionStart >= last.mPositionStart && positionStart <= last.mPositionStart + last.mItemCount) {
+            last.mItemCount += itemCount;
+            return;
+        }
+        mUpdates.add(new Update(TYPE_INSERT, positionStart, itemCount, null));
+    }
+
+    void addRemoved(int positionStart, int itemCount) {
+        if (itemCount == 0 || mDataSetChanged) {
+            return;
+        }
+
+        Update last = getLastUpdate();
+        if (last != null && last.mType == TYPE_REMOVE) {
+            if (positionStart == last.mPositionStart) {
+                last.mItemCount += itemCount;
+                return;
+            } else if (positionStart + itemCount == last.mPositionStart) {
+                last.mPositionStart = positionStart;
+                last.mItemCount += itemCount;
+                return;
+            }
+        } else if (last != null && last.mType == TYPE_INSERT && last.contains(positionStart, itemCount)) {
+            last.mItemCount -= itemCount;
+            if (last.mItemCount == 0) {
+                mUpdates.remove(mUpdates.size() - 1);
+            }
+            return;
+        }
+        mUpdates.add(new Update(TYPE_REMOVE, positionStart, itemCount, null));
+    }
+
+    void addChanged(int positionStart, int itemCount, @Nullable Object payload) {
+        if (itemCount == 0 || mDataSetChanged) {
+            return;
+        }
+
+        Update last = getLastUpdate();
+        if (last != null && last.mType == TYPE_INSERT && last.contains(positionStart, itemCount)) {
+            return;
+        }
+        if (last != null && last.mType == TYPE_CHANGE
+                && (payload == null ? last.mPayload == null : payload.equals(last.mPayload))
+                && positionStart <= last.mPositionStart + last.mItemCount
+                && positionStart + itemCount >= last.mPositionStart) {
+            int positionEnd = Math.max(positionStart + itemCount, last.mPositionStart + last.mItemCount);
+            last.mPositionStart = Math.min(positionStart, last.mPositionStart);
+            last.mItemCount = positionEnd - last.mPositionStart;
+            return;
+        }
+        mUpdates.add(new Update(TYPE_CHANGE, positionStart, itemCount, payload));
+    }
+
+    void addMoved(int fromPosition, int toPosition) {
+        if (fromPosition == toPosition || mDataSetChanged) {
+            return;
+        }
+
+        mUpdates.add(new Update(TYPE_MOVE, fromPosition, toPosition, null));
+    }
+
+    void addDataSetChanged() {
+        mUpdates.clear();
+        mDataSetChanged = true;
+    }
+
+    /**
+     * Dispatches the buffered notifications to {@code adapter} and empties the batch.
+     */
+    void dispatch(@NonNull RecyclerView.Adapter<?> adapter) {
+        if (mDataSetChanged) {
+            mDataSetChanged = false;
+            adapter.notifyDataSetChanged();
+            return;
+        }
+
+        for (int i = 0; i < mUpdates.size(); i++) {
+            Update update = mUpdates.get(i);
+            switch (update.mType) {
+                case TYPE_INSERT:
+                    adapter.notifyItemRangeInserted(update.mPositionStart, update.mItemCount);
+                    break;
+                case TYPE_REMOVE:
+                    adapter.notifyItemRangeRemoved(update.mPositionStart, update.mItemCount);
+                    break;
+                case TYPE_CHANGE:
+                    adapter.notifyItemRangeChanged(update.mPositionStart, update.mItemCount, update.mPayload);
+                    break;
+                case TYPE_MOVE:
+                    adapter.notifyItemMoved(update.mPositionStart, update.mItemCount);
+                    break;
+            }
+        }
+        mUpdates.clear();
+    }
+
+    @Nullable
+    private Update getLastUpdate() {
+        return mUpdates.isEmpty() ? null : mUpdates.get(mUpdates.size() - 1);
+    }
+
+    /**
+     * A range of rows, for moves the from and to positions are stored as the position start
+     * and item count.
+     */
+    private static class Update {
+
+        final int mType;
+        int mPositionStart;
+        int mItemCount;
+        final Object mPayload;
+
+        Update(int type, int positionStart, int itemCount, @Nullable Object payload) {
+            mType = type;
+            mPositionStart = positionStart;
+            mItemCount = itemCount;
+            mPayload = payload;
+        }
+
+        boolean contains(int positionStart, int itemCount) {
+            return positionStart >= mPositionStart && positionStart + itemCount <= mPositionStart + mItemCount;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * Cache of the stable ids of the flat rows, in a long array parallel to the rows.
+ * <p>
+ * The table is registered as an observer of the adapter it caches the ids of, so every
+ * notification the adapter dispatches shifts, moves or clears the matching entries and the
+ * table stays in step with the rows without being rebuilt. Inserted and changed rows are left
+ * unknown until their id is next asked for. Rows past the end of the table are unknown as well,
+ * which lets {@link #onChanged()} drop every entry without knowing the new number of rows.
+ * <p>
+ * Ids are made from the parent and child ids supplied by the adapter. Parent rows get even
+ * ids and child rows odd ids, both spread over 63 bits with a bijective mix, so a parent row
+ * never shares an id with a child row and other collisions are as unlikely as for a random
+ * 63 bit hash.
+ */
+final class StableIdTable extends RecyclerView.AdapterDataObserver {
+
+    static final long UNKNOWN_ID = RecyclerView.NO_ID;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] mIds;
+    private int mSize;
+
+    StableIdTable() {
+        mIds = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @param flatPosition The flat position of the row
+     * @return The cached id of the row, or {@link #UNKNOWN_ID} if it isn't known
+     */
+    long get(int flatPosition) {
+        return flatPosition < mSize ? mIds[flatPosition] : UNKNOWN_ID;
+    }
+
+    /**
+     * Caches the id of the row at {@code flatPosition}.
+     */
+    void set(int flatPosition, long id) {
+        ensureSize(flatPosition + 1);
+        mIds[flatPosition] = id;
+    }
+
+    /**
+     * @return The id of the row of the parent with the id {@code parentId}
+     */
+    static long getParentRowId(long parentId) {
+        return mix(parentId) & ~1L;
+    }
+
+    /**
+     * @return The id of the row of the child with the id {@code childId}, within the parent with
+     * the id {@code parentId}
+     */
+    static long getChildRowId(long parentId, long childId) {
+        long id = mix(mix(parentId) + childId) | 1L;
+        // NO_ID is odd, the single child id mixing to it is given another odd id
+        return id == RecyclerView.NO_ID ? Long.MAX_VALUE : id;
+    }
+
+    /**
+     * Finalizer of SplitMix64, a bijection spreading nearby values over all 64 bits.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    @Override
+    public void onChanged() {
+        mSize = 0;
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        int end = Math.min(positionStart + itemCount, mSize);
+        for (int i = positionStart; i < end; i++) {
+            mIds[i] = UNKNOWN_ID;
+        }
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        if (positionStart >= mSize) {
+            return;
+        }
+
+        ensureCapacity(mSize + itemCount);
+        System.arraycopy(mIds, positionStart, mIds, positionStart + itemCount, mSize - positionStart);
+        for (int i = positionStart; i < positionStart + itemCount; i++) {
+            mIds[i] = UNKNOWN_ID;
+        }
+        mSize += itemCount;
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        if (positionStart >= mSize) {
+            return;
+        }
+
+        int end = positionStart + itemCount;
+        if (end >= mSize) {
+            mSize = positionStart;
+            return;
+        }
+
+        System.arraycopy(mIds, end, mIds, positionStart, mSize - end);
+        mSize -= itemCount;
+    }
+
+    @Override
+    public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        // RecyclerView only dispatches single item moves
+        ensureSize(Math.max(fromPosition, toPosition) + 1);
+        long id = mIds[fromPosition];
+        if (fromPosition < toPosition) {
+            System.arraycopy(mIds, fromPosition + 1, mIds, fromPosition, toPosition - fromPosition);
+        } else {
+            System.arraycopy(mIds, toPosition, mIds, toPosition + 1, fromPosition - toPosition);
+        }
+        mIds[toPosition] = id;
+    }
+
+    /**
+     * Grows the table to at least {@code size} entries, the new entries being unknown.
+     */
+    private void ensureSize(int size) {
+        if (size <= mSize) {
+            return;
+        }
+
+        ensureCapacity(size);
+        for (int i = mSize; i < size; i++) {
+            mIds[i] = UNKNOWN_ID;
+        }
+        mSize = size;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mIds.length) {
+            return;
+        }
+
+        long[] ids = new long[Math.max(capacity, mIds.length * 2)];
+        System.arraycopy(mIds, 0, ids, 0, mSize);
+        mIds = ids;
+    }
+}
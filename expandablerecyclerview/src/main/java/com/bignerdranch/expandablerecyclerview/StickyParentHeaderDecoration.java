@@ -0,0 +1,166 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.graphics.Canvas;
+import android.support.annotation.NonNull;
+import android.support.annotation.UiThread;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * ItemDecoration pinning the row of the parent of the topmost visible row to the top of a
+ * vertical list while its children scroll under it. The pinned row is pushed up by the row
+ * of the next parent as that one reaches it.
+ * <p>
+ * The parent of the topmost row is looked up in the adapter's index of flattened positions,
+ * O(log n) per frame. The pinned row is a ViewHolder created through the adapter once per
+ * parent view type and kept, and it is only rebound when the pinned parent changes or the
+ * adapter notifies a change, so drawing a frame allocates nothing. The pinned row is only
+ * drawn, it doesn't receive touch events.
+ * <p>
+ * The decoration observes the adapter until {@link #detach()} is called, which should be done
+ * once it is removed from the RecyclerView.
+ */
+public class StickyParentHeaderDecoration extends RecyclerView.ItemDecoration {
+
+    @NonNull
+    private final ExpandableRecyclerAdapter<?, ?, ?, ?> mAdapter;
+
+    @NonNull
+    private final RecyclerView.AdapterDataObserver mDataObserver;
+
+    private RecyclerView.ViewHolder mHeaderViewHolder;
+    private int mHeaderViewType;
+
+    /**
+     * Flat position the pinned row was bound for, {@link RecyclerView#NO_POSITION} when it
+     * must be bound again.
+     */
+    private int mBoundFlatParentPosition = RecyclerView.NO_POSITION;
+
+    private int mMeasuredForWidth;
+
+    /**
+     * Attaches the decoration to {@code adapter}, add it to the RecyclerView showing the
+     * adapter with {@link RecyclerView#addItemDecoration(RecyclerView.ItemDecoration)}.
+     *
+     * @param adapter The adapter whose parent rows to pin
+     */
+    @UiThread
+    public StickyParentHeaderDecoration(@NonNull ExpandableRecyclerAdapter<?, ?, ?, ?> adapter) {
+        mAdapter = adapter;
+        mDataObserver = new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                mBoundFlatParentPosition = RecyclerView.NO_POSITION;
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                mBoundFlatParentPosition = RecyclerView.NO_POSITION;
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+                mBoundFlatParentPosition = RecyclerView.NO_POSITION;
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                mBoundFlatParentPosition = RecyclerView.NO_POSITION;
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                mBoundFlatParentPosition = RecyclerView.NO_POSITION;
+            }
+
+            @Override
+            public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                mBoundFlatParentPosition = RecyclerView.NO_POSITION;
+            }
+        };
+        adapter.registerAdapterDataObserver(mDataObserver);
+    }
+
+    /**
+     * Stops observing the adapter and drops the pinned row, so that neither is kept alive by
+     * the other. Call it after removing the decoration with
+     * {@link RecyclerView#removeItemDecoration(RecyclerView.ItemDecoration)}, the decoration
+     * must not be used afterwards.
+     */
+    @UiThread
+    public void detach() {
+        mAdapter.unregisterAdapterDataObserver(mDataObserver);
+        mHeaderViewHolder = null;
+        mBoundFlatParentPosition = RecyclerView.NO_POSITION;
+    }
+
+    @Override
+    @UiThread
+    public void onDrawOver(Canvas canvas, RecyclerView recyclerView, RecyclerView.State state) {
+        if (recyclerView.getChildCount() == 0) {
+            return;
+        }
+
+        int topFlatPosition = recyclerView.getChildAdapterPosition(recyclerView.getChildAt(0));
+        if (topFlatPosition == RecyclerView.NO_POSITION || topFlatPosition >= mAdapter.getItemCount()) {
+            return;
+        }
+
+        int parentPosition = mAdapter.getNearestParentPosition(topFlatPosition);
+        View headerView = getHeaderView(recyclerView, mAdapter.getFlatParentPosition(parentPosition));
+        int headerHeight = headerView.getHeight();
+
+        // The row of the next parent pushes the pinned row up as it scrolls into its place
+        int offset = 0;
+        int nextFlatParentPosition = mAdapter.getFlatParentPosition(parentPosition + 1);
+        if (nextFlatParentPosition != ExpandableRecyclerAdapter.INVALID_FLAT_POSITION) {
+            RecyclerView.ViewHolder nextViewHolder = recyclerView.findViewHolderForAdapterPosition(nextFlatParentPosition);
+            if (nextViewHolder != null) {
+                offset = Math.min(0, nextViewHolder.itemView.getTop() - recyclerView.getPaddingTop() - headerHeight);
+            }
+        }
+
+        int saveCount = canvas.save();
+        canvas.translate(recyclerView.getPaddingLeft(), recyclerView.getPaddingTop() + offset);
+        headerView.draw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Returns the view of the pinned row, creating, binding and laying it out as needed.
+     */
+    @NonNull
+    private View getHeaderView(@NonNull RecyclerView recyclerView, int flatParentPosition) {
+        int viewType = mAdapter.getItemViewType(flatParentPosition);
+        if (mHeaderViewHolder == null || mHeaderViewType != viewType) {
+            mHeaderViewHolder = mAdapter.createViewHolder(recyclerView, viewType);
+            mHeaderViewType = viewType;
+            mBoundFlatParentPosition = RecyclerView.NO_POSITION;
+        }
+
+        View headerView = mHeaderViewHolder.itemView;
+        if (mBoundFlatParentPosition != flatParentPosition) {
+            mAdapter.bindViewHolder(mHeaderViewHolder, flatParentPosition);
+            mBoundFlatParentPosition = flatParentPosition;
+            measureHeaderView(recyclerView, headerView);
+        } else if (mMeasuredForWidth != recyclerView.getWidth()) {
+            measureHeaderView(recyclerView, headerView);
+        }
+        return headerView;
+    }
+
+    private void measureHeaderView(@NonNull RecyclerView recyclerView, @NonNull View headerView) {
+        ViewGroup.LayoutParams layoutParams = headerView.getLayoutParams();
+        int width = layoutParams == null ? ViewGroup.LayoutParams.MATCH_PARENT : layoutParams.width;
+        int height = layoutParams == null ? ViewGroup.LayoutParams.WRAP_CONTENT : layoutParams.height;
+        int widthSpec = View.MeasureSpec.makeMeasureSpec(recyclerView.getWidth(), View.MeasureSpec.EXACTLY);
+        int heightSpec = View.MeasureSpec.makeMeasureSpec(recyclerView.getHeight(), View.MeasureSpec.UNSPECIFIED);
+        headerView.measure(
+                ViewGroup.getChildMeasureSpec(widthSpec, recyclerView.getPaddingLeft() + recyclerView.getPaddingRight(), width),
+                ViewGroup.getChildMeasureSpec(heightSpec, recyclerView.getPaddingTop() + recyclerView.getPaddingBottom(), height));
+        headerView.layout(0, 0, headerView.getMeasuredWidth(), headerView.getMeasuredHeight());
+        mMeasuredForWidth = recyclerView.getWidth();
+    }
+}
@@ -1,6 +1,7 @@
 package com.bignerdranch.expandablerecyclerview.model;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -18,8 +19,17 @@ public class ExpandableWrapper<P extends Parent<C>, C> {
     private boolean mWrappedParent;
     private boolean mExpanded;
 
+    /**
+     * Wrapped children of the parent, generated on first use so that parents which are never
+     * expanded don't pay for a wrapper per child.
+     */
     private List<ExpandableWrapper<P, C>> mWrappedChildList;
 
+    /**
+     * Children wrapped instead of those of the parent, null to wrap the parent's children.
+     */
+    private List<C> mChildList;
+
     /**
      * Constructor to wrap a parent object of type {@link P}.
      *
@@ -29,8 +39,6 @@ public class ExpandableWrapper<P extends Parent<C>, C> {
         mParent = parent;
         mWrappedParent = true;
         mExpanded = false;
-
-        mWrappedChildList = generateChildItemList(parent);
     }
 
     /**
@@ -50,7 +58,19 @@ public class ExpandableWrapper<P extends Parent<C>, C> {
 
     public void setParent(@NonNull P parent) {
         mParent = parent;
-        mWrappedChildList = generateChildItemList(parent);
+        mWrappedChildList = null;
+    }
+
+    /**
+     * Wraps {@code childList} instead of the children of the parent, for instance to show only
+     * some of them. The wrapped children are generated again on the next call to
+     * {@link #getWrappedChildList()}.
+     *
+     * @param childList The children to wrap, or null to wrap the children of the parent
+     */
+    public void setChildList(@Nullable List<C> childList) {
+        mChildList = childList;
+        mWrappedChildList = null;
     }
 
     public C getChild() {
@@ -82,6 +102,9 @@ public class ExpandableWrapper<P extends Parent<C>, C> {
     }
 
     /**
+     * Generates the wrapped children on the first call after construction,
+     * {@link #setParent(Parent)}, {@link #setChildList(List)} or {@link #clearWrappedChildList()}.
+     *
      * @return The list of children of a parent
      * @throws IllegalStateException If a parent isn't being wrapped
      */
@@ -90,13 +113,30 @@ public class ExpandableWrapper<P extends Parent<C>, C> {
             throw new IllegalStateException("Parent not wrapped");
         }
 
+        if (mWrappedChildList == null) {
+            mWrappedChildList = generateChildItemList(mChildList != null ? mChildList : mParent.getChildList());
+        }
         return mWrappedChildList;
     }
 
-    private List<ExpandableWrapper<P, C>> generateChildItemList(P parentListItem) {
-        List<ExpandableWrapper<P, C>> childItemList = new ArrayList<>();
+    /**
+     * Drops the wrapped children so they can be garbage collected, they are generated
+     * again on the next call to {@link #getWrappedChildList()}.
+     *
+     * @throws IllegalStateException If a parent isn't being wrapped
+     */
+    public void clearWrappedChildList() {
+        if (!mWrappedParent) {
+            throw new IllegalStateException("Parent not wrapped");
+        }
+
+        mWrappedChildList = null;
+    }
+
+    private List<ExpandableWrapper<P, C>> generateChildItemList(List<C> childList) {
+        List<ExpandableWrapper<P, C>> childItemList = new ArrayList<>(childList.size());
 
-        for (C child : parentListItem.getChildList()) {
+        for (C child : childList) {
             childItemList.add(new ExpandableWrapper<P, C>(child));
         }
 
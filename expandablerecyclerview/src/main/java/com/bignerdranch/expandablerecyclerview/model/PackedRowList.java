@@ -0,0 +1,185 @@
+package com.bignerdranch.expandablerecyclerview.model;
+
+import java.util.Arrays;
+
+/**
+ * Compact row model where each flat row is stored as the position of its parent and the
+ * position of the child within that parent, in two growable int arrays.
+ * <p>
+ * A row costs 8 bytes instead of a reference to an {@link ExpandableWrapper}, and adding or
+ * removing rows doesn't allocate anything unless the arrays need to grow. Parents and children
+ * are resolved from the parent list through the stored positions when they are needed.
+ */
+public class PackedRowList {
+
+    /**
+     * Child position stored for rows that show a parent.
+     */
+    public static final int NO_CHILD = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] mParentPositions;
+    private int[] mChildPositions;
+    private int mSize;
+
+    public PackedRowList() {
+        mParentPositions = new int[INITIAL_CAPACITY];
+        mChildPositions = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @return The number of rows
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Removes all rows.
+     */
+    public void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * @param flatPosition The position of the row
+     * @return Whether the row shows a parent
+     */
+    public boolean isParent(int flatPosition) {
+        return getChildPosition(flatPosition) == NO_CHILD;
+    }
+
+    /**
+     * @param flatPosition The position of the row
+     * @return The position of the parent of the row, or of the parent shown by the row
+     */
+    public int getParentPosition(int flatPosition) {
+        checkPosition(flatPosition, mSize);
+        return mParentPositions[flatPosition];
+    }
+
+    /**
+     * @param flatPosition The position of the row
+     * @return The position of the child shown by the row within its parent, or
+     * {@link #NO_CHILD} if the row shows a parent
+     */
+    public int getChildPosition(int flatPosition) {
+        checkPosition(flatPosition, mSize);
+        return mChildPositions[flatPosition];
+    }
+
+    /**
+     * Inserts a row for a parent followed by rows for its first {@code childCount} children.
+     *
+     * @param flatPosition The position of the parent row
+     * @param parentPosition The position of the parent in the list of parents
+     * @param childCount The number of child rows to insert after the parent row
+     */
+    public void insertParentRows(int flatPosition, int parentPosition, int childCount) {
+        openGap(flatPosition, childCount + 1);
+        mParentPositions[flatPosition] = parentPosition;
+        mChildPositions[flatPosition] = NO_CHILD;
+        fillChildRows(flatPosition + 1, parentPosition, 0, childCount);
+    }
+
+    /**
+     * Inserts rows for {@code childCount} children of a parent.
+     *
+     * @param flatPosition The position of the first child row
+     * @param parentPosition The position of the parent in the list of parents
+     * @param childPositionStart The position of the first child within the parent
+     * @param childCount The number of child rows to insert
+     */
+    public void insertChildRows(int flatPosition, int parentPosition, int childPositionStart, int childCount) {
+        openGap(flatPosition, childCount);
+        fillChildRows(flatPosition, parentPosition, childPositionStart, childCount);
+    }
+
+    /**
+     * Removes {@code rowCount} rows starting at {@code flatPositionStart}.
+     *
+     * @param flatPositionStart The position of the first row to remove
+     * @param rowCount The number of rows to remove
+     */
+    public void removeRows(int flatPositionStart, int rowCount) {
+        checkPosition(flatPositionStart, mSize + 1);
+        int flatPositionEnd = flatPositionStart + rowCount;
+        checkPosition(flatPositionEnd, mSize + 1);
+
+        System.arraycopy(mParentPositions, flatPositionEnd, mParentPositions, flatPositionStart, mSize - flatPositionEnd);
+        System.arraycopy(mChildPositions, flatPositionEnd, mChildPositions, flatPositionStart, mSize - flatPositionEnd);
+        mSize -= rowCount;
+    }
+
+    /**
+     * Adds {@code offset} to the parent position of the rows in the given range.
+     *
+     * @param flatPositionStart The position of the first row to update
+     * @param flatPositionEnd The position after the last row to update
+     * @param offset The amount to add
+     */
+    public void offsetParentPositions(int flatPositionStart, int flatPositionEnd, int offset) {
+        checkRange(flatPositionStart, flatPositionEnd);
+        for (int i = flatPositionStart; i < flatPositionEnd; i++) {
+            mParentPositions[i] += offset;
+        }
+    }
+
+    /**
+     * Adds {@code offset} to the child position of the child rows in the given range,
+     * parent rows are left untouched.
+     *
+     * @param flatPositionStart The position of the first row to update
+     * @param flatPositionEnd The position after the last row to update
+     * @param offset The amount to add
+     */
+    public void offsetChildPositions(int flatPositionStart, int flatPositionEnd, int offset) {
+        checkRange(flatPositionStart, flatPositionEnd);
+        for (int i = flatPositionStart; i < flatPositionEnd; i++) {
+            if (mChildPositions[i] != NO_CHILD) {
+                mChildPositions[i] += offset;
+            }
+        }
+    }
+
+    private void fillChildRows(int flatPosition, int parentPosition, int childPositionStart, int childCount) {
+        int flatPositionEnd = flatPosition + childCount;
+        Arrays.fill(mParentPositions, flatPosition, flatPositionEnd, parentPosition);
+        for (int i = 0; i < childCount; i++) {
+            mChildPositions[flatPosition + i] = childPositionStart + i;
+        }
+    }
+
+    private void openGap(int flatPosition, int rowCount) {
+        checkPosition(flatPosition, mSize + 1);
+        ensureCapacity(mSize + rowCount);
+        System.arraycopy(mParentPositions, flatPosition, mParentPositions, flatPosition + rowCount, mSize - flatPosition);
+        System.arraycopy(mChildPositions, flatPosition, mChildPositions, flatPosition + rowCount, mSize - flatPosition);
+        mSize += rowCount;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mParentPositions.length) {
+            return;
+        }
+
+        int newCapacity = Math.max(capacity, mParentPositions.length + (mParentPositions.length >> 1));
+        mParentPositions = Arrays.copyOf(mParentPositions, newCapacity);
+        mChildPositions = Arrays.copyOf(mChildPositions, newCapacity);
+    }
+
+    private void checkRange(int flatPositionStart, int flatPositionEnd) {
+        checkPosition(flatPositionStart, mSize + 1);
+        checkPosition(flatPositionEnd, mSize + 1);
+        if (flatPositionStart > flatPositionEnd) {
+            throw new IndexOutOfBoundsException("Range start " + flatPositionStart + " after end " + flatPositionEnd);
+        }
+    }
+
+    private void checkPosition(int flatPosition, int bound) {
+        if (flatPosition < 0 || flatPosition >= bound) {
+            throw new IndexOutOfBoundsException("Flat position " + flatPosition + " out of bounds, size " + mSize);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.bignerdranch.expandablerecyclerview.model;
+
+import java.util.List;
+
+/**
+ * Node of a tree of any depth, shown by
+ * {@link com.bignerdranch.expandablerecyclerview.ExpandableTreeAdapter}.
+ * <p>
+ * A node is a {@link Parent} whose children are nodes themselves, a node without children
+ * is a leaf.
+ *
+ * @param <N> Type of the nodes of the tree
+ */
+public interface TreeNode<N extends TreeNode<N>> extends Parent<N> {
+
+    /**
+     * Getter for the list of this node's children.
+     * <p>
+     * If list is empty, the node is a leaf.
+     *
+     * @return A {@link List} of the children of this {@link TreeNode}
+     */
+    @Override
+    List<N> getChildList();
+}
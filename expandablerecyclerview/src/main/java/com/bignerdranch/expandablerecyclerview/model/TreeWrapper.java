@@ -0,0 +1,261 @@
+package com.bignerdranch.expandablerecyclerview.model;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wrapper used to link a {@link TreeNode} with its place in the tree: its depth, its parent,
+ * whether it is expanded and how many rows it shows below itself.
+ * <p>
+ * Each wrapper keeps the number of rows shown below it while it is expanded, its own children
+ * plus the rows shown by its expanded children. Expanding or collapsing a wrapper adds or
+ * removes its rows to the counts of its ancestors, up to the first collapsed one, so the number
+ * of rows to insert or remove for any node is known without walking its subtree. Children
+ * inserted or removed through {@link #insertChildren(int, int)} and
+ * {@link #removeChildren(int, int)} update the counts the same way.
+ *
+ * @param <N> Type of the nodes of the tree
+ */
+public class TreeWrapper<N extends TreeNode<N>> {
+
+    private final N mNode;
+    private final TreeWrapper<N> mParentWrapper;
+    private final int mDepth;
+    private boolean mExpanded;
+
+    /**
+     * Map shared by every wrapper of the tree, from each wrapped node to its wrapper, or null.
+     */
+    @Nullable
+    private final Map<N, TreeWrapper<N>> mWrapperMap;
+
+    /**
+     * Rows shown below this node while it is expanded, valid once the children are wrapped.
+     */
+    private int mShownDescendantCount;
+
+    /**
+     * Wrapped children of the node, generated on first use so that nodes which are never
+     * expanded don't pay for a wrapper per child.
+     */
+    private List<TreeWrapper<N>> mWrappedChildList;
+
+    /**
+     * Constructor to wrap a root node, expanded if it is initially expanded.
+     *
+     * @param node The root node to wrap
+     */
+    public TreeWrapper(@NonNull N node) {
+        this(node, null, null);
+    }
+
+    /**
+     * Constructor to wrap a root node, expanded if it is initially expanded, that records
+     * itself and every wrapper generated below it in {@code wrapperMap} so that the wrapper of
+     * any node can be looked up.
+     *
+     * @param node The root node to wrap
+     * @param wrapperMap The map from each wrapped node to its wrapper
+     */
+    public TreeWrapper(@NonNull N node, @NonNull Map<N, TreeWrapper<N>> wrapperMap) {
+        this(node, null, wrapperMap);
+    }
+
+    private TreeWrapper(@NonNull N node, @Nullable TreeWrapper<N> parentWrapper,
+                        @Nullable Map<N, TreeWrapper<N>> wrapperMap) {
+        mNode = node;
+        mParentWrapper = parentWrapper;
+        mDepth = parentWrapper == null ? 0 : parentWrapper.mDepth + 1;
+        mExpanded = node.isInitiallyExpanded();
+        mWrapperMap = wrapperMap;
+        if (wrapperMap != null) {
+            wrapperMap.put(node, this);
+        }
+    }
+
+    @NonNull
+    public N getNode() {
+        return mNode;
+    }
+
+    /**
+     * @return The wrapper of the parent of this node, null for a root node
+     */
+    @Nullable
+    public TreeWrapper<N> getParentWrapper() {
+        return mParentWrapper;
+    }
+
+    /**
+     * @return The depth of the node, 0 for a root node
+     */
+    public int getDepth() {
+        return mDepth;
+    }
+
+    public boolean isExpanded() {
+        return mExpanded;
+    }
+
+    /**
+     * Expands or collapses the node, updating the shown row counts of its ancestors.
+     *
+     * @param expanded true to expand the node
+     */
+    public void setExpanded(boolean expanded) {
+        if (mExpanded == expanded) {
+            return;
+        }
+
+        mExpanded = expanded;
+        if (mParentWrapper != null) {
+            mParentWrapper.offsetShownDescendantCount(expanded ? getShownDescendantCount() : -getShownDescendantCount());
+        }
+    }
+
+    /**
+     * Adds {@code rowCountChange} to the rows shown below this node and to the counts of its
+     * ancestors, which count the rows up to and including the first collapsed one.
+     */
+    private void offsetShownDescendantCount(int rowCountChange) {
+        for (TreeWrapper<N> wrapper = this; wrapper != null; wrapper = wrapper.mParentWrapper) {
+            wrapper.mShownDescendantCount += rowCountChange;
+            if (!wrapper.mExpanded) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return The number of rows shown below this node while it is expanded
+     */
+    public int getShownDescendantCount() {
+        getWrappedChildList();
+        return mShownDescendantCount;
+    }
+
+    /**
+     * @return The number of rows the node takes while its parent is expanded: its own row,
+     * plus the rows shown below it if it is expanded
+     */
+    public int getShownRowCount() {
+        return mExpanded ? 1 + getShownDescendantCount() : 1;
+    }
+
+    /**
+     * Generates the wrapped children on the first call.
+     *
+     * @return The wrapped children of the node
+     */
+    @NonNull
+    public List<TreeWrapper<N>> getWrappedChildList() {
+        if (mWrappedChildList == null) {
+            List<N> childList = mNode.getChildList();
+            List<TreeWrapper<N>> wrappedChildList = new ArrayList<>(childList.size());
+            int shownDescendantCount = 0;
+            for (N child : childList) {
+                TreeWrapper<N> childWrapper = new TreeWrapper<>(child, this, mWrapperMap);
+                wrappedChildList.add(childWrapper);
+                shownDescendantCount++;
+                if (childWrapper.mExpanded) {
+                    shownDescendantCount += childWrapper.getShownDescendantCount();
+                }
+            }
+            mWrappedChildList = wrappedChildList;
+            mShownDescendantCount = shownDescendantCount;
+        }
+        return mWrappedChildList;
+    }
+
+    /**
+     * @return true if the children of the node have been wrapped, which is the case for every
+     * node that has been expanded
+     */
+    public boolean hasWrappedChildList() {
+        return mWrappedChildList != null;
+    }
+
+    /**
+     * Wraps the children inserted into the child list of the node, if its children are
+     * wrapped already, and adds their rows to the counts of the node and its ancestors.
+     * Children that aren't wrapped yet are wrapped from the current child list on first use.
+     *
+     * @param childPositionStart Position of the first inserted child
+     * @param itemCount Number of children inserted
+     */
+    public void insertChildren(int childPositionStart, int itemCount) {
+        if (mWrappedChildList == null) {
+            return;
+        }
+
+        List<N> childList = mNode.getChildList();
+        int rowCount = 0;
+        for (int i = childPositionStart; i < childPositionStart + itemCount; i++) {
+            TreeWrapper<N> childWrapper = new TreeWrapper<>(childList.get(i), this, mWrapperMap);
+            mWrappedChildList.add(i, childWrapper);
+            rowCount += childWrapper.getShownRowCount();
+        }
+        offsetShownDescendantCount(rowCount);
+    }
+
+    /**
+     * Drops the wrappers of the children removed from the child list of the node, if its
+     * children are wrapped, and removes their rows from the counts of the node and its
+     * ancestors.
+     *
+     * @param childPositionStart Position of the first removed child
+     * @param itemCount Number of children removed
+     */
+    public void removeChildren(int childPositionStart, int itemCount) {
+        if (mWrappedChildList == null) {
+            return;
+        }
+
+        List<TreeWrapper<N>> removedList = mWrappedChildList.subList(childPositionStart, childPositionStart + itemCount);
+        int rowCount = 0;
+        for (int i = 0; i < removedList.size(); i++) {
+            TreeWrapper<N> childWrapper = removedList.get(i);
+            rowCount += childWrapper.getShownRowCount();
+            childWrapper.unregister();
+        }
+        removedList.clear();
+        offsetShownDescendantCount(-rowCount);
+    }
+
+    /**
+     * Removes this wrapper and every wrapper generated below it from the map given to the
+     * root constructor, if any.
+     */
+    public void unregister() {
+        if (mWrapperMap == null) {
+            return;
+        }
+
+        mWrapperMap.remove(mNode);
+        if (mWrappedChildList != null) {
+            for (int i = 0; i < mWrappedChildList.size(); i++) {
+                mWrappedChildList.get(i).unregister();
+            }
+        }
+    }
+
+    /**
+     * Adds the rows shown below this node while it is expanded to {@code rowList}, in order.
+     *
+     * @param rowList The list to add the rows to
+     */
+    public void addShownDescendants(@NonNull List<TreeWrapper<N>> rowList) {
+        List<TreeWrapper<N>> wrappedChildList = getWrappedChildList();
+        for (int i = 0; i < wrappedChildList.size(); i++) {
+            TreeWrapper<N> childWrapper = wrappedChildList.get(i);
+            rowList.add(childWrapper);
+            if (childWrapper.mExpanded) {
+                childWrapper.addShownDescendants(rowList);
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+
+public class ChunkedListTest {
+
+    private ChunkedList<Integer> mChunkedList;
+    private List<Integer> mExpectedList;
+
+    @Before
+    public void setup() {
+        mChunkedList = new ChunkedList<>();
+        mExpectedList = new ArrayList<>();
+    }
+
+    @Test
+    public void appendingKeepsOrder() {
+        for (int i = 0; i < 1000; i++) {
+            mChunkedList.add(i);
+            mExpectedList.add(i);
+        }
+
+        assertEquals(mExpectedList, mChunkedList);
+    }
+
+    @Test
+    public void blockInsertIntoMiddleOfChunk() {
+        mChunkedList.addAll(generateRange(0, 100));
+        mExpectedList.addAll(generateRange(0, 100));
+
+        mChunkedList.addAll(50, generateRange(1000, 1600));
+        mExpectedList.addAll(50, generateRange(1000, 1600));
+
+        assertEquals(mExpectedList, mChunkedList);
+        assertEquals(Integer.valueOf(1000), mChunkedList.get(50));
+        assertEquals(Integer.valueOf(50), mChunkedList.get(650));
+    }
+
+    @Test
+    public void blockRemoveAcrossChunks() {
+        mChunkedList.addAll(generateRange(0, 2000));
+        mExpectedList.addAll(generateRange(0, 2000));
+
+        mChunkedList.subList(100, 1500).clear();
+        mExpectedList.subList(100, 1500).clear();
+
+        assertEquals(mExpectedList, mChunkedList);
+
+        mChunkedList.subList(0, mChunkedList.size()).clear();
+        assertEquals(0, mChunkedList.size());
+
+        mChunkedList.add(7);
+        assertEquals(Integer.valueOf(7), mChunkedList.get(0));
+    }
+
+    @Test
+    public void randomOperationsMatchArrayList() {
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            int size = mExpectedList.size();
+            switch (random.nextInt(6)) {
+                case 0:
+                case 1: {
+                    int index = random.nextInt(size + 1);
+                    mChunkedList.add(index, i);
+                    mExpectedList.add(index, i);
+                    break;
+                }
+                case 2: {
+                    int index = random.nextInt(size + 1);
+                    List<Integer> block = generateRange(i * 1000, i * 1000 + random.nextInt(600));
+                    mChunkedList.addAll(index, block);
+                    mExpectedList.addAll(index, block);
+                    break;
+                }
+                case 3: {
+                    if (size > 0) {
+                        int index = random.nextInt(size);
+                        assertEquals(mExpectedList.remove(index), mChunkedList.remove(index));
+                    }
+                    break;
+                }
+                case 4: {
+                    int from = random.nextInt(size + 1);
+                    int to = from + random.nextInt(Math.min(size - from, 400) + 1);
+                    mChunkedList.subList(from, to).clear();
+                    mExpectedList.subList(from, to).clear();
+                    break;
+                }
+                default: {
+                    if (size > 0) {
+                        int index = random.nextInt(size);
+                        assertEquals(mExpectedList.set(index, -i), mChunkedList.set(index, -i));
+                    }
+                    break;
+                }
+            }
+
+            assertEquals(mExpectedList.size(), mChunkedList.size());
+            if (i % 100 == 0) {
+                assertEquals(mExpectedList, mChunkedList);
+            }
+        }
+
+        assertEquals(mExpectedList, mChunkedList);
+    }
+
+    private static List<Integer> generateRange(int from, int to) {
+        List<Integer> range = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            range.add(i);
+        }
+        return range;
+    }
+}
@@ -1,7 +1,9 @@
 package com.bignerdranch.expandablerecyclerview;
 
 import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.RecyclerView.AdapterDataObserver;
+import android.view.View;
 import android.view.ViewGroup;
 
 import com.bignerdranch.expandablerecyclerview.model.ExpandableWrapper;
@@ -12,12 +14,20 @@ import org.junit.Test;
 import org.mockito.Mockito;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -166,6 +176,125 @@ public class ExpandableRecyclerAdapterTest {
         verifyParentItemsMatch(mBaseParents.get(0), true, 0);
     }
 
+    @Test
+    public void expandingAllParentsNotifiesEachCollapsedParent() {
+        mExpandableRecyclerAdapter.expandAllParents();
+
+        verify(mDataObserver).onItemRangeInserted(5, 3);
+        verify(mDataObserver).onItemRangeInserted(13, 3);
+        verify(mDataObserver).onItemRangeInserted(21, 3);
+        verify(mDataObserver).onItemRangeInserted(29, 3);
+        verify(mDataObserver).onItemRangeInserted(37, 3);
+        assertEquals(40, mExpandableRecyclerAdapter.getItemCount());
+        for (int i = 0; i < mBaseParents.size(); i++) {
+            verifyParentItemsMatch(mBaseParents.get(i), true, i * 4);
+        }
+    }
+
+    @Test
+    public void collapsingAllParentsNotifiesEachExpandedParent() {
+        mExpandableRecyclerAdapter.collapseAllParents();
+
+        verify(mDataObserver).onItemRangeRemoved(1, 3);
+        verify(mDataObserver).onItemRangeRemoved(3, 3);
+        verify(mDataObserver).onItemRangeRemoved(5, 3);
+        verify(mDataObserver).onItemRangeRemoved(7, 3);
+        verify(mDataObserver).onItemRangeRemoved(9, 3);
+        assertEquals(10, mExpandableRecyclerAdapter.getItemCount());
+        for (int i = 0; i < mBaseParents.size(); i++) {
+            verifyParentItemsMatch(mBaseParents.get(i), false, i);
+        }
+    }
+
+    @Test
+    public void expandingParentRangeNotifiesEachParentInRange() {
+        mExpandableRecyclerAdapter.expandParentRange(2, 4);
+
+        verify(mDataObserver).onItemRangeInserted(10, 3);
+        verify(mDataObserver).onItemRangeInserted(18, 3);
+        assertEquals(31, mExpandableRecyclerAdapter.getItemCount());
+        verifyParentItemsMatch(mBaseParents.get(1), false, 4);
+        for (int i = 2; i < 6; i++) {
+            verifyParentItemsMatch(mBaseParents.get(i), true, 5 + (i - 2) * 4);
+        }
+        verifyParentItemsMatch(mBaseParents.get(7), false, 25);
+    }
+
+    @Test
+    public void collapsingParentRangeNotifiesEachParentInRange() {
+        mExpandableRecyclerAdapter.collapseParentRange(1, 4);
+
+        verify(mDataObserver).onItemRangeRemoved(6, 3);
+        verify(mDataObserver).onItemRangeRemoved(8, 3);
+        assertEquals(19, mExpandableRecyclerAdapter.getItemCount());
+        verifyParentItemsMatch(mBaseParents.get(0), true, 0);
+        for (int i = 1; i < 5; i++) {
+            verifyParentItemsMatch(mBaseParents.get(i), false, 3 + i);
+        }
+        verifyParentItemsMatch(mBaseParents.get(6), true, 9);
+    }
+
+    @Test
+    public void expandingManyParentsNotifiesEachRunOfParents() {
+        for (int i = 0; i < 40; i++) {
+            mBaseParents.add(generateParent(false, 2));
+        }
+        mExpandableRecyclerAdapter.notifyParentRangeInserted(10, 40);
+
+        mExpandableRecyclerAdapter.expandAllParents();
+
+        verify(mDataObserver, never()).onChanged();
+        verify(mDataObserver).onItemRangeInserted(5, 3);
+        verify(mDataObserver).onItemRangeInserted(13, 3);
+        verify(mDataObserver).onItemRangeInserted(21, 3);
+        verify(mDataObserver).onItemRangeInserted(29, 3);
+        verify(mDataObserver).onItemRangeRemoved(37, 40);
+        verify(mDataObserver).onItemRangeInserted(37, 123);
+        assertEquals(160, mExpandableRecyclerAdapter.getItemCount());
+        verifyParentItemsMatch(mBaseParents.get(49), true, 157);
+    }
+
+    @Test
+    public void expandingManyParentsOnlyTogglesFirstParentOfEachRun() {
+        for (int i = 0; i < 40; i++) {
+            mBaseParents.add(generateParent(false, 2));
+        }
+        mExpandableRecyclerAdapter.notifyParentRangeInserted(10, 40);
+        RecyclerView recyclerView = mockAttachedRecyclerView(mock(RecyclerView.RecycledViewPool.class));
+        ParentViewHolder firstViewHolder = mock(ParentViewHolder.class);
+        ParentViewHolder nextViewHolder = mock(ParentViewHolder.class);
+        when(recyclerView.findViewHolderForAdapterPosition(24)).thenReturn(firstViewHolder);
+        when(recyclerView.findViewHolderForAdapterPosition(25)).thenReturn(nextViewHolder);
+
+        mExpandableRecyclerAdapter.expandAllParents();
+
+        verify(firstViewHolder).setExpanded(true);
+        verify(firstViewHolder).onExpansionToggled(false);
+        verify(nextViewHolder, never()).setExpanded(true);
+        verify(nextViewHolder, never()).onExpansionToggled(false);
+    }
+
+    @Test
+    public void collapsingManyParentsNotifiesEachRunOfParents() {
+        for (int i = 0; i < 40; i++) {
+            mBaseParents.add(generateParent(true, 2));
+        }
+        mExpandableRecyclerAdapter.notifyParentRangeInserted(10, 40);
+
+        mExpandableRecyclerAdapter.collapseAllParents();
+
+        verify(mDataObserver, never()).onChanged();
+        verify(mDataObserver).onItemRangeRemoved(1, 3);
+        verify(mDataObserver).onItemRangeRemoved(3, 3);
+        verify(mDataObserver).onItemRangeRemoved(5, 3);
+        verify(mDataObserver).onItemRangeRemoved(7, 3);
+        verify(mDataObserver).onItemRangeRemoved(9, 3);
+        verify(mDataObserver).onItemRangeRemoved(11, 119);
+        verify(mDataObserver).onItemRangeInserted(11, 39);
+        assertEquals(50, mExpandableRecyclerAdapter.getItemCount());
+        verifyParentItemsMatch(mBaseParents.get(49), false, 49);
+    }
+
     @Test
     public void notifyParentInsertedWithInitiallyCollapsedItem() {
         Parent<Object> originalFirstItem = mBaseParents.get(0);
@@ -318,6 +447,85 @@ public class ExpandableRecyclerAdapterTest {
         verifyParentItemsMatch(secondChangedParent, false, 14);
     }
 
+    @Test
+    public void notifyParentChangedWithPayloadOnlyChangesParentRow() {
+        mExpandableRecyclerAdapter.notifyParentChanged(4, "price");
+
+        verify(mDataObserver).onItemRangeChanged(10, 1, "price");
+        verify(mDataObserver, never()).onItemRangeChanged(10, 4, null);
+        verifyParentItemsMatch(mBaseParents.get(4), true, 10);
+    }
+
+    @Test
+    public void notifyParentRangeChangedWithPayloadSkipsChildren() {
+        mExpandableRecyclerAdapter.notifyParentRangeChanged(3, 3, "price");
+
+        verify(mDataObserver).onItemRangeChanged(9, 2, "price");
+        verify(mDataObserver).onItemRangeChanged(14, 1, "price");
+        verify(mDataObserver, times(2)).onItemRangeChanged(anyInt(), anyInt(), Mockito.any());
+    }
+
+    @Test
+    public void notifyChildRangeChangedWithPayload() {
+        mExpandableRecyclerAdapter.notifyChildChanged(2, 0, "badge");
+        mExpandableRecyclerAdapter.notifyChildRangeChanged(0, 1, 2, "badge");
+
+        verify(mDataObserver).onItemRangeChanged(6, 1, "badge");
+        verify(mDataObserver).onItemRangeChanged(2, 2, "badge");
+    }
+
+    @Test
+    public void bindingWithPayloadsCallsPayloadBinds() {
+        final List<Object> boundPayloads = new ArrayList<>();
+        mExpandableRecyclerAdapter = new TestExpandableRecyclerAdapter(mBaseParents) {
+            @Override
+            public void onBindParentViewHolder(@NonNull ParentViewHolder parentViewHolder, int parentPosition, @NonNull Parent<Object> parent, @NonNull List<Object> payloads) {
+                boundPayloads.add(parentPosition);
+                boundPayloads.addAll(payloads);
+            }
+
+            @Override
+            public void onBindChildViewHolder(@NonNull ChildViewHolder childViewHolder, int parentPosition, int childPosition, @NonNull Object child, @NonNull List<Object> payloads) {
+                boundPayloads.add(childPosition);
+                boundPayloads.addAll(payloads);
+            }
+        };
+
+        mExpandableRecyclerAdapter.onBindViewHolder(mock(ParentViewHolder.class), 5, Collections.<Object>singletonList("price"));
+        mExpandableRecyclerAdapter.onBindViewHolder(mock(ChildViewHolder.class), 7, Collections.<Object>singletonList("badge"));
+        mExpandableRecyclerAdapter.onBindViewHolder(mock(ChildViewHolder.class), 8);
+
+        assertEquals(Arrays.<Object>asList(2, "price", 1, "badge", 2), boundPayloads);
+    }
+
+    @Test
+    public void batchedUpdatesDispatchMergedNotificationsAtEnd() {
+        mExpandableRecyclerAdapter.beginBatchedUpdates();
+        for (int i = 0; i < 3; i++) {
+            mBaseParents.get(0).getChildList().add(3 + i, new Object());
+            mExpandableRecyclerAdapter.notifyChildInserted(0, 3 + i);
+        }
+        mExpandableRecyclerAdapter.beginBatchedUpdates();
+        mExpandableRecyclerAdapter.notifyParentRangeChanged(1, 2);
+        mExpandableRecyclerAdapter.notifyParentChanged(3);
+        mExpandableRecyclerAdapter.endBatchedUpdates();
+
+        verify(mDataObserver, never()).onItemRangeInserted(anyInt(), anyInt());
+        assertEquals(28, mExpandableRecyclerAdapter.getItemCount());
+        verifyParentItemsMatch(mBaseParents.get(1), false, 7);
+
+        mExpandableRecyclerAdapter.endBatchedUpdates();
+
+        verify(mDataObserver).onItemRangeInserted(4, 3);
+        verify(mDataObserver).onItemRangeChanged(7, 6, null);
+        verify(mDataObserver, times(1)).onItemRangeChanged(anyInt(), anyInt(), Mockito.any());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void endBatchedUpdatesWithoutBeginThrows() {
+        mExpandableRecyclerAdapter.endBatchedUpdates();
+    }
+
     @Test
     public void notifyParentMovedCollapsedParent() {
         assertEquals(25, mExpandableRecyclerAdapter.getItemCount());
@@ -344,6 +552,273 @@ public class ExpandableRecyclerAdapterTest {
         verifyParentItemsMatch(movedParent, true, 20);
     }
 
+    @Test
+    public void notifyParentMovedCollapsedParentUp() {
+        assertEquals(25, mExpandableRecyclerAdapter.getItemCount());
+        verifyParentItemsMatch(mBaseParents.get(7), false, 19);
+
+        Parent<Object> movedParent = mBaseParents.remove(7);
+        mBaseParents.add(2, movedParent);
+        mExpandableRecyclerAdapter.notifyParentMoved(7, 2);
+
+        verify(mDataObserver).onItemRangeMoved(19, 5, 1);
+        assertEquals(25, mExpandableRecyclerAdapter.getItemCount());
+        verifyParentItemsMatch(movedParent, false, 5);
+        verifyParentItemsMatch(mBaseParents.get(3), true, 6);
+    }
+
+    @Test
+    public void notifyParentMovedExpandedParentUp() {
+        assertEquals(25, mExpandableRecyclerAdapter.getItemCount());
+        verifyParentItemsMatch(mBaseParents.get(8), true, 20);
+
+        Parent<Object> movedParent = mBaseParents.remove(8);
+        mBaseParents.add(1, movedParent);
+        mExpandableRecyclerAdapter.notifyParentMoved(8, 1);
+
+        verify(mDataObserver).onItemRangeRemoved(20, 4);
+        verify(mDataObserver).onItemRangeInserted(4, 4);
+        assertEquals(25, mExpandableRecyclerAdapter.getItemCount());
+        verifyParentItemsMatch(movedParent, true, 4);
+        verifyParentItemsMatch(mBaseParents.get(2), false, 8);
+    }
+
+    @Test
+    public void nearestParentAndChildPositionsMatchFlatList() {
+        int flatPosition = 0;
+        for (int i = 0; i < mBaseParents.size(); i++) {
+            assertEquals(i, mExpandableRecyclerAdapter.getNearestParentPosition(flatPosition));
+            flatPosition++;
+            if (mBaseParents.get(i).isInitiallyExpanded()) {
+                for (int j = 0; j < mBaseParents.get(i).getChildList().size(); j++) {
+                    assertEquals(i, mExpandableRecyclerAdapter.getNearestParentPosition(flatPosition));
+                    assertEquals(j, mExpandableRecyclerAdapter.getChildPosition(flatPosition));
+                    flatPosition++;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void positionLookupsFollowExpansionChanges() {
+        mExpandableRecyclerAdapter.collapseParent(0);
+        mExpandableRecyclerAdapter.expandParent(1);
+
+        assertEquals(1, mExpandableRecyclerAdapter.getNearestParentPosition(1));
+        assertEquals(1, mExpandableRecyclerAdapter.getNearestParentPosition(4));
+        assertEquals(2, mExpandableRecyclerAdapter.getChildPosition(4));
+        assertEquals(2, mExpandableRecyclerAdapter.getNearestParentPosition(5));
+        assertEquals(0, mExpandableRecyclerAdapter.getChildPosition(6));
+    }
+
+    @Test
+    public void reexpandingParentAfterReleasingChildWrappers() {
+        mExpandableRecyclerAdapter.setReleaseChildWrappersOnCollapse(true);
+
+        mExpandableRecyclerAdapter.collapseParent(0);
+        verifyParentItemsMatch(mBaseParents.get(0), false, 0);
+        mExpandableRecyclerAdapter.expandParent(0);
+
+        verify(mDataObserver).onItemRangeInserted(1, 3);
+        assertEquals(25, mExpandableRecyclerAdapter.getItemCount());
+        verifyParentItemsMatch(mBaseParents.get(0), true, 0);
+    }
+
+    @Test
+    public void expandingParentWithObjectAfterStructuralChanges() {
+        Parent<Object> insertedParent = generateParent(false, 2);
+        mBaseParents.add(0, insertedParent);
+        mExpandableRecyclerAdapter.notifyParentInserted(0);
+        mExpandableRecyclerAdapter.expandParent(insertedParent);
+
+        verify(mDataObserver).onItemRangeInserted(1, 2);
+        verifyParentItemsMatch(insertedParent, true, 0);
+
+        Parent<Object> replacedParent = generateParent(false, 3);
+        mBaseParents.set(2, replacedParent);
+        mExpandableRecyclerAdapter.notifyParentChanged(2);
+        mExpandableRecyclerAdapter.expandParent(replacedParent);
+
+        verify(mDataObserver).onItemRangeInserted(8, 3);
+        verifyParentItemsMatch(replacedParent, true, 7);
+        assertEquals(31, mExpandableRecyclerAdapter.getItemCount());
+    }
+
+    @Test
+    public void expandingParentNotInListHasNoEffect() {
+        mExpandableRecyclerAdapter.expandParent(generateParent(false, 3));
+
+        verify(mDataObserver, never()).onItemRangeInserted(anyInt(), anyInt());
+        assertEquals(25, mExpandableRecyclerAdapter.getItemCount());
+    }
+
+    @Test
+    public void virtualRowModelResolvesRowsFromParentList() throws NoSuchFieldException, IllegalAccessException {
+        useVirtualRowModel();
+
+        assertEquals(25, mExpandableRecyclerAdapter.getItemCount());
+        int flatIndex = 0;
+        for (Parent<Object> baseParent : mBaseParents) {
+            verifyParentItemsMatch(baseParent, baseParent.isInitiallyExpanded(), flatIndex);
+            flatIndex++;
+            if (baseParent.isInitiallyExpanded()) {
+                flatIndex += baseParent.getChildList().size();
+            }
+        }
+    }
+
+    @Test
+    public void virtualRowModelExpandAndCollapse() throws NoSuchFieldException, IllegalAccessException {
+        useVirtualRowModel();
+
+        mExpandableRecyclerAdapter.collapseParent(0);
+        verify(mDataObserver).onItemRangeRemoved(1, 3);
+        mExpandableRecyclerAdapter.expandParent(mBaseParents.get(1));
+        verify(mDataObserver).onItemRangeInserted(2, 3);
+
+        assertEquals(25, mExpandableRecyclerAdapter.getItemCount());
+        verifyParentItemsMatch(mBaseParents.get(0), false, 0);
+        verifyParentItemsMatch(mBaseParents.get(1), true, 1);
+        verifyParentItemsMatch(mBaseParents.get(2), true, 5);
+    }
+
+    @Test
+    public void virtualRowModelStructuralNotifications() throws NoSuchFieldException, IllegalAccessException {
+        useVirtualRowModel();
+
+        Parent<Object> insertedParent = generateParent(true, 2);
+        mBaseParents.add(1, insertedParent);
+        mExpandableRecyclerAdapter.notifyParentInserted(1);
+        verify(mDataObserver).onItemRangeInserted(4, 3);
+
+        mBaseParents.remove(0);
+        mExpandableRecyclerAdapter.notifyParentRemoved(0);
+        verify(mDataObserver).onItemRangeRemoved(0, 4);
+
+        insertedParent.getChildList().add(new Object());
+        mExpandableRecyclerAdapter.notifyChildInserted(0, 2);
+        verify(mDataObserver).onItemRangeInserted(3, 1);
+
+        Parent<Object> movedParent = mBaseParents.remove(0);
+        mBaseParents.add(2, movedParent);
+        mExpandableRecyclerAdapter.notifyParentMoved(0, 2);
+
+        assertEquals(25, mExpandableRecyclerAdapter.getItemCount());
+        verifyParentItemsMatch(mBaseParents.get(0), false, 0);
+        verifyParentItemsMatch(mBaseParents.get(1), true, 1);
+        verifyParentItemsMatch(movedParent, true, 5);
+        verifyParentItemsMatch(mBaseParents.get(3), false, 9);
+    }
+
+    @Test
+    public void packedRowModelExpandAndCollapse() throws NoSuchFieldException, IllegalAccessException {
+        mExpandableRecyclerAdapter = new TestExpandableRecyclerAdapter(mBaseParents, ExpandableRecyclerAdapter.ROW_MODEL_PACKED);
+        mDataObserver = TestUtils.fixAdapterForTesting(mExpandableRecyclerAdapter);
+
+        mExpandableRecyclerAdapter.collapseParent(0);
+        verify(mDataObserver).onItemRangeRemoved(1, 3);
+        mExpandableRecyclerAdapter.expandParent(1);
+        verify(mDataObserver).onItemRangeInserted(2, 3);
+
+        assertEquals(25, mExpandableRecyclerAdapter.getItemCount());
+        verifyParentItemsMatch(mBaseParents.get(0), false, 0);
+        verifyParentItemsMatch(mBaseParents.get(1), true, 1);
+        assertEquals(1, mExpandableRecyclerAdapter.getNearestParentPosition(4));
+        assertEquals(2, mExpandableRecyclerAdapter.getChildPosition(4));
+        verifyParentItemsMatch(mBaseParents.get(2), true, 5);
+    }
+
+    @Test
+    public void rowModelsStayInSyncThroughRandomChanges() {
+        List<TestExpandableRecyclerAdapter> adapters = new ArrayList<>();
+        adapters.add(new TestExpandableRecyclerAdapter(mBaseParents, ExpandableRecyclerAdapter.ROW_MODEL_WRAPPED));
+        adapters.add(new TestExpandableRecyclerAdapter(mBaseParents, ExpandableRecyclerAdapter.ROW_MODEL_VIRTUAL));
+        adapters.add(new TestExpandableRecyclerAdapter(mBaseParents, ExpandableRecyclerAdapter.ROW_MODEL_PACKED));
+
+        Random random = new Random(3);
+        for (int i = 0; i < 500; i++) {
+            int parentCount = mBaseParents.size();
+            int operation = parentCount < 2 ? 2 : random.nextInt(8);
+            int parentPosition = random.nextInt(Math.max(parentCount, 1));
+            if (operation == 0) {
+                for (TestExpandableRecyclerAdapter adapter : adapters) {
+                    adapter.expandParent(parentPosition);
+                }
+            } else if (operation == 1) {
+                for (TestExpandableRecyclerAdapter adapter : adapters) {
+                    adapter.collapseParent(parentPosition);
+                }
+            } else if (operation == 2) {
+                int itemCount = random.nextInt(3) + 1;
+                for (int j = 0; j < itemCount; j++) {
+                    mBaseParents.add(parentPosition, generateParent(random.nextBoolean(), random.nextInt(4)));
+                }
+                for (TestExpandableRecyclerAdapter adapter : adapters) {
+                    adapter.notifyParentRangeInserted(parentPosition, itemCount);
+                }
+            } else if (operation == 3) {
+                int itemCount = Math.min(random.nextInt(2) + 1, parentCount - parentPosition);
+                mBaseParents.subList(parentPosition, parentPosition + itemCount).clear();
+                for (TestExpandableRecyclerAdapter adapter : adapters) {
+                    adapter.notifyParentRangeRemoved(parentPosition, itemCount);
+                }
+            } else if (operation == 4) {
+                int toParentPosition = random.nextInt(parentCount);
+                mBaseParents.add(toParentPosition, mBaseParents.remove(parentPosition));
+                for (TestExpandableRecyclerAdapter adapter : adapters) {
+                    adapter.notifyParentMoved(parentPosition, toParentPosition);
+                }
+            } else if (operation == 5) {
+                List<Object> childList = mBaseParents.get(parentPosition).getChildList();
+                int childPosition = random.nextInt(childList.size() + 1);
+                childList.add(childPosition, new Object());
+                childList.add(childPosition, new Object());
+                for (TestExpandableRecyclerAdapter adapter : adapters) {
+                    adapter.notifyChildRangeInserted(parentPosition, childPosition, 2);
+                }
+            } else if (operation == 6) {
+                boolean expand = random.nextBoolean();
+                int itemCount = random.nextInt(parentCount - parentPosition) + 1;
+                for (TestExpandableRecyclerAdapter adapter : adapters) {
+                    if (expand) {
+                        adapter.expandParentRange(parentPosition, itemCount);
+                    } else {
+                        adapter.collapseParentRange(parentPosition, itemCount);
+                    }
+                }
+            } else {
+                List<Object> childList = mBaseParents.get(parentPosition).getChildList();
+                if (childList.isEmpty()) {
+                    continue;
+                }
+                int childPosition = random.nextInt(childList.size());
+                childList.remove(childPosition);
+                for (TestExpandableRecyclerAdapter adapter : adapters) {
+                    adapter.notifyChildRemoved(parentPosition, childPosition);
+                }
+            }
+
+            verifyAdaptersMatch(adapters);
+        }
+    }
+
+    private void verifyAdaptersMatch(List<TestExpandableRecyclerAdapter> adapters) {
+        TestExpandableRecyclerAdapter expectedAdapter = adapters.get(0);
+        for (TestExpandableRecyclerAdapter adapter : adapters) {
+            assertEquals(expectedAdapter.getItemCount(), adapter.getItemCount());
+            for (int flatPosition = 0; flatPosition < adapter.getItemCount(); flatPosition++) {
+                ExpandableWrapper<Parent<Object>, Object> expected = expectedAdapter.mFlatItemList.get(flatPosition);
+                ExpandableWrapper<Parent<Object>, Object> actual = adapter.mFlatItemList.get(flatPosition);
+                assertEquals(expected.isParent(), actual.isParent());
+                assertEquals(expected.getParent(), actual.getParent());
+                assertEquals(expected.getChild(), actual.getChild());
+                assertEquals(expected.isExpanded(), actual.isExpanded());
+                assertEquals(expectedAdapter.getNearestParentPosition(flatPosition), adapter.getNearestParentPosition(flatPosition));
+                assertEquals(expectedAdapter.getChildPosition(flatPosition), adapter.getChildPosition(flatPosition));
+            }
+        }
+    }
+
     @Test
     public void notifyParentDataSetChangedWithExpansionPreservationAllCollapsed() {
         mExpandableRecyclerAdapter.collapseAllParents();
@@ -414,66 +889,1166 @@ public class ExpandableRecyclerAdapterTest {
         }
     }
 
-    private void verifyParentItemsMatch(Parent<Object> expectedParent, boolean expectedExpansion, int actualParentIndex) {
-        assertEquals(expectedParent, getListItem(actualParentIndex));
-        assertEquals(expectedExpansion, mExpandableRecyclerAdapter.mFlatItemList.get(actualParentIndex).isExpanded());
+    @Test
+    public void setParentListWithDiffCallbackNotifiesGranularChanges() {
+        List<Parent<Object>> newParents = new ArrayList<>(mBaseParents);
+        Parent<Object> movedParent = newParents.remove(0);
+        newParents.remove(0);
+        newParents.add(movedParent);
+        Parent<Object> insertedParent = generateParent(false, 2);
+        newParents.add(2, insertedParent);
+
+        mExpandableRecyclerAdapter.setParentList(newParents, new IdentityDiffCallback());
+
+        verify(mDataObserver).onItemRangeRemoved(4, 1);
+        verify(mDataObserver, times(4)).onItemRangeMoved(0, 23, 1);
+        verify(mDataObserver).onItemRangeInserted(5, 1);
+        verify(mDataObserver, never()).onChanged();
+        verify(mDataObserver, never()).onItemRangeChanged(anyInt(), anyInt());
+        assertEquals(25, mExpandableRecyclerAdapter.getItemCount());
+        assertEquals(newParents, mExpandableRecyclerAdapter.getParentList());
+        verifyParentItemsMatch(newParents.get(0), true, 0);
+        verifyParentItemsMatch(insertedParent, false, 5);
+        verifyParentItemsMatch(movedParent, true, 21);
+    }
 
-        if (expectedExpansion) {
-            List<Object> expectedChildList = expectedParent.getChildList();
-            int actualChildIndex = actualParentIndex + 1;
-            for (int i = 0; i < expectedChildList.size(); i++) {
-                assertEquals(expectedChildList.get(i), getListItem(actualChildIndex));
-                actualChildIndex++;
+    @Test
+    public void setParentListWithDiffCallbackNotificationsReplayToNewRows() throws NoSuchFieldException, IllegalAccessException {
+        Random random = new Random(11);
+        for (int round = 0; round < 50; round++) {
+            List<Parent<Object>> oldParents = new ArrayList<>();
+            int nextId = 0;
+            for (int i = 0; i < random.nextInt(12); i++) {
+                oldParents.add(new DiffParent(nextId++, 0, random.nextBoolean(), generateDiffChildren(random, random.nextInt(5))));
+            }
+
+            int[] toggles = new int[oldParents.size()];
+            for (int i = 0; i < toggles.length; i++) {
+                toggles[i] = random.nextInt(3);
             }
+
+            List<TestExpandableRecyclerAdapter> adapters = new ArrayList<>();
+            List<RowRecordingObserver> observers = new ArrayList<>();
+            for (int rowModel = ExpandableRecyclerAdapter.ROW_MODEL_WRAPPED; rowModel <= ExpandableRecyclerAdapter.ROW_MODEL_PACKED; rowModel++) {
+                TestExpandableRecyclerAdapter adapter = new TestExpandableRecyclerAdapter(oldParents, rowModel);
+                for (int i = 0; i < toggles.length; i++) {
+                    if (toggles[i] == 1) {
+                        adapter.collapseParent(i);
+                    } else if (toggles[i] == 2) {
+                        adapter.expandParent(i);
+                    }
+                }
+                RowRecordingObserver observer = new RowRecordingObserver(getRowKeys(adapter));
+                TestUtils.fixAdapterForTesting(adapter, observer);
+                adapters.add(adapter);
+                observers.add(observer);
+            }
+            verifyAdaptersMatch(adapters);
+
+            List<Parent<Object>> newParents = new ArrayList<>();
+            for (Parent<Object> parent : oldParents) {
+                if (random.nextInt(4) == 0) {
+                    continue;
+                }
+                DiffParent oldParent = (DiffParent) parent;
+                List<Object> childList = new ArrayList<>();
+                for (Object child : oldParent.getChildList()) {
+                    if (random.nextInt(4) != 0) {
+                        DiffChild oldChild = (DiffChild) child;
+                        childList.add(new DiffChild(oldChild.mId, oldChild.mVersion + (random.nextInt(4) == 0 ? 1 : 0)));
+                    }
+                }
+                Collections.shuffle(childList.subList(0, random.nextInt(childList.size() + 1)), random);
+                childList.addAll(random.nextInt(childList.size() + 1), generateDiffChildren(random, random.nextInt(3)));
+                newParents.add(new DiffParent(oldParent.mId, oldParent.mVersion + random.nextInt(2), random.nextBoolean(), childList));
+            }
+            for (int i = 0; i < random.nextInt(4) && !newParents.isEmpty(); i++) {
+                newParents.add(random.nextInt(newParents.size()), newParents.remove(random.nextInt(newParents.size())));
+            }
+            for (int i = 0; i < random.nextInt(4); i++) {
+                newParents.add(random.nextInt(newParents.size() + 1),
+                        new DiffParent(nextId++, 0, random.nextBoolean(), generateDiffChildren(random, random.nextInt(4))));
+            }
+
+            for (int i = 0; i < adapters.size(); i++) {
+                TestExpandableRecyclerAdapter adapter = adapters.get(i);
+                List<String> oldRowKeys = getRowKeys(adapter);
+                adapter.setParentList(newParents, new DiffParentCallback());
+
+                observers.get(i).verifyRows(oldRowKeys, getRowKeys(adapter));
+                assertEquals(newParents, adapter.getParentList());
+            }
+            verifyAdaptersMatch(adapters);
         }
     }
 
-    private Parent<Object> generateParent(boolean initiallyExpanded, int childCount) {
-        List<Object> childObjects = new ArrayList<>();
-        for (int i = 0; i < childCount; i++) {
-            childObjects.add(new Object());
-        }
-        Parent<Object> parent = (Parent<Object>) mock(Parent.class);
-        Mockito.when(parent.getChildList()).thenReturn(childObjects);
-        when(parent.isInitiallyExpanded()).thenReturn(initiallyExpanded);
+    @Test
+    public void setParentListAsyncAppliesOnlyLatestSubmission() {
+        QueueExecutor backgroundExecutor = new QueueExecutor();
+        mExpandableRecyclerAdapter.mMainThreadExecutor = new DirectExecutor();
+        List<Parent<Object>> firstParents = new ArrayList<>(mBaseParents.subList(0, 2));
+        List<Parent<Object>> secondParents = new ArrayList<>(mBaseParents.subList(0, 4));
+        List<Parent<Object>> thirdParents = new ArrayList<>(mBaseParents.subList(2, 6));
+
+        mExpandableRecyclerAdapter.setParentListAsync(firstParents, new IdentityDiffCallback(), backgroundExecutor);
+        mExpandableRecyclerAdapter.setParentListAsync(secondParents, new IdentityDiffCallback(), backgroundExecutor);
+        mExpandableRecyclerAdapter.setParentListAsync(thirdParents, new IdentityDiffCallback(), backgroundExecutor);
+
+        assertEquals(1, backgroundExecutor.size());
+        backgroundExecutor.runNext();
+
+        // The first result is stale, only the last submission is compared next
+        assertEquals(mBaseParents, mExpandableRecyclerAdapter.getParentList());
+        assertEquals(1, backgroundExecutor.size());
+        backgroundExecutor.runNext();
+
+        assertEquals(0, backgroundExecutor.size());
+        assertEquals(thirdParents, mExpandableRecyclerAdapter.getParentList());
+        assertEquals(10, mExpandableRecyclerAdapter.getItemCount());
+        verifyParentItemsMatch(thirdParents.get(0), true, 0);
+        verifyParentItemsMatch(thirdParents.get(3), false, 9);
+        verify(mDataObserver, never()).onChanged();
+    }
 
-        return parent;
+    @Test
+    public void setParentListAsyncResultDroppedAfterSynchronousReplacement() {
+        QueueExecutor backgroundExecutor = new QueueExecutor();
+        mExpandableRecyclerAdapter.mMainThreadExecutor = new DirectExecutor();
+        List<Parent<Object>> asyncParents = new ArrayList<>(mBaseParents.subList(0, 2));
+        List<Parent<Object>> syncParents = new ArrayList<>(mBaseParents.subList(0, 4));
+
+        mExpandableRecyclerAdapter.setParentListAsync(asyncParents, new IdentityDiffCallback(), backgroundExecutor);
+        mExpandableRecyclerAdapter.setParentList(syncParents, new IdentityDiffCallback());
+        backgroundExecutor.runNext();
+
+        assertEquals(0, backgroundExecutor.size());
+        assertEquals(syncParents, mExpandableRecyclerAdapter.getParentList());
+        assertEquals(10, mExpandableRecyclerAdapter.getItemCount());
     }
 
-    protected Object getListItem(int flatPosition) {
-        ExpandableWrapper<Parent<Object>, Object> listItem = mExpandableRecyclerAdapter.mFlatItemList.get(flatPosition);
-        if (listItem.isParent()) {
-            return listItem.getParent();
-        } else {
-            return listItem.getChild();
-        }
+    @Test
+    public void setParentListAsyncComparesAgainWhenListChangedMeanwhile() {
+        QueueExecutor backgroundExecutor = new QueueExecutor();
+        mExpandableRecyclerAdapter.mMainThreadExecutor = new DirectExecutor();
+        List<Parent<Object>> newParents = new ArrayList<>(mBaseParents);
+        newParents.remove(0);
+
+        mExpandableRecyclerAdapter.setParentListAsync(newParents, new IdentityDiffCallback(), backgroundExecutor);
+        mBaseParents.add(generateParent(true, 2));
+        mExpandableRecyclerAdapter.notifyParentInserted(10);
+        backgroundExecutor.runNext();
+
+        assertEquals(mBaseParents, mExpandableRecyclerAdapter.getParentList());
+        assertEquals(1, backgroundExecutor.size());
+        backgroundExecutor.runNext();
+
+        assertEquals(newParents, mExpandableRecyclerAdapter.getParentList());
+        assertEquals(21, mExpandableRecyclerAdapter.getItemCount());
+        verifyParentItemsMatch(newParents.get(0), false, 0);
     }
 
-    private static class TestExpandableRecyclerAdapter extends ExpandableRecyclerAdapter<Parent<Object>, Object, ParentViewHolder, ChildViewHolder> {
+    @Test
+    public void stableIdsFollowRowsThroughStructuralChanges() throws NoSuchFieldException, IllegalAccessException {
+        mExpandableRecyclerAdapter = new TestExpandableRecyclerAdapter(mBaseParents) {
+            @Override
+            public long getParentId(int parentPosition) {
+                return System.identityHashCode(mBaseParents.get(parentPosition));
+            }
 
-        public TestExpandableRecyclerAdapter(@NonNull List<Parent<Object>> parentList) {
-            super(parentList);
-        }
+            @Override
+            public long getChildId(int parentPosition, int childPosition) {
+                return System.identityHashCode(mBaseParents.get(parentPosition).getChildList().get(childPosition));
+            }
+        };
+        // The id table observes the adapter, so it is registered after the test observer
+        mDataObserver = TestUtils.fixAdapterForTesting(mExpandableRecyclerAdapter);
+        mExpandableRecyclerAdapter.setHasStableIds(true);
+        List<Long> initialIds = getItemIds();
+        assertEquals(25, new HashSet<>(initialIds).size());
 
-        @NonNull
-        @Override
-        public ParentViewHolder onCreateParentViewHolder(@NonNull ViewGroup parentViewGroup, int viewType) {
-            return null;
-        }
+        mExpandableRecyclerAdapter.collapseParent(0);
+        assertEquals(initialIds.subList(4, 25), getItemIds().subList(1, 22));
 
-        @Override
-        public ChildViewHolder onCreateChildViewHolder(@NonNull ViewGroup childViewGroup, int viewType) {
-            return null;
-        }
+        mExpandableRecyclerAdapter.expandParent(0);
+        mBaseParents.add(0, mBaseParents.remove(9));
+        mExpandableRecyclerAdapter.notifyParentMoved(9, 0);
+        List<Long> ids = getItemIds();
+        assertEquals(initialIds.get(24), ids.get(0));
+        assertEquals(initialIds.subList(0, 24), ids.subList(1, 25));
+    }
 
-        @Override
-        public void onBindParentViewHolder(@NonNull ParentViewHolder parentViewHolder, int parentPosition, @NonNull Parent<Object> parent) {
+    @Test(expected = IllegalStateException.class)
+    public void stableIdsRequireParentIds() {
+        mExpandableRecyclerAdapter.setHasStableIds(true);
 
-        }
+        mExpandableRecyclerAdapter.getItemId(0);
+    }
 
-        @Override
-        public void onBindChildViewHolder(@NonNull ChildViewHolder childViewHolder, int parentPosition, int childPosition, @NonNull Object child) {
+    @Test
+    public void expandingUnloadedParentLoadsChildrenInPlaceOfPlaceholder() throws NoSuchFieldException, IllegalAccessException {
+        QueueExecutor backgroundExecutor = new QueueExecutor();
+        TestChildListLoader childListLoader = setupChildListLoader(mBaseParents.get(1), backgroundExecutor);
+
+        mExpandableRecyclerAdapter.expandParent(1);
 
+        verify(mDataObserver).onItemRangeInserted(5, 1);
+        assertEquals(26, mExpandableRecyclerAdapter.getItemCount());
+        assertEquals(1, backgroundExecutor.size());
+
+        backgroundExecutor.runNext();
+
+        assertEquals(1, childListLoader.mLoadCount);
+        verify(mDataObserver).onItemRangeChanged(5, 1, null);
+        verify(mDataObserver).onItemRangeInserted(6, 2);
+        assertEquals(28, mExpandableRecyclerAdapter.getItemCount());
+        verifyParentItemsMatch(mBaseParents.get(1), true, 4);
+        verifyParentItemsMatch(mBaseParents.get(2), true, 8);
+    }
+
+    @Test
+    public void collapsingBeforeChildrenLoadedCancelsLoad() throws NoSuchFieldException, IllegalAccessException {
+        QueueExecutor backgroundExecutor = new QueueExecutor();
+        TestChildListLoader childListLoader = setupChildListLoader(mBaseParents.get(1), backgroundExecutor);
+
+        mExpandableRecyclerAdapter.expandParent(1);
+        mExpandableRecyclerAdapter.collapseParent(1);
+        backgroundExecutor.runNext();
+
+        assertEquals(0, childListLoader.mLoadCount);
+        assertEquals(25, mExpandableRecyclerAdapter.getItemCount());
+        verify(mDataObserver, never()).onItemRangeChanged(anyInt(), anyInt(), Mockito.any());
+    }
+
+    @Test
+    public void recyclingPlaceholderBeforeChildrenLoadedCancelsLoad() throws NoSuchFieldException, IllegalAccessException {
+        QueueExecutor backgroundExecutor = new QueueExecutor();
+        TestChildListLoader childListLoader = setupChildListLoader(mBaseParents.get(0), backgroundExecutor);
+        assertEquals(23, mExpandableRecyclerAdapter.getItemCount());
+
+        ChildViewHolder placeholderViewHolder = mock(ChildViewHolder.class);
+        mExpandableRecyclerAdapter.onBindViewHolder(placeholderViewHolder, 1);
+        assertEquals(1, backgroundExecutor.size());
+
+        mExpandableRecyclerAdapter.onViewRecycled(placeholderViewHolder);
+        backgroundExecutor.runNext();
+
+        assertEquals(0, childListLoader.mLoadCount);
+        assertEquals(23, mExpandableRecyclerAdapter.getItemCount());
+    }
+
+    @Test
+    public void filteringChildrenHidesParentsWithoutShownChildren() {
+        final Set<Object> shownChildren = new HashSet<>();
+        shownChildren.add(mBaseParents.get(0).getChildList().get(1));
+        shownChildren.addAll(mBaseParents.get(2).getChildList());
+
+        mExpandableRecyclerAdapter.setFilter(new TestParentListFilter(shownChildren), false);
+
+        verify(mDataObserver, never()).onChanged();
+        verify(mDataObserver).onItemRangeRemoved(1, 1);
+        verify(mDataObserver).onItemRangeRemoved(2, 2);
+        verify(mDataObserver).onItemRangeRemoved(6, 16);
+        assertEquals(Arrays.asList(mBaseParents.get(0), mBaseParents.get(2)), mExpandableRecyclerAdapter.getParentList());
+        assertEquals(6, mExpandableRecyclerAdapter.getItemCount());
+        assertEquals(mBaseParents.get(0).getChildList().get(1), getListItem(1));
+        verifyParentItemsMatch(mBaseParents.get(2), true, 2);
+    }
+
+    @Test
+    public void narrowingFilterOnlyTestsShownRows() {
+        Set<Object> shownChildren = new HashSet<>();
+        for (Parent<Object> parent : mBaseParents) {
+            shownChildren.add(parent.getChildList().get(0));
+        }
+        mExpandableRecyclerAdapter.setFilter(new TestParentListFilter(shownChildren), false);
+        assertEquals(15, mExpandableRecyclerAdapter.getItemCount());
+
+        shownChildren.remove(mBaseParents.get(4).getChildList().get(0));
+        TestParentListFilter narrowerFilter = new TestParentListFilter(shownChildren);
+        mExpandableRecyclerAdapter.setFilter(narrowerFilter, true);
+
+        assertEquals(10, narrowerFilter.mTestedChildCount);
+        verify(mDataObserver).onItemRangeRemoved(6, 2);
+        assertEquals(13, mExpandableRecyclerAdapter.getItemCount());
+
+        mExpandableRecyclerAdapter.clearFilter();
+
+        assertEquals(mBaseParents, mExpandableRecyclerAdapter.getParentList());
+        assertEquals(25, mExpandableRecyclerAdapter.getItemCount());
+        for (int i = 0; i < 5; i++) {
+            verifyParentItemsMatch(mBaseParents.get(2 * i), true, 5 * i);
+            verifyParentItemsMatch(mBaseParents.get(2 * i + 1), false, 5 * i + 4);
+        }
+    }
+
+    @Test
+    public void filterCanExpandParentsWithShownChildren() {
+        Set<Object> shownChildren = new HashSet<>();
+        shownChildren.add(mBaseParents.get(1).getChildList().get(2));
+        shownChildren.add(mBaseParents.get(2).getChildList().get(0));
+        TestParentListFilter filter = new TestParentListFilter(shownChildren);
+        filter.mExpandParentsWithShownChildren = true;
+
+        mExpandableRecyclerAdapter.setFilter(filter, false);
+
+        assertEquals(4, mExpandableRecyclerAdapter.getItemCount());
+        assertEquals(mBaseParents.get(1), getListItem(0));
+        assertEquals(true, mExpandableRecyclerAdapter.mFlatItemList.get(0).isExpanded());
+        assertEquals(mBaseParents.get(1).getChildList().get(2), getListItem(1));
+        assertEquals(mBaseParents.get(2), getListItem(2));
+        assertEquals(mBaseParents.get(2).getChildList().get(0), getListItem(3));
+    }
+
+    @Test
+    public void randomFiltersMatchFilteredParentList() throws NoSuchFieldException, IllegalAccessException {
+        useVirtualRowModel();
+        Random random = new Random(19);
+        List<Object> allChildren = new ArrayList<>();
+        for (Parent<Object> parent : mBaseParents) {
+            allChildren.addAll(parent.getChildList());
+        }
+
+        Set<Object> shownChildren = new HashSet<>(allChildren);
+        for (int i = 0; i < 100; i++) {
+            boolean narrows = random.nextBoolean();
+            if (narrows) {
+                shownChildren.remove(allChildren.get(random.nextInt(allChildren.size())));
+            } else {
+                shownChildren.clear();
+                for (Object child : allChildren) {
+                    if (random.nextInt(3) == 0) {
+                        shownChildren.add(child);
+                    }
+                }
+            }
+            mExpandableRecyclerAdapter.setFilter(new TestParentListFilter(shownChildren), narrows);
+
+            List<Object> expectedRows = new ArrayList<>();
+            for (int j = 0; j < mBaseParents.size(); j++) {
+                List<Object> childList = new ArrayList<>(mBaseParents.get(j).getChildList());
+                childList.retainAll(shownChildren);
+                if (childList.isEmpty()) {
+                    continue;
+                }
+                expectedRows.add(mBaseParents.get(j));
+                if (j % 2 == 0) {
+                    expectedRows.addAll(childList);
+                }
+            }
+            List<Object> rows = new ArrayList<>();
+            for (int j = 0; j < mExpandableRecyclerAdapter.getItemCount(); j++) {
+                rows.add(getListItem(j));
+            }
+            assertEquals(expectedRows, rows);
+        }
+    }
+
+    @Test
+    public void warmingUpChildViewHoldersFillsSharedPoolWhileIdle() {
+        QueueExecutor idleExecutor = new QueueExecutor();
+        mExpandableRecyclerAdapter.mIdleExecutor = idleExecutor;
+        RecyclerView.RecycledViewPool pool = mock(RecyclerView.RecycledViewPool.class);
+        RecyclerView recyclerView = mockAttachedRecyclerView(pool);
+        mockAttachedRecyclerView(pool);
+
+        mExpandableRecyclerAdapter.warmUpChildViewHolders(1, 2);
+
+        verify(pool, never()).setMaxRecycledViews(Mockito.anyInt(), Mockito.anyInt());
+        verify(pool, never()).putRecycledView(Mockito.any(RecyclerView.ViewHolder.class));
+        assertEquals(1, idleExecutor.size());
+
+        idleExecutor.runNext();
+        verify(pool).putRecycledView(Mockito.any(ChildViewHolder.class));
+        assertEquals(1, idleExecutor.size());
+
+        idleExecutor.runNext();
+        verify(pool, times(2)).putRecycledView(Mockito.any(ChildViewHolder.class));
+        assertEquals(0, idleExecutor.size());
+        verify(recyclerView, times(2)).getAdapter();
+    }
+
+    @Test
+    public void warmingUpViewHoldersOnlyRaisesPoolLimit() {
+        mExpandableRecyclerAdapter.mIdleExecutor = new QueueExecutor();
+        RecyclerView.RecycledViewPool pool = mock(RecyclerView.RecycledViewPool.class);
+        mockAttachedRecyclerView(pool);
+
+        mExpandableRecyclerAdapter.warmUpViewHolders(ExpandableRecyclerAdapter.TYPE_CHILD, 8);
+        mExpandableRecyclerAdapter.warmUpViewHolders(ExpandableRecyclerAdapter.TYPE_CHILD, 6);
+        mExpandableRecyclerAdapter.warmUpViewHolders(ExpandableRecyclerAdapter.TYPE_PARENT, 3);
+
+        verify(pool).setMaxRecycledViews(ExpandableRecyclerAdapter.TYPE_CHILD, 8);
+        verify(pool, times(1)).setMaxRecycledViews(Mockito.anyInt(), Mockito.anyInt());
+
+        mExpandableRecyclerAdapter.warmUpViewHolders(ExpandableRecyclerAdapter.TYPE_CHILD, 10);
+
+        verify(pool).setMaxRecycledViews(ExpandableRecyclerAdapter.TYPE_CHILD, 10);
+    }
+
+    @Test
+    public void warmingUpViewHoldersStopsOnceDetachedOrReplaced() {
+        QueueExecutor idleExecutor = new QueueExecutor();
+        mExpandableRecyclerAdapter.mIdleExecutor = idleExecutor;
+        RecyclerView.RecycledViewPool pool = mock(RecyclerView.RecycledViewPool.class);
+        RecyclerView recyclerView = mockAttachedRecyclerView(pool);
+        RecyclerView.RecycledViewPool otherPool = mock(RecyclerView.RecycledViewPool.class);
+        RecyclerView otherRecyclerView = mockAttachedRecyclerView(otherPool);
+
+        mExpandableRecyclerAdapter.warmUpViewHolders(ExpandableRecyclerAdapter.TYPE_CHILD, 3);
+        idleExecutor.runNext();
+        idleExecutor.runNext();
+        verify(pool).putRecycledView(Mockito.any(ChildViewHolder.class));
+        verify(otherPool).putRecycledView(Mockito.any(ChildViewHolder.class));
+
+        mExpandableRecyclerAdapter.onDetachedFromRecyclerView(recyclerView);
+        when(otherRecyclerView.getAdapter()).thenReturn(null);
+        while (idleExecutor.size() > 0) {
+            idleExecutor.runNext();
+        }
+
+        verify(pool, times(1)).putRecycledView(Mockito.any(RecyclerView.ViewHolder.class));
+        verify(otherPool, times(1)).putRecycledView(Mockito.any(RecyclerView.ViewHolder.class));
+    }
+
+    @Test
+    public void metricsListenerReceivesTimingsOfStructuralUpdates() {
+        AdapterMetrics metrics = new AdapterMetrics();
+        mExpandableRecyclerAdapter.setMetricsListener(metrics);
+
+        mExpandableRecyclerAdapter.expandParent(1);
+        mExpandableRecyclerAdapter.collapseParent(0);
+        mExpandableRecyclerAdapter.notifyParentDataSetChanged(true);
+        mExpandableRecyclerAdapter.onCreateViewHolder(mock(ViewGroup.class), ExpandableRecyclerAdapter.TYPE_CHILD);
+
+        assertEquals(1, metrics.getExpandHistogram().getCount());
+        assertEquals(1, metrics.getCollapseHistogram().getCount());
+        assertEquals(1, metrics.getRebuildHistogram().getCount());
+        assertEquals(3, metrics.getNotifyHistogram().getCount());
+        assertEquals(1, metrics.getCreateHistogram(ExpandableRecyclerAdapter.TYPE_CHILD).getCount());
+        assertEquals(null, metrics.getCreateHistogram(ExpandableRecyclerAdapter.TYPE_PARENT));
+
+        mExpandableRecyclerAdapter.setMetricsListener(null);
+        mExpandableRecyclerAdapter.expandParent(0);
+
+        assertEquals(1, metrics.getExpandHistogram().getCount());
+        assertEquals(3, metrics.getNotifyHistogram().getCount());
+    }
+
+    @Test
+    public void progressiveExpansionInsertsGrowingChunks() throws NoSuchFieldException, IllegalAccessException {
+        Parent<Object> largeParent = generateParent(false, 40);
+        mBaseParents.set(1, largeParent);
+        mExpandableRecyclerAdapter = new TestExpandableRecyclerAdapter(mBaseParents);
+        mDataObserver = TestUtils.fixAdapterForTesting(mExpandableRecyclerAdapter);
+        QueueExecutor mainThreadExecutor = new QueueExecutor();
+        mExpandableRecyclerAdapter.mMainThreadExecutor = mainThreadExecutor;
+
+        mExpandableRecyclerAdapter.expandParentProgressively(1, 5);
+        verify(mDataObserver).onItemRangeInserted(5, 5);
+        assertEquals(30, mExpandableRecyclerAdapter.getItemCount());
+
+        mainThreadExecutor.runNext();
+        verify(mDataObserver).onItemRangeInserted(10, 10);
+        mainThreadExecutor.runNext();
+        verify(mDataObserver).onItemRangeInserted(20, 20);
+        mainThreadExecutor.runNext();
+        verify(mDataObserver).onItemRangeInserted(40, 5);
+        assertEquals(0, mainThreadExecutor.size());
+
+        assertEquals(65, mExpandableRecyclerAdapter.getItemCount());
+        verifyParentItemsMatch(largeParent, true, 4);
+        verifyParentItemsMatch(mBaseParents.get(2), true, 45);
+    }
+
+    @Test
+    public void progressiveExpansionStopsOnCollapseAndCompletesOnChildChange() throws NoSuchFieldException, IllegalAccessException {
+        Parent<Object> largeParent = generateParent(false, 40);
+        mBaseParents.set(1, largeParent);
+        useVirtualRowModel();
+        QueueExecutor mainThreadExecutor = new QueueExecutor();
+        mExpandableRecyclerAdapter.mMainThreadExecutor = mainThreadExecutor;
+
+        mExpandableRecyclerAdapter.expandParentProgressively(1, 5);
+        mExpandableRecyclerAdapter.collapseParent(1);
+        verify(mDataObserver).onItemRangeRemoved(5, 5);
+        mainThreadExecutor.runNext();
+        assertEquals(25, mExpandableRecyclerAdapter.getItemCount());
+
+        mExpandableRecyclerAdapter.expandParentProgressively(1, 5);
+        mExpandableRecyclerAdapter.notifyChildChanged(1, 30);
+        verify(mDataObserver).onItemRangeInserted(10, 35);
+        verify(mDataObserver).onItemRangeChanged(35, 1, null);
+        mainThreadExecutor.runNext();
+        assertEquals(0, mainThreadExecutor.size());
+        assertEquals(65, mExpandableRecyclerAdapter.getItemCount());
+        for (int i = 0; i < 40; i++) {
+            assertEquals(largeParent.getChildList().get(i), getListItem(5 + i));
+        }
+    }
+
+    @Test
+    public void progressiveExpansionCompletesOnParentMove() throws NoSuchFieldException, IllegalAccessException {
+        for (int rowModel = ExpandableRecyclerAdapter.ROW_MODEL_WRAPPED; rowModel <= ExpandableRecyclerAdapter.ROW_MODEL_PACKED; rowModel++) {
+            setup();
+            Parent<Object> largeParent = setupProgressiveExpansion(rowModel);
+
+            mBaseParents.add(2, mBaseParents.remove(1));
+            mExpandableRecyclerAdapter.notifyParentMoved(1, 2);
+
+            verify(mDataObserver).onItemRangeRemoved(4, 5);
+            verify(mDataObserver).onItemRangeInserted(8, 5);
+            verify(mDataObserver).onItemRangeInserted(13, 6);
+            verifyRows(largeParent);
+        }
+    }
+
+    @Test
+    public void progressiveExpansionCompletesOnChildInsertion() throws NoSuchFieldException, IllegalAccessException {
+        for (int rowModel = ExpandableRecyclerAdapter.ROW_MODEL_WRAPPED; rowModel <= ExpandableRecyclerAdapter.ROW_MODEL_PACKED; rowModel++) {
+            setup();
+            Parent<Object> largeParent = setupProgressiveExpansion(rowModel);
+
+            // Past the children shown so far, only inserted by the completion
+            largeParent.getChildList().add(7, new Object());
+            mExpandableRecyclerAdapter.notifyChildInserted(1, 7);
+            verify(mDataObserver).onItemRangeInserted(9, 7);
+            assertEquals(36, mExpandableRecyclerAdapter.getItemCount());
+            verifyRows(largeParent);
+
+            mExpandableRecyclerAdapter.collapseParent(1);
+            mExpandableRecyclerAdapter.expandParentProgressively(1, 4);
+
+            // Among the children shown so far, inserted right away
+            largeParent.getChildList().addAll(2, Arrays.asList(new Object(), new Object()));
+            mExpandableRecyclerAdapter.notifyChildRangeInserted(1, 2, 2);
+            verify(mDataObserver).onItemRangeInserted(7, 2);
+            verify(mDataObserver).onItemRangeInserted(11, 7);
+            assertEquals(38, mExpandableRecyclerAdapter.getItemCount());
+            verifyRows(largeParent);
+        }
+    }
+
+    @Test
+    public void progressiveExpansionCompletesOnChildRemoval() throws NoSuchFieldException, IllegalAccessException {
+        for (int rowModel = ExpandableRecyclerAdapter.ROW_MODEL_WRAPPED; rowModel <= ExpandableRecyclerAdapter.ROW_MODEL_PACKED; rowModel++) {
+            setup();
+            Parent<Object> largeParent = setupProgressiveExpansion(rowModel);
+
+            // Past the children shown so far, never inserted
+            largeParent.getChildList().remove(7);
+            mExpandableRecyclerAdapter.notifyChildRemoved(1, 7);
+            verify(mDataObserver, never()).onItemRangeRemoved(anyInt(), anyInt());
+            verify(mDataObserver).onItemRangeInserted(9, 5);
+            assertEquals(34, mExpandableRecyclerAdapter.getItemCount());
+            verifyRows(largeParent);
+
+            mExpandableRecyclerAdapter.collapseParent(1);
+            mExpandableRecyclerAdapter.expandParentProgressively(1, 4);
+
+            // Straddling the last child shown so far, only the shown ones are removed
+            largeParent.getChildList().subList(2, 6).clear();
+            mExpandableRecyclerAdapter.notifyChildRangeRemoved(1, 2, 4);
+            verify(mDataObserver).onItemRangeRemoved(7, 2);
+            verify(mDataObserver).onItemRangeInserted(7, 3);
+            assertEquals(30, mExpandableRecyclerAdapter.getItemCount());
+            verifyRows(largeParent);
+        }
+    }
+
+    /**
+     * Sets up an adapter using {@code rowModel} with a parent of 10 children at position 1,
+     * expanded progressively with 4 of its children shown so far.
+     *
+     * @return The parent expanded progressively
+     */
+    private Parent<Object> setupProgressiveExpansion(int rowModel) throws NoSuchFieldException, IllegalAccessException {
+        Parent<Object> largeParent = generateParent(false, 10);
+        mBaseParents.set(1, largeParent);
+        mExpandableRecyclerAdapter = new TestExpandableRecyclerAdapter(mBaseParents, rowModel);
+        mDataObserver = TestUtils.fixAdapterForTesting(mExpandableRecyclerAdapter);
+        mExpandableRecyclerAdapter.mMainThreadExecutor = new QueueExecutor();
+
+        mExpandableRecyclerAdapter.expandParentProgressively(1, 4);
+        verify(mDataObserver).onItemRangeInserted(5, 4);
+        return largeParent;
+    }
+
+    /**
+     * Verifies the rows of the adapter match {@link #mBaseParents}, with {@code expandedParent}
+     * and the parents initially expanded showing every child.
+     */
+    private void verifyRows(Parent<Object> expandedParent) {
+        List<Object> expectedRows = new ArrayList<>();
+        for (Parent<Object> parent : mBaseParents) {
+            expectedRows.add(parent);
+            if (parent == expandedParent || parent.isInitiallyExpanded()) {
+                expectedRows.addAll(parent.getChildList());
+            }
+        }
+        List<Object> rows = new ArrayList<>();
+        for (int i = 0; i < mExpandableRecyclerAdapter.getItemCount(); i++) {
+            rows.add(getListItem(i));
+        }
+        assertEquals(expectedRows, rows);
+    }
+
+    @Test
+    public void boundViewHoldersReuseCachedPositions() throws NoSuchFieldException, IllegalAccessException {
+        int[] lookupCount = new int[1];
+        setupLookupCountingAdapter(lookupCount);
+        ParentViewHolder parentViewHolder = bindParentViewHolder(4);
+        ChildViewHolder childViewHolder = bindChildViewHolder(6);
+        lookupCount[0] = 0;
+
+        assertEquals(1, parentViewHolder.getParentAdapterPosition(4));
+        assertEquals(2, childViewHolder.getParentAdapterPosition(6));
+        assertEquals(0, childViewHolder.getChildAdapterPosition(6));
+        assertEquals(0, lookupCount[0]);
+
+        // A holder rebound elsewhere by RecyclerView looks its positions up again
+        assertEquals(2, parentViewHolder.getParentAdapterPosition(5));
+        assertEquals(1, lookupCount[0]);
+    }
+
+    @Test
+    public void cachedPositionsAreDroppedOnceRowsAreInserted() throws NoSuchFieldException, IllegalAccessException {
+        int[] lookupCount = new int[1];
+        setupLookupCountingAdapter(lookupCount);
+        ChildViewHolder childViewHolder = bindChildViewHolder(3);
+
+        mBaseParents.add(0, generateParent(false, 3));
+        mExpandableRecyclerAdapter.notifyParentInserted(0);
+        lookupCount[0] = 0;
+
+        // Whatever the holder is now bound to, a stale cache would still say parent 0, child 2
+        assertEquals(1, childViewHolder.getParentAdapterPosition(3));
+        assertEquals(1, childViewHolder.getChildAdapterPosition(3));
+        assertEquals(1, lookupCount[0]);
+    }
+
+    @Test
+    public void cachedPositionsAreDroppedOnceRowsAreRemoved() {
+        ChildViewHolder childViewHolder = bindChildViewHolder(6);
+
+        mBaseParents.remove(1);
+        mExpandableRecyclerAdapter.notifyParentRemoved(1);
+
+        assertEquals(1, childViewHolder.getParentAdapterPosition(6));
+        assertEquals(1, childViewHolder.getChildAdapterPosition(6));
+    }
+
+    @Test
+    public void cachedPositionsAreDroppedOnceRowsAreMoved() {
+        ChildViewHolder childViewHolder = bindChildViewHolder(3);
+
+        mBaseParents.add(0, mBaseParents.remove(1));
+        mExpandableRecyclerAdapter.notifyParentMoved(1, 0);
+
+        assertEquals(1, childViewHolder.getParentAdapterPosition(3));
+        assertEquals(1, childViewHolder.getChildAdapterPosition(3));
+    }
+
+    @Test
+    public void cachedPositionsAreDroppedWithinBatchedUpdates() throws NoSuchFieldException, IllegalAccessException {
+        int[] lookupCount = new int[1];
+        setupLookupCountingAdapter(lookupCount);
+        ParentViewHolder parentViewHolder = bindParentViewHolder(4);
+        ChildViewHolder childViewHolder = bindChildViewHolder(3);
+
+        mExpandableRecyclerAdapter.beginBatchedUpdates();
+        mBaseParents.add(0, generateParent(false, 3));
+        mExpandableRecyclerAdapter.notifyParentInserted(0);
+
+        // Observers don't know about the insertion yet, positions must already account for it
+        verify(mDataObserver, never()).onItemRangeInserted(anyInt(), anyInt());
+        assertEquals(2, parentViewHolder.getParentAdapterPosition(5));
+        assertEquals(1, childViewHolder.getParentAdapterPosition(3));
+        assertEquals(1, childViewHolder.getChildAdapterPosition(3));
+
+        mExpandableRecyclerAdapter.endBatchedUpdates();
+        verify(mDataObserver).onItemRangeInserted(0, 1);
+    }
+
+    /**
+     * Sets up an adapter counting in {@code lookupCount} the parent position lookups of flat
+     * positions.
+     */
+    private void setupLookupCountingAdapter(final int[] lookupCount) throws NoSuchFieldException, IllegalAccessException {
+        mExpandableRecyclerAdapter = new TestExpandableRecyclerAdapter(mBaseParents) {
+            @Override
+            int getNearestParentPosition(int flatPosition) {
+                lookupCount[0]++;
+                return super.getNearestParentPosition(flatPosition);
+            }
+        };
+        mDataObserver = TestUtils.fixAdapterForTesting(mExpandableRecyclerAdapter);
+    }
+
+    private ParentViewHolder bindParentViewHolder(int flatPosition) {
+        ParentViewHolder parentViewHolder = new ParentViewHolder(mock(View.class));
+        parentViewHolder.mExpandableAdapter = mExpandableRecyclerAdapter;
+        mExpandableRecyclerAdapter.onBindViewHolder(parentViewHolder, flatPosition);
+        return parentViewHolder;
+    }
+
+    private ChildViewHolder bindChildViewHolder(int flatPosition) {
+        ChildViewHolder childViewHolder = new ChildViewHolder(mock(View.class));
+        childViewHolder.mExpandableAdapter = mExpandableRecyclerAdapter;
+        mExpandableRecyclerAdapter.onBindViewHolder(childViewHolder, flatPosition);
+        return childViewHolder;
+    }
+
+    @Test
+    public void parentLookupsFollowChangesAtEitherEndWithoutRebuilding() throws NoSuchFieldException, IllegalAccessException {
+        CountingParentList parents = new CountingParentList(mBaseParents);
+        mExpandableRecyclerAdapter = new TestExpandableRecyclerAdapter(parents);
+        mDataObserver = TestUtils.fixAdapterForTesting(mExpandableRecyclerAdapter);
+        mExpandableRecyclerAdapter.expandParent(mBaseParents.get(1));
+
+        Parent<Object> firstParent = generateParent(false, 3);
+        Parent<Object> lastParent = generateParent(false, 3);
+        Parent<Object> replacingParent = generateParent(false, 3);
+        parents.add(0, generateParent(false, 3));
+        mExpandableRecyclerAdapter.notifyParentInserted(0);
+        parents.remove(0);
+        mExpandableRecyclerAdapter.notifyParentRemoved(0);
+        parents.add(0, firstParent);
+        mExpandableRecyclerAdapter.notifyParentInserted(0);
+        parents.add(generateParent(false, 3));
+        mExpandableRecyclerAdapter.notifyParentInserted(11);
+        parents.remove(11);
+        mExpandableRecyclerAdapter.notifyParentRemoved(11);
+        parents.add(lastParent);
+        mExpandableRecyclerAdapter.notifyParentInserted(11);
+        parents.set(4, replacingParent);
+        mExpandableRecyclerAdapter.notifyParentChanged(4);
+
+        // Looking up a parent only reads the list at the position it is mapped to
+        Parent<Object> missingParent = generateParent(false, 3);
+        List<Parent<Object>> lookedUpParents = Arrays.asList(missingParent, firstParent, lastParent, replacingParent,
+                missingParent, mBaseParents.get(5));
+        for (Parent<Object> parent : lookedUpParents) {
+            parents.mGetCount = 0;
+            mExpandableRecyclerAdapter.expandParent(parent);
+            assertTrue(parents.mGetCount < 3);
+        }
+        verify(mDataObserver).onItemRangeInserted(1, 3);
+        verify(mDataObserver).onItemRangeInserted(33, 3);
+        verify(mDataObserver).onItemRangeInserted(17, 3);
+        verify(mDataObserver).onItemRangeInserted(25, 3);
+        assertEquals(42, mExpandableRecyclerAdapter.getItemCount());
+    }
+
+    @Test
+    public void parentLookupsFollowChangesInTheMiddle() {
+        Parent<Object> insertedParent = generateParent(false, 3);
+        mExpandableRecyclerAdapter.collapseParent(mBaseParents.get(6));
+        mBaseParents.add(5, insertedParent);
+        mExpandableRecyclerAdapter.notifyParentInserted(5);
+        mBaseParents.remove(2);
+        mExpandableRecyclerAdapter.notifyParentRemoved(2);
+
+        mExpandableRecyclerAdapter.expandParent(insertedParent);
+        mExpandableRecyclerAdapter.expandParent(mBaseParents.get(5));
+
+        verifyParentItemsMatch(insertedParent, true, 10);
+        verifyParentItemsMatch(mBaseParents.get(5), true, 14);
+    }
+
+    private List<Long> getItemIds() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < mExpandableRecyclerAdapter.getItemCount(); i++) {
+            ids.add(mExpandableRecyclerAdapter.getItemId(i));
+        }
+        return ids;
+    }
+
+    /**
+     * Replaces the children of {@code unloadedParent} with a single placeholder and sets up a
+     * new adapter loading its children on {@code executor}.
+     */
+    private TestChildListLoader setupChildListLoader(Parent<Object> unloadedParent, Executor executor)
+            throws NoSuchFieldException, IllegalAccessException {
+        List<Object> childList = unloadedParent.getChildList();
+        childList.clear();
+        childList.add(new Object());
+
+        mExpandableRecyclerAdapter = new TestExpandableRecyclerAdapter(mBaseParents);
+        mExpandableRecyclerAdapter.mMainThreadExecutor = new DirectExecutor();
+        mDataObserver = TestUtils.fixAdapterForTesting(mExpandableRecyclerAdapter);
+        TestChildListLoader childListLoader = new TestChildListLoader(unloadedParent, 3);
+        mExpandableRecyclerAdapter.setChildListLoader(childListLoader, executor);
+        return childListLoader;
+    }
+
+    private List<Object> generateDiffChildren(Random random, int childCount) {
+        List<Object> childList = new ArrayList<>();
+        for (int i = 0; i < childCount; i++) {
+            childList.add(new DiffChild(random.nextInt(Integer.MAX_VALUE), 0));
+        }
+        return childList;
+    }
+
+    /**
+     * @return A key for every row, made of the ids of its parent and child and their versions
+     */
+    private List<String> getRowKeys(TestExpandableRecyclerAdapter adapter) {
+        List<String> rowKeys = new ArrayList<>();
+        for (ExpandableWrapper<Parent<Object>, Object> row : adapter.mFlatItemList) {
+            if (row.isParent()) {
+                DiffParent parent = (DiffParent) row.getParent();
+                rowKeys.add("p" + parent.mId + "/" + parent.mVersion);
+            } else {
+                DiffChild child = (DiffChild) row.getChild();
+                rowKeys.add("c" + child.mId + "/" + child.mVersion);
+            }
+        }
+        return rowKeys;
+    }
+
+    private RecyclerView mockAttachedRecyclerView(RecyclerView.RecycledViewPool pool) {
+        RecyclerView recyclerView = mock(RecyclerView.class);
+        when(recyclerView.getRecycledViewPool()).thenReturn(pool);
+        when(recyclerView.getAdapter()).thenReturn((RecyclerView.Adapter) mExpandableRecyclerAdapter);
+        mExpandableRecyclerAdapter.onAttachedToRecyclerView(recyclerView);
+        return recyclerView;
+    }
+
+    private void useVirtualRowModel() throws NoSuchFieldException, IllegalAccessException {
+        mExpandableRecyclerAdapter = new TestExpandableRecyclerAdapter(mBaseParents, ExpandableRecyclerAdapter.ROW_MODEL_VIRTUAL);
+        mDataObserver = TestUtils.fixAdapterForTesting(mExpandableRecyclerAdapter);
+    }
+
+    private void verifyParentItemsMatch(Parent<Object> expectedParent, boolean expectedExpansion, int actualParentIndex) {
+        assertEquals(expectedParent, getListItem(actualParentIndex));
+        assertEquals(expectedExpansion, mExpandableRecyclerAdapter.mFlatItemList.get(actualParentIndex).isExpanded());
+
+        if (expectedExpansion) {
+            List<Object> expectedChildList = expectedParent.getChildList();
+            int actualChildIndex = actualParentIndex + 1;
+            for (int i = 0; i < expectedChildList.size(); i++) {
+                assertEquals(expectedChildList.get(i), getListItem(actualChildIndex));
+                actualChildIndex++;
+            }
+        }
+    }
+
+    private Parent<Object> generateParent(boolean initiallyExpanded, int childCount) {
+        List<Object> childObjects = new ArrayList<>();
+        for (int i = 0; i < childCount; i++) {
+            childObjects.add(new Object());
+        }
+        Parent<Object> parent = (Parent<Object>) mock(Parent.class);
+        Mockito.when(parent.getChildList()).thenReturn(childObjects);
+        when(parent.isInitiallyExpanded()).thenReturn(initiallyExpanded);
+
+        return parent;
+    }
+
+    protected Object getListItem(int flatPosition) {
+        ExpandableWrapper<Parent<Object>, Object> listItem = mExpandableRecyclerAdapter.mFlatItemList.get(flatPosition);
+        if (listItem.isParent()) {
+            return listItem.getParent();
+        } else {
+            return listItem.getChild();
+        }
+    }
+
+    private static class TestExpandableRecyclerAdapter extends ExpandableRecyclerAdapter<Parent<Object>, Object, ParentViewHolder, ChildViewHolder> {
+
+        public TestExpandableRecyclerAdapter(@NonNull List<Parent<Object>> parentList) {
+            super(parentList);
+        }
+
+        public TestExpandableRecyclerAdapter(@NonNull List<Parent<Object>> parentList, @RowModel int rowModel) {
+            super(parentList, rowModel);
+        }
+
+        @NonNull
+        @Override
+        public ParentViewHolder onCreateParentViewHolder(@NonNull ViewGroup parentViewGroup, int viewType) {
+            return mock(ParentViewHolder.class);
+        }
+
+        @Override
+        public ChildViewHolder onCreateChildViewHolder(@NonNull ViewGroup childViewGroup, int viewType) {
+            return mock(ChildViewHolder.class);
+        }
+
+        @Override
+        public void onBindParentViewHolder(@NonNull ParentViewHolder parentViewHolder, int parentPosition, @NonNull Parent<Object> parent) {
+
+        }
+
+        @Override
+        public void onBindChildViewHolder(@NonNull ChildViewHolder childViewHolder, int parentPosition, int childPosition, @NonNull Object child) {
+
+        }
+    }
+    private static class TestParentListFilter extends ParentListFilter<Parent<Object>, Object> {
+
+        private final Set<Object> mShownChildren;
+        boolean mExpandParentsWithShownChildren;
+        int mTestedChildCount;
+
+        TestParentListFilter(Set<Object> shownChildren) {
+            mShownChildren = new HashSet<>(shownChildren);
+        }
+
+        @Override
+        public boolean isChildShown(@NonNull Parent<Object> parent, @NonNull Object child) {
+            mTestedChildCount++;
+            return mShownChildren.contains(child);
+        }
+
+        @Override
+        public boolean shouldExpandParentsWithShownChildren() {
+            return mExpandParentsWithShownChildren;
+        }
+    }
+
+    private static class DiffParent implements Parent<Object> {
+
+        final int mId;
+        final int mVersion;
+        private final boolean mInitiallyExpanded;
+        private final List<Object> mChildList;
+
+        DiffParent(int id, int version, boolean initiallyExpanded, List<Object> childList) {
+            mId = id;
+            mVersion = version;
+            mInitiallyExpanded = initiallyExpanded;
+            mChildList = childList;
+        }
+
+        @Override
+        public List<Object> getChildList() {
+            return mChildList;
+        }
+
+        @Override
+        public boolean isInitiallyExpanded() {
+            return mInitiallyExpanded;
+        }
+    }
+
+    private static class DiffChild {
+
+        final int mId;
+        final int mVersion;
+
+        DiffChild(int id, int version) {
+            mId = id;
+            mVersion = version;
+        }
+    }
+
+    private static class IdentityDiffCallback extends ParentListDiffCallback<Parent<Object>, Object> {
+
+        @Override
+        public Object getParentId(@NonNull Parent<Object> parent) {
+            return parent;
+        }
+
+        @Override
+        public boolean areParentContentsTheSame(@NonNull Parent<Object> oldParent, @NonNull Parent<Object> newParent) {
+            return true;
+        }
+
+        @Override
+        public Object getChildId(@NonNull Object child) {
+            return child;
+        }
+
+        @Override
+        public boolean areChildContentsTheSame(@NonNull Object oldChild, @NonNull Object newChild) {
+            return true;
+        }
+    }
+
+    /**
+     * Loads {@code childCount} children for a single parent, whose child list holds placeholders
+     * until then.
+     */
+    private static class TestChildListLoader extends ChildListLoader<Parent<Object>, Object> {
+
+        private final Parent<Object> mUnloadedParent;
+        private final int mChildCount;
+        private boolean mLoaded;
+        private int mLoadCount;
+
+        TestChildListLoader(Parent<Object> unloadedParent, int childCount) {
+            mUnloadedParent = unloadedParent;
+            mChildCount = childCount;
+        }
+
+        @Override
+        public boolean isChildListLoaded(@NonNull Parent<Object> parent) {
+            return parent != mUnloadedParent || mLoaded;
+        }
+
+        @NonNull
+        @Override
+        public List<Object> loadChildList(@NonNull Parent<Object> parent) {
+            mLoadCount++;
+            List<Object> childList = new ArrayList<>();
+            for (int i = 0; i < mChildCount; i++) {
+                childList.add(new Object());
+            }
+            return childList;
+        }
+
+        @Override
+        public void onChildListLoaded(@NonNull Parent<Object> parent, @NonNull List<Object> childList) {
+            mLoaded = true;
+            parent.getChildList().clear();
+            parent.getChildList().addAll(childList);
+        }
+    }
+
+    /**
+     * Executor keeping tasks until they are run explicitly.
+     */
+    private static class QueueExecutor implements Executor {
+
+        private final List<Runnable> mTasks = new ArrayList<>();
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mTasks.add(command);
+        }
+
+        int size() {
+            return mTasks.size();
+        }
+
+        void runNext() {
+            mTasks.remove(0).run();
+        }
+    }
+
+    private static class DirectExecutor implements Executor {
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    }
+
+    private static class DiffParentCallback extends ParentListDiffCallback<Parent<Object>, Object> {
+
+        @Override
+        public Object getParentId(@NonNull Parent<Object> parent) {
+            return ((DiffParent) parent).mId;
+        }
+
+        @Override
+        public boolean areParentContentsTheSame(@NonNull Parent<Object> oldParent, @NonNull Parent<Object> newParent) {
+            return ((DiffParent) oldParent).mVersion == ((DiffParent) newParent).mVersion;
+        }
+
+        @Override
+        public Object getChildId(@NonNull Object child) {
+            return ((DiffChild) child).mId;
+        }
+
+        @Override
+        public boolean areChildContentsTheSame(@NonNull Object oldChild, @NonNull Object newChild) {
+            return ((DiffChild) oldChild).mVersion == ((DiffChild) newChild).mVersion;
+        }
+    }
+
+    /**
+     * Replays the notifications it receives on a copy of the rows, keeping track of which
+     * rows were inserted or changed.
+     */
+    private static class RowRecordingObserver extends AdapterDataObserver {
+
+        private static final String INSERTED = "inserted";
+
+        private final List<String> mRows;
+        private final List<Boolean> mChanged;
+
+        RowRecordingObserver(List<String> rows) {
+            mRows = new ArrayList<>(rows);
+            mChanged = new ArrayList<>(Collections.nCopies(rows.size(), false));
+        }
+
+        @Override
+        public void onChanged() {
+            throw new AssertionError("Data set change notified");
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            for (int i = positionStart; i < positionStart + itemCount; i++) {
+                mChanged.set(i, true);
+            }
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            mRows.addAll(positionStart, Collections.nCopies(itemCount, INSERTED));
+            mChanged.addAll(positionStart, Collections.nCopies(itemCount, false));
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            mRows.subList(positionStart, positionStart + itemCount).clear();
+            mChanged.subList(positionStart, positionStart + itemCount).clear();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            assertEquals(1, itemCount);
+            mRows.add(toPosition, mRows.remove(fromPosition));
+            mChanged.add(toPosition, mChanged.remove(fromPosition));
+        }
+
+        /**
+         * Checks that every row left from before is the same item as the new row at its
+         * position, and was notified as changed only if its version differs.
+         */
+        void verifyRows(List<String> oldRows, List<String> newRows) {
+            assertEquals(newRows.size(), mRows.size());
+            for (int i = 0; i < newRows.size(); i++) {
+                String newRow = newRows.get(i);
+                String row = mRows.get(i);
+                if (row.equals(INSERTED)) {
+                    for (String oldRow : oldRows) {
+                        assertEquals(false, getId(oldRow).equals(getId(newRow)));
+                    }
+                    continue;
+                }
+                assertEquals(getId(newRow), getId(row));
+                assertEquals(!newRow.equals(row), (boolean) mChanged.get(i));
+            }
+            mRows.clear();
+            mRows.addAll(newRows);
+            mChanged.clear();
+            mChanged.addAll(Collections.nCopies(newRows.size(), false));
+        }
+
+        private static String getId(String row) {
+            return row.substring(0, row.indexOf('/'));
+        }
+    }
+
+    /**
+     * Parent list counting the parents read from it.
+     */
+    private static class CountingParentList extends ArrayList<Parent<Object>> {
+
+        int mGetCount;
+
+        CountingParentList(List<Parent<Object>> parents) {
+            super(parents);
+        }
+
+        @Override
+        public Parent<Object> get(int index) {
+            mGetCount++;
+            return super.get(index);
         }
     }
 }
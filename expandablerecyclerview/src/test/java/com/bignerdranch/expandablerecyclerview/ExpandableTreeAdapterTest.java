@@ -0,0 +1,295 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.RecyclerView.AdapterDataObserver;
+import android.view.ViewGroup;
+
+import com.bignerdranch.expandablerecyclerview.model.TreeNode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ExpandableTreeAdapterTest {
+
+    private TestNode mNodeA;
+    private TestNode mNodeA1;
+    private List<TestNode> mRootList;
+    private TestExpandableTreeAdapter mAdapter;
+    private AdapterDataObserver mDataObserver;
+
+    @Before
+    public void setup() throws NoSuchFieldException, IllegalAccessException {
+        mNodeA1 = new TestNode("A1", false, new TestNode("A1a", false), new TestNode("A1b", false));
+        mNodeA = new TestNode("A", false, mNodeA1, new TestNode("A2", false));
+        TestNode nodeC = new TestNode("C", true, new TestNode("C1", false));
+        mRootList = new ArrayList<>(Arrays.asList(mNodeA, new TestNode("B", false), nodeC));
+
+        mAdapter = new TestExpandableTreeAdapter(mRootList);
+        mDataObserver = TestUtils.fixAdapterForTesting(mAdapter);
+    }
+
+    @Test
+    public void adapterShowsInitiallyExpandedNodes() {
+        assertEquals(Arrays.asList("A", "B", "C", "C1"), getRowNames());
+        assertEquals(1, mAdapter.getDepth(3));
+    }
+
+    @Test
+    public void expandingDeepNodeInsertsItsRows() {
+        mAdapter.expandNode(0);
+        verify(mDataObserver).onItemRangeInserted(1, 2);
+
+        mAdapter.expandNode(1);
+        verify(mDataObserver).onItemRangeInserted(2, 2);
+
+        assertEquals(Arrays.asList("A", "A1", "A1a", "A1b", "A2", "B", "C", "C1"), getRowNames());
+        assertEquals(2, mAdapter.getDepth(3));
+        verify(mDataObserver).onItemRangeChanged(1, 1, ExpandableTreeAdapter.PAYLOAD_EXPANSION_CHANGED);
+    }
+
+    @Test
+    public void collapsingNodeHidesAllRowsBelowAndKeepsTheirState() {
+        mAdapter.expandNode(0);
+        mAdapter.expandNode(1);
+
+        mAdapter.collapseNode(0);
+        verify(mDataObserver).onItemRangeRemoved(1, 4);
+        assertEquals(Arrays.asList("A", "B", "C", "C1"), getRowNames());
+
+        mAdapter.expandNode(0);
+        verify(mDataObserver).onItemRangeInserted(1, 4);
+        assertEquals(Arrays.asList("A", "A1", "A1a", "A1b", "A2", "B", "C", "C1"), getRowNames());
+    }
+
+    @Test
+    public void notifyTreeDataSetChangedPreservesExpansionState() {
+        mAdapter.expandNode(0);
+        mAdapter.expandNode(1);
+        mAdapter.collapseNode(6);
+        mNodeA1.mChildList.add(new TestNode("A1c", false));
+
+        mAdapter.notifyTreeDataSetChanged(true);
+
+        assertEquals(Arrays.asList("A", "A1", "A1a", "A1b", "A1c", "A2", "B", "C"), getRowNames());
+
+        mAdapter.notifyTreeDataSetChanged(false);
+
+        assertEquals(Arrays.asList("A", "B", "C", "C1"), getRowNames());
+    }
+
+    @Test
+    public void randomTogglesMatchRecursiveFlattening() {
+        Random random = new Random(18);
+        List<TestNode> rootList = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            rootList.add(generateTree(random, "" + i, 4));
+        }
+        mAdapter = new TestExpandableTreeAdapter(rootList);
+
+        for (int i = 0; i < 500; i++) {
+            int flatPosition = random.nextInt(mAdapter.getItemCount());
+            mAdapter.toggleNode(flatPosition);
+
+            Set<TestNode> expandedNodes = new HashSet<>();
+            for (int j = 0; j < mAdapter.getItemCount(); j++) {
+                if (mAdapter.isNodeExpanded(j)) {
+                    expandedNodes.add(mAdapter.getNode(j));
+                }
+            }
+            List<String> expectedRows = new ArrayList<>();
+            for (TestNode root : rootList) {
+                flatten(root, expandedNodes, expectedRows);
+            }
+            assertEquals(expectedRows, getRowNames());
+        }
+    }
+
+    @Test
+    public void insertingNodesOnlyInsertsTheirRows() {
+        mAdapter.expandNode(0);
+
+        mNodeA.mChildList.add(2, new TestNode("A3", true, new TestNode("A3a", false)));
+        mAdapter.notifyNodeInserted(mNodeA, 2);
+        verify(mDataObserver).onItemRangeInserted(3, 2);
+
+        mRootList.add(new TestNode("D", false));
+        mAdapter.notifyNodeInserted(null, 3);
+        verify(mDataObserver).onItemRangeInserted(8, 1);
+
+        // The children of A1 aren't wrapped yet, they are read from its child list on expansion
+        mNodeA1.mChildList.add(new TestNode("A1c", false));
+        mAdapter.notifyNodeInserted(mNodeA1, 2);
+        assertEquals(Arrays.asList("A", "A1", "A2", "A3", "A3a", "B", "C", "C1", "D"), getRowNames());
+
+        mAdapter.expandNode(1);
+        verify(mDataObserver).onItemRangeInserted(2, 3);
+        assertEquals(Arrays.asList("A", "A1", "A1a", "A1b", "A1c", "A2", "A3", "A3a", "B", "C", "C1", "D"), getRowNames());
+    }
+
+    @Test
+    public void removingNodesOnlyRemovesTheirRows() {
+        mAdapter.expandNode(0);
+        mAdapter.expandNode(1);
+
+        mNodeA.mChildList.remove(0);
+        mAdapter.notifyNodeRemoved(mNodeA, 0);
+        verify(mDataObserver).onItemRangeRemoved(1, 3);
+        assertEquals(Arrays.asList("A", "A2", "B", "C", "C1"), getRowNames());
+        assertEquals(RecyclerView.NO_POSITION, mAdapter.getFlatPosition(mNodeA1));
+
+        mRootList.remove(2);
+        mAdapter.notifyNodeRemoved(null, 2);
+        verify(mDataObserver).onItemRangeRemoved(3, 2);
+
+        mAdapter.collapseNode(0);
+        verify(mDataObserver).onItemRangeRemoved(1, 1);
+        assertEquals(Arrays.asList("A", "B"), getRowNames());
+    }
+
+    @Test
+    public void nodesAreFoundByTheirRowAndToggledByNode() {
+        TestNode nodeA1b = mNodeA1.mChildList.get(1);
+        assertEquals(RecyclerView.NO_POSITION, mAdapter.getFlatPosition(mNodeA1));
+        assertEquals(3, mAdapter.getFlatPosition(mRootList.get(2).mChildList.get(0)));
+
+        mAdapter.expandNode(mNodeA);
+        mAdapter.expandNode(mNodeA1);
+        assertEquals(3, mAdapter.getFlatPosition(nodeA1b));
+
+        mAdapter.notifyNodeChanged(nodeA1b);
+        verify(mDataObserver).onItemRangeChanged(3, 1, null);
+
+        // A hidden node keeps the state it is given
+        mAdapter.collapseNode(mNodeA);
+        mAdapter.collapseNode(mNodeA1);
+        verify(mDataObserver, never()).onItemRangeRemoved(2, 2);
+        assertEquals(RecyclerView.NO_POSITION, mAdapter.getFlatPosition(nodeA1b));
+
+        mAdapter.expandNode(mNodeA);
+        assertEquals(Arrays.asList("A", "A1", "A2", "B", "C", "C1"), getRowNames());
+    }
+
+    @Test
+    public void randomEditsMatchRecursiveFlattening() {
+        Random random = new Random(19);
+        List<TestNode> rootList = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            rootList.add(generateTree(random, "" + i, 3));
+        }
+        mAdapter = new TestExpandableTreeAdapter(rootList);
+
+        int nameCount = 0;
+        for (int i = 0; i < 500; i++) {
+            int operation = random.nextInt(3);
+            TestNode node = mAdapter.getItemCount() == 0 ? null : mAdapter.getNode(random.nextInt(mAdapter.getItemCount()));
+            List<TestNode> childList = node == null ? rootList : node.mChildList;
+            if (operation == 0 && node != null) {
+                mAdapter.toggleNode(mAdapter.getFlatPosition(node));
+            } else if (operation == 1 || childList.isEmpty()) {
+                int childPosition = random.nextInt(childList.size() + 1);
+                childList.add(childPosition, generateTree(random, "n" + nameCount++, 2));
+                mAdapter.notifyNodeInserted(node, childPosition);
+            } else {
+                int childPosition = random.nextInt(childList.size());
+                childList.remove(childPosition);
+                mAdapter.notifyNodeRemoved(node, childPosition);
+            }
+
+            Set<TestNode> expandedNodes = new HashSet<>();
+            for (int j = 0; j < mAdapter.getItemCount(); j++) {
+                assertEquals(j, mAdapter.getFlatPosition(mAdapter.getNode(j)));
+                if (mAdapter.isNodeExpanded(j)) {
+                    expandedNodes.add(mAdapter.getNode(j));
+                }
+            }
+            List<String> expectedRows = new ArrayList<>();
+            for (TestNode root : rootList) {
+                flatten(root, expandedNodes, expectedRows);
+            }
+            assertEquals(expectedRows, getRowNames());
+        }
+    }
+
+    private TestNode generateTree(Random random, String name, int depth) {
+        TestNode node = new TestNode(name, random.nextBoolean());
+        if (depth > 0) {
+            int childCount = random.nextInt(4);
+            for (int i = 0; i < childCount; i++) {
+                node.mChildList.add(generateTree(random, name + "." + i, depth - 1));
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Flattens the subtree of {@code node} the naive way, recursing into expanded nodes.
+     */
+    private void flatten(TestNode node, Set<TestNode> expandedNodes, List<String> rows) {
+        rows.add(node.mName);
+        if (expandedNodes.contains(node)) {
+            for (TestNode child : node.mChildList) {
+                flatten(child, expandedNodes, rows);
+            }
+        }
+    }
+
+    private List<String> getRowNames() {
+        List<String> rowNames = new ArrayList<>();
+        for (int i = 0; i < mAdapter.getItemCount(); i++) {
+            rowNames.add(mAdapter.getNode(i).mName);
+        }
+        return rowNames;
+    }
+
+    private static class TestNode implements TreeNode<TestNode> {
+
+        private final String mName;
+        private final boolean mInitiallyExpanded;
+        private final List<TestNode> mChildList;
+
+        TestNode(String name, boolean initiallyExpanded, TestNode... childList) {
+            mName = name;
+            mInitiallyExpanded = initiallyExpanded;
+            mChildList = new ArrayList<>(Arrays.asList(childList));
+        }
+
+        @Override
+        public List<TestNode> getChildList() {
+            return mChildList;
+        }
+
+        @Override
+        public boolean isInitiallyExpanded() {
+            return mInitiallyExpanded;
+        }
+    }
+
+    private static class TestExpandableTreeAdapter extends ExpandableTreeAdapter<TestNode, RecyclerView.ViewHolder> {
+
+        TestExpandableTreeAdapter(@NonNull List<TestNode> rootList) {
+            super(rootList);
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return null;
+        }
+
+        @Override
+        public void onBindNodeViewHolder(@NonNull RecyclerView.ViewHolder holder, int flatPosition, @NonNull TestNode node, int depth, boolean expanded) {
+
+        }
+    }
+}
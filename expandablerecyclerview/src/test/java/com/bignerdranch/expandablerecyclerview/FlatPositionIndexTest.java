@@ -0,0 +1,223 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+
+public class FlatPositionIndexTest {
+
+    private FlatPositionIndex mFlatPositionIndex;
+
+    @Before
+    public void setup() {
+        setupIndex(false);
+    }
+
+    private void setupIndex(boolean dense) {
+        mFlatPositionIndex = new FlatPositionIndex(dense);
+
+        // Same layout as ExpandableRecyclerAdapterTest, even parents expanded with 3 children
+        for (int i = 0; i < 10; i++) {
+            mFlatPositionIndex.appendParent(i % 2 == 0, 3);
+        }
+    }
+
+    @Test
+    public void indexCorrectlyCountsRows() {
+        assertEquals(10, mFlatPositionIndex.getParentCount());
+        assertEquals(5, mFlatPositionIndex.getExpandedParentCount());
+        assertEquals(25, mFlatPositionIndex.getTotalRowCount());
+    }
+
+    @Test
+    public void flatParentPositionsMatchRowCounts() {
+        int[] expected = {0, 4, 5, 9, 10, 14, 15, 19, 20, 24, 25};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], mFlatPositionIndex.getFlatParentPosition(i));
+        }
+    }
+
+    @Test
+    public void nearestParentPositionResolvesParentAndChildRows() {
+        assertEquals(0, mFlatPositionIndex.getNearestParentPosition(0));
+        assertEquals(0, mFlatPositionIndex.getNearestParentPosition(3));
+        assertEquals(1, mFlatPositionIndex.getNearestParentPosition(4));
+        assertEquals(2, mFlatPositionIndex.getNearestParentPosition(8));
+        assertEquals(9, mFlatPositionIndex.getNearestParentPosition(24));
+        assertEquals(FlatPositionIndex.INVALID_POSITION, mFlatPositionIndex.getNearestParentPosition(25));
+    }
+
+    @Test
+    public void expandingUpdatesFollowingParents() {
+        mFlatPositionIndex.getFlatParentPosition(0);
+        mFlatPositionIndex.setExpanded(1, 5);
+
+        assertEquals(30, mFlatPositionIndex.getTotalRowCount());
+        assertEquals(6, mFlatPositionIndex.getRowCount(1));
+        assertEquals(10, mFlatPositionIndex.getFlatParentPosition(2));
+        assertEquals(1, mFlatPositionIndex.getNearestParentPosition(9));
+        assertEquals(2, mFlatPositionIndex.getNearestParentPosition(10));
+
+        mFlatPositionIndex.setCollapsed(0);
+
+        assertEquals(false, mFlatPositionIndex.isExpanded(0));
+        assertEquals(27, mFlatPositionIndex.getTotalRowCount());
+        assertEquals(1, mFlatPositionIndex.getFlatParentPosition(1));
+    }
+
+    @Test
+    public void expandedParentWithoutChildrenTakesOneRow() {
+        mFlatPositionIndex.setExpanded(1, 0);
+
+        assertEquals(true, mFlatPositionIndex.isExpanded(1));
+        assertEquals(1, mFlatPositionIndex.getRowCount(1));
+        assertEquals(25, mFlatPositionIndex.getTotalRowCount());
+    }
+
+    @Test
+    public void insertAndRemoveParentsShiftPositions() {
+        mFlatPositionIndex.insertParent(2, true, 2);
+
+        assertEquals(11, mFlatPositionIndex.getParentCount());
+        assertEquals(8, mFlatPositionIndex.getFlatParentPosition(3));
+        assertEquals(2, mFlatPositionIndex.getNearestParentPosition(7));
+        assertEquals(true, mFlatPositionIndex.isExpanded(3));
+
+        assertEquals(8, mFlatPositionIndex.removeParents(1, 3));
+        assertEquals(8, mFlatPositionIndex.getParentCount());
+        assertEquals(20, mFlatPositionIndex.getTotalRowCount());
+        assertEquals(5, mFlatPositionIndex.getFlatParentPosition(2));
+    }
+
+    @Test
+    public void moveParentKeepsRowCount() {
+        mFlatPositionIndex.moveParent(0, 9);
+
+        assertEquals(1, mFlatPositionIndex.getRowCount(0));
+        assertEquals(4, mFlatPositionIndex.getRowCount(9));
+        assertEquals(21, mFlatPositionIndex.getFlatParentPosition(9));
+
+        mFlatPositionIndex.moveParent(9, 0);
+
+        assertEquals(4, mFlatPositionIndex.getRowCount(0));
+        assertEquals(4, mFlatPositionIndex.getFlatParentPosition(1));
+    }
+
+    @Test
+    public void expandedBitsEncodeExpandedParents() {
+        for (int i = 0; i < 60; i++) {
+            mFlatPositionIndex.appendParent(i % 3 == 0, 1);
+        }
+
+        long[] expandedBits = mFlatPositionIndex.getExpandedBits();
+
+        assertEquals(2, expandedBits.length);
+        for (int i = 0; i < mFlatPositionIndex.getParentCount(); i++) {
+            assertEquals(mFlatPositionIndex.isExpanded(i), FlatPositionIndex.isExpanded(expandedBits, i));
+        }
+        assertEquals(false, FlatPositionIndex.isExpanded(expandedBits, 200));
+    }
+
+    @Test
+    public void denseIndexTogglesParentsInPlace() {
+        setupIndex(true);
+        assertEquals(5, mFlatPositionIndex.getExpandedParentCount());
+        assertEquals(14, mFlatPositionIndex.getFlatParentPosition(5));
+
+        mFlatPositionIndex.setExpanded(1, 5);
+        mFlatPositionIndex.setCollapsed(0);
+
+        assertEquals(false, mFlatPositionIndex.isExpanded(0));
+        assertEquals(true, mFlatPositionIndex.isExpanded(1));
+        assertEquals(27, mFlatPositionIndex.getTotalRowCount());
+        assertEquals(7, mFlatPositionIndex.getFlatParentPosition(2));
+        assertEquals(1, mFlatPositionIndex.getNearestParentPosition(6));
+        assertEquals(2, mFlatPositionIndex.getNearestParentPosition(7));
+
+        mFlatPositionIndex.appendParent(true, 2);
+        assertEquals(27, mFlatPositionIndex.getFlatParentPosition(10));
+        assertEquals(10, mFlatPositionIndex.getNearestParentPosition(29));
+    }
+
+    @Test
+    public void randomOperationsMatchRowCountList() {
+        runRandomOperations();
+    }
+
+    @Test
+    public void denseIndexRandomOperationsMatchRowCountList() {
+        setupIndex(true);
+        runRandomOperations();
+    }
+
+    private void runRandomOperations() {
+        Random random = new Random(7);
+        List<Integer> rowCounts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            rowCounts.add(i % 2 == 0 ? 4 : 1);
+        }
+
+        for (int i = 0; i < 2000; i++) {
+            int parentCount = rowCounts.size();
+            int operation = parentCount == 0 ? 0 : random.nextInt(6);
+            if (operation == 0) {
+                int parentPosition = random.nextInt(parentCount + 1);
+                boolean expanded = random.nextBoolean();
+                int childCount = random.nextInt(5);
+                mFlatPositionIndex.insertParent(parentPosition, expanded, childCount);
+                rowCounts.add(parentPosition, expanded ? childCount + 1 : 1);
+            } else if (operation == 1) {
+                int parentPosition = random.nextInt(parentCount);
+                int count = random.nextInt(Math.min(3, parentCount - parentPosition)) + 1;
+                int removed = 0;
+                for (int j = 0; j < count; j++) {
+                    removed += rowCounts.remove(parentPosition);
+                }
+                assertEquals(removed, mFlatPositionIndex.removeParents(parentPosition, count));
+            } else if (operation == 2) {
+                int parentPosition = random.nextInt(parentCount);
+                int childCount = random.nextInt(6);
+                mFlatPositionIndex.setExpanded(parentPosition, childCount);
+                rowCounts.set(parentPosition, childCount + 1);
+            } else if (operation == 3) {
+                int parentPosition = random.nextInt(parentCount);
+                mFlatPositionIndex.setCollapsed(parentPosition);
+                rowCounts.set(parentPosition, 1);
+            } else if (operation == 4) {
+                int parentPosition = random.nextInt(parentCount);
+                int[] childCounts = new int[random.nextInt(parentCount - parentPosition) + 1];
+                for (int j = 0; j < childCounts.length; j++) {
+                    childCounts[j] = random.nextInt(5) - 1;
+                    rowCounts.set(parentPosition + j, Math.max(childCounts[j], 0) + 1);
+                }
+                mFlatPositionIndex.setExpansionRange(parentPosition, childCounts);
+            } else {
+                int from = random.nextInt(parentCount);
+                int to = random.nextInt(parentCount);
+                mFlatPositionIndex.moveParent(from, to);
+                rowCounts.add(to, rowCounts.remove(from));
+            }
+
+            verifyIndexMatches(rowCounts);
+        }
+    }
+
+    private void verifyIndexMatches(List<Integer> rowCounts) {
+        assertEquals(rowCounts.size(), mFlatPositionIndex.getParentCount());
+        int flatPosition = 0;
+        for (int parentPosition = 0; parentPosition < rowCounts.size(); parentPosition++) {
+            assertEquals((int) rowCounts.get(parentPosition), mFlatPositionIndex.getRowCount(parentPosition));
+            assertEquals(flatPosition, mFlatPositionIndex.getFlatParentPosition(parentPosition));
+            for (int row = 0; row < rowCounts.get(parentPosition); row++) {
+                assertEquals(parentPosition, mFlatPositionIndex.getNearestParentPosition(flatPosition));
+                flatPosition++;
+            }
+        }
+        assertEquals(flatPosition, mFlatPositionIndex.getTotalRowCount());
+    }
+}
@@ -0,0 +1,64 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+public class LatencyHistogramTest {
+
+    private LatencyHistogram mHistogram;
+
+    @Before
+    public void setup() {
+        mHistogram = new LatencyHistogram();
+    }
+
+    @Test
+    public void durationsAreCountedInPowerOfTwoBuckets() {
+        mHistogram.record(0);
+        mHistogram.record(1);
+        mHistogram.record(2);
+        mHistogram.record(3);
+        mHistogram.record(1000);
+
+        assertEquals(1, mHistogram.getBucketCount(0));
+        assertEquals(1, mHistogram.getBucketCount(1));
+        assertEquals(2, mHistogram.getBucketCount(2));
+        assertEquals(1, mHistogram.getBucketCount(10));
+        assertEquals(1023, LatencyHistogram.getBucketUpperBoundNanos(10));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.getBucketUpperBoundNanos(LatencyHistogram.BUCKET_COUNT - 1));
+
+        assertEquals(5, mHistogram.getCount());
+        assertEquals(1006, mHistogram.getTotalNanos());
+        assertEquals(1000, mHistogram.getMaxNanos());
+        assertEquals(201, mHistogram.getMeanNanos());
+    }
+
+    @Test
+    public void percentilesAreBucketUpperBoundsCappedAtMax() {
+        assertEquals(0, mHistogram.getPercentileNanos(0.5));
+
+        for (int i = 0; i < 90; i++) {
+            mHistogram.record(100);
+        }
+        for (int i = 0; i < 10; i++) {
+            mHistogram.record(5000);
+        }
+
+        assertEquals(127, mHistogram.getPercentileNanos(0.5));
+        assertEquals(127, mHistogram.getPercentileNanos(0.9));
+        assertEquals(5000, mHistogram.getPercentileNanos(0.99));
+    }
+
+    @Test
+    public void resetDropsEveryDuration() {
+        mHistogram.record(100);
+        mHistogram.reset();
+
+        assertEquals(0, mHistogram.getCount());
+        assertEquals(0, mHistogram.getBucketCount(7));
+        assertEquals(0, mHistogram.getMaxNanos());
+        assertEquals(0, mHistogram.getPercentileNanos(1));
+    }
+}
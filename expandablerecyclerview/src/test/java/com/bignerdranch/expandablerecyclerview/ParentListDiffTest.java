@@ -0,0 +1,261 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.annotation.NonNull;
+
+import com.bignerdranch.expandablerecyclerview.model.Parent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+
+public class ParentListDiffTest {
+
+    @Test
+    public void reversingLargeListMovesAllButOneItem() {
+        int size = 20000;
+        int[] oldToNewPositions = new int[size];
+        for (int i = 0; i < size; i++) {
+            oldToNewPositions[i] = size - 1 - i;
+        }
+
+        RecordingCallback callback = applyUpdates(oldToNewPositions, size);
+
+        assertEquals(size - 1, callback.mMoveCount);
+    }
+
+    @Test
+    public void shufflingLargeListOnlyMovesItemsOutOfOrder() {
+        int size = 20000;
+        List<Integer> newPositions = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            newPositions.add(i);
+        }
+        Collections.shuffle(newPositions, new Random(11));
+        int[] oldToNewPositions = new int[size];
+        for (int i = 0; i < size; i++) {
+            oldToNewPositions[i] = newPositions.get(i);
+        }
+
+        RecordingCallback callback = applyUpdates(oldToNewPositions, size);
+
+        assertEquals(size - getLongestIncreasingRunLength(oldToNewPositions), callback.mMoveCount);
+    }
+
+    @Test
+    public void randomRemovalsMovesAndInsertionsProduceNewList() {
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            int oldSize = random.nextInt(30);
+            int newSize = random.nextInt(30);
+            List<Integer> newPositions = new ArrayList<>();
+            for (int j = 0; j < newSize; j++) {
+                newPositions.add(j);
+            }
+            Collections.shuffle(newPositions, random);
+            int[] oldToNewPositions = new int[oldSize];
+            for (int j = 0; j < oldSize; j++) {
+                boolean removed = random.nextInt(4) == 0 || newPositions.isEmpty();
+                oldToNewPositions[j] = removed ? ParentListDiff.NO_POSITION : newPositions.remove(newPositions.size() - 1);
+            }
+
+            applyUpdates(oldToNewPositions, newSize);
+        }
+    }
+
+    @Test
+    public void calculatedUpdatesAreReplayedOnDispatch() {
+        List<TestParent> oldParents = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            oldParents.add(new TestParent(i, 0, 1, 2, 3));
+        }
+        List<TestParent> newParents = Arrays.asList(new TestParent(5, 3, 0, 1, 2), new TestParent(1), new TestParent(6),
+                new TestParent(0, 1, 7, 2), new TestParent(3, 0, 1, 2, 3));
+        List<List<Integer>> oldChildLists = new ArrayList<>();
+        for (TestParent parent : oldParents) {
+            oldChildLists.add(parent.getChildList());
+        }
+        CountingDiffCallback diffCallback = new CountingDiffCallback();
+
+        ParentListDiff diff = ParentListDiff.calculate(oldParents, oldChildLists, newParents, diffCallback);
+        int callCount = diffCallback.mCallCount;
+
+        List<Integer> parentIds = new ArrayList<>(Arrays.asList(0, 1, 2, 3, 4, 5));
+        diff.dispatchParentUpdates(new IdCallback(parentIds, getIds(newParents)));
+        assertEquals(getIds(newParents), parentIds);
+        for (int i = 0; i < newParents.size(); i++) {
+            int oldParentPosition = diff.getOldParentPosition(i);
+            if (oldParentPosition == ParentListDiff.NO_POSITION) {
+                continue;
+            }
+            List<Integer> childIds = new ArrayList<>(oldParents.get(oldParentPosition).getChildList());
+            diff.dispatchChildUpdates(i, new IdCallback(childIds, newParents.get(i).getChildList()));
+            assertEquals(newParents.get(i).getChildList(), childIds);
+        }
+        assertEquals(callCount, diffCallback.mCallCount);
+    }
+
+    /**
+     * Dispatches the updates turning a list into another one and verifies they produce it.
+     */
+    private RecordingCallback applyUpdates(int[] oldToNewPositions, int newSize) {
+        int[] newToOldPositions = new int[newSize];
+        Arrays.fill(newToOldPositions, ParentListDiff.NO_POSITION);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < newSize; i++) {
+            expected.add(i);
+        }
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < oldToNewPositions.length; i++) {
+            if (oldToNewPositions[i] == ParentListDiff.NO_POSITION) {
+                list.add(-1);
+            } else {
+                newToOldPositions[oldToNewPositions[i]] = i;
+                list.add(oldToNewPositions[i]);
+            }
+        }
+
+        RecordingCallback callback = new RecordingCallback(list);
+        ParentListDiff.dispatchUpdates(oldToNewPositions, newToOldPositions, callback);
+        assertEquals(expected, list);
+        return callback;
+    }
+
+    private static int getLongestIncreasingRunLength(int[] values) {
+        int[] tails = new int[values.length];
+        int length = 0;
+        for (int value : values) {
+            int index = Arrays.binarySearch(tails, 0, length, value);
+            index = index < 0 ? -index - 1 : index;
+            tails[index] = value;
+            if (index == length) {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Applies the updates to a list of new positions, inserting the new positions of the
+     * inserted items.
+     */
+    private static class RecordingCallback implements ParentListDiff.UpdateCallback {
+
+        final List<Integer> mList;
+        int mMoveCount;
+
+        RecordingCallback(List<Integer> list) {
+            mList = list;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mList.subList(position, position + count).clear();
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mList.add(toPosition, mList.remove(fromPosition));
+            mMoveCount++;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            for (int i = 0; i < count; i++) {
+                mList.add(position + i, position + i);
+            }
+        }
+    }
+
+    private static List<Integer> getIds(List<TestParent> parents) {
+        List<Integer> ids = new ArrayList<>();
+        for (TestParent parent : parents) {
+            ids.add(parent.mId);
+        }
+        return ids;
+    }
+
+    /**
+     * Applies the updates to a list of ids, taking the ids of inserted items from the new list.
+     */
+    private static class IdCallback implements ParentListDiff.UpdateCallback {
+
+        final List<Integer> mList;
+        final List<Integer> mNewList;
+
+        IdCallback(List<Integer> list, List<Integer> newList) {
+            mList = list;
+            mNewList = newList;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mList.subList(position, position + count).clear();
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mList.add(toPosition, mList.remove(fromPosition));
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mList.addAll(position, mNewList.subList(position, position + count));
+        }
+    }
+
+    private static class TestParent implements Parent<Integer> {
+
+        final int mId;
+        final List<Integer> mChildList;
+
+        TestParent(int id, Integer... childIds) {
+            mId = id;
+            mChildList = Arrays.asList(childIds);
+        }
+
+        @Override
+        public List<Integer> getChildList() {
+            return mChildList;
+        }
+
+        @Override
+        public boolean isInitiallyExpanded() {
+            return false;
+        }
+    }
+
+    private static class CountingDiffCallback extends ParentListDiffCallback<TestParent, Integer> {
+
+        int mCallCount;
+
+        @Override
+        public Object getParentId(@NonNull TestParent parent) {
+            mCallCount++;
+            return parent.mId;
+        }
+
+        @Override
+        public boolean areParentContentsTheSame(@NonNull TestParent oldParent, @NonNull TestParent newParent) {
+            mCallCount++;
+            return true;
+        }
+
+        @Override
+        public Object getChildId(@NonNull Integer child) {
+            mCallCount++;
+            return child;
+        }
+
+        @Override
+        public boolean areChildContentsTheSame(@NonNull Integer oldChild, @NonNull Integer newChild) {
+            mCallCount++;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView.AdapterDataObserver;
+import android.view.ViewGroup;
+
+import com.bignerdranch.expandablerecyclerview.model.ExpandableWrapper;
+import com.bignerdranch.expandablerecyclerview.model.Parent;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ParentListSorterTest {
+
+    private static final Comparator<SortParent> PARENT_COMPARATOR = new Comparator<SortParent>() {
+        @Override
+        public int compare(SortParent lhs, SortParent rhs) {
+            return lhs.mKey < rhs.mKey ? -1 : (lhs.mKey == rhs.mKey ? 0 : 1);
+        }
+    };
+
+    private static final Comparator<Integer> CHILD_COMPARATOR = new Comparator<Integer>() {
+        @Override
+        public int compare(Integer lhs, Integer rhs) {
+            return lhs.compareTo(rhs);
+        }
+    };
+
+    private List<SortParent> mParentList;
+    private TestExpandableRecyclerAdapter mAdapter;
+    private AdapterDataObserver mDataObserver;
+    private ParentListSorter<SortParent, Integer> mSorter;
+
+    @Before
+    public void setup() throws NoSuchFieldException, IllegalAccessException {
+        mParentList = new ArrayList<>(Arrays.asList(
+                new SortParent(10, false), new SortParent(20, true, 1, 5, 9), new SortParent(30, false)));
+        mAdapter = new TestExpandableRecyclerAdapter(mParentList);
+        mDataObserver = TestUtils.fixAdapterForTesting(mAdapter);
+        mSorter = new ParentListSorter<>(mAdapter, PARENT_COMPARATOR, CHILD_COMPARATOR);
+    }
+
+    @Test
+    public void attachingSorterSortsUnsortedLists() {
+        verify(mDataObserver, never()).onChanged();
+
+        Collections.reverse(mParentList);
+        Collections.reverse(mParentList.get(1).mChildList);
+        new ParentListSorter<>(mAdapter, PARENT_COMPARATOR, CHILD_COMPARATOR);
+
+        verify(mDataObserver).onChanged();
+        assertEquals(Arrays.asList("p10", "p20", "c1", "c5", "c9", "p30"), getRowNames());
+    }
+
+    @Test
+    public void addingParentAndChildInsertsThemInPlace() {
+        assertEquals(3, mSorter.addParent(new SortParent(30, false)));
+        verify(mDataObserver).onItemRangeInserted(6, 1);
+
+        assertEquals(0, mSorter.addParent(new SortParent(5, false)));
+        verify(mDataObserver).onItemRangeInserted(0, 1);
+
+        assertEquals(2, mSorter.addChild(2, 7));
+        verify(mDataObserver).onItemRangeInserted(5, 1);
+
+        assertEquals(Arrays.asList("p5", "p10", "p20", "c1", "c5", "c7", "c9", "p30", "p30"), getRowNames());
+    }
+
+    @Test
+    public void updatingSortKeyMovesItem() {
+        SortParent parent = mParentList.get(0);
+        parent.mKey = 15;
+        assertEquals(0, mSorter.updateParentAt(0, parent));
+        verify(mDataObserver, never()).onItemRangeMoved(0, 0, 1);
+        verify(mDataObserver).onItemRangeChanged(0, 1, ParentListSorter.PAYLOAD_ITEM_UPDATED);
+
+        parent.mKey = 40;
+        assertEquals(2, mSorter.updateParentAt(0, parent));
+        verify(mDataObserver).onItemRangeMoved(0, 5, 1);
+        verify(mDataObserver).onItemRangeChanged(5, 1, ParentListSorter.PAYLOAD_ITEM_UPDATED);
+
+        assertEquals(2, mSorter.updateChildAt(0, 0, 12));
+        verify(mDataObserver).onItemRangeMoved(1, 3, 1);
+        verify(mDataObserver).onItemRangeChanged(3, 1, null);
+
+        assertEquals(Arrays.asList("p20", "c5", "c9", "c12", "p30", "p40"), getRowNames());
+    }
+
+    @Test
+    public void updatingExpandedParentOnlyChangesParentRow() {
+        SortParent parent = mParentList.get(1);
+        parent.mKey = 25;
+        assertEquals(1, mSorter.updateParentAt(1, parent));
+
+        verify(mDataObserver).onItemRangeChanged(1, 1, ParentListSorter.PAYLOAD_ITEM_UPDATED);
+        verify(mDataObserver, never()).onItemRangeChanged(1, 4, null);
+    }
+
+    @Test
+    public void randomUpdatesKeepListsSorted() {
+        Random random = new Random(20);
+        for (int i = 0; i < 300; i++) {
+            int operation = random.nextInt(5);
+            int parentCount = mParentList.size();
+            if (operation == 0 || parentCount == 0) {
+                mSorter.addParent(new SortParent(random.nextInt(50), random.nextBoolean()));
+            } else if (operation == 1) {
+                int parentPosition = random.nextInt(parentCount);
+                SortParent parent = mParentList.get(parentPosition);
+                parent.mKey = random.nextInt(50);
+                mSorter.updateParentAt(parentPosition, parent);
+            } else if (operation == 2) {
+                mSorter.addChild(random.nextInt(parentCount), random.nextInt(50));
+            } else if (operation == 3) {
+                int parentPosition = random.nextInt(parentCount);
+                int childCount = mParentList.get(parentPosition).mChildList.size();
+                if (childCount > 0) {
+                    mSorter.updateChildAt(parentPosition, random.nextInt(childCount), random.nextInt(50));
+                }
+            } else if (parentCount > 10) {
+                mSorter.removeParentAt(random.nextInt(parentCount));
+            }
+
+            List<String> expectedRows = new ArrayList<>();
+            for (int j = 0; j < mParentList.size(); j++) {
+                SortParent parent = mParentList.get(j);
+                if (j > 0) {
+                    assertEquals(true, mParentList.get(j - 1).mKey <= parent.mKey);
+                }
+                expectedRows.add("p" + parent.mKey);
+                List<Integer> sortedChildList = new ArrayList<>(parent.mChildList);
+                Collections.sort(sortedChildList);
+                assertEquals(sortedChildList, parent.mChildList);
+                if (mAdapter.mFlatItemList.get(expectedRows.size() - 1).isExpanded()) {
+                    for (Integer child : parent.mChildList) {
+                        expectedRows.add("c" + child);
+                    }
+                }
+            }
+            assertEquals(expectedRows, getRowNames());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void sorterThrowsWhileFilterIsSet() {
+        mAdapter.setFilter(new HidingFilter(20), false);
+
+        mSorter.addParent(new SortParent(15, false));
+    }
+
+    @Test
+    public void sorterEditsWholeListOnceFilterIsCleared() {
+        mAdapter.setFilter(new HidingFilter(20), false);
+        mAdapter.clearFilter();
+
+        assertEquals(1, mSorter.addParent(new SortParent(15, false)));
+        assertEquals(4, mParentList.size());
+        assertEquals(Arrays.asList("p10", "p15", "p20", "c1", "c5", "c9", "p30"), getRowNames());
+
+        mAdapter.setFilter(new HidingFilter(15), false);
+        mAdapter.clearFilter();
+        assertEquals(Arrays.asList("p10", "p15", "p20", "c1", "c5", "c9", "p30"), getRowNames());
+    }
+
+    private List<String> getRowNames() {
+        List<String> rowNames = new ArrayList<>();
+        for (ExpandableWrapper<SortParent, Integer> row : mAdapter.mFlatItemList) {
+            rowNames.add(row.isParent() ? "p" + row.getParent().mKey : "c" + row.getChild());
+        }
+        return rowNames;
+    }
+
+    private static class SortParent implements Parent<Integer> {
+
+        int mKey;
+        private final boolean mInitiallyExpanded;
+        private final List<Integer> mChildList;
+
+        SortParent(int key, boolean initiallyExpanded, Integer... childList) {
+            mKey = key;
+            mInitiallyExpanded = initiallyExpanded;
+            mChildList = new ArrayList<>(Arrays.asList(childList));
+        }
+
+        @Override
+        public List<Integer> getChildList() {
+            return mChildList;
+        }
+
+        @Override
+        public boolean isInitiallyExpanded() {
+            return mInitiallyExpanded;
+        }
+    }
+
+    private static class HidingFilter extends ParentListFilter<SortParent, Integer> {
+
+        private final int mHiddenKey;
+
+        HidingFilter(int hiddenKey) {
+            mHiddenKey = hiddenKey;
+        }
+
+        @Override
+        public boolean isParentShown(@NonNull SortParent parent) {
+            return parent.mKey != mHiddenKey;
+        }
+    }
+
+    private static class TestExpandableRecyclerAdapter extends ExpandableRecyclerAdapter<SortParent, Integer, ParentViewHolder, ChildViewHolder> {
+
+        public TestExpandableRecyclerAdapter(@NonNull List<SortParent> parentList) {
+            super(parentList);
+        }
+
+        @NonNull
+        @Override
+        public ParentViewHolder onCreateParentViewHolder(@NonNull ViewGroup parentViewGroup, int viewType) {
+            return null;
+        }
+
+        @NonNull
+        @Override
+        public ChildViewHolder onCreateChildViewHolder(@NonNull ViewGroup childViewGroup, int viewType) {
+            return null;
+        }
+
+        @Override
+        public void onBindParentViewHolder(@NonNull ParentViewHolder parentViewHolder, int parentPosition, @NonNull SortParent parent) {
+
+        }
+
+        @Override
+        public void onBindChildViewHolder(@NonNull ChildViewHolder childViewHolder, int parentPosition, int childPosition, @NonNull Integer child) {
+
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView.AdapterDataObserver;
+import android.view.ViewGroup;
+
+import com.bignerdranch.expandablerecyclerview.model.Parent;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ParentPagerTest {
+
+    private static final int PAGE_SIZE = 10;
+
+    private TestExpandableRecyclerAdapter mAdapter;
+    private AdapterDataObserver mDataObserver;
+    private TestPageSource mPageSource;
+    private ParentPager<Parent<Object>, Object> mParentPager;
+
+    @Before
+    public void setup() throws NoSuchFieldException, IllegalAccessException {
+        mAdapter = new TestExpandableRecyclerAdapter(new ArrayList<Parent<Object>>());
+        mAdapter.mMainThreadExecutor = new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                command.run();
+            }
+        };
+        mDataObserver = TestUtils.fixAdapterForTesting(mAdapter);
+        mPageSource = new TestPageSource();
+        mParentPager = new ParentPager<>(mAdapter, mPageSource, 3, 3);
+    }
+
+    @Test
+    public void startLoadsRequestedPage() {
+        mParentPager.start(0);
+
+        assertEquals(1, mPageSource.mRequestedPages.size());
+        assertEquals(0, (int) mPageSource.mRequestedPages.get(0));
+
+        mPageSource.completeNext(PAGE_SIZE);
+
+        assertEquals(PAGE_SIZE, mAdapter.getItemCount());
+        assertEquals(1, mParentPager.getPageCount());
+        verify(mDataObserver).onItemRangeInserted(0, PAGE_SIZE);
+    }
+
+    @Test
+    public void bindingNearEitherEndRequestsAdjacentPage() {
+        mParentPager.start(0);
+        mPageSource.completeNext(PAGE_SIZE);
+
+        bindParent(5);
+        assertEquals(0, mPageSource.mRequestedPages.size());
+
+        bindParent(7);
+        bindParent(2);
+        assertEquals(2, mPageSource.mRequestedPages.size());
+        assertEquals(1, (int) mPageSource.mRequestedPages.get(0));
+        assertEquals(-1, (int) mPageSource.mRequestedPages.get(1));
+
+        mPageSource.completeNext(PAGE_SIZE);
+        mPageSource.completeNext(0);
+
+        assertEquals(2 * PAGE_SIZE, mAdapter.getItemCount());
+        verify(mDataObserver).onItemRangeInserted(PAGE_SIZE, PAGE_SIZE);
+
+        // The start was reached, binding the first parents again requests nothing
+        bindParent(0);
+        assertEquals(0, mPageSource.mRequestedPages.size());
+    }
+
+    @Test
+    public void loadingPastMaxPageCountDropsFarthestPage() {
+        mParentPager.start(0);
+        mPageSource.completeNext(PAGE_SIZE);
+        for (int i = 1; i <= 3; i++) {
+            bindParent(mAdapter.getParentList().size() - 1);
+            mPageSource.completeNext(PAGE_SIZE);
+        }
+
+        assertEquals(3, mParentPager.getPageCount());
+        assertEquals(1, mParentPager.getFirstPage());
+        assertEquals(3 * PAGE_SIZE, mAdapter.getItemCount());
+        verify(mDataObserver).onItemRangeRemoved(0, PAGE_SIZE);
+
+        bindParent(0);
+        assertEquals(0, (int) mPageSource.mRequestedPages.get(0));
+        mPageSource.completeNext(PAGE_SIZE);
+
+        assertEquals(3, mParentPager.getPageCount());
+        assertEquals(0, mParentPager.getFirstPage());
+        verify(mDataObserver).onItemRangeRemoved(3 * PAGE_SIZE, PAGE_SIZE);
+    }
+
+    @Test
+    public void loadsStartedBeforeRestartAreIgnored() {
+        mParentPager.start(0);
+        mParentPager.start(5);
+
+        mPageSource.completeNext(PAGE_SIZE);
+        assertEquals(0, mAdapter.getItemCount());
+
+        mPageSource.completeNext(PAGE_SIZE);
+        assertEquals(PAGE_SIZE, mAdapter.getItemCount());
+        assertEquals(5, mParentPager.getFirstPage());
+    }
+
+    @Test
+    public void failedLoadIsRequestedAgain() {
+        mParentPager.start(0);
+        mPageSource.completeNext(PAGE_SIZE);
+        bindParent(9);
+        mPageSource.mCallbacks.remove(0).onPageLoadFailed();
+        mPageSource.mRequestedPages.remove(0);
+
+        bindParent(9);
+
+        assertEquals(1, (int) mPageSource.mRequestedPages.get(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void startThrowsWhileFilterIsSet() {
+        mAdapter.setFilter(new ParentListFilter<Parent<Object>, Object>() {}, false);
+
+        mParentPager.start(0);
+    }
+
+    @Test
+    public void pagingPausesWhileFilterIsSet() {
+        mParentPager.start(0);
+        mPageSource.completeNext(PAGE_SIZE);
+        bindParent(9);
+
+        mAdapter.setFilter(new ParentListFilter<Parent<Object>, Object>() {}, false);
+        mPageSource.completeNext(PAGE_SIZE);
+        bindParent(9);
+
+        assertEquals(PAGE_SIZE, mAdapter.getItemCount());
+        assertEquals(0, mPageSource.mRequestedPages.size());
+
+        // The page dropped while filtered is requested again and inserted into the whole list
+        mAdapter.clearFilter();
+        bindParent(9);
+        assertEquals(1, (int) mPageSource.mRequestedPages.get(0));
+        mPageSource.completeNext(PAGE_SIZE);
+
+        assertEquals(2 * PAGE_SIZE, mAdapter.getItemCount());
+        assertEquals(2 * PAGE_SIZE, mAdapter.getParentList().size());
+        assertEquals(2, mParentPager.getPageCount());
+    }
+
+    private void bindParent(int parentPosition) {
+        mAdapter.onBindViewHolder(mock(ParentViewHolder.class), parentPosition);
+    }
+
+    private static class TestPageSource implements ParentPageSource<Parent<Object>> {
+
+        private final List<Integer> mRequestedPages = new ArrayList<>();
+        private final List<ParentPager.LoadCallback<Parent<Object>>> mCallbacks = new ArrayList<>();
+
+        @Override
+        public void loadPage(int page, @NonNull ParentPager.LoadCallback<Parent<Object>> callback) {
+            mRequestedPages.add(page);
+            mCallbacks.add(callback);
+        }
+
+        void completeNext(int parentCount) {
+            mRequestedPages.remove(0);
+            List<Parent<Object>> parentList = new ArrayList<>();
+            for (int i = 0; i < parentCount; i++) {
+                Parent<Object> parent = (Parent<Object>) mock(Parent.class);
+                when(parent.getChildList()).thenReturn(Collections.emptyList());
+                parentList.add(parent);
+            }
+            mCallbacks.remove(0).onPageLoaded(parentList);
+        }
+    }
+
+    private static class TestExpandableRecyclerAdapter extends ExpandableRecyclerAdapter<Parent<Object>, Object, ParentViewHolder, ChildViewHolder> {
+
+        public TestExpandableRecyclerAdapter(@NonNull List<Parent<Object>> parentList) {
+            super(parentList);
+        }
+
+        @NonNull
+        @Override
+        public ParentViewHolder onCreateParentViewHolder(@NonNull ViewGroup parentViewGroup, int viewType) {
+            return null;
+        }
+
+        @NonNull
+        @Override
+        public ChildViewHolder onCreateChildViewHolder(@NonNull ViewGroup childViewGroup, int viewType) {
+            return null;
+        }
+
+        @Override
+        public void onBindParentViewHolder(@NonNull ParentViewHolder parentViewHolder, int parentPosition, @NonNull Parent<Object> parent) {
+
+        }
+
+        @Override
+        public void onBindChildViewHolder(@NonNull ChildViewHolder childViewHolder, int parentPosition, int childPosition, @NonNull Object child) {
+
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.RecyclerView.AdapterDataObserver;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+public class RowUpdateBatchTest {
+
+    private RowUpdateBatch mRowUpdateBatch;
+    private RecyclerView.Adapter<RecyclerView.ViewHolder> mAdapter;
+
+    @Before
+    public void setup() {
+        mRowUpdateBatch = new RowUpdateBatch();
+        mAdapter = new EmptyAdapter();
+    }
+
+    @Test
+    public void consecutiveInsertsAndRemovesAreMerged() throws NoSuchFieldException, IllegalAccessException {
+        AdapterDataObserver observer = TestUtils.fixAdapterForTesting(mAdapter);
+
+        mRowUpdateBatch.addInserted(5, 1);
+        mRowUpdateBatch.addInserted(6, 1);
+        mRowUpdateBatch.addInserted(5, 2);
+        mRowUpdateBatch.addRemoved(20, 2);
+        mRowUpdateBatch.addRemoved(20, 3);
+        mRowUpdateBatch.addRemoved(18, 2);
+        mRowUpdateBatch.dispatch(mAdapter);
+
+        verify(observer).onItemRangeInserted(5, 4);
+        verify(observer).onItemRangeRemoved(18, 7);
+        verifyNoMoreInteractions(observer);
+    }
+
+    @Test
+    public void changesWithEqualPayloadsAreMerged() throws NoSuchFieldException, IllegalAccessException {
+        AdapterDataObserver observer = TestUtils.fixAdapterForTesting(mAdapter);
+
+        mRowUpdateBatch.addChanged(4, 2, null);
+        mRowUpdateBatch.addChanged(6, 3, null);
+        mRowUpdateBatch.addChanged(2, 3, null);
+        mRowUpdateBatch.addChanged(9, 1, "price");
+        mRowUpdateBatch.addChanged(10, 1, "price");
+        mRowUpdateBatch.addChanged(11, 1, "badge");
+        mRowUpdateBatch.dispatch(mAdapter);
+
+        verify(observer).onItemRangeChanged(2, 7, null);
+        verify(observer).onItemRangeChanged(9, 2, "price");
+        verify(observer).onItemRangeChanged(11, 1, "badge");
+        verifyNoMoreInteractions(observer);
+    }
+
+    @Test
+    public void updatesToInsertedRowsAreFoldedIntoInsert() throws NoSuchFieldException, IllegalAccessException {
+        AdapterDataObserver observer = TestUtils.fixAdapterForTesting(mAdapter);
+
+        mRowUpdateBatch.addInserted(3, 5);
+        mRowUpdateBatch.addChanged(4, 2, null);
+        mRowUpdateBatch.addRemoved(3, 2);
+        mRowUpdateBatch.dispatch(mAdapter);
+
+        verify(observer).onItemRangeInserted(3, 3);
+        verifyNoMoreInteractions(observer);
+    }
+
+    @Test
+    public void dataSetChangeReplacesAllUpdates() throws NoSuchFieldException, IllegalAccessException {
+        AdapterDataObserver observer = TestUtils.fixAdapterForTesting(mAdapter);
+
+        mRowUpdateBatch.addInserted(3, 5);
+        mRowUpdateBatch.addDataSetChanged();
+        mRowUpdateBatch.addRemoved(0, 1);
+        mRowUpdateBatch.dispatch(mAdapter);
+
+        verify(observer).onChanged();
+        verifyNoMoreInteractions(observer);
+    }
+
+    @Test
+    public void randomBatchesMatchUnbatchedUpdates() throws NoSuchFieldException, IllegalAccessException {
+        Random random = new Random(17);
+        for (int round = 0; round < 50; round++) {
+            List<Integer> rows = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                rows.add(i);
+            }
+            RecordingObserver unbatchedObserver = new RecordingObserver(rows);
+            RecordingObserver batchedObserver = new RecordingObserver(rows);
+            TestUtils.fixAdapterForTesting(mAdapter, unbatchedObserver);
+
+            int rowCount = rows.size();
+            for (int i = 0; i < 40; i++) {
+                int operation = random.nextInt(4);
+                if (operation == 0 || rowCount == 0) {
+                    int positionStart = random.nextInt(rowCount + 1);
+                    int itemCount = 1 + random.nextInt(3);
+                    mRowUpdateBatch.addInserted(positionStart, itemCount);
+                    mAdapter.notifyItemRangeInserted(positionStart, itemCount);
+                    rowCount += itemCount;
+                } else if (operation == 1) {
+                    int positionStart = random.nextInt(rowCount);
+                    int itemCount = 1 + random.nextInt(Math.min(3, rowCount - positionStart));
+                    mRowUpdateBatch.addRemoved(positionStart, itemCount);
+                    mAdapter.notifyItemRangeRemoved(positionStart, itemCount);
+                    rowCount -= itemCount;
+                } else if (operation == 2) {
+                    int positionStart = random.nextInt(rowCount);
+                    int itemCount = 1 + random.nextInt(Math.min(3, rowCount - positionStart));
+                    mRowUpdateBatch.addChanged(positionStart, itemCount, null);
+                    mAdapter.notifyItemRangeChanged(positionStart, itemCount);
+                } else {
+                    int fromPosition = random.nextInt(rowCount);
+                    int toPosition = random.nextInt(rowCount);
+                    mRowUpdateBatch.addMoved(fromPosition, toPosition);
+                    mAdapter.notifyItemMoved(fromPosition, toPosition);
+                }
+            }
+
+            TestUtils.fixAdapterForTesting(mAdapter, batchedObserver);
+            mRowUpdateBatch.dispatch(mAdapter);
+
+            assertEquals(unbatchedObserver.mRows, batchedObserver.mRows);
+            for (int i = 0; i < rowCount; i++) {
+                if (unbatchedObserver.mRows.get(i) != RecordingObserver.INSERTED) {
+                    assertEquals(unbatchedObserver.mChanged.get(i), batchedObserver.mChanged.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Replays the notifications it receives on a copy of the rows.
+     */
+    private static class RecordingObserver extends AdapterDataObserver {
+
+        private static final Integer INSERTED = -1;
+
+        private final List<Integer> mRows;
+        private final List<Boolean> mChanged;
+
+        RecordingObserver(List<Integer> rows) {
+            mRows = new ArrayList<>(rows);
+            mChanged = new ArrayList<>(Collections.nCopies(rows.size(), false));
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+            for (int i = positionStart; i < positionStart + itemCount; i++) {
+                mChanged.set(i, true);
+            }
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            mRows.addAll(positionStart, Collections.nCopies(itemCount, INSERTED));
+            mChanged.addAll(positionStart, Collections.nCopies(itemCount, false));
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            mRows.subList(positionStart, positionStart + itemCount).clear();
+            mChanged.subList(positionStart, positionStart + itemCount).clear();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            mRows.add(toPosition, mRows.remove(fromPosition));
+            mChanged.add(toPosition, mChanged.remove(fromPosition));
+        }
+    }
+
+    private static class EmptyAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return mock(RecyclerView.ViewHolder.class);
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class StableIdTableTest {
+
+    private StableIdTable mStableIdTable;
+
+    @Before
+    public void setup() {
+        mStableIdTable = new StableIdTable();
+        for (int i = 0; i < 10; i++) {
+            mStableIdTable.set(i, i);
+        }
+    }
+
+    @Test
+    public void insertedAndChangedRowsAreUnknown() {
+        mStableIdTable.onItemRangeInserted(2, 3);
+        mStableIdTable.onItemRangeChanged(7, 2);
+
+        assertEquals(1, mStableIdTable.get(1));
+        assertEquals(StableIdTable.UNKNOWN_ID, mStableIdTable.get(2));
+        assertEquals(StableIdTable.UNKNOWN_ID, mStableIdTable.get(4));
+        assertEquals(2, mStableIdTable.get(5));
+        assertEquals(3, mStableIdTable.get(6));
+        assertEquals(StableIdTable.UNKNOWN_ID, mStableIdTable.get(7));
+        assertEquals(StableIdTable.UNKNOWN_ID, mStableIdTable.get(8));
+        assertEquals(6, mStableIdTable.get(9));
+        assertEquals(9, mStableIdTable.get(12));
+    }
+
+    @Test
+    public void removedAndMovedRowsShiftFollowingIds() {
+        mStableIdTable.onItemRangeRemoved(1, 3);
+        mStableIdTable.onItemRangeMoved(0, 4, 1);
+
+        assertEquals(4, mStableIdTable.get(0));
+        assertEquals(7, mStableIdTable.get(3));
+        assertEquals(0, mStableIdTable.get(4));
+        assertEquals(9, mStableIdTable.get(6));
+        assertEquals(StableIdTable.UNKNOWN_ID, mStableIdTable.get(7));
+
+        mStableIdTable.onChanged();
+        assertEquals(StableIdTable.UNKNOWN_ID, mStableIdTable.get(0));
+    }
+
+    @Test
+    public void randomOperationsNeverReturnStaleIds() {
+        Random random = new Random(15);
+        List<Long> expectedIds = new ArrayList<>();
+        for (long i = 0; i < 10; i++) {
+            expectedIds.add(i);
+        }
+        long nextId = 10;
+
+        for (int i = 0; i < 2000; i++) {
+            int size = expectedIds.size();
+            int operation = random.nextInt(5);
+            if (operation == 0 || size == 0) {
+                int positionStart = random.nextInt(size + 1);
+                int itemCount = 1 + random.nextInt(5);
+                for (int j = 0; j < itemCount; j++) {
+                    expectedIds.add(positionStart, nextId++);
+                }
+                mStableIdTable.onItemRangeInserted(positionStart, itemCount);
+            } else if (operation == 1) {
+                int positionStart = random.nextInt(size);
+                int itemCount = 1 + random.nextInt(Math.min(5, size - positionStart));
+                expectedIds.subList(positionStart, positionStart + itemCount).clear();
+                mStableIdTable.onItemRangeRemoved(positionStart, itemCount);
+            } else if (operation == 2) {
+                int fromPosition = random.nextInt(size);
+                int toPosition = random.nextInt(size);
+                expectedIds.add(toPosition, expectedIds.remove(fromPosition));
+                mStableIdTable.onItemRangeMoved(fromPosition, toPosition, 1);
+            } else if (operation == 3) {
+                int positionStart = random.nextInt(size);
+                expectedIds.set(positionStart, nextId++);
+                mStableIdTable.onItemRangeChanged(positionStart, 1);
+            } else {
+                int flatPosition = random.nextInt(size);
+                mStableIdTable.set(flatPosition, expectedIds.get(flatPosition));
+            }
+
+            for (int j = 0; j < expectedIds.size(); j++) {
+                long id = mStableIdTable.get(j);
+                assertTrue(id == StableIdTable.UNKNOWN_ID || id == expectedIds.get(j));
+            }
+        }
+    }
+
+    @Test
+    public void parentAndChildRowIdsDontCollide() {
+        Set<Long> ids = new HashSet<>();
+        for (long parentId = 0; parentId < 100; parentId++) {
+            assertTrue(ids.add(StableIdTable.getParentRowId(parentId)));
+            for (long childId = 0; childId < 100; childId++) {
+                assertTrue(ids.add(StableIdTable.getChildRowId(parentId, childId)));
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.bignerdranch.expandablerecyclerview;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView.AdapterDataObserver;
+import android.view.ViewGroup;
+
+import com.bignerdranch.expandablerecyclerview.model.Parent;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+public class StickyParentHeaderDecorationTest {
+
+    @Test
+    public void detachingUnregistersTheObserverRegisteredOnTheAdapter() {
+        TestExpandableRecyclerAdapter adapter = spy(new TestExpandableRecyclerAdapter(new ArrayList<Parent<Object>>()));
+        doNothing().when(adapter).registerAdapterDataObserver(any(AdapterDataObserver.class));
+        doNothing().when(adapter).unregisterAdapterDataObserver(any(AdapterDataObserver.class));
+
+        StickyParentHeaderDecoration decoration = new StickyParentHeaderDecoration(adapter);
+        ArgumentCaptor<AdapterDataObserver> observerCaptor = ArgumentCaptor.forClass(AdapterDataObserver.class);
+        verify(adapter).registerAdapterDataObserver(observerCaptor.capture());
+
+        decoration.detach();
+
+        verify(adapter).unregisterAdapterDataObserver(observerCaptor.getValue());
+    }
+
+    private static class TestExpandableRecyclerAdapter extends ExpandableRecyclerAdapter<Parent<Object>, Object, ParentViewHolder, ChildViewHolder> {
+
+        TestExpandableRecyclerAdapter(@NonNull List<Parent<Object>> parentList) {
+            super(parentList);
+        }
+
+        @NonNull
+        @Override
+        public ParentViewHolder onCreateParentViewHolder(@NonNull ViewGroup parentViewGroup, int viewType) {
+            return null;
+        }
+
+        @NonNull
+        @Override
+        public ChildViewHolder onCreateChildViewHolder(@NonNull ViewGroup childViewGroup, int viewType) {
+            return null;
+        }
+
+        @Override
+        public void onBindParentViewHolder(@NonNull ParentViewHolder parentViewHolder, int parentPosition, @NonNull Parent<Object> parent) {
+
+        }
+
+        @Override
+        public void onBindChildViewHolder(@NonNull ChildViewHolder childViewHolder, int parentPosition, int childPosition, @NonNull Object child) {
+
+        }
+    }
+}
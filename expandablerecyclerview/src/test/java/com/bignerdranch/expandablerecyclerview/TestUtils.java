@@ -19,6 +19,16 @@ public final class TestUtils {
      * Pulled from: https://github.com/badoo/Chateau/blob/master/ExampleApp/src/test/java/com/badoo/chateau/example/ui/utils/TestUtils.java
      */
     public static RecyclerView.AdapterDataObserver fixAdapterForTesting(RecyclerView.Adapter adapter) throws NoSuchFieldException, IllegalAccessException {
+        RecyclerView.AdapterDataObserver dataObserver = mock(RecyclerView.AdapterDataObserver.class);
+        fixAdapterForTesting(adapter, dataObserver);
+        return dataObserver;
+    }
+
+    /**
+     * Same as {@link #fixAdapterForTesting(RecyclerView.Adapter)}, with the given observer
+     * receiving the changes.
+     */
+    public static void fixAdapterForTesting(RecyclerView.Adapter adapter, RecyclerView.AdapterDataObserver dataObserver) throws NoSuchFieldException, IllegalAccessException {
         // Observables are not mocked by default so we need to hook the adapter up to an observer so we can track changes
         Field observableField = RecyclerView.Adapter.class.getDeclaredField("mObservable");
         observableField.setAccessible(true);
@@ -26,9 +36,7 @@ public final class TestUtils {
         Field observersField = Observable.class.getDeclaredField("mObservers");
         observersField.setAccessible(true);
         final ArrayList<Object> observers = new ArrayList<>();
-        RecyclerView.AdapterDataObserver dataObserver = mock(RecyclerView.AdapterDataObserver.class);
         observers.add(dataObserver);
         observersField.set(observable, observers);
-        return dataObserver;
     }
 }
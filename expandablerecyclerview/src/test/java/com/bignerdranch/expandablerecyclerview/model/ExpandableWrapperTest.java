@@ -4,10 +4,16 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class ExpandableWrapperTest {
@@ -66,4 +72,40 @@ public class ExpandableWrapperTest {
 
         assertEquals(expected, mExpandableWrapper.getWrappedChildList().isEmpty());
     }
+
+    @Test
+    public void childItemListIsGeneratedOnFirstUse() {
+        when(mParent.getChildList()).thenReturn(new ArrayList<Object>());
+        mExpandableWrapper = new ExpandableWrapper<>(mParent);
+
+        verify(mParent, never()).getChildList();
+
+        List<ExpandableWrapper<Parent<Object>, Object>> wrappedChildList = mExpandableWrapper.getWrappedChildList();
+        assertSame(wrappedChildList, mExpandableWrapper.getWrappedChildList());
+        verify(mParent, times(1)).getChildList();
+    }
+
+    @Test
+    public void clearingChildItemListGeneratesItAgain() {
+        when(mParent.getChildList()).thenReturn(new ArrayList<Object>());
+        mExpandableWrapper = new ExpandableWrapper<>(mParent);
+
+        List<ExpandableWrapper<Parent<Object>, Object>> wrappedChildList = mExpandableWrapper.getWrappedChildList();
+        mExpandableWrapper.clearWrappedChildList();
+
+        assertNotSame(wrappedChildList, mExpandableWrapper.getWrappedChildList());
+    }
+
+    @Test
+    public void settingChildListWrapsItInsteadOfParentChildren() {
+        when(mParent.getChildList()).thenReturn(new ArrayList<Object>());
+        mExpandableWrapper = new ExpandableWrapper<>(mParent);
+        Object child = new Object();
+
+        mExpandableWrapper.setChildList(Collections.singletonList(child));
+
+        assertEquals(1, mExpandableWrapper.getWrappedChildList().size());
+        assertEquals(child, mExpandableWrapper.getWrappedChildList().get(0).getChild());
+        verify(mParent, never()).getChildList();
+    }
 }
@@ -0,0 +1,69 @@
+package com.bignerdranch.expandablerecyclerview.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+public class PackedRowListTest {
+
+    private PackedRowList mPackedRowList;
+
+    @Before
+    public void setup() {
+        mPackedRowList = new PackedRowList();
+
+        // Parent 0 expanded with 2 children, parent 1 collapsed, parent 2 expanded with 1 child
+        mPackedRowList.insertParentRows(0, 0, 2);
+        mPackedRowList.insertParentRows(3, 1, 0);
+        mPackedRowList.insertParentRows(4, 2, 1);
+    }
+
+    @Test
+    public void rowsResolveToParentAndChildPositions() {
+        assertEquals(6, mPackedRowList.size());
+        verifyRows(new int[] {0, 0, 0, 1, 2, 2}, new int[] {PackedRowList.NO_CHILD, 0, 1, PackedRowList.NO_CHILD, PackedRowList.NO_CHILD, 0});
+        assertEquals(true, mPackedRowList.isParent(3));
+        assertEquals(false, mPackedRowList.isParent(5));
+    }
+
+    @Test
+    public void insertingChildRowsBetweenExistingChildren() {
+        mPackedRowList.offsetChildPositions(2, 3, 2);
+        mPackedRowList.insertChildRows(2, 0, 1, 2);
+
+        verifyRows(new int[] {0, 0, 0, 0, 0, 1, 2, 2}, new int[] {PackedRowList.NO_CHILD, 0, 1, 2, 3, PackedRowList.NO_CHILD, PackedRowList.NO_CHILD, 0});
+    }
+
+    @Test
+    public void removingParentRowsAndShiftingFollowingParents() {
+        mPackedRowList.removeRows(0, 3);
+        mPackedRowList.offsetParentPositions(0, mPackedRowList.size(), -1);
+
+        verifyRows(new int[] {0, 1, 1}, new int[] {PackedRowList.NO_CHILD, PackedRowList.NO_CHILD, 0});
+    }
+
+    @Test
+    public void growingPastInitialCapacity() {
+        for (int i = 3; i < 100; i++) {
+            mPackedRowList.insertParentRows(mPackedRowList.size(), i, 1);
+        }
+
+        assertEquals(200, mPackedRowList.size());
+        assertEquals(99, mPackedRowList.getParentPosition(198));
+        assertEquals(0, mPackedRowList.getChildPosition(199));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void accessingRowOutOfBoundsThrows() {
+        mPackedRowList.getParentPosition(6);
+    }
+
+    private void verifyRows(int[] expectedParentPositions, int[] expectedChildPositions) {
+        assertEquals(expectedParentPositions.length, mPackedRowList.size());
+        for (int i = 0; i < expectedParentPositions.length; i++) {
+            assertEquals(expectedParentPositions[i], mPackedRowList.getParentPosition(i));
+            assertEquals(expectedChildPositions[i], mPackedRowList.getChildPosition(i));
+        }
+    }
+}